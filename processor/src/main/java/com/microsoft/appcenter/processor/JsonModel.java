@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.processor;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a model class for which a serializer is generated at compile time.
+ * <p>
+ * The generated class is named after the model with a {@code Serializer} suffix, lives in the
+ * same package and exposes static {@code read}, {@code write}, {@code equals} and {@code hashCode}
+ * methods covering the fields annotated with {@link JsonProperty} declared by the model itself.
+ * Fields of super classes are not included, the model is expected to call the super class
+ * implementation first as hand written models do.
+ * <p>
+ * Properties whose type is another {@link JsonModel} of the same package are serialized by calling
+ * the other generated serializer directly, such models must not override their read or write methods
+ * in sub-classes.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface JsonModel {
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates serializers for classes annotated with {@link JsonModel}.
+ */
+public class JsonModelProcessor extends AbstractProcessor {
+
+    /**
+     * Interface every model implements.
+     */
+    private static final String MODEL_INTERFACE = "com.microsoft.appcenter.ingestion.models.Model";
+
+    /**
+     * Names used by generated code for parameters, cannot be used for properties.
+     */
+    private static final Set<String> RESERVED_NAMES = new HashSet<>(Arrays.asList("object", "writer", "model", "result", "a", "b"));
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(JsonModel.class.getCanonicalName());
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(JsonModel.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@JsonModel can only be used on classes.");
+                continue;
+            }
+            TypeElement model = (TypeElement) element;
+            List<Property> properties = resolveProperties(model);
+            if (properties != null) {
+                generate(model, properties);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Resolve serialized properties of a model.
+     *
+     * @param model model class.
+     * @return properties in declaration order or null if an error was reported.
+     */
+    private List<Property> resolveProperties(TypeElement model) {
+        if (model.getNestingKind().isNested()) {
+            error(model, "@JsonModel cannot be used on nested classes.");
+            return null;
+        }
+        List<ExecutableElement> methods = ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(model));
+        List<Property> properties = new ArrayList<>();
+        boolean valid = true;
+        for (VariableElement field : ElementFilter.fieldsIn(model.getEnclosedElements())) {
+            JsonProperty annotation = field.getAnnotation(JsonProperty.class);
+            if (annotation == null) {
+                continue;
+            }
+            Property property = resolveProperty(model, field, annotation, methods);
+            if (property == null) {
+                valid = false;
+            } else {
+                properties.add(property);
+            }
+        }
+        return valid ? properties : null;
+    }
+
+    private Property resolveProperty(TypeElement model, VariableElement field, JsonProperty annotation, List<ExecutableElement> methods) {
+
+        /* Strip field prefix, like mMetadata. */
+        String name = field.getSimpleName().toString();
+        if (name.length() > 1 && name.charAt(0) == 'm' && Character.isUpperCase(name.charAt(1))) {
+            name = Character.toLowerCase(name.charAt(1)) + name.substring(2);
+        }
+        if (RESERVED_NAMES.contains(name)) {
+            error(field, "Property name '" + name + "' is reserved by the generated code.");
+            return null;
+        }
+        if (field.getModifiers().contains(Modifier.STATIC)) {
+            error(field, "@JsonProperty cannot be used on static fields.");
+            return null;
+        }
+
+        /* Resolve type. */
+        TypeMirror type = field.asType();
+        Property.Kind kind = resolveKind(type);
+        if (kind == null) {
+            error(field, "Unsupported @JsonProperty type: " + type);
+            return null;
+        }
+        if (annotation.required() && !isScalar(kind)) {
+            error(field, "Only scalar and string properties can be required.");
+            return null;
+        }
+
+        /* Resolve accessors. */
+        String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        String getter = findGetter(methods, "get" + capitalized, type);
+        if (getter == null && kind == Property.Kind.BOOLEAN) {
+            getter = findGetter(methods, "is" + capitalized, type);
+        }
+        if (getter == null) {
+            error(field, "Missing non private getter for property '" + name + "'.");
+            return null;
+        }
+        String setter = "set" + capitalized;
+        if (!hasSetter(methods, setter, type)) {
+            error(field, "Missing non private setter '" + setter + "' for property '" + name + "'.");
+            return null;
+        }
+
+        /* Resolve type name and serializer for nested models. */
+        String typeName;
+        String serializer = null;
+        if (kind == Property.Kind.MODEL) {
+            TypeElement typeElement = (TypeElement) ((DeclaredType) type).asElement();
+            boolean samePackage = getPackage(typeElement).equals(getPackage(model));
+            typeName = samePackage ? typeElement.getSimpleName().toString() : typeElement.getQualifiedName().toString();
+            if (samePackage && typeElement.getAnnotation(JsonModel.class) != null) {
+                serializer = typeElement.getSimpleName() + SerializerGenerator.SERIALIZER_SUFFIX;
+            }
+            if (!hasDefaultConstructor(typeElement)) {
+                error(field, "Model type " + typeName + " must have a public no-argument constructor.");
+                return null;
+            }
+        } else if (kind == Property.Kind.UUID) {
+            typeName = "java.util.UUID";
+        } else {
+            typeName = ((DeclaredType) type).asElement().getSimpleName().toString();
+        }
+        return new Property(kind, annotation.value(), name, getter, setter, typeName, serializer, annotation.required());
+    }
+
+    private Property.Kind resolveKind(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        DeclaredType declaredType = (DeclaredType) type;
+        String name = ((TypeElement) declaredType.asElement()).getQualifiedName().toString();
+        List<? extends TypeMirror> arguments = declaredType.getTypeArguments();
+        switch (name) {
+            case "java.lang.String":
+                return Property.Kind.STRING;
+
+            case "java.lang.Integer":
+                return Property.Kind.INTEGER;
+
+            case "java.lang.Long":
+                return Property.Kind.LONG;
+
+            case "java.lang.Boolean":
+                return Property.Kind.BOOLEAN;
+
+            case "java.lang.Double":
+                return Property.Kind.DOUBLE;
+
+            case "java.util.UUID":
+                return Property.Kind.UUID;
+
+            case "java.util.List":
+                return arguments.size() == 1 && isString(arguments.get(0)) ? Property.Kind.STRING_LIST : null;
+
+            case "java.util.Map":
+                return arguments.size() == 2 && isString(arguments.get(0)) && isString(arguments.get(1)) ? Property.Kind.STRING_MAP : null;
+
+            default:
+                TypeElement modelInterface = processingEnv.getElementUtils().getTypeElement(MODEL_INTERFACE);
+                return modelInterface != null && processingEnv.getTypeUtils().isAssignable(type, modelInterface.asType()) ? Property.Kind.MODEL : null;
+        }
+    }
+
+    private static boolean isScalar(Property.Kind kind) {
+        return kind != Property.Kind.STRING_LIST && kind != Property.Kind.STRING_MAP && kind != Property.Kind.MODEL;
+    }
+
+    private static boolean isString(TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED && ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().contentEquals("java.lang.String");
+    }
+
+    private String findGetter(List<ExecutableElement> methods, String name, TypeMirror type) {
+        for (ExecutableElement method : methods) {
+            if (method.getSimpleName().contentEquals(name) && method.getParameters().isEmpty()
+                    && !method.getModifiers().contains(Modifier.PRIVATE)
+                    && processingEnv.getTypeUtils().isSameType(method.getReturnType(), type)) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    private boolean hasSetter(List<ExecutableElement> methods, String name, TypeMirror type) {
+        for (ExecutableElement method : methods) {
+            if (method.getSimpleName().contentEquals(name) && method.getParameters().size() == 1
+                    && !method.getModifiers().contains(Modifier.PRIVATE)
+                    && processingEnv.getTypeUtils().isSameType(method.getParameters().get(0).asType(), type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasDefaultConstructor(TypeElement type) {
+        if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+            return false;
+        }
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String getPackage(TypeElement type) {
+        PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(type);
+        return packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+    }
+
+    private void generate(TypeElement model, List<Property> properties) {
+        String packageName = getPackage(model);
+        SerializerGenerator generator = new SerializerGenerator(packageName, model.getSimpleName().toString(), properties);
+        String className = packageName.isEmpty() ? generator.getClassName() : packageName + "." + generator.getClassName();
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(className, model);
+            Writer writer = file.openWriter();
+
+            //noinspection TryFinallyCanBeTryWithResources
+            try {
+                writer.write(generator.generate());
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            error(model, "Failed to generate " + className + ": " + e.getMessage());
+        }
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
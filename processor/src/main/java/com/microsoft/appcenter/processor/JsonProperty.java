@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.processor;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a field of a {@link JsonModel} class to be serialized.
+ * <p>
+ * The field must be accessible through a getter and a setter following the bean naming convention
+ * (an {@code m} prefix of the field name is ignored).
+ * Supported types are {@link String}, {@link Integer}, {@link Long}, {@link Boolean}, {@link Double},
+ * {@link java.util.UUID}, {@code List<String>}, {@code Map<String, String>} and models.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+public @interface JsonProperty {
+
+    /**
+     * JSON key of the property.
+     *
+     * @return JSON key.
+     */
+    String value();
+
+    /**
+     * Whether the property is always present. Required properties are written without null check
+     * and reading them fails if missing from the JSON object.
+     * Only supported on scalar and string types.
+     *
+     * @return true if the property is required, false otherwise.
+     */
+    boolean required() default false;
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.processor;
+
+import java.util.Locale;
+
+/**
+ * Serialized property of a {@link JsonModel} as resolved by the processor.
+ */
+class Property {
+
+    /**
+     * Supported property kinds.
+     */
+    enum Kind {
+        STRING,
+        INTEGER,
+        LONG,
+        BOOLEAN,
+        DOUBLE,
+        UUID,
+        STRING_LIST,
+        STRING_MAP,
+        MODEL
+    }
+
+    /**
+     * Property kind.
+     */
+    final Kind mKind;
+
+    /**
+     * JSON key.
+     */
+    final String mKey;
+
+    /**
+     * Name of the constant holding the JSON key in the generated class.
+     */
+    final String mKeyConstant;
+
+    /**
+     * Property name without field prefix, used for local variables.
+     */
+    final String mName;
+
+    /**
+     * Getter method name.
+     */
+    final String mGetter;
+
+    /**
+     * Setter method name.
+     */
+    final String mSetter;
+
+    /**
+     * Type name as used in generated code (simple name if in the same package or java.lang).
+     */
+    final String mTypeName;
+
+    /**
+     * Simple name of the generated serializer of the property type, null if the property is not a
+     * model or its serializer cannot be called directly.
+     */
+    final String mSerializer;
+
+    /**
+     * Whether the property is required.
+     */
+    final boolean mRequired;
+
+    Property(Kind kind, String key, String name, String getter, String setter, String typeName, String serializer, boolean required) {
+        mKind = kind;
+        mKey = key;
+        mKeyConstant = toConstantName(name);
+        mName = name;
+        mGetter = getter;
+        mSetter = setter;
+        mTypeName = typeName;
+        mSerializer = serializer;
+        mRequired = required;
+    }
+
+    /**
+     * Convert a camel case property name to a constant name.
+     *
+     * @param name property name, such as "userId".
+     * @return constant name, such as "USER_ID".
+     */
+    static String toConstantName(String name) {
+        StringBuilder constant = new StringBuilder(name.length() + 4);
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isUpperCase(c) && i > 0) {
+                constant.append('_');
+            }
+            constant.append(c);
+        }
+        return constant.toString().toUpperCase(Locale.US);
+    }
+
+    /**
+     * Check whether reading this property from JSON can throw a JSON exception.
+     *
+     * @return true if reading can throw, false otherwise.
+     */
+    boolean readCanThrow() {
+        return mKind != Kind.STRING || mRequired;
+    }
+}
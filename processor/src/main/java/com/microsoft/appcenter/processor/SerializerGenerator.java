@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.processor;
+
+import java.util.List;
+
+/**
+ * Generates the source code of a model serializer.
+ */
+class SerializerGenerator {
+
+    /**
+     * Suffix of generated class names.
+     */
+    static final String SERIALIZER_SUFFIX = "Serializer";
+
+    /**
+     * JSON utilities used for collections.
+     */
+    private static final String JSON_UTILS = "com.microsoft.appcenter.ingestion.models.json.JSONUtils";
+
+    /**
+     * Indentation unit.
+     */
+    private static final String INDENT = "    ";
+
+    /**
+     * Package of the model.
+     */
+    private final String mPackageName;
+
+    /**
+     * Simple name of the model.
+     */
+    private final String mModelName;
+
+    /**
+     * Properties declared by the model.
+     */
+    private final List<Property> mProperties;
+
+    /**
+     * Code being generated.
+     */
+    private final StringBuilder mCode = new StringBuilder();
+
+    /**
+     * Current indentation level.
+     */
+    private int mIndent;
+
+    SerializerGenerator(String packageName, String modelName, List<Property> properties) {
+        mPackageName = packageName;
+        mModelName = modelName;
+        mProperties = properties;
+    }
+
+    /**
+     * Get generated class simple name.
+     *
+     * @return generated class simple name.
+     */
+    String getClassName() {
+        return mModelName + SERIALIZER_SUFFIX;
+    }
+
+    /**
+     * Generate source code.
+     *
+     * @return source code of the serializer.
+     */
+    String generate() {
+        if (!mPackageName.isEmpty()) {
+            line("package " + mPackageName + ";");
+            line("");
+        }
+        line("/**");
+        line(" * Serializer of {@link " + mModelName + "}, generated by " + JsonModelProcessor.class.getSimpleName() + ", do not edit.");
+        line(" */");
+        line("@SuppressWarnings({\"unused\", \"WeakerAccess\", \"SimplifiableIfStatement\"})");
+        open("final class " + getClassName());
+        for (Property property : mProperties) {
+            line("");
+            line("private static final String " + property.mKeyConstant + " = \"" + property.mKey + "\";");
+        }
+        line("");
+        open("private " + getClassName() + "()");
+        close();
+        generateRead();
+        generateWrite();
+        generateEquals();
+        generateHashCode();
+        close();
+        return mCode.toString();
+    }
+
+    private void generateRead() {
+        boolean canThrow = false;
+        for (Property property : mProperties) {
+            canThrow |= property.readCanThrow();
+        }
+        line("");
+        open("static void read(org.json.JSONObject object, " + mModelName + " model)" + (canThrow ? " throws org.json.JSONException" : ""));
+        for (Property property : mProperties) {
+            String key = property.mKeyConstant;
+            String name = property.mName;
+            String value;
+            switch (property.mKind) {
+                case STRING:
+                    value = property.mRequired ? "object.getString(" + key + ")" : "object.optString(" + key + ", null)";
+                    break;
+
+                case INTEGER:
+                    value = readScalar(property, "Integer", "getInt");
+                    break;
+
+                case LONG:
+                    value = readScalar(property, "Long", "getLong");
+                    break;
+
+                case BOOLEAN:
+                    value = readScalar(property, "Boolean", "getBoolean");
+                    break;
+
+                case DOUBLE:
+                    value = readScalar(property, "Double", "getDouble");
+                    break;
+
+                case UUID:
+                    value = "java.util.UUID.fromString(object.getString(" + key + "))";
+                    if (!property.mRequired) {
+                        value = "object.has(" + key + ") ? " + value + " : null";
+                    }
+                    break;
+
+                case STRING_LIST:
+                    value = JSON_UTILS + ".readStringArray(object, " + key + ")";
+                    break;
+
+                case STRING_MAP:
+                    value = JSON_UTILS + ".readMap(object, " + key + ")";
+                    break;
+
+                default:
+                    line(property.mTypeName + " " + name + " = null;");
+                    open("if (object.has(" + key + "))");
+                    line(name + " = new " + property.mTypeName + "();");
+                    if (property.mSerializer != null) {
+                        line(property.mSerializer + ".read(object.getJSONObject(" + key + "), " + name + ");");
+                    } else {
+                        line(name + ".read(object.getJSONObject(" + key + "));");
+                    }
+                    close();
+                    value = name;
+            }
+            line("model." + property.mSetter + "(" + value + ");");
+        }
+        close();
+    }
+
+    private static String readScalar(Property property, String boxedType, String getMethod) {
+        String value = boxedType + ".valueOf(object." + getMethod + "(" + property.mKeyConstant + "))";
+        if (!property.mRequired) {
+            value = "object.has(" + property.mKeyConstant + ") ? " + value + " : null";
+        }
+        return value;
+    }
+
+    private void generateWrite() {
+        line("");
+        open("static void write(org.json.JSONStringer writer, " + mModelName + " model) throws org.json.JSONException");
+        for (Property property : mProperties) {
+            String key = property.mKeyConstant;
+            String name = property.mName;
+            String getter = "model." + property.mGetter + "()";
+            switch (property.mKind) {
+                case STRING_LIST:
+                    line(JSON_UTILS + ".writeStringArray(writer, " + key + ", " + getter + ");");
+                    break;
+
+                case STRING_MAP:
+                    line(JSON_UTILS + ".writeMap(writer, " + key + ", " + getter + ");");
+                    break;
+
+                case MODEL:
+                    line(property.mTypeName + " " + name + " = " + getter + ";");
+                    open("if (" + name + " != null)");
+                    line("writer.key(" + key + ").object();");
+                    if (property.mSerializer != null) {
+                        line(property.mSerializer + ".write(writer, " + name + ");");
+                    } else {
+                        line(name + ".write(writer);");
+                    }
+                    line("writer.endObject();");
+                    close();
+                    break;
+
+                default:
+                    if (property.mRequired) {
+                        line("writer.key(" + key + ").value(" + getter + ");");
+                    } else {
+                        line(property.mTypeName + " " + name + " = " + getter + ";");
+                        open("if (" + name + " != null)");
+                        line("writer.key(" + key + ").value(" + name + ");");
+                        close();
+                    }
+            }
+        }
+        close();
+    }
+
+    private void generateEquals() {
+        line("");
+        open("static boolean equals(" + mModelName + " a, " + mModelName + " b)");
+        for (Property property : mProperties) {
+            String left = "a." + property.mGetter + "()";
+            String right = "b." + property.mGetter + "()";
+            open("if (" + left + " != null ? !" + left + ".equals(" + right + ") : " + right + " != null)");
+            line("return false;");
+            close();
+        }
+        line("return true;");
+        close();
+    }
+
+    private void generateHashCode() {
+        line("");
+        open("static int hashCode(int result, " + mModelName + " model)");
+        for (Property property : mProperties) {
+            String getter = "model." + property.mGetter + "()";
+            line("result = 31 * result + (" + getter + " != null ? " + getter + ".hashCode() : 0);");
+        }
+        line("return result;");
+        close();
+    }
+
+    private void open(String declaration) {
+        line(declaration + " {");
+        mIndent++;
+    }
+
+    private void close() {
+        mIndent--;
+        line("}");
+    }
+
+    private void line(String code) {
+        if (!code.isEmpty()) {
+            for (int i = 0; i < mIndent; i++) {
+                mCode.append(INDENT);
+            }
+            mCode.append(code);
+        }
+        mCode.append('\n');
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.processor;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JsonModelProcessorTest {
+
+    private static final String MODEL_HEADER = "package test;\n" +
+            "import com.microsoft.appcenter.processor.JsonModel;\n" +
+            "import com.microsoft.appcenter.processor.JsonProperty;\n" +
+            "import java.util.List;\n";
+
+    /**
+     * Generated sources by class name.
+     */
+    private final Map<String, ByteArrayOutputStream> mGenerated = new HashMap<>();
+
+    /**
+     * Run the processor only (generated code is not compiled as it depends on Android JSON classes).
+     */
+    private DiagnosticCollector<JavaFileObject> process(String className, final String source) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        StandardJavaFileManager standardFileManager = compiler.getStandardFileManager(diagnostics, null, null);
+        JavaFileManager fileManager = new ForwardingJavaFileManager<JavaFileManager>(standardFileManager) {
+
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, final String name, JavaFileObject.Kind kind, FileObject sibling) {
+                final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+                mGenerated.put(name, stream);
+                return new SimpleJavaFileObject(URI.create("mem:///" + name.replace('.', '/') + kind.extension), kind) {
+
+                    @Override
+                    public OutputStream openOutputStream() {
+                        return stream;
+                    }
+
+                    /* Generated sources are parsed again in the next processing round. */
+                    @Override
+                    public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
+                        return stream.toString("UTF-8");
+                    }
+                };
+            }
+        };
+        JavaFileObject model = new SimpleJavaFileObject(URI.create("mem:///test/" + className + ".java"), JavaFileObject.Kind.SOURCE) {
+
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        List<String> options = Arrays.asList("-proc:only", "-classpath", System.getProperty("java.class.path"));
+        JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, options, null, Collections.singletonList(model));
+        task.setProcessors(Collections.singletonList(new JsonModelProcessor()));
+        task.call();
+        return diagnostics;
+    }
+
+    private String getGenerated(String className) throws IOException {
+        ByteArrayOutputStream stream = mGenerated.get(className);
+        assertNotNull(stream);
+        return stream.toString("UTF-8");
+    }
+
+    /**
+     * Check processor errors, generated sources are ignored as org.json is not on the class path.
+     */
+    private static boolean hasError(DiagnosticCollector<JavaFileObject> diagnostics, String message) {
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            JavaFileObject source = diagnostic.getSource();
+            boolean generated = source != null && source.getName().endsWith(SerializerGenerator.SERIALIZER_SUFFIX + ".java");
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR && !generated && diagnostic.getMessage(null).contains(message)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void generateSerializer() throws IOException {
+        DiagnosticCollector<JavaFileObject> diagnostics = process("Sample", MODEL_HEADER +
+                "@JsonModel public class Sample {\n" +
+                "    @JsonProperty(\"userId\") private String mUserId;\n" +
+                "    @JsonProperty(value = \"seq\", required = true) private Long seq;\n" +
+                "    @JsonProperty(\"keys\") private List<String> keys;\n" +
+                "    private String ignored;\n" +
+                "    public String getUserId() { return mUserId; }\n" +
+                "    public void setUserId(String userId) { mUserId = userId; }\n" +
+                "    public Long getSeq() { return seq; }\n" +
+                "    public void setSeq(Long seq) { this.seq = seq; }\n" +
+                "    public List<String> getKeys() { return keys; }\n" +
+                "    public void setKeys(List<String> keys) { this.keys = keys; }\n" +
+                "}\n");
+        assertFalse(hasError(diagnostics, ""));
+        String code = getGenerated("test.SampleSerializer");
+
+        /* Keys. */
+        assertTrue(code.contains("private static final String USER_ID = \"userId\";"));
+        assertTrue(code.contains("private static final String SEQ = \"seq\";"));
+        assertTrue(code.contains("private static final String KEYS = \"keys\";"));
+        assertFalse(code.contains("ignored"));
+
+        /* Read. */
+        assertTrue(code.contains("static void read(org.json.JSONObject object, Sample model) throws org.json.JSONException {"));
+        assertTrue(code.contains("model.setUserId(object.optString(USER_ID, null));"));
+        assertTrue(code.contains("model.setSeq(Long.valueOf(object.getLong(SEQ)));"));
+        assertTrue(code.contains("model.setKeys(com.microsoft.appcenter.ingestion.models.json.JSONUtils.readStringArray(object, KEYS));"));
+
+        /* Write: optional properties are checked, required ones are not. */
+        assertTrue(code.contains("if (userId != null) {"));
+        assertTrue(code.contains("writer.key(SEQ).value(model.getSeq());"));
+        assertTrue(code.contains("JSONUtils.writeStringArray(writer, KEYS, model.getKeys());"));
+
+        /* Declaration order is kept. */
+        assertTrue(code.indexOf("model.setUserId(") < code.indexOf("model.setSeq("));
+        assertTrue(code.indexOf("model.setSeq(") < code.indexOf("model.setKeys("));
+
+        /* Equals and hash code. */
+        assertTrue(code.contains("static boolean equals(Sample a, Sample b) {"));
+        assertTrue(code.contains("static int hashCode(int result, Sample model) {"));
+    }
+
+    @Test
+    public void readDoesNotThrowWithOnlyOptionalStrings() throws IOException {
+        DiagnosticCollector<JavaFileObject> diagnostics = process("Simple", MODEL_HEADER +
+                "@JsonModel public class Simple {\n" +
+                "    @JsonProperty(\"name\") private String name;\n" +
+                "    public String getName() { return name; }\n" +
+                "    public void setName(String name) { this.name = name; }\n" +
+                "}\n");
+        assertFalse(hasError(diagnostics, ""));
+        assertTrue(getGenerated("test.SimpleSerializer").contains("static void read(org.json.JSONObject object, Simple model) {"));
+    }
+
+    @Test
+    public void missingSetter() {
+        DiagnosticCollector<JavaFileObject> diagnostics = process("NoSetter", MODEL_HEADER +
+                "@JsonModel public class NoSetter {\n" +
+                "    @JsonProperty(\"name\") private String name;\n" +
+                "    public String getName() { return name; }\n" +
+                "}\n");
+        assertTrue(hasError(diagnostics, "Missing non private setter 'setName'"));
+        assertNull(mGenerated.get("test.NoSetterSerializer"));
+    }
+
+    @Test
+    public void unsupportedType() {
+        DiagnosticCollector<JavaFileObject> diagnostics = process("Unsupported", MODEL_HEADER +
+                "@JsonModel public class Unsupported {\n" +
+                "    @JsonProperty(\"count\") private int count;\n" +
+                "    public int getCount() { return count; }\n" +
+                "    public void setCount(int count) { this.count = count; }\n" +
+                "}\n");
+        assertTrue(hasError(diagnostics, "Unsupported @JsonProperty type"));
+    }
+
+    @Test
+    public void requiredList() {
+        DiagnosticCollector<JavaFileObject> diagnostics = process("RequiredList", MODEL_HEADER +
+                "@JsonModel public class RequiredList {\n" +
+                "    @JsonProperty(value = \"keys\", required = true) private List<String> keys;\n" +
+                "    public List<String> getKeys() { return keys; }\n" +
+                "    public void setKeys(List<String> keys) { this.keys = keys; }\n" +
+                "}\n");
+        assertTrue(hasError(diagnostics, "Only scalar and string properties can be required."));
+    }
+
+    @Test
+    public void reservedName() {
+        DiagnosticCollector<JavaFileObject> diagnostics = process("Reserved", MODEL_HEADER +
+                "@JsonModel public class Reserved {\n" +
+                "    @JsonProperty(\"model\") private String model;\n" +
+                "    public String getModel() { return model; }\n" +
+                "    public void setModel(String model) { this.model = model; }\n" +
+                "}\n");
+        assertTrue(hasError(diagnostics, "is reserved"));
+    }
+
+    @Test
+    public void constantName() {
+        assertEquals("USER_ID", Property.toConstantName("userId"));
+        assertEquals("LIB_VER", Property.toConstantName("libVer"));
+        assertEquals("TZ", Property.toConstantName("tz"));
+    }
+}
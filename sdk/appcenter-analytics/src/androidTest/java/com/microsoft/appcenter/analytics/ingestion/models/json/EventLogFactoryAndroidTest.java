@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.analytics.ingestion.models.json;
+
+import com.microsoft.appcenter.analytics.ingestion.models.EventLog;
+import com.microsoft.appcenter.analytics.ingestion.models.one.CommonSchemaEventLog;
+import com.microsoft.appcenter.ingestion.models.Device;
+import com.microsoft.appcenter.ingestion.models.one.CommonSchemaDataUtils;
+import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
+import com.microsoft.appcenter.ingestion.models.one.PartAUtils;
+import com.microsoft.appcenter.ingestion.models.properties.LongTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class EventLogFactoryAndroidTest {
+
+    private static final int PROPERTIES = 20;
+
+    private static final int TARGETS = 5;
+
+    private static EventLog createEventLog() {
+        Device device = new Device();
+        device.setSdkName("appcenter.android");
+        device.setSdkVersion("1.0.0");
+        device.setModel("model");
+        device.setOemName("oemName");
+        device.setOsName("Android");
+        device.setOsVersion("9");
+        device.setOsBuild("ABC.123");
+        device.setOsApiLevel(28);
+        device.setLocale("en_US");
+        device.setTimeZoneOffset(60);
+        device.setAppVersion("1.0.0");
+        device.setAppNamespace("com.appcenter.test");
+        device.setCarrierName("carrierName");
+        EventLog log = new EventLog();
+        log.setName("test.event");
+        log.setTimestamp(new Date());
+        log.setDevice(device);
+        List<TypedProperty> properties = new ArrayList<>();
+        for (int i = 0; i < PROPERTIES; i++) {
+            if (i % 2 == 0) {
+                StringTypedProperty property = new StringTypedProperty();
+                property.setName("group" + i % 4 + ".string" + i);
+                property.setValue("value" + i);
+                properties.add(property);
+            } else {
+                LongTypedProperty property = new LongTypedProperty();
+                property.setName("group" + i % 4 + ".long" + i);
+                property.setValue(i);
+                properties.add(property);
+            }
+        }
+        log.setTypedProperties(properties);
+        for (int i = 0; i < TARGETS; i++) {
+            log.addTransmissionTarget("target" + i + "-token");
+        }
+        return log;
+    }
+
+    /**
+     * Convert each target independently, like before logs of other targets shared the first conversion.
+     */
+    private static Collection<CommonSchemaLog> convertPerTarget(EventLog log) {
+        Collection<CommonSchemaLog> commonSchemaLogs = new ArrayList<>();
+        for (String transmissionTarget : log.getTransmissionTargetTokens()) {
+            CommonSchemaEventLog commonSchemaEventLog = new CommonSchemaEventLog();
+            PartAUtils.setName(commonSchemaEventLog, log.getName());
+            PartAUtils.addPartAFromLog(log, commonSchemaEventLog, transmissionTarget);
+            CommonSchemaDataUtils.addCommonSchemaData(log.getTypedProperties(), commonSchemaEventLog);
+            commonSchemaLogs.add(commonSchemaEventLog);
+        }
+        return commonSchemaLogs;
+    }
+
+    @Test
+    public void sharedConversionMatchesPerTargetConversion() {
+        EventLog log = createEventLog();
+        List<CommonSchemaLog> expected = new ArrayList<>(convertPerTarget(log));
+        List<CommonSchemaLog> actual = new ArrayList<>(new EventLogFactory().toCommonSchemaLogs(log));
+        assertEquals(expected, actual);
+    }
+}
@@ -28,6 +28,7 @@ import com.microsoft.appcenter.analytics.ingestion.models.json.StartSessionLogFa
 import com.microsoft.appcenter.analytics.ingestion.models.one.CommonSchemaEventLog;
 import com.microsoft.appcenter.analytics.ingestion.models.one.json.CommonSchemaEventLogFactory;
 import com.microsoft.appcenter.channel.Channel;
+import com.microsoft.appcenter.channel.NetworkPolicy;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.json.LogFactory;
 import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
@@ -94,6 +95,12 @@ public class Analytics extends AbstractAppCenterService {
     @VisibleForTesting
     static final int MAXIMUM_TRANSMISSION_INTERVAL_IN_SECONDS = 24 * 60 * 60;
 
+    /**
+     * Time to live of stored events that are not critical, older events are deleted instead of being sent.
+     */
+    @VisibleForTesting
+    static final long LOG_TIME_TO_LIVE = TimeUnit.DAYS.toMillis(7);
+
     /**
      * Log factories managed by this service.
      */
@@ -894,6 +901,12 @@ public class Analytics extends AbstractAppCenterService {
     public synchronized void onStarted(@NonNull Context context, @NonNull Channel channel, String appSecret, String transmissionTargetToken, boolean startedFromApp) {
         mContext = context;
         mStartedFromApp = startedFromApp;
+
+        /* Wait for unmetered networks, critical events are still sent on any network. */
+        channel.setNetworkPolicy(ANALYTICS_GROUP, NetworkPolicy.UNMETERED);
+
+        /* Stale events are not worth sending when devices reconnect, critical events never expire. */
+        channel.setLogTimeToLive(ANALYTICS_GROUP, LOG_TIME_TO_LIVE);
         super.onStarted(context, channel, appSecret, transmissionTargetToken, startedFromApp);
         setDefaultTransmissionTarget(transmissionTargetToken);
     }
@@ -160,7 +160,7 @@ public class AuthenticationProvider {
         }
 
         /* Update shared cache. */
-        TicketCache.putTicket(mTicketKeyHash, mType.mTokenPrefix + token);
+        TicketCache.putTicket(mTicketKeyHash, mType.mTokenPrefix + token, expiryDate.getTime());
 
         /* Keep track of safe expiry time. */
         mExpiryDate = expiryDate;
@@ -26,20 +26,36 @@ public class EventLogFactory extends AbstractLogFactory {
     @Override
     public Collection<CommonSchemaLog> toCommonSchemaLogs(Log log) {
         Collection<CommonSchemaLog> commonSchemaLogs = new LinkedList<>();
+        EventLog eventLog = (EventLog) log;
+
+        /* The first target is converted from the log, other targets reuse its conversion. */
+        CommonSchemaEventLog firstLog = null;
         for (String transmissionTarget : log.getTransmissionTargetTokens()) {
 
             /* Part A common fields. */
             CommonSchemaEventLog commonSchemaEventLog = new CommonSchemaEventLog();
+            if (firstLog == null) {
+
+                /* Event name goes to Part A. */
+                PartAUtils.setName(commonSchemaEventLog, eventLog.getName());
+
+                /* Add common Part A fields. */
+                PartAUtils.addPartAFromLog(log, commonSchemaEventLog, transmissionTarget);
+
+                /* Part B, C and Part A metadata. */
+                CommonSchemaDataUtils.addCommonSchemaData(eventLog.getTypedProperties(), commonSchemaEventLog);
+                firstLog = commonSchemaEventLog;
+            } else {
 
-            /* Event name goes to Part A. */
-            EventLog eventLog = (EventLog) log;
-            PartAUtils.setName(commonSchemaEventLog, eventLog.getName());
+                /* Name is already validated. */
+                commonSchemaEventLog.setName(firstLog.getName());
 
-            /* Add common Part A fields. */
-            PartAUtils.addPartAFromLog(log, commonSchemaEventLog, transmissionTarget);
+                /* Copy Part A fields that can change per target, share the other ones. */
+                PartAUtils.addPartAFromCommonSchemaLog(firstLog, commonSchemaEventLog, transmissionTarget);
 
-            /* Part B, C and Part A metadata. */
-            CommonSchemaDataUtils.addCommonSchemaData(eventLog.getTypedProperties(), commonSchemaEventLog);
+                /* Share Part B, C and Part A metadata. */
+                CommonSchemaDataUtils.copyCommonSchemaData(firstLog, commonSchemaEventLog);
+            }
             commonSchemaLogs.add(commonSchemaEventLog);
 
             /* Copy tag. */
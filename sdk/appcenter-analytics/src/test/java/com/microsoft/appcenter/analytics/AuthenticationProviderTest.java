@@ -23,6 +23,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doNothing;
@@ -72,13 +73,13 @@ public class AuthenticationProviderTest {
         /* When callback parameters are invalid, don't update cache. */
         callback.getValue().onAuthenticationResult(null, new Date());
         verifyStatic(never());
-        TicketCache.putTicket(anyString(), anyString());
+        TicketCache.putTicket(anyString(), anyString(), anyLong());
 
         /* Ignore calling callback more than once, even if parameters are valid the second time. */
         long freshDate = System.currentTimeMillis() + 15 * 60 * 1000;
         callback.getValue().onAuthenticationResult("test", new Date(freshDate));
         verifyStatic(never());
-        TicketCache.putTicket(eq(authenticationProvider.getTicketKeyHash()), eq("p:test"));
+        TicketCache.putTicket(eq(authenticationProvider.getTicketKeyHash()), eq("p:test"), eq(freshDate));
     }
 
     @Test
@@ -95,13 +96,13 @@ public class AuthenticationProviderTest {
         /* When callback parameters are invalid, don't update cache. */
         callback.getValue().onAuthenticationResult("test", null);
         verifyStatic(never());
-        TicketCache.putTicket(anyString(), anyString());
+        TicketCache.putTicket(anyString(), anyString(), anyLong());
 
         /* Ignore calling callback more than once, even if parameters are valid the second time. */
         long freshDate = System.currentTimeMillis() + 15 * 60 * 1000;
         callback.getValue().onAuthenticationResult("test", new Date(freshDate));
         verifyStatic(never());
-        TicketCache.putTicket(eq(authenticationProvider.getTicketKeyHash()), eq("p:test"));
+        TicketCache.putTicket(eq(authenticationProvider.getTicketKeyHash()), eq("p:test"), eq(freshDate));
     }
 
     @Test
@@ -119,12 +120,12 @@ public class AuthenticationProviderTest {
         long freshDate = System.currentTimeMillis() + 15 * 60 * 1000;
         callback.getValue().onAuthenticationResult("test", new Date(freshDate));
         verifyStatic();
-        TicketCache.putTicket(eq(authenticationProvider.getTicketKeyHash()), eq("p:test"));
+        TicketCache.putTicket(eq(authenticationProvider.getTicketKeyHash()), eq("p:test"), eq(freshDate));
 
         /* Duplicate calls are ignored. */
         callback.getValue().onAuthenticationResult("test2", new Date(freshDate));
         verifyStatic(never());
-        TicketCache.putTicket(eq(authenticationProvider.getTicketKeyHash()), eq("p:test2"));
+        TicketCache.putTicket(eq(authenticationProvider.getTicketKeyHash()), eq("p:test2"), anyLong());
     }
 
     @Test
@@ -144,7 +145,7 @@ public class AuthenticationProviderTest {
         verify(tokenProvider).acquireToken(anyString(), callback.capture());
         callback.getValue().onAuthenticationResult("test", expiryDate);
         verifyStatic();
-        TicketCache.putTicket(eq(authenticationProvider.getTicketKeyHash()), eq("d:test"));
+        TicketCache.putTicket(eq(authenticationProvider.getTicketKeyHash()), eq("d:test"), anyLong());
 
         /* Then refresh does nothing. */
         reset(authenticationProvider);
@@ -172,7 +173,7 @@ public class AuthenticationProviderTest {
 
         /* Verify cache updated. */
         verifyStatic(times(2));
-        TicketCache.putTicket(eq(authenticationProvider.getTicketKeyHash()), eq("d:test"));
+        TicketCache.putTicket(eq(authenticationProvider.getTicketKeyHash()), eq("d:test"), anyLong());
 
         /* Now that called back, we can refresh again. */
         reset(authenticationProvider);
@@ -182,6 +183,6 @@ public class AuthenticationProviderTest {
         verify(tokenProvider).acquireToken(anyString(), callback.capture());
         callback.getValue().onAuthenticationResult("test", expiryDate);
         verifyStatic(times(3));
-        TicketCache.putTicket(eq(authenticationProvider.getTicketKeyHash()), eq("d:test"));
+        TicketCache.putTicket(eq(authenticationProvider.getTicketKeyHash()), eq("d:test"), anyLong());
     }
 }
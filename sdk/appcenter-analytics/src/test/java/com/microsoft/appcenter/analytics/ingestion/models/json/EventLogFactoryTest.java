@@ -7,6 +7,7 @@ package com.microsoft.appcenter.analytics.ingestion.models.json;
 
 import com.microsoft.appcenter.analytics.ingestion.models.EventLog;
 import com.microsoft.appcenter.analytics.ingestion.models.one.json.CommonSchemaEventLogFactory;
+import com.microsoft.appcenter.ingestion.models.Device;
 import com.microsoft.appcenter.ingestion.models.one.CommonSchemaDataUtils;
 import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
 import com.microsoft.appcenter.ingestion.models.one.PartAUtils;
@@ -20,17 +21,18 @@ import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
 import static org.mockito.Matchers.eq;
-import static org.mockito.Matchers.notNull;
 import static org.mockito.Matchers.same;
-import static org.mockito.Mockito.times;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 import static org.powermock.api.mockito.PowerMockito.verifyStatic;
 
@@ -95,25 +97,91 @@ public class EventLogFactoryTest {
         assertNotNull(convertedLogs);
         assertEquals(2, convertedLogs.size());
 
-        /* For each target. */
-        for (CommonSchemaLog commonSchemaLog : convertedLogs) {
-
-            /* Check name was added. */
-            verifyStatic();
-            PartAUtils.setName(same(commonSchemaLog), eq("test"));
+        /* Check name was added to the first log, then copied. */
+        List<CommonSchemaLog> logs = new ArrayList<>(convertedLogs);
+        verifyStatic();
+        PartAUtils.setName(same(logs.get(0)), eq("test"));
 
-            /* Check tag was added. */
+        /* Check tag was added for each target. */
+        for (CommonSchemaLog commonSchemaLog : convertedLogs) {
             assertSame(tag, commonSchemaLog.getTag());
         }
 
-        /* Check Part A was added with target tokens. */
+        /* Check Part A was added with target tokens: converted for the first target, copied for the next one. */
+        verifyStatic();
+        PartAUtils.addPartAFromLog(eq(log), same(logs.get(0)), eq("t1"));
+        verifyStatic();
+        PartAUtils.addPartAFromCommonSchemaLog(same(logs.get(0)), same(logs.get(1)), eq("t2"));
+
+        /* Check data was added with typed properties (and thus not old ones) only once, then shared. */
         verifyStatic();
-        PartAUtils.addPartAFromLog(eq(log), notNull(CommonSchemaLog.class), eq("t1"));
+        CommonSchemaDataUtils.addCommonSchemaData(eq(properties), same(logs.get(0)));
         verifyStatic();
-        PartAUtils.addPartAFromLog(eq(log), notNull(CommonSchemaLog.class), eq("t2"));
+        CommonSchemaDataUtils.copyCommonSchemaData(same(logs.get(0)), same(logs.get(1)));
+    }
+
+    @Test
+    public void convertEventWithMultipleTargetsSharesData() {
+
+        /* Create event log with properties and 3 targets. */
+        EventLog log = new EventLog();
+        log.setName("test");
+        log.setTimestamp(new Date());
+        log.setDevice(mockDevice());
+        List<TypedProperty> properties = new ArrayList<>();
+        StringTypedProperty stringTypedProperty = new StringTypedProperty();
+        stringTypedProperty.setName("a");
+        stringTypedProperty.setValue("b");
+        properties.add(stringTypedProperty);
+        log.setTypedProperties(properties);
+        log.addTransmissionTarget("t1-1");
+        log.addTransmissionTarget("t2-2");
+        log.addTransmissionTarget("t3-3");
+
+        /* When we convert logs. */
+        List<CommonSchemaLog> convertedLogs = new ArrayList<>(new EventLogFactory().toCommonSchemaLogs(log));
+        assertEquals(3, convertedLogs.size());
+        CommonSchemaLog first = convertedLogs.get(0);
+        for (int i = 1; i < convertedLogs.size(); i++) {
+            CommonSchemaLog other = convertedLogs.get(i);
+
+            /* Name and target specific fields. */
+            assertEquals("test", other.getName());
+            assertEquals("o:t" + (i + 1), other.getIKey());
+            assertEquals(Collections.singleton("t" + (i + 1) + "-" + (i + 1)), other.getTransmissionTargetTokens());
+
+            /* Immutable parts are shared. */
+            assertSame(first.getData(), other.getData());
+            assertSame(first.getExt().getOs(), other.getExt().getOs());
+            assertSame(first.getExt().getNet(), other.getExt().getNet());
+            assertSame(first.getExt().getLoc(), other.getExt().getLoc());
+
+            /* Extensions updated per target or per log are not. */
+            assertNotSame(first.getExt(), other.getExt());
+            assertNotSame(first.getExt().getProtocol(), other.getExt().getProtocol());
+            assertNotSame(first.getExt().getUser(), other.getExt().getUser());
+            assertNotSame(first.getExt().getApp(), other.getExt().getApp());
+            assertNotSame(first.getExt().getSdk(), other.getExt().getSdk());
+            assertNotSame(first.getExt().getDevice(), other.getExt().getDevice());
+            assertEquals(first.getExt().getApp(), other.getExt().getApp());
+            assertEquals(first.getExt().getSdk(), other.getExt().getSdk());
+        }
+    }
 
-        /* Check data was added with typed properties (and thus not old ones). */
-        verifyStatic(times(2));
-        CommonSchemaDataUtils.addCommonSchemaData(eq(properties), notNull(CommonSchemaLog.class));
+    private static Device mockDevice() {
+        Device device = new Device();
+        device.setSdkName("appcenter.android");
+        device.setSdkVersion("1.0.0");
+        device.setModel("model");
+        device.setOemName("oem");
+        device.setOsName("Android");
+        device.setOsVersion("9");
+        device.setOsBuild("build");
+        device.setOsApiLevel(28);
+        device.setLocale("en_US");
+        device.setTimeZoneOffset(60);
+        device.setAppVersion("1.0");
+        device.setAppNamespace("com.example");
+        return device;
     }
 }
@@ -7,6 +7,7 @@ package com.microsoft.appcenter.crashes;
 
 import android.annotation.SuppressLint;
 import android.app.Application;
+import android.os.SystemClock;
 import android.support.test.InstrumentationRegistry;
 
 import com.microsoft.appcenter.AppCenter;
@@ -14,6 +15,7 @@ import com.microsoft.appcenter.AppCenterPrivateHelper;
 import com.microsoft.appcenter.Constants;
 import com.microsoft.appcenter.channel.Channel;
 import com.microsoft.appcenter.crashes.ingestion.models.ErrorAttachmentLog;
+import com.microsoft.appcenter.crashes.ingestion.models.HandledErrorLog;
 import com.microsoft.appcenter.crashes.ingestion.models.ManagedErrorLog;
 import com.microsoft.appcenter.crashes.model.ErrorReport;
 import com.microsoft.appcenter.crashes.utils.ErrorLogHelper;
@@ -43,6 +45,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.UUID;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import static com.microsoft.appcenter.Flags.CRITICAL;
 import static com.microsoft.appcenter.Flags.DEFAULTS;
@@ -60,6 +63,7 @@ import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isA;
 import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -84,6 +88,9 @@ public class CrashesAndroidTest {
 
     private static Thread.UncaughtExceptionHandler sDefaultCrashHandler;
 
+    /* Maximum time to save a crash, including while the App Center handler is busy. */
+    private static final long CRASH_SAVE_LATENCY_BUDGET = 500;
+
     private Channel mChannel;
 
     /* Filter out the minidump folder. */
@@ -91,7 +98,7 @@ public class CrashesAndroidTest {
 
         @Override
         public boolean accept(File file) {
-            return !file.isDirectory();
+            return !file.isDirectory() && !file.getName().equals(ErrorLogHelper.INDEX_FILE);
         }
     };
 
@@ -571,6 +578,37 @@ public class CrashesAndroidTest {
         assertEquals(2, files.length);
     }
 
+    @Test
+    public void saveCrashWhileHandlerIsBlocked() throws Exception {
+        startFresh(null);
+
+        /* Block the App Center handler thread while it sends a handled error. */
+        final Semaphore blocked = new Semaphore(0);
+        final Semaphore unblock = new Semaphore(0);
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                blocked.release();
+                unblock.tryAcquire(10, TimeUnit.SECONDS);
+                return null;
+            }
+        }).when(mChannel).enqueue(isA(HandledErrorLog.class), anyString(), anyInt());
+        Crashes.trackError(new RuntimeException());
+        blocked.acquire();
+
+        /* Saving the crash must not wait for the handler. */
+        try {
+            long startTime = SystemClock.elapsedRealtime();
+            Crashes.getInstance().saveUncaughtException(Thread.currentThread(), new RuntimeException());
+            long latency = SystemClock.elapsedRealtime() - startTime;
+            assertTrue("Crash saving took " + latency + "ms", latency < CRASH_SAVE_LATENCY_BUDGET);
+            assertEquals(1, ErrorLogHelper.getStoredCrashRecordFiles().length);
+        } finally {
+            unblock.release();
+        }
+    }
+
     @Test
     public void getMinidumpSubfolder() {
         File newMinidumpSubfolder = ErrorLogHelper.getNewMinidumpSubfolder();
@@ -50,6 +50,7 @@ public class WrapperSdkExceptionManagerAndroidTest {
     public void setUp() {
         android.util.Log.i(TAG, "Cleanup");
         SharedPreferencesManager.clear();
+        WrapperSdkExceptionManager.closeDataStore();
         File[] files = ErrorLogHelper.getErrorStorageDirectory().listFiles();
         assertNotNull(files);
         for (File logFile : files) {
@@ -131,8 +132,9 @@ public class WrapperSdkExceptionManagerAndroidTest {
         assertNotNull(loadedDataD);
         assertEquals(errorD.data, loadedDataD);
 
-        /* Try to load data bypassing the cache. */
+        /* Try to load data bypassing the cache and reading the store file again. */
         WrapperSdkExceptionManager.sWrapperExceptionDataContainer.clear();
+        WrapperSdkExceptionManager.closeDataStore();
         String loadedDataC = WrapperSdkExceptionManager.loadWrapperExceptionData(errorC.id);
         assertNotNull(loadedDataC);
         assertEquals(errorC.data, loadedDataC);
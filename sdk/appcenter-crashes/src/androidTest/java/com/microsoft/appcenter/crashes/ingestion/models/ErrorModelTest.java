@@ -28,6 +28,8 @@ import static com.microsoft.appcenter.test.TestUtils.checkNotEquals;
 import static com.microsoft.appcenter.test.TestUtils.compareSelfNullClass;
 import static java.util.Collections.singletonList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 
 @SuppressWarnings("unused")
@@ -630,6 +632,23 @@ public class ErrorModelTest {
         }
     }
 
+    @Test
+    public void errorAttachmentLogWithoutData() throws Exception {
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(ErrorAttachmentLog.TYPE, ErrorAttachmentLogFactory.getInstance());
+        ErrorAttachmentLog log = ErrorAttachmentLog.attachmentWithBinary(null, "hello.txt", "text/plain");
+        log.setTimestamp(new Date());
+        log.setId(UUID.randomUUID());
+        log.setErrorId(UUID.randomUUID());
+
+        /* Persistence stores the data raw on its own, the log is serialized without it. */
+        String payload = serializer.serializeLog(log);
+        assertFalse(new JSONObject(payload).has(DATA));
+        ErrorAttachmentLog deserializedLog = (ErrorAttachmentLog) serializer.deserializeLog(payload, null);
+        assertNull(deserializedLog.getData());
+        checkEquals(log, deserializedLog);
+    }
+
     private static class MockErrorLog extends AbstractErrorLog {
 
         @Override
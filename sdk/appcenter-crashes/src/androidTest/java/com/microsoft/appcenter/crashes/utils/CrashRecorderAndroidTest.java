@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.crashes.utils;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+
+import com.microsoft.appcenter.crashes.ingestion.models.ManagedErrorLog;
+import com.microsoft.appcenter.utils.DeviceInfoHelper;
+import com.microsoft.appcenter.utils.storage.FileManager;
+
+import org.json.JSONException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("unused")
+public class CrashRecorderAndroidTest {
+
+    private static Context sContext;
+
+    private File mDirectory;
+
+    @BeforeClass
+    public static void setUpClass() {
+        sContext = InstrumentationRegistry.getTargetContext();
+    }
+
+    @Before
+    public void setUp() {
+        mDirectory = new File(sContext.getCacheDir(), "crash-records");
+        FileManager.mkdir(mDirectory.getAbsolutePath());
+    }
+
+    @After
+    public void tearDown() {
+        FileManager.deleteDirectory(mDirectory);
+    }
+
+    private String writeRecord(Throwable throwable, Map<Thread, StackTraceElement[]> allStackTraces) throws Exception {
+        CrashRecorder crashRecorder = new CrashRecorder(sContext, DeviceInfoHelper.getDeviceInfo(sContext), 1000);
+        UUID id = crashRecorder.write(mDirectory, Thread.currentThread(), throwable, allStackTraces);
+        File file = new File(mDirectory, id + ErrorLogHelper.CRASH_RECORD_FILE_EXTENSION);
+        assertTrue(file.exists());
+        String record = FileManager.read(file);
+        assertNotNull(record);
+        return record;
+    }
+
+    @Test
+    public void readSameErrorLogAsSerializer() throws Exception {
+        Throwable throwable = new IllegalStateException("tab\there\nnew line \\0 backslash", new RuntimeException());
+        Map<Thread, StackTraceElement[]> allStackTraces = Thread.getAllStackTraces();
+        ManagedErrorLog errorLog = CrashRecorder.readErrorLog(writeRecord(throwable, allStackTraces));
+
+        /* Compare with the error log built at crash time without a record. */
+        ManagedErrorLog expected = ErrorLogHelper.createErrorLog(sContext, Thread.currentThread(), throwable, allStackTraces, 1000);
+        expected.setId(errorLog.getId());
+        expected.setTimestamp(errorLog.getTimestamp());
+        assertEquals(expected, errorLog);
+        assertEquals("tab\there\nnew line \\0 backslash", errorLog.getException().getMessage());
+        assertNull(errorLog.getException().getInnerExceptions().get(0).getMessage());
+    }
+
+    @Test
+    public void readTruncatedRecord() throws Exception {
+        String record = writeRecord(new RuntimeException("message"), Thread.getAllStackTraces());
+
+        /* Keep what was written before a truncated thread. */
+        String truncated = record.substring(0, record.indexOf("\nh\t") + 3);
+        ManagedErrorLog errorLog = CrashRecorder.readErrorLog(truncated);
+        assertEquals("message", errorLog.getException().getMessage());
+        assertEquals(0, errorLog.getThreads().size());
+
+        /* Exception is required. */
+        try {
+            CrashRecorder.readErrorLog(record.substring(0, record.indexOf("\ne\t")));
+            throw new AssertionError("Expected JSONException");
+        } catch (JSONException ignore) {
+        }
+    }
+
+    @Test(expected = JSONException.class)
+    public void readUnsupportedVersion() throws Exception {
+        CrashRecorder.readErrorLog("v\t0\n");
+    }
+}
@@ -8,6 +8,7 @@ package com.microsoft.appcenter.crashes.utils;
 import android.support.test.InstrumentationRegistry;
 
 import com.microsoft.appcenter.Constants;
+import com.microsoft.appcenter.crashes.ingestion.models.ManagedErrorLog;
 import com.microsoft.appcenter.ingestion.models.Device;
 import com.microsoft.appcenter.utils.storage.FileManager;
 
@@ -17,8 +18,10 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.io.File;
+import java.util.Date;
 import java.util.UUID;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -155,6 +158,64 @@ public class ErrorLogHelperAndroidTest {
             FileManager.delete(testFiles[i]);
     }
 
+    @Test
+    public void lastErrorLogFromIndex() throws Exception {
+        File[] files = new File[3];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = new File(mErrorDirectory, new UUID(0, i).toString() + ErrorLogHelper.ERROR_LOG_FILE_EXTENSION);
+            FileManager.write(files[i], "contents");
+        }
+
+        /* Crash times are used instead of file times, handled errors are ignored. */
+        ErrorLogHelper.addToIndex(createErrorLog(0, 3000, true), 8);
+        ErrorLogHelper.addToIndex(createErrorLog(1, 1000, true), 8);
+        ErrorLogHelper.addToIndex(createErrorLog(2, 5000, false), 8);
+        assertEquals(files[0], ErrorLogHelper.getLastErrorLogFile());
+
+        /* Error logs saved on the crashing thread are not indexed, a more recent one is used. */
+        File crashFile = new File(mErrorDirectory, new UUID(0, 3).toString() + ErrorLogHelper.ERROR_LOG_FILE_EXTENSION);
+        FileManager.write(crashFile, "contents");
+        assertEquals(crashFile, ErrorLogHelper.getLastErrorLogFile());
+        ErrorLogHelper.removeStoredErrorLogFile(new UUID(0, 3));
+
+        /* Removed error logs are removed from index when reading it. */
+        ErrorLogHelper.removeStoredErrorLogFile(new UUID(0, 0));
+        assertEquals(files[1], ErrorLogHelper.getLastErrorLogFile());
+        ErrorLogHelper.removeStoredErrorLogFile(new UUID(0, 1));
+        ErrorLogHelper.removeStoredErrorLogFile(new UUID(0, 2));
+        assertTrue(new File(mErrorDirectory, ErrorLogHelper.INDEX_FILE).exists());
+        assertNull(ErrorLogHelper.getLastErrorLogFile());
+        assertFalse(new File(mErrorDirectory, ErrorLogHelper.INDEX_FILE).exists());
+    }
+
+    @Test
+    public void readPendingMinidump() throws Exception {
+        File minidumpFile = new File(mErrorDirectory, "minidump.dmp");
+        FileManager.write(minidumpFile, "contents");
+        assertArrayEquals("contents".getBytes(), ErrorLogHelper.readPendingMinidump(minidumpFile));
+
+        /* Compressed copy is read once available. */
+        File compressedFile = ErrorLogHelper.getCompressedMinidumpFile(minidumpFile);
+        FileManager.compress(minidumpFile, compressedFile);
+        assertTrue(minidumpFile.delete());
+        assertArrayEquals("contents".getBytes(), ErrorLogHelper.readPendingMinidump(minidumpFile));
+
+        /* Both are deleted. */
+        FileManager.write(minidumpFile, "contents");
+        ErrorLogHelper.deletePendingMinidump(minidumpFile);
+        assertFalse(minidumpFile.exists());
+        assertFalse(compressedFile.exists());
+        assertNull(ErrorLogHelper.readPendingMinidump(minidumpFile));
+    }
+
+    private static ManagedErrorLog createErrorLog(long id, long timestamp, boolean fatal) {
+        ManagedErrorLog errorLog = new ManagedErrorLog();
+        errorLog.setId(new UUID(0, id));
+        errorLog.setTimestamp(new Date(timestamp));
+        errorLog.setFatal(fatal);
+        return errorLog;
+    }
+
     @Test
     public void parseDevice() {
         String deviceInfoString = "{\"sdkName\":\"appcenter.android\",\"sdkVersion\":\"2.5.4.2\",\"model\":\"Android SDK built for x86\",\"oemName\":\"Google\",\"osName\":\"Android\",\"osVersion\":\"9\",\"osBuild\":\"PSR1.180720.075\",\"osApiLevel\":28,\"locale\":\"en_US\",\"timeZoneOffset\":240,\"screenSize\":\"1080x1794\",\"appVersion\":\"2.5.4.2\",\"carrierName\":\"Android\",\"carrierCountry\":\"us\",\"appBuild\":\"59\",\"appNamespace\":\"com.microsoft.appcenter.sasquatch.project\"}";
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.crashes;
+
+import android.os.AsyncTask;
+import android.support.annotation.NonNull;
+
+import com.microsoft.appcenter.crashes.utils.ErrorLogHelper;
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.storage.FileManager;
+
+import java.io.File;
+import java.io.IOException;
+
+import static com.microsoft.appcenter.crashes.Crashes.LOG_TAG;
+
+/**
+ * Compresses a pending minidump and replaces it with the compressed file.
+ */
+class CompressMinidumpTask extends AsyncTask<Void, Void, Void> {
+
+    /**
+     * Temporary file extension while compressing.
+     */
+    private static final String TEMP_FILE_EXTENSION = ".tmp";
+
+    /**
+     * Minidump file in the pending directory.
+     */
+    private final File mMinidumpFile;
+
+    CompressMinidumpTask(@NonNull File minidumpFile) {
+        mMinidumpFile = minidumpFile;
+    }
+
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    @Override
+    protected Void doInBackground(Void... params) {
+        File compressedFile = ErrorLogHelper.getCompressedMinidumpFile(mMinidumpFile);
+        File tempFile = new File(compressedFile.getPath() + TEMP_FILE_EXTENSION);
+        try {
+            FileManager.compress(mMinidumpFile, tempFile);
+            if (!tempFile.renameTo(compressedFile)) {
+                throw new IOException("Failed to move file");
+            }
+
+            /* If the minidump was sent and deleted in the meantime, so must be its compressed copy. */
+            if (!mMinidumpFile.delete()) {
+                compressedFile.delete();
+            }
+        } catch (IOException e) {
+            AppCenterLog.warn(LOG_TAG, "Failed to compress minidump file: " + mMinidumpFile, e);
+            tempFile.delete();
+        }
+        return null;
+    }
+}
@@ -6,6 +6,7 @@
 package com.microsoft.appcenter.crashes;
 
 import android.annotation.SuppressLint;
+import android.app.Activity;
 import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.res.Configuration;
@@ -17,7 +18,9 @@ import android.support.annotation.WorkerThread;
 import com.microsoft.appcenter.AbstractAppCenterService;
 import com.microsoft.appcenter.Constants;
 import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.channel.AbstractChannelListener;
 import com.microsoft.appcenter.channel.Channel;
+import com.microsoft.appcenter.channel.NetworkPolicy;
 import com.microsoft.appcenter.crashes.ingestion.models.ErrorAttachmentLog;
 import com.microsoft.appcenter.crashes.ingestion.models.Exception;
 import com.microsoft.appcenter.crashes.ingestion.models.HandledErrorLog;
@@ -28,13 +31,16 @@ import com.microsoft.appcenter.crashes.ingestion.models.json.ManagedErrorLogFact
 import com.microsoft.appcenter.crashes.model.ErrorReport;
 import com.microsoft.appcenter.crashes.model.NativeException;
 import com.microsoft.appcenter.crashes.model.TestCrashException;
+import com.microsoft.appcenter.crashes.utils.CrashRecorder;
 import com.microsoft.appcenter.crashes.utils.ErrorLogHelper;
+import com.microsoft.appcenter.crashes.utils.HandledErrorAggregator;
 import com.microsoft.appcenter.ingestion.models.Device;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
 import com.microsoft.appcenter.ingestion.models.json.LogFactory;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.AsyncTaskUtils;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
 import com.microsoft.appcenter.utils.HandlerUtils;
 import com.microsoft.appcenter.utils.async.AppCenterFuture;
@@ -56,9 +62,18 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import static android.content.ComponentCallbacks2.TRIM_MEMORY_COMPLETE;
 import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL;
@@ -106,6 +121,12 @@ public class Crashes extends AbstractAppCenterService {
     @VisibleForTesting
     static final String ERROR_GROUP = "groupErrors";
 
+    /**
+     * Group for sending attachments, separate from crashes as attachments wait for Wi-Fi.
+     */
+    @VisibleForTesting
+    static final String ERROR_ATTACHMENT_GROUP = "groupErrorAttachments";
+
     /**
      * Name of the service.
      */
@@ -116,6 +137,28 @@ public class Crashes extends AbstractAppCenterService {
      */
     public static final String LOG_TAG = AppCenterLog.LOG_TAG + SERVICE_NAME;
 
+    /**
+     * Minimum number of pending error logs to parse them in parallel.
+     */
+    @VisibleForTesting
+    static final int PARALLEL_PARSING_THRESHOLD = 4;
+
+    /**
+     * Maximum number of threads used to parse pending error logs.
+     */
+    private static final int MAX_PARSING_THREADS = 4;
+
+    /**
+     * Estimated memory size in bytes above which cached error reports are evicted, least recently used first.
+     */
+    @VisibleForTesting
+    static final long MAX_ERROR_REPORT_CACHE_SIZE = 1024 * 1024;
+
+    /**
+     * Estimated memory size in bytes of a stack frame in a cached error log.
+     */
+    private static final int STACK_FRAME_SIZE_ESTIMATE = 256;
+
     /**
      * Maximum size for attachment data in bytes.
      */
@@ -138,15 +181,20 @@ public class Crashes extends AbstractAppCenterService {
     private final Map<String, LogFactory> mFactories;
 
     /**
-     * Crash reports not processed yet.
+     * Identifiers of crash reports not processed yet, reports are read again from storage if evicted from cache.
      */
-    private final Map<UUID, ErrorLogReport> mUnprocessedErrorReports;
+    private final Set<UUID> mUnprocessedErrorReports;
 
     /**
-     * Cache for reports that are queued to channel but not yet sent.
+     * Cache for reports that are not yet processed or queued to channel but not yet sent, in access order.
      */
     private final Map<UUID, ErrorLogReport> mErrorReportCache;
 
+    /**
+     * Estimated memory size in bytes of {@link #mErrorReportCache}.
+     */
+    private long mErrorReportCacheSize;
+
     /**
      * Log serializer.
      */
@@ -172,6 +220,11 @@ public class Crashes extends AbstractAppCenterService {
      */
     private UncaughtExceptionHandler mUncaughtExceptionHandler;
 
+    /**
+     * Writes uncaught exceptions without serializing them, null when disabled.
+     */
+    private CrashRecorder mCrashRecorder;
+
     /**
      * Custom crashes listener.
      */
@@ -192,6 +245,60 @@ public class Crashes extends AbstractAppCenterService {
      */
     private boolean mSavedUncaughtException;
 
+    /**
+     * Mirror of the enabled state, readable from the crashing thread without waiting for the App Center handler.
+     */
+    private volatile boolean mEnabled;
+
+    /**
+     * Rate limits repeated handled errors.
+     */
+    private final HandledErrorAggregator mHandledErrorAggregator = new HandledErrorAggregator();
+
+    /**
+     * Sends aggregated handled errors.
+     */
+    private final Runnable mFlushHandledErrorsRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+            post(new Runnable() {
+
+                @Override
+                public void run() {
+                    flushHandledErrors();
+                }
+            });
+        }
+    };
+
+    /**
+     * Sends aggregated handled errors first when the channel flushes on crash.
+     */
+    private final Channel.Listener mCrashFlushListener = new AbstractChannelListener() {
+
+        @Override
+        public void onCrashFlush() {
+
+            /* Called on the App Center thread: don't wait for the Crashes lock. */
+            if (mHandledErrorAggregationEnabled) {
+                for (HandledErrorLog errorLog : mHandledErrorAggregator.flush(System.currentTimeMillis())) {
+                    mChannel.enqueue(errorLog, ERROR_GROUP, Flags.DEFAULTS);
+                }
+            }
+        }
+    };
+
+    /**
+     * Flag to remember whether aggregated handled errors are scheduled to be sent.
+     */
+    private boolean mHandledErrorFlushScheduled;
+
+    /**
+     * Whether repeated handled errors are aggregated, disabled by default.
+     */
+    private volatile boolean mHandledErrorAggregationEnabled;
+
     /**
      * Automatic processing flag (automatic is the default).
      */
@@ -214,8 +321,8 @@ public class Crashes extends AbstractAppCenterService {
         mLogSerializer.addLogFactory(ManagedErrorLog.TYPE, ManagedErrorLogFactory.getInstance());
         mLogSerializer.addLogFactory(ErrorAttachmentLog.TYPE, ErrorAttachmentLogFactory.getInstance());
         mCrashesListener = DEFAULT_ERROR_REPORTING_LISTENER;
-        mUnprocessedErrorReports = new LinkedHashMap<>();
-        mErrorReportCache = new LinkedHashMap<>();
+        mUnprocessedErrorReports = new LinkedHashSet<>();
+        mErrorReportCache = new LinkedHashMap<>(16, 0.75f, true);
     }
 
     @NonNull
@@ -299,6 +406,20 @@ public class Crashes extends AbstractAppCenterService {
         getInstance().setInstanceListener(listener);
     }
 
+    /**
+     * Enable or disable aggregation of repeated handled errors, disabled by default.
+     * <p>
+     * When enabled, handled errors with the same exception types and top frames are sent up to 10 at once
+     * and then 10 per minute. Other occurrences are sent about once a minute as a single error with
+     * an {@code occurrenceCount} property, and when the application is paused or crashes.
+     * The identifier of an aggregated occurrence is never sent and its attachments are dropped.
+     *
+     * @param enabled true to aggregate repeated handled errors, false to send every handled error.
+     */
+    public static void setHandledErrorAggregationEnabled(boolean enabled) {
+        getInstance().setInstanceHandledErrorAggregationEnabled(enabled);
+    }
+
     /**
      * Get the path where NDK minidump files should be created.
      * <p>
@@ -414,6 +535,7 @@ public class Crashes extends AbstractAppCenterService {
 
     @Override
     protected synchronized void applyEnabledState(boolean enabled) {
+        mEnabled = enabled;
         initialize();
         if (enabled) {
             mMemoryWarningListener = new ComponentCallbacks2() {
@@ -433,9 +555,22 @@ public class Crashes extends AbstractAppCenterService {
                 }
             };
             mContext.registerComponentCallbacks(mMemoryWarningListener);
+            mChannel.addGroup(ERROR_ATTACHMENT_GROUP, getTriggerCount(), getTriggerInterval(), getTriggerMaxParallelRequests(), null, getChannelListener());
+            mChannel.addListener(mCrashFlushListener);
         } else {
+            mChannel.removeListener(mCrashFlushListener);
+            mChannel.clear(ERROR_ATTACHMENT_GROUP);
+            mChannel.removeGroup(ERROR_ATTACHMENT_GROUP);
+
+            /* Forget aggregated handled errors. */
+            mHandledErrorAggregator.clear();
+            if (mHandledErrorFlushScheduled) {
+                HandlerUtils.getMainHandler().removeCallbacks(mFlushHandledErrorsRunnable);
+                mHandledErrorFlushScheduled = false;
+            }
 
             /* Delete all files. */
+            WrapperSdkExceptionManager.closeDataStore();
             File[] files = ErrorLogHelper.getErrorStorageDirectory().listFiles();
             if (files != null) {
                 for (File file : files) {
@@ -448,7 +583,7 @@ public class Crashes extends AbstractAppCenterService {
             AppCenterLog.info(LOG_TAG, "Deleted crashes local files");
 
             /* Delete cache and in memory last session report. */
-            mErrorReportCache.clear();
+            clearErrorReportCache();
             mLastSessionErrorReport = null;
             mContext.unregisterComponentCallbacks(mMemoryWarningListener);
             mMemoryWarningListener = null;
@@ -456,6 +591,13 @@ public class Crashes extends AbstractAppCenterService {
         }
     }
 
+    @Override
+    public synchronized void onActivityPaused(Activity activity) {
+
+        /* The application might not come back before the process is killed. */
+        flushHandledErrorsNow();
+    }
+
     @Override
     public synchronized void onStarted(@NonNull Context context, @NonNull Channel channel, String appSecret, String transmissionTargetToken, boolean startedFromApp) {
         mContext = context;
@@ -469,6 +611,7 @@ public class Crashes extends AbstractAppCenterService {
             ErrorLogHelper.removeMinidumpFolder();
             AppCenterLog.debug(LOG_TAG, "Clean up minidump folder.");
         }
+        channel.setNetworkPolicy(ERROR_ATTACHMENT_GROUP, NetworkPolicy.WIFI);
         super.onStarted(context, channel, appSecret, transmissionTargetToken, startedFromApp);
         if (isInstanceEnabled()) {
             processPendingErrors();
@@ -646,6 +789,7 @@ public class Crashes extends AbstractAppCenterService {
         final String userId = UserIdContext.getInstance().getUserId();
         final UUID errorId = UUID.randomUUID();
         final Map<String, String> validatedProperties = ErrorLogHelper.validateProperties(properties, "HandledError");
+        final boolean aggregationEnabled = mHandledErrorAggregationEnabled;
         post(new Runnable() {
 
             @Override
@@ -657,6 +801,14 @@ public class Crashes extends AbstractAppCenterService {
                 errorLog.setUserId(userId);
                 errorLog.setException(exceptionModelBuilder.buildExceptionModel());
                 errorLog.setProperties(validatedProperties);
+
+                /* Aggregate repeated errors instead of sending them all if enabled. */
+                if (aggregationEnabled && !mHandledErrorAggregator.add(errorLog, System.currentTimeMillis())) {
+                    AppCenterLog.debug(LOG_TAG, "Handled error " + errorId + " is aggregated with previous occurrences, " +
+                            "its identifier will not be sent and its attachments are dropped.");
+                    scheduleHandledErrorsFlush();
+                    return;
+                }
                 mChannel.enqueue(errorLog, ERROR_GROUP, Flags.DEFAULTS);
 
                 /* Then attachments if any. */
@@ -666,6 +818,36 @@ public class Crashes extends AbstractAppCenterService {
         return errorId;
     }
 
+    /**
+     * Schedule sending aggregated handled errors if not already scheduled.
+     */
+    private synchronized void scheduleHandledErrorsFlush() {
+        if (!mHandledErrorFlushScheduled) {
+            mHandledErrorFlushScheduled = true;
+            HandlerUtils.getMainHandler().postDelayed(mFlushHandledErrorsRunnable, HandledErrorAggregator.FLUSH_INTERVAL);
+        }
+    }
+
+    /**
+     * Send aggregated handled errors without waiting for the scheduled flush.
+     */
+    private synchronized void flushHandledErrorsNow() {
+        if (mHandledErrorFlushScheduled) {
+            HandlerUtils.getMainHandler().removeCallbacks(mFlushHandledErrorsRunnable);
+            mFlushHandledErrorsRunnable.run();
+        }
+    }
+
+    /**
+     * Send aggregated handled errors.
+     */
+    private synchronized void flushHandledErrors() {
+        mHandledErrorFlushScheduled = false;
+        for (HandledErrorLog errorLog : mHandledErrorAggregator.flush(System.currentTimeMillis())) {
+            mChannel.enqueue(errorLog, ERROR_GROUP, Flags.DEFAULTS);
+        }
+    }
+
     private void initialize() {
         boolean enabled = isInstanceEnabled();
         mInitializeTimestamp = enabled ? System.currentTimeMillis() : -1;
@@ -674,17 +856,62 @@ public class Crashes extends AbstractAppCenterService {
                 mUncaughtExceptionHandler.unregister();
                 mUncaughtExceptionHandler = null;
             }
+            mCrashRecorder = null;
         } else {
 
+            /* Capture what the crash records need before any crash can happen. */
+            Device device = null;
+            try {
+                device = getDeviceInfo(mContext);
+            } catch (DeviceInfoHelper.DeviceInfoException e) {
+                AppCenterLog.error(LOG_TAG, "Could not attach device properties snapshot to crash records, will attach at sending time", e);
+            }
+            mCrashRecorder = new CrashRecorder(mContext, device, mInitializeTimestamp);
+
             /* Register Java crash handler. */
             mUncaughtExceptionHandler = new UncaughtExceptionHandler();
             mUncaughtExceptionHandler.register();
 
+            /* Convert crash records of the previous session. */
+            processCrashRecords();
+
             /* Process minidump files. */
             processMinidumpFiles();
         }
     }
 
+    /**
+     * Convert the crash records saved by {@link CrashRecorder} to error log files.
+     */
+    private void processCrashRecords() {
+        for (File recordFile : ErrorLogHelper.getStoredCrashRecordFiles()) {
+            AppCenterLog.debug(LOG_TAG, "Converting crash record " + recordFile.getName());
+            String record = FileManager.read(recordFile);
+            if (record != null) {
+                try {
+                    ManagedErrorLog errorLog = CrashRecorder.readErrorLog(record);
+                    File errorLogFile = new File(recordFile.getParentFile(), errorLog.getId() + ErrorLogHelper.ERROR_LOG_FILE_EXTENSION);
+                    String errorLogString = mLogSerializer.serializeLog(errorLog);
+                    FileManager.write(errorLogFile, errorLogString);
+                    ErrorLogHelper.addToIndex(errorLog, errorLogString.length());
+
+                    /* Keep the crash time so that the last session crash is still found, when supported. */
+                    //noinspection ResultOfMethodCallIgnored
+                    errorLogFile.setLastModified(recordFile.lastModified());
+                } catch (JSONException | IOException e) {
+                    AppCenterLog.error(LOG_TAG, "Failed to convert crash record " + recordFile.getName(), e);
+                    String name = recordFile.getName();
+                    try {
+                        UUID id = UUID.fromString(name.substring(0, name.length() - ErrorLogHelper.CRASH_RECORD_FILE_EXTENSION.length()));
+                        ErrorLogHelper.removeStoredThrowableFile(id);
+                    } catch (IllegalArgumentException ignore) {
+                    }
+                }
+            }
+            FileManager.delete(recordFile);
+        }
+    }
+
     private void processMinidumpFiles() {
 
         /* Convert minidump files to App Center crash files. */
@@ -808,6 +1035,9 @@ public class Crashes extends AbstractAppCenterService {
             if (!minidumpFile.renameTo(dest)) {
                 throw new IOException("Failed to move file");
             }
+
+            /* Minidumps compress well, keep them compressed until sent without delaying startup. */
+            AsyncTaskUtils.execute(LOG_TAG, new CompressMinidumpTask(dest));
         } catch (java.lang.Exception e) {
 
             //noinspection ResultOfMethodCallIgnored
@@ -818,12 +1048,14 @@ public class Crashes extends AbstractAppCenterService {
     }
 
     private void processPendingErrors() {
-        for (File logFile : ErrorLogHelper.getStoredErrorLogFiles()) {
+        File[] logFiles = ErrorLogHelper.getStoredErrorLogFiles();
+        List<Future<ManagedErrorLog>> parsedLogs = parseErrorLogFiles(logFiles);
+        for (int i = 0; i < logFiles.length; i++) {
+            File logFile = logFiles[i];
             AppCenterLog.debug(LOG_TAG, "Process pending error file: " + logFile);
-            String logfileContents = FileManager.read(logFile);
-            if (logfileContents != null) {
-                try {
-                    ManagedErrorLog log = (ManagedErrorLog) mLogSerializer.deserializeLog(logfileContents, null);
+            try {
+                ManagedErrorLog log = parsedLogs.get(i).get();
+                if (log != null) {
                     UUID id = log.getId();
                     ErrorReport report = buildErrorReport(log);
                     if (report == null) {
@@ -832,17 +1064,19 @@ public class Crashes extends AbstractAppCenterService {
                         if (!mAutomaticProcessing) {
                             AppCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned true, continue processing log: " + id.toString());
                         }
-                        mUnprocessedErrorReports.put(id, mErrorReportCache.get(id));
+                        mUnprocessedErrorReports.add(id);
                     } else {
                         AppCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned false, clean up and ignore log: " + id.toString());
                         removeAllStoredErrorLogFiles(id);
                     }
-                } catch (JSONException e) {
-                    AppCenterLog.error(LOG_TAG, "Error parsing error log. Deleting invalid file: " + logFile, e);
-
-                    //noinspection ResultOfMethodCallIgnored
-                    logFile.delete();
                 }
+            } catch (ExecutionException e) {
+                AppCenterLog.error(LOG_TAG, "Error parsing error log. Deleting invalid file: " + logFile, e.getCause());
+
+                //noinspection ResultOfMethodCallIgnored
+                logFile.delete();
+            } catch (InterruptedException e) {
+                AppCenterLog.error(LOG_TAG, "Interrupted while parsing error log: " + logFile, e);
             }
         }
         mHasReceivedMemoryWarningInLastSession = isMemoryRunningLevelWasReceived(SharedPreferencesManager.getInt(PREF_KEY_MEMORY_RUNNING_LEVEL, -1));
@@ -859,6 +1093,53 @@ public class Crashes extends AbstractAppCenterService {
         }
     }
 
+    /**
+     * Read and deserialize error log files, in parallel when there are many of them.
+     *
+     * @param logFiles error log files.
+     * @return parsed error logs in the same order as files, null for files that cannot be read.
+     */
+    private List<Future<ManagedErrorLog>> parseErrorLogFiles(File[] logFiles) {
+        List<Callable<ManagedErrorLog>> tasks = new ArrayList<>(logFiles.length);
+        for (final File logFile : logFiles) {
+            tasks.add(new Callable<ManagedErrorLog>() {
+
+                @Override
+                public ManagedErrorLog call() throws JSONException {
+                    String logfileContents = FileManager.read(logFile);
+                    if (logfileContents == null) {
+                        return null;
+                    }
+                    return (ManagedErrorLog) mLogSerializer.deserializeLog(logfileContents, null);
+                }
+            });
+        }
+        List<Future<ManagedErrorLog>> results = new ArrayList<>(tasks.size());
+        if (tasks.size() < PARALLEL_PARSING_THRESHOLD) {
+            for (Callable<ManagedErrorLog> task : tasks) {
+                FutureTask<ManagedErrorLog> futureTask = new FutureTask<>(task);
+                futureTask.run();
+                results.add(futureTask);
+            }
+            return results;
+        }
+        int threadCount = Math.min(Runtime.getRuntime().availableProcessors(), MAX_PARSING_THREADS);
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            results.addAll(executor.invokeAll(tasks));
+        } catch (InterruptedException e) {
+            AppCenterLog.error(LOG_TAG, "Interrupted while parsing error logs, parsing them on the current thread.", e);
+            for (Callable<ManagedErrorLog> task : tasks) {
+                FutureTask<ManagedErrorLog> futureTask = new FutureTask<>(task);
+                futureTask.run();
+                results.add(futureTask);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return results;
+    }
+
     private static boolean isMemoryRunningLevelWasReceived(int memoryLevel) {
         return memoryLevel == TRIM_MEMORY_RUNNING_MODERATE
                 || memoryLevel == TRIM_MEMORY_RUNNING_LOW
@@ -915,7 +1196,7 @@ public class Crashes extends AbstractAppCenterService {
     }
 
     private void removeStoredThrowable(UUID id) {
-        mErrorReportCache.remove(id);
+        removeCachedErrorReport(id);
         WrapperSdkExceptionManager.deleteWrapperExceptionData(id);
         ErrorLogHelper.removeStoredThrowableFile(id);
     }
@@ -933,26 +1214,93 @@ public class Crashes extends AbstractAppCenterService {
     @VisibleForTesting
     @Nullable
     ErrorReport buildErrorReport(ManagedErrorLog log) {
+        ErrorLogReport errorLogReport = buildErrorLogReport(log);
+        return errorLogReport != null ? errorLogReport.report : null;
+    }
+
+    @Nullable
+    private ErrorLogReport buildErrorLogReport(ManagedErrorLog log) {
         UUID id = log.getId();
-        if (mErrorReportCache.containsKey(id)) {
-            ErrorReport report = mErrorReportCache.get(id).report;
-            report.setDevice(log.getDevice());
-            return report;
-        } else {
-            File file = ErrorLogHelper.getStoredThrowableFile(id);
-            if (file != null) {
-                String stackTrace = null;
-                if (file.length() > 0) {
-                    stackTrace = FileManager.read(file);
-                }
-                ErrorReport report = ErrorLogHelper.getErrorReportFromErrorLog(log, stackTrace);
-                mErrorReportCache.put(id, new ErrorLogReport(log, report));
-                return report;
+        ErrorLogReport errorLogReport = mErrorReportCache.get(id);
+        if (errorLogReport != null) {
+            errorLogReport.report.setDevice(log.getDevice());
+            return errorLogReport;
+        }
+        File file = ErrorLogHelper.getStoredThrowableFile(id);
+        if (file != null) {
+            String stackTrace = null;
+            if (file.length() > 0) {
+                stackTrace = FileManager.read(file);
             }
+            ErrorReport report = ErrorLogHelper.getErrorReportFromErrorLog(log, stackTrace);
+            errorLogReport = new ErrorLogReport(log, report);
+            cacheErrorReport(id, errorLogReport);
+            return errorLogReport;
         }
         return null;
     }
 
+    /**
+     * Get an unprocessed error log and its report, reading them again from storage if evicted from cache.
+     *
+     * @param id error log identifier.
+     * @return error log and report or null if storage is missing or invalid.
+     */
+    @Nullable
+    private ErrorLogReport getUnprocessedErrorLogReport(UUID id) {
+        ErrorLogReport errorLogReport = mErrorReportCache.get(id);
+        if (errorLogReport != null) {
+            return errorLogReport;
+        }
+        File logFile = ErrorLogHelper.getStoredErrorLogFile(id);
+        String logFileContents = logFile != null ? FileManager.read(logFile) : null;
+        if (logFileContents == null) {
+            AppCenterLog.error(LOG_TAG, "Error log file missing for unprocessed report: " + id);
+            return null;
+        }
+        try {
+            AppCenterLog.debug(LOG_TAG, "Reading evicted error report: " + id);
+            return buildErrorLogReport((ManagedErrorLog) mLogSerializer.deserializeLog(logFileContents, null));
+        } catch (JSONException e) {
+            AppCenterLog.error(LOG_TAG, "Error parsing unprocessed error log: " + logFile, e);
+            return null;
+        }
+    }
+
+    private void cacheErrorReport(UUID id, ErrorLogReport errorLogReport) {
+        ErrorLogReport previous = mErrorReportCache.put(id, errorLogReport);
+        if (previous != null) {
+            mErrorReportCacheSize -= previous.size;
+        }
+        mErrorReportCacheSize += errorLogReport.size;
+
+        /* Evict least recently used reports, always keep the one just added. */
+        Iterator<ErrorLogReport> iterator = mErrorReportCache.values().iterator();
+        while (mErrorReportCacheSize > MAX_ERROR_REPORT_CACHE_SIZE && mErrorReportCache.size() > 1) {
+            ErrorLogReport eldest = iterator.next();
+            iterator.remove();
+            mErrorReportCacheSize -= eldest.size;
+            AppCenterLog.debug(LOG_TAG, "Evicted error report from cache: " + eldest.log.getId());
+        }
+    }
+
+    private void removeCachedErrorReport(UUID id) {
+        ErrorLogReport errorLogReport = mErrorReportCache.remove(id);
+        if (errorLogReport != null) {
+            mErrorReportCacheSize -= errorLogReport.size;
+        }
+    }
+
+    private void clearErrorReportCache() {
+        mErrorReportCache.clear();
+        mErrorReportCacheSize = 0;
+    }
+
+    @VisibleForTesting
+    int getErrorReportCacheCount() {
+        return mErrorReportCache.size();
+    }
+
     @VisibleForTesting
     CrashesListener getInstanceListener() {
         return mCrashesListener;
@@ -966,6 +1314,15 @@ public class Crashes extends AbstractAppCenterService {
         mCrashesListener = listener;
     }
 
+    private synchronized void setInstanceHandledErrorAggregationEnabled(boolean enabled) {
+        mHandledErrorAggregationEnabled = enabled;
+
+        /* Don't keep occurrences aggregated after disabling. */
+        if (!enabled) {
+            flushHandledErrorsNow();
+        }
+    }
+
     @VisibleForTesting
     private synchronized void handleUserConfirmation(@UserConfirmationDef final int userConfirmation) {
         post(new Runnable() {
@@ -977,7 +1334,7 @@ public class Crashes extends AbstractAppCenterService {
                 if (userConfirmation == DONT_SEND) {
 
                     /* Clean up all pending error log and throwable files. */
-                    for (Iterator<UUID> iterator = mUnprocessedErrorReports.keySet().iterator(); iterator.hasNext(); ) {
+                    for (Iterator<UUID> iterator = mUnprocessedErrorReports.iterator(); iterator.hasNext(); ) {
                         UUID id = iterator.next();
                         iterator.remove();
                         removeAllStoredErrorLogFiles(id);
@@ -994,14 +1351,19 @@ public class Crashes extends AbstractAppCenterService {
                     }
 
                     /* Send every pending report. */
-                    Iterator<Map.Entry<UUID, ErrorLogReport>> unprocessedIterator = mUnprocessedErrorReports.entrySet().iterator();
+                    Iterator<UUID> unprocessedIterator = mUnprocessedErrorReports.iterator();
                     while (unprocessedIterator.hasNext()) {
+                        UUID id = unprocessedIterator.next();
+                        ErrorLogReport errorLogReport = getUnprocessedErrorLogReport(id);
+                        if (errorLogReport == null) {
+                            unprocessedIterator.remove();
+                            removeAllStoredErrorLogFiles(id);
+                            continue;
+                        }
 
                         /* If native crash, send dump as attachment and remove the fake stack trace. */
                         File dumpFile = null;
                         ErrorAttachmentLog dumpAttachment = null;
-                        Map.Entry<UUID, ErrorLogReport> unprocessedEntry = unprocessedIterator.next();
-                        ErrorLogReport errorLogReport = unprocessedEntry.getValue();
                         if (errorLogReport.report.getDevice() != null && WRAPPER_SDK_NAME_NDK.equals(errorLogReport.report.getDevice().getWrapperSdkName())) {
 
                             /* Get minidump file path. */
@@ -1025,7 +1387,7 @@ public class Crashes extends AbstractAppCenterService {
                             /* It can be null when NativeException is thrown or there is already invalid stored data. */
                             if (minidumpFilePath != null) {
                                 dumpFile = new File(minidumpFilePath);
-                                byte[] logfileContents = FileManager.readBytes(dumpFile);
+                                byte[] logfileContents = ErrorLogHelper.readPendingMinidump(dumpFile);
                                 dumpAttachment = ErrorAttachmentLog.attachmentWithBinary(logfileContents, "minidump.dmp", "application/octet-stream");
                             } else {
                                 AppCenterLog.warn(LOG_TAG, "NativeException found without minidump.");
@@ -1038,9 +1400,7 @@ public class Crashes extends AbstractAppCenterService {
                         /* Send dump attachment and remove file. */
                         if (dumpAttachment != null) {
                             sendErrorAttachment(errorLogReport.log.getId(), Collections.singleton(dumpAttachment));
-
-                            //noinspection ResultOfMethodCallIgnored
-                            dumpFile.delete();
+                            ErrorLogHelper.deletePendingMinidump(dumpFile);
                         }
 
                         /* Get attachments from callback in automatic processing. */
@@ -1051,7 +1411,7 @@ public class Crashes extends AbstractAppCenterService {
 
                         /* Clean up an error log file and map entry. */
                         unprocessedIterator.remove();
-                        ErrorLogHelper.removeStoredErrorLogFile(unprocessedEntry.getKey());
+                        ErrorLogHelper.removeStoredErrorLogFile(id);
                     }
                 }
             }
@@ -1077,7 +1437,7 @@ public class Crashes extends AbstractAppCenterService {
                                 "Discarding attachment with size above %d bytes: size=%d, fileName=%s.",
                                 MAX_ATTACHMENT_SIZE, attachment.getData().length, attachment.getFileName()));
                     } else {
-                        mChannel.enqueue(attachment, ERROR_GROUP, Flags.DEFAULTS);
+                        mChannel.enqueue(attachment, ERROR_ATTACHMENT_GROUP, Flags.DEFAULTS);
                     }
                 } else {
                     AppCenterLog.warn(LOG_TAG, "Skipping null ErrorAttachmentLog.");
@@ -1099,7 +1459,12 @@ public class Crashes extends AbstractAppCenterService {
      */
     void saveUncaughtException(Thread thread, Throwable throwable) {
         try {
-            saveUncaughtException(thread, throwable, ErrorLogHelper.getModelExceptionFromThrowable(throwable));
+            CrashRecorder crashRecorder = mCrashRecorder;
+            if (crashRecorder != null) {
+                saveUncaughtException(crashRecorder, thread, throwable);
+            } else {
+                saveUncaughtException(thread, throwable, ErrorLogHelper.getModelExceptionFromThrowable(throwable));
+            }
         } catch (JSONException e) {
             AppCenterLog.error(Crashes.LOG_TAG, "Error serializing error log to JSON", e);
         } catch (IOException e) {
@@ -1118,24 +1483,68 @@ public class Crashes extends AbstractAppCenterService {
      * @throws IOException   if an error occurred while accessing the file system.
      */
     UUID saveUncaughtException(Thread thread, Throwable throwable, Exception modelException) throws JSONException, IOException {
-
-        /* Ignore call if Crash is disabled. */
-        if (!Crashes.isEnabled().get()) {
+        if (!shouldSaveUncaughtException()) {
             return null;
         }
 
+        /* Save error log. */
+        ManagedErrorLog errorLog = ErrorLogHelper.createErrorLog(mContext, thread, modelException, Thread.getAllStackTraces(), mInitializeTimestamp, true);
+        return saveErrorLogFiles(throwable, errorLog);
+    }
+
+    /**
+     * Save uncaught exception to disk as a crash record, converted to an error log on next launch.
+     * Falls back to saving the error log directly if the record cannot be written.
+     *
+     * @param crashRecorder crash recorder prepared at initialization.
+     * @param thread        thread where exception occurred.
+     * @param throwable     uncaught exception or error.
+     * @throws JSONException if an error occurred during JSON serialization of the fallback error log.
+     * @throws IOException   if an error occurred while accessing the file system.
+     */
+    private void saveUncaughtException(CrashRecorder crashRecorder, Thread thread, Throwable throwable) throws JSONException, IOException {
+        if (!shouldSaveUncaughtException()) {
+            return;
+        }
+        File errorStorageDirectory = ErrorLogHelper.getErrorStorageDirectory();
+        Map<Thread, StackTraceElement[]> allStackTraces = Thread.getAllStackTraces();
+        UUID errorLogId;
+        try {
+            errorLogId = crashRecorder.write(errorStorageDirectory, thread, throwable, allStackTraces);
+        } catch (IOException e) {
+            AppCenterLog.error(Crashes.LOG_TAG, "Failed to write crash record, saving error log instead.", e);
+            ManagedErrorLog errorLog = ErrorLogHelper.createErrorLog(mContext, thread, ErrorLogHelper.getModelExceptionFromThrowable(throwable), allStackTraces, mInitializeTimestamp, true);
+            saveErrorLogFiles(throwable, errorLog);
+            return;
+        }
+        AppCenterLog.debug(Crashes.LOG_TAG, "Saved crash record " + errorLogId);
+        saveThrowableFile(errorStorageDirectory, errorLogId.toString(), throwable);
+    }
+
+    /**
+     * Check if an uncaught exception must be saved, only the first one is saved.
+     *
+     * @return true if the uncaught exception must be saved.
+     */
+    private boolean shouldSaveUncaughtException() {
+
+        /*
+         * Ignore call if Crash is disabled. The handler may be busy or blocked by the crashing thread,
+         * so read the mirrored state instead of waiting for it.
+         */
+        if (!mEnabled) {
+            return false;
+        }
+
         /*
          * Save only 1 crash. This is needed for example in Xamarin
          * where we save as a Xamarin crash before Java handler is called.
          */
         if (mSavedUncaughtException) {
-            return null;
+            return false;
         }
         mSavedUncaughtException = true;
-
-        /* Save error log. */
-        ManagedErrorLog errorLog = ErrorLogHelper.createErrorLog(mContext, thread, modelException, Thread.getAllStackTraces(), mInitializeTimestamp, true);
-        return saveErrorLogFiles(throwable, errorLog);
+        return true;
     }
 
     @NonNull
@@ -1148,6 +1557,11 @@ public class Crashes extends AbstractAppCenterService {
         String errorLogString = mLogSerializer.serializeLog(errorLog);
         FileManager.write(errorLogFile, errorLogString);
         AppCenterLog.debug(Crashes.LOG_TAG, "Saved JSON content for ingestion into " + errorLogFile);
+        saveThrowableFile(errorStorageDirectory, filename, throwable);
+        return errorLogId;
+    }
+
+    private void saveThrowableFile(File errorStorageDirectory, String filename, Throwable throwable) throws IOException {
         File throwableFile = new File(errorStorageDirectory, filename + ErrorLogHelper.THROWABLE_FILE_EXTENSION);
         if (throwable != null) {
             try {
@@ -1173,7 +1587,6 @@ public class Crashes extends AbstractAppCenterService {
             }
             AppCenterLog.debug(Crashes.LOG_TAG, "Saved empty Throwable file in " + throwableFile);
         }
-        return errorLogId;
     }
 
     /**
@@ -1193,8 +1606,15 @@ public class Crashes extends AbstractAppCenterService {
             @Override
             public void run() {
                 Collection<ErrorReport> reports = new ArrayList<>(mUnprocessedErrorReports.size());
-                for (ErrorLogReport entry : mUnprocessedErrorReports.values()) {
-                    reports.add(entry.report);
+                for (Iterator<UUID> iterator = mUnprocessedErrorReports.iterator(); iterator.hasNext(); ) {
+                    UUID id = iterator.next();
+                    ErrorLogReport errorLogReport = getUnprocessedErrorLogReport(id);
+                    if (errorLogReport != null) {
+                        reports.add(errorLogReport.report);
+                    } else {
+                        iterator.remove();
+                        removeAllStoredErrorLogFiles(id);
+                    }
                 }
                 future.complete(reports);
             }
@@ -1213,11 +1633,13 @@ public class Crashes extends AbstractAppCenterService {
             public void run() {
 
                 /* Apply the filtering. */
-                Iterator<Map.Entry<UUID, ErrorLogReport>> iterator = mUnprocessedErrorReports.entrySet().iterator();
+                Iterator<UUID> iterator = mUnprocessedErrorReports.iterator();
                 while (iterator.hasNext()) {
-                    Map.Entry<UUID, ErrorLogReport> entry = iterator.next();
-                    UUID id = entry.getKey();
-                    String idString = entry.getValue().report.getId();
+                    UUID id = iterator.next();
+
+                    /* Report identifier matches the log one, no need to read evicted reports. */
+                    ErrorLogReport errorLogReport = mErrorReportCache.get(id);
+                    String idString = errorLogReport != null ? errorLogReport.report.getId() : id.toString();
                     if (filteredReportIds != null && filteredReportIds.contains(idString)) {
                         AppCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned true, continue processing log: " + idString);
                     } else {
@@ -1313,9 +1735,37 @@ public class Crashes extends AbstractAppCenterService {
 
         private final ErrorReport report;
 
+        /**
+         * Estimated memory size in bytes.
+         */
+        private final long size;
+
         private ErrorLogReport(ManagedErrorLog log, ErrorReport report) {
             this.log = log;
             this.report = report;
+            this.size = getSizeEstimate(log, report);
+        }
+
+        private static long getSizeEstimate(ManagedErrorLog log, ErrorReport report) {
+            long size = STACK_FRAME_SIZE_ESTIMATE;
+            if (report.getStackTrace() != null) {
+                size += report.getStackTrace().length() * 2;
+            }
+            if (log.getThreads() != null) {
+                for (com.microsoft.appcenter.crashes.ingestion.models.Thread thread : log.getThreads()) {
+                    if (thread.getFrames() != null) {
+                        size += (long) thread.getFrames().size() * STACK_FRAME_SIZE_ESTIMATE;
+                    }
+                }
+            }
+            for (Exception exception = log.getException(); exception != null; ) {
+                if (exception.getFrames() != null) {
+                    size += (long) exception.getFrames().size() * STACK_FRAME_SIZE_ESTIMATE;
+                }
+                List<Exception> innerExceptions = exception.getInnerExceptions();
+                exception = innerExceptions != null && !innerExceptions.isEmpty() ? innerExceptions.get(0) : null;
+            }
+            return size;
         }
     }
 }
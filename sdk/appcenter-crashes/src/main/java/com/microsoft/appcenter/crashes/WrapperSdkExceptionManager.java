@@ -7,17 +7,20 @@ package com.microsoft.appcenter.crashes;
 
 import android.content.Context;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
 
 import com.microsoft.appcenter.crashes.ingestion.models.ErrorAttachmentLog;
 import com.microsoft.appcenter.crashes.model.ErrorReport;
 import com.microsoft.appcenter.crashes.utils.ErrorLogHelper;
+import com.microsoft.appcenter.crashes.utils.WrapperExceptionDataStore;
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
 import com.microsoft.appcenter.utils.async.AppCenterFuture;
 import com.microsoft.appcenter.utils.storage.FileManager;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
@@ -30,16 +33,21 @@ import static com.microsoft.appcenter.crashes.Crashes.LOG_TAG;
 public class WrapperSdkExceptionManager {
 
     /**
-     * Contains wrapper SDK data that has been loaded into memory
+     * Contains wrapper SDK data of deleted errors, kept in memory so that it can still be loaded from callbacks.
      */
     @VisibleForTesting
     static final Map<String, String> sWrapperExceptionDataContainer = new HashMap<>();
 
     /**
-     * File extension for data files created by this class.
+     * File extension for data files created by previous SDK versions.
      */
     private static final String DATA_FILE_EXTENSION = ".dat";
 
+    /**
+     * Store of wrapper SDK data, opened on first use.
+     */
+    private static WrapperExceptionDataStore sDataStore;
+
     @VisibleForTesting
     WrapperSdkExceptionManager() {
     }
@@ -57,10 +65,12 @@ public class WrapperSdkExceptionManager {
         try {
             UUID errorId = Crashes.getInstance().saveUncaughtException(thread, throwable, modelException);
             if (errorId != null && rawSerializedException != null) {
-                sWrapperExceptionDataContainer.put(errorId.toString(), rawSerializedException);
-                File dataFile = getFile(errorId);
-                FileManager.write(dataFile, rawSerializedException);
-                AppCenterLog.debug(LOG_TAG, "Saved raw wrapper exception data into " + dataFile);
+                WrapperExceptionDataStore dataStore = getDataStore(true);
+                if (dataStore == null) {
+                    throw new IOException("Wrapper exception data store is not available.");
+                }
+                dataStore.put(errorId, rawSerializedException);
+                AppCenterLog.debug(LOG_TAG, "Saved raw wrapper exception data for " + errorId);
             }
             return errorId;
         } catch (Exception e) {
@@ -79,6 +89,13 @@ public class WrapperSdkExceptionManager {
             AppCenterLog.error(LOG_TAG, "Failed to delete wrapper exception data: null errorId");
             return;
         }
+        WrapperExceptionDataStore dataStore = getDataStore(false);
+        String data = dataStore != null ? dataStore.remove(errorId) : null;
+        if (data != null) {
+            sWrapperExceptionDataContainer.put(errorId.toString(), data);
+        }
+
+        /* Data saved by previous SDK versions. */
         File dataFile = getFile(errorId);
         if (dataFile.exists()) {
             String loadResult = loadWrapperExceptionData(errorId);
@@ -104,6 +121,15 @@ public class WrapperSdkExceptionManager {
         if (data != null) {
             return data;
         }
+        WrapperExceptionDataStore dataStore = getDataStore(false);
+        if (dataStore != null) {
+            data = dataStore.get(errorId);
+            if (data != null) {
+                return data;
+            }
+        }
+
+        /* Data saved by previous SDK versions. */
         File dataFile = getFile(errorId);
         if (dataFile.exists()) {
             data = FileManager.read(dataFile);
@@ -115,6 +141,34 @@ public class WrapperSdkExceptionManager {
         return null;
     }
 
+    /**
+     * Get the wrapper exception data store, opening it if needed.
+     *
+     * @param create true to create the store file if missing.
+     * @return store or null if missing and not created or failed to open.
+     */
+    @Nullable
+    private static synchronized WrapperExceptionDataStore getDataStore(boolean create) {
+        if (sDataStore == null) {
+            try {
+                sDataStore = WrapperExceptionDataStore.open(ErrorLogHelper.getErrorStorageDirectory(), create);
+            } catch (IOException e) {
+                AppCenterLog.error(LOG_TAG, "Failed to open wrapper exception data store", e);
+            }
+        }
+        return sDataStore;
+    }
+
+    /**
+     * Close the wrapper exception data store, it is opened again on next use.
+     */
+    static synchronized void closeDataStore() {
+        if (sDataStore != null) {
+            sDataStore.close();
+            sDataStore = null;
+        }
+    }
+
     /**
      * Get a file object for wrapper exception data
      *
@@ -9,6 +9,7 @@ import android.support.annotation.VisibleForTesting;
 import android.util.Base64;
 
 import com.microsoft.appcenter.ingestion.models.AbstractLog;
+import com.microsoft.appcenter.ingestion.models.LogWithBinaryData;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
@@ -24,7 +25,7 @@ import static com.microsoft.appcenter.ingestion.models.CommonProperties.ID;
 /**
  * Error attachment log.
  */
-public class ErrorAttachmentLog extends AbstractLog {
+public class ErrorAttachmentLog extends AbstractLog implements LogWithBinaryData {
 
     /**
      * Plain text mime type.
@@ -182,6 +183,7 @@ public class ErrorAttachmentLog extends AbstractLog {
      *
      * @return the data value
      */
+    @Override
     public byte[] getData() {
         return this.data;
     }
@@ -191,6 +193,7 @@ public class ErrorAttachmentLog extends AbstractLog {
      *
      * @param data the data value to set
      */
+    @Override
     public void setData(byte[] data) {
         this.data = data;
     }
@@ -212,10 +215,15 @@ public class ErrorAttachmentLog extends AbstractLog {
         setErrorId(UUID.fromString(object.getString(ERROR_ID)));
         setContentType(object.getString(CONTENT_TYPE));
         setFileName(object.optString(FILE_NAME, null));
-        try {
-            setData(Base64.decode(object.getString(DATA), Base64.DEFAULT));
-        } catch (IllegalArgumentException e) {
-            throw new JSONException(e.getMessage());
+
+        /* Data is missing when persistence stored it raw in a separate file. */
+        String data = object.optString(DATA, null);
+        if (data != null) {
+            try {
+                setData(Base64.decode(data, Base64.DEFAULT));
+            } catch (IllegalArgumentException e) {
+                throw new JSONException(e.getMessage());
+            }
         }
     }
 
@@ -226,7 +234,9 @@ public class ErrorAttachmentLog extends AbstractLog {
         JSONUtils.write(writer, ERROR_ID, getErrorId());
         JSONUtils.write(writer, CONTENT_TYPE, getContentType());
         JSONUtils.write(writer, FILE_NAME, getFileName());
-        JSONUtils.write(writer, DATA, Base64.encodeToString(getData(), Base64.NO_WRAP));
+        if (getData() != null) {
+            JSONUtils.write(writer, DATA, Base64.encodeToString(getData(), Base64.NO_WRAP));
+        }
     }
 
     @SuppressWarnings({"SimplifiableIfStatement", "EqualsReplaceableByObjectsCall"})
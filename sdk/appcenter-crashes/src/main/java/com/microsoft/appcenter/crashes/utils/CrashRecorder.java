@@ -0,0 +1,513 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.crashes.utils;
+
+import android.content.Context;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.crashes.Crashes;
+import com.microsoft.appcenter.crashes.ingestion.models.Exception;
+import com.microsoft.appcenter.crashes.ingestion.models.ManagedErrorLog;
+import com.microsoft.appcenter.crashes.ingestion.models.StackFrame;
+import com.microsoft.appcenter.crashes.ingestion.models.Thread;
+import com.microsoft.appcenter.ingestion.models.Device;
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.context.UserIdContext;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONStringer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Saves uncaught exceptions with as little work as possible while the process is crashing.
+ * <p>
+ * Device properties, process and architecture are captured when the recorder is created.
+ * At crash time, the exception and thread states are appended to a preallocated buffer as a compact
+ * line based record without going through the JSON serializer. The record is converted to a
+ * {@link ManagedErrorLog} on next launch with {@link #readErrorLog(String)}.
+ * <p>
+ * Each line starts with a tag character followed by tab separated fields.
+ * Tabs, new lines and backslashes are escaped in field values.
+ */
+public class CrashRecorder {
+
+    /**
+     * Record format version, first line of each record.
+     */
+    @VisibleForTesting
+    static final String FORMAT_VERSION = "1";
+
+    /**
+     * Initial capacity of the record buffer in characters, fits most crashes without resizing.
+     */
+    @VisibleForTesting
+    static final int BUFFER_CAPACITY = 64 * 1024;
+
+    /**
+     * Number of characters written to the file at once.
+     */
+    private static final int WRITE_CHUNK_SIZE = 4 * 1024;
+
+    /**
+     * Charset of record files.
+     */
+    private static final String CHARSET_NAME = "UTF-8";
+
+    /**
+     * Field separator.
+     */
+    private static final char FIELD_SEPARATOR = '\t';
+
+    /**
+     * Line separator.
+     */
+    private static final char LINE_SEPARATOR = '\n';
+
+    /**
+     * Escape character.
+     */
+    private static final char ESCAPE = '\\';
+
+    /**
+     * Escaped value of a null field.
+     */
+    private static final String NULL_VALUE = "\\0";
+
+    /**
+     * Record format version tag.
+     */
+    private static final char TAG_VERSION = 'v';
+
+    /**
+     * Error log identifier tag.
+     */
+    private static final char TAG_ID = 'i';
+
+    /**
+     * Device properties tag, as JSON.
+     */
+    private static final char TAG_DEVICE = 'd';
+
+    /**
+     * Process tag: identifier and name.
+     */
+    private static final char TAG_PROCESS = 'p';
+
+    /**
+     * CPU architecture tag.
+     */
+    private static final char TAG_ARCHITECTURE = 'a';
+
+    /**
+     * Application launch timestamp tag.
+     */
+    private static final char TAG_APP_LAUNCH_TIMESTAMP = 'l';
+
+    /**
+     * Crash timestamp tag.
+     */
+    private static final char TAG_TIMESTAMP = 't';
+
+    /**
+     * User identifier tag.
+     */
+    private static final char TAG_USER_ID = 'u';
+
+    /**
+     * Thread in error tag: identifier and name.
+     */
+    private static final char TAG_ERROR_THREAD = 'r';
+
+    /**
+     * Exception tag: type and message, each exception is the cause of the previous one.
+     */
+    private static final char TAG_EXCEPTION = 'e';
+
+    /**
+     * Thread state tag: identifier and name.
+     */
+    private static final char TAG_THREAD = 'h';
+
+    /**
+     * Stack frame tag: class, method, file and line number, belongs to the previous exception or thread.
+     */
+    private static final char TAG_FRAME = 'f';
+
+    /**
+     * Thread frames tag: index of a previous thread with the same stack, among threads with distinct stacks.
+     */
+    private static final char TAG_SAME_FRAMES = 's';
+
+    /**
+     * Error log identifier, generated in advance as only one crash is saved per process.
+     */
+    private final UUID mId;
+
+    /**
+     * Header of the record with the values captured in advance.
+     */
+    private final String mHeader;
+
+    /**
+     * Record buffer.
+     */
+    private final StringBuilder mBuffer = new StringBuilder(BUFFER_CAPACITY);
+
+    /**
+     * Chunk used to copy the buffer to the file.
+     */
+    private final char[] mChunk = new char[WRITE_CHUNK_SIZE];
+
+    /**
+     * Init and capture the values that do not change until the crash.
+     *
+     * @param context             application context.
+     * @param device              device properties or null if not available.
+     * @param initializeTimestamp application launch timestamp.
+     */
+    public CrashRecorder(@NonNull Context context, @Nullable Device device, long initializeTimestamp) {
+        mId = UUID.randomUUID();
+        appendLine(TAG_VERSION, FORMAT_VERSION);
+        appendLine(TAG_ID, mId.toString());
+        if (device != null) {
+            try {
+                JSONStringer writer = new JSONStringer();
+                writer.object();
+                device.write(writer);
+                writer.endObject();
+                appendLine(TAG_DEVICE, writer.toString());
+            } catch (JSONException e) {
+                AppCenterLog.error(Crashes.LOG_TAG, "Could not capture device properties for crash records, will attach at sending time", e);
+            }
+        }
+        startLine(TAG_PROCESS);
+        mBuffer.append(Process.myPid());
+        appendField(ErrorLogHelper.getProcessName(context));
+        appendLine(TAG_ARCHITECTURE, ErrorLogHelper.getArchitecture());
+        startLine(TAG_APP_LAUNCH_TIMESTAMP);
+        mBuffer.append(initializeTimestamp);
+        mHeader = mBuffer.toString();
+    }
+
+    /**
+     * Save an uncaught exception as a record file.
+     *
+     * @param directory      directory where to save the record.
+     * @param thread         thread where exception occurred.
+     * @param throwable      uncaught exception or error.
+     * @param allStackTraces thread states.
+     * @return error log identifier.
+     * @throws IOException if the record could not be written, the partial file is deleted.
+     */
+    @NonNull
+    public synchronized UUID write(@NonNull File directory, @NonNull java.lang.Thread thread, @NonNull Throwable throwable, @NonNull Map<java.lang.Thread, StackTraceElement[]> allStackTraces) throws IOException {
+
+        /* Fill buffer. */
+        mBuffer.setLength(0);
+        mBuffer.append(mHeader);
+        startLine(TAG_TIMESTAMP);
+        mBuffer.append(System.currentTimeMillis());
+        String userId = UserIdContext.getInstance().getUserId();
+        if (userId != null) {
+            appendLine(TAG_USER_ID, userId);
+        }
+        startLine(TAG_ERROR_THREAD);
+        mBuffer.append(thread.getId());
+        appendField(thread.getName());
+        for (Throwable cause : ErrorLogHelper.getTruncatedCauseChain(throwable)) {
+            appendLine(TAG_EXCEPTION, cause.getClass().getName());
+            appendField(cause.getMessage());
+            appendFrames(ErrorLogHelper.getTruncatedStackTrace(cause));
+        }
+        Map<List<StackTraceElement>, Integer> threadIndexes = new HashMap<>();
+        for (Map.Entry<java.lang.Thread, StackTraceElement[]> entry : ErrorLogHelper.getLimitedStackTraces(thread, allStackTraces).entrySet()) {
+            startLine(TAG_THREAD);
+            mBuffer.append(entry.getKey().getId());
+            appendField(entry.getKey().getName());
+
+            /* Write identical stacks only once. */
+            List<StackTraceElement> stackTrace = Arrays.asList(entry.getValue());
+            Integer sameFramesIndex = threadIndexes.get(stackTrace);
+            if (sameFramesIndex != null) {
+                startLine(TAG_SAME_FRAMES);
+                mBuffer.append(sameFramesIndex);
+            } else {
+                threadIndexes.put(stackTrace, threadIndexes.size());
+                appendFrames(entry.getValue());
+            }
+        }
+        mBuffer.append(LINE_SEPARATOR);
+
+        /* Copy buffer to file by chunks. */
+        File file = new File(directory, mId + ErrorLogHelper.CRASH_RECORD_FILE_EXTENSION);
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(file), CHARSET_NAME);
+            int length = mBuffer.length();
+            for (int start = 0; start < length; start += WRITE_CHUNK_SIZE) {
+                int end = Math.min(start + WRITE_CHUNK_SIZE, length);
+                mBuffer.getChars(start, end, mChunk, 0);
+                writer.write(mChunk, 0, end - start);
+            }
+            writer.close();
+            writer = null;
+        } catch (IOException e) {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException ignore) {
+                }
+            }
+
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            throw e;
+        }
+        return mId;
+    }
+
+    /**
+     * Convert a record to an error log.
+     *
+     * @param record record file contents.
+     * @return fatal error log.
+     * @throws JSONException if the record is not valid.
+     */
+    @NonNull
+    public static ManagedErrorLog readErrorLog(@NonNull String record) throws JSONException {
+        ManagedErrorLog errorLog = new ManagedErrorLog();
+        errorLog.setFatal(true);
+        List<Thread> threads = new ArrayList<>();
+        List<List<StackFrame>> distinctFrames = new ArrayList<>();
+        Exception parentException = null;
+        List<StackFrame> frames = null;
+        String[] lines = record.split(String.valueOf(LINE_SEPARATOR));
+        if (lines.length == 0 || !lines[0].equals(TAG_VERSION + String.valueOf(FIELD_SEPARATOR) + FORMAT_VERSION)) {
+            throw new JSONException("Unsupported crash record format.");
+        }
+        try {
+            for (String line : lines) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                List<String> fields = readFields(line);
+                switch (line.charAt(0)) {
+
+                    case TAG_ID:
+                        errorLog.setId(UUID.fromString(fields.get(0)));
+                        break;
+
+                    case TAG_DEVICE:
+                        Device device = new Device();
+                        device.read(new JSONObject(fields.get(0)));
+                        errorLog.setDevice(device);
+                        break;
+
+                    case TAG_PROCESS:
+                        errorLog.setProcessId(Integer.parseInt(fields.get(0)));
+                        errorLog.setProcessName(fields.get(1));
+                        break;
+
+                    case TAG_ARCHITECTURE:
+                        errorLog.setArchitecture(fields.get(0));
+                        break;
+
+                    case TAG_APP_LAUNCH_TIMESTAMP:
+                        errorLog.setAppLaunchTimestamp(new Date(Long.parseLong(fields.get(0))));
+                        break;
+
+                    case TAG_TIMESTAMP:
+                        errorLog.setTimestamp(new Date(Long.parseLong(fields.get(0))));
+                        break;
+
+                    case TAG_USER_ID:
+                        errorLog.setUserId(fields.get(0));
+                        break;
+
+                    case TAG_ERROR_THREAD:
+                        errorLog.setErrorThreadId(Long.parseLong(fields.get(0)));
+                        errorLog.setErrorThreadName(fields.get(1));
+                        break;
+
+                    case TAG_EXCEPTION:
+                        Exception exception = new Exception();
+                        exception.setType(fields.get(0));
+                        exception.setMessage(fields.get(1));
+                        frames = new ArrayList<>();
+                        exception.setFrames(frames);
+                        if (parentException == null) {
+                            errorLog.setException(exception);
+                        } else {
+                            parentException.setInnerExceptions(Collections.singletonList(exception));
+                        }
+                        parentException = exception;
+                        break;
+
+                    case TAG_THREAD:
+                        Thread thread = new Thread();
+                        thread.setId(Long.parseLong(fields.get(0)));
+                        thread.setName(fields.get(1));
+                        frames = new ArrayList<>();
+                        thread.setFrames(frames);
+                        threads.add(thread);
+                        distinctFrames.add(frames);
+                        break;
+
+                    case TAG_SAME_FRAMES:
+                        threads.get(threads.size() - 1).setFrames(distinctFrames.get(Integer.parseInt(fields.get(0))));
+                        distinctFrames.remove(distinctFrames.size() - 1);
+                        frames = null;
+                        break;
+
+                    case TAG_FRAME:
+                        if (frames != null) {
+                            StackFrame frame = new StackFrame();
+                            frame.setClassName(fields.get(0));
+                            frame.setMethodName(fields.get(1));
+                            frame.setFileName(fields.get(2));
+                            frame.setLineNumber(Integer.parseInt(fields.get(3)));
+                            frames.add(frame);
+                        }
+                        break;
+                }
+            }
+        } catch (RuntimeException e) {
+
+            /* Keep what was read before a truncated line if the required fields are there. */
+            AppCenterLog.warn(Crashes.LOG_TAG, "Crash record is truncated, keeping the valid part.", e);
+        }
+        if (errorLog.getId() == null || errorLog.getTimestamp() == null || errorLog.getException() == null) {
+            throw new JSONException("Crash record is missing required fields.");
+        }
+        if (errorLog.getProcessName() == null) {
+            errorLog.setProcessName("");
+        }
+        errorLog.setThreads(threads);
+        return errorLog;
+    }
+
+    /**
+     * Split and unescape the fields of a line.
+     *
+     * @param line line including its tag.
+     * @return fields.
+     */
+    @NonNull
+    private static List<String> readFields(@NonNull String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean isNull = false;
+        for (int i = 2; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == FIELD_SEPARATOR) {
+                fields.add(isNull ? null : field.toString());
+                field.setLength(0);
+                isNull = false;
+            } else if (c == ESCAPE && i + 1 < line.length()) {
+                char escaped = line.charAt(++i);
+                switch (escaped) {
+
+                    case 'n':
+                        field.append(LINE_SEPARATOR);
+                        break;
+
+                    case 't':
+                        field.append(FIELD_SEPARATOR);
+                        break;
+
+                    case 'r':
+                        field.append('\r');
+                        break;
+
+                    case '0':
+                        isNull = true;
+                        break;
+
+                    default:
+                        field.append(escaped);
+                }
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(isNull ? null : field.toString());
+        return fields;
+    }
+
+    private void appendFrames(@NonNull StackTraceElement[] stackTrace) {
+        for (StackTraceElement element : stackTrace) {
+            appendLine(TAG_FRAME, element.getClassName());
+            appendField(element.getMethodName());
+            appendField(element.getFileName());
+            mBuffer.append(FIELD_SEPARATOR).append(element.getLineNumber());
+        }
+    }
+
+    private void startLine(char tag) {
+        if (mBuffer.length() > 0) {
+            mBuffer.append(LINE_SEPARATOR);
+        }
+        mBuffer.append(tag).append(FIELD_SEPARATOR);
+    }
+
+    private void appendLine(char tag, @Nullable String value) {
+        startLine(tag);
+        appendEscaped(value);
+    }
+
+    private void appendField(@Nullable String value) {
+        mBuffer.append(FIELD_SEPARATOR);
+        appendEscaped(value);
+    }
+
+    private void appendEscaped(@Nullable String value) {
+        if (value == null) {
+            mBuffer.append(NULL_VALUE);
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+
+                case ESCAPE:
+                    mBuffer.append(ESCAPE).append(ESCAPE);
+                    break;
+
+                case LINE_SEPARATOR:
+                    mBuffer.append(ESCAPE).append('n');
+                    break;
+
+                case FIELD_SEPARATOR:
+                    mBuffer.append(ESCAPE).append('t');
+                    break;
+
+                case '\r':
+                    mBuffer.append(ESCAPE).append('r');
+                    break;
+
+                default:
+                    mBuffer.append(c);
+            }
+        }
+    }
+}
@@ -32,12 +32,16 @@ import org.json.JSONObject;
 import org.json.JSONStringer;
 
 import java.io.File;
+import java.io.FileWriter;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -65,6 +69,23 @@ public class ErrorLogHelper {
      */
     public static final String THROWABLE_FILE_EXTENSION = ".throwable";
 
+    /**
+     * Error log file extension for the raw crash records written by {@link CrashRecorder}.
+     */
+    public static final String CRASH_RECORD_FILE_EXTENSION = ".crash";
+
+    /**
+     * Index of saved error logs within the error directory, one line per error log:
+     * identifier, timestamp, fatal flag and size separated by tabs.
+     */
+    @VisibleForTesting
+    public static final String INDEX_FILE = "index";
+
+    /**
+     * Index field separator.
+     */
+    private static final String INDEX_FIELD_SEPARATOR = "\t";
+
     /**
      * Directory under the FILES_PATH containing minidump files.
      */
@@ -102,6 +123,18 @@ public class ErrorLogHelper {
      */
     private static final int CAUSE_LIMIT_HALF = CAUSE_LIMIT / 2;
 
+    /**
+     * Maximum number of threads attached to a crash, including the thread in error which is always attached.
+     */
+    @VisibleForTesting
+    static final int THREAD_LIMIT = 64;
+
+    /**
+     * Maximum number of frames kept from the top of the stack of threads other than the thread in error.
+     */
+    @VisibleForTesting
+    static final int THREAD_FRAME_LIMIT = 64;
+
     /**
      * Error log directory within application files.
      */
@@ -116,7 +149,7 @@ public class ErrorLogHelper {
     /**
      * Max number of properties.
      */
-    private static final int MAX_PROPERTY_COUNT = 20;
+    static final int MAX_PROPERTY_COUNT = 20;
 
     /**
      * Max length of properties.
@@ -128,6 +161,11 @@ public class ErrorLogHelper {
      */
     public static final String MINIDUMP_FILE_EXTENSION = ".dmp";
 
+    /**
+     * Extension appended to minidump files compressed in background in the pending directory.
+     */
+    public static final String COMPRESSED_MINIDUMP_FILE_EXTENSION = ".gz";
+
     /**
      * Directory for new minidump files.
      */
@@ -140,11 +178,17 @@ public class ErrorLogHelper {
 
     @NonNull
     public static ManagedErrorLog createErrorLog(@NonNull Context context, @NonNull final java.lang.Thread thread, @NonNull final Throwable throwable, @NonNull final Map<java.lang.Thread, StackTraceElement[]> allStackTraces, final long initializeTimestamp) {
-        return createErrorLog(context, thread, getModelExceptionFromThrowable(throwable), allStackTraces, initializeTimestamp, true);
+        Map<StackTraceElement, StackFrame> frameCache = new HashMap<>();
+        return createErrorLog(context, thread, getModelExceptionFromThrowable(throwable, frameCache), allStackTraces, initializeTimestamp, true, frameCache);
     }
 
     @NonNull
     public static ManagedErrorLog createErrorLog(@NonNull Context context, @NonNull final java.lang.Thread thread, @NonNull final Exception exception, @NonNull final Map<java.lang.Thread, StackTraceElement[]> allStackTraces, final long initializeTimestamp, boolean fatal) {
+        return createErrorLog(context, thread, exception, allStackTraces, initializeTimestamp, fatal, new HashMap<StackTraceElement, StackFrame>());
+    }
+
+    @NonNull
+    private static ManagedErrorLog createErrorLog(@NonNull Context context, @NonNull final java.lang.Thread thread, @NonNull final Exception exception, @NonNull final Map<java.lang.Thread, StackTraceElement[]> allStackTraces, final long initializeTimestamp, boolean fatal, @NonNull Map<StackTraceElement, StackFrame> frameCache) {
 
         /* Build error log with a unique identifier. */
         ManagedErrorLog errorLog = new ManagedErrorLog();
@@ -165,25 +209,7 @@ public class ErrorLogHelper {
 
         /* Process information. Parent one is not available on Android. */
         errorLog.setProcessId(Process.myPid());
-        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
-        if (activityManager != null) {
-            List<ActivityManager.RunningAppProcessInfo> runningAppProcesses = activityManager.getRunningAppProcesses();
-            if (runningAppProcesses != null) {
-                for (ActivityManager.RunningAppProcessInfo info : runningAppProcesses) {
-                    if (info.pid == Process.myPid()) {
-                        errorLog.setProcessName(info.processName);
-                    }
-                }
-            }
-        }
-
-        /*
-         * Process name is required field for crash processing but cannot always be available,
-         * make sure we send a default value if not found.
-         */
-        if (errorLog.getProcessName() == null) {
-            errorLog.setProcessName("");
-        }
+        errorLog.setProcessName(getProcessName(context));
 
         /* CPU architecture. */
         errorLog.setArchitecture(getArchitecture());
@@ -201,22 +227,57 @@ public class ErrorLogHelper {
         /* Attach exceptions. */
         errorLog.setException(exception);
 
-        /* Attach thread states. */
-        List<Thread> threads = new ArrayList<>(allStackTraces.size());
-        for (Map.Entry<java.lang.Thread, StackTraceElement[]> entry : allStackTraces.entrySet()) {
+        /* Attach thread states, threads with identical stacks share the same frames. */
+        Map<java.lang.Thread, StackTraceElement[]> stackTraces = getLimitedStackTraces(thread, allStackTraces);
+        Map<List<StackTraceElement>, List<StackFrame>> stackCache = new HashMap<>();
+        List<Thread> threads = new ArrayList<>(stackTraces.size());
+        for (Map.Entry<java.lang.Thread, StackTraceElement[]> entry : stackTraces.entrySet()) {
             Thread javaThread = new Thread();
             javaThread.setId(entry.getKey().getId());
             javaThread.setName(entry.getKey().getName());
-            javaThread.setFrames(getModelFramesFromStackTrace(entry.getValue()));
+            List<StackTraceElement> stackTrace = Arrays.asList(entry.getValue());
+            List<StackFrame> frames = stackCache.get(stackTrace);
+            if (frames == null) {
+                frames = getModelFramesFromStackTrace(entry.getValue(), frameCache);
+                stackCache.put(stackTrace, frames);
+            }
+            javaThread.setFrames(frames);
             threads.add(javaThread);
         }
         errorLog.setThreads(threads);
         return errorLog;
     }
 
+    /**
+     * Get the name of the current process.
+     *
+     * @param context application context.
+     * @return process name or empty string if not found.
+     */
+    @NonNull
+    static String getProcessName(@NonNull Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager != null) {
+            List<ActivityManager.RunningAppProcessInfo> runningAppProcesses = activityManager.getRunningAppProcesses();
+            if (runningAppProcesses != null) {
+                for (ActivityManager.RunningAppProcessInfo info : runningAppProcesses) {
+                    if (info.pid == Process.myPid()) {
+                        return info.processName;
+                    }
+                }
+            }
+        }
+
+        /*
+         * Process name is required field for crash processing but cannot always be available,
+         * make sure we send a default value if not found.
+         */
+        return "";
+    }
+
     @SuppressWarnings("deprecation")
     @TargetApi(Build.VERSION_CODES.LOLLIPOP)
-    private static String getArchitecture() {
+    static String getArchitecture() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
             return Build.SUPPORTED_ABIS[0];
         } else {
@@ -321,6 +382,17 @@ public class ErrorLogHelper {
         return files != null ? files : new File[0];
     }
 
+    @NonNull
+    public static File[] getStoredCrashRecordFiles() {
+        File[] files = getErrorStorageDirectory().listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String filename) {
+                return filename.endsWith(CRASH_RECORD_FILE_EXTENSION);
+            }
+        });
+        return files != null ? files : new File[0];
+    }
+
     @NonNull
     public static File[] getNewMinidumpFiles() {
         File[] files = getNewMinidumpDirectory().listFiles();
@@ -402,14 +474,99 @@ public class ErrorLogHelper {
         FileManager.deleteDirectory(minidumpDirectory);
     }
 
+    /**
+     * Add an error log converted from a crash record to the index.
+     *
+     * @param errorLog error log.
+     * @param size     size of the error log file in characters.
+     */
+    public static synchronized void addToIndex(@NonNull ManagedErrorLog errorLog, long size) {
+        String line = errorLog.getId() + INDEX_FIELD_SEPARATOR + errorLog.getTimestamp().getTime() + INDEX_FIELD_SEPARATOR + Boolean.TRUE.equals(errorLog.getFatal()) + INDEX_FIELD_SEPARATOR + size + "\n";
+        Writer writer = null;
+        try {
+            writer = new FileWriter(new File(getErrorStorageDirectory(), INDEX_FILE), true);
+            writer.write(line);
+        } catch (IOException e) {
+            AppCenterLog.warn(Crashes.LOG_TAG, "Failed to add error log to index.", e);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException ignore) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the most recent fatal error log.
+     * <p>
+     * Crash times from the index are used for error logs converted from crash records at startup, as their file times
+     * are not reliable. Error logs saved on the crashing thread are not indexed and are compared by file time.
+     * Index entries of deleted error logs are removed here with a single rewrite.
+     *
+     * @return error log file or null if there is no error log.
+     */
     @Nullable
-    public static File getLastErrorLogFile() {
-        return FileManager.lastModifiedFile(getErrorStorageDirectory(), new FilenameFilter() {
+    public static synchronized File getLastErrorLogFile() {
+        File directory = getErrorStorageDirectory();
+        File lastModifiedFile = FileManager.lastModifiedFile(directory, new FilenameFilter() {
+
             @Override
             public boolean accept(File dir, String filename) {
                 return filename.endsWith(ERROR_LOG_FILE_EXTENSION);
             }
         });
+        File indexFile = new File(directory, INDEX_FILE);
+        if (!indexFile.exists()) {
+            return lastModifiedFile;
+        }
+        String index = FileManager.read(indexFile);
+        if (index == null) {
+            return lastModifiedFile;
+        }
+        File lastIndexedFile = null;
+        long lastTimestamp = Long.MIN_VALUE;
+        boolean lastModifiedFileIndexed = false;
+        boolean compact = false;
+        StringBuilder remaining = new StringBuilder();
+        for (String line : index.split("\n")) {
+            String[] fields = line.split(INDEX_FIELD_SEPARATOR);
+            File file = fields.length < 4 ? null : new File(directory, fields[0] + ERROR_LOG_FILE_EXTENSION);
+            if (file == null || !file.exists()) {
+                compact = true;
+                continue;
+            }
+            remaining.append(line).append('\n');
+            lastModifiedFileIndexed |= file.equals(lastModifiedFile);
+            if (!Boolean.parseBoolean(fields[2])) {
+                continue;
+            }
+            try {
+                long timestamp = Long.parseLong(fields[1]);
+                if (timestamp >= lastTimestamp) {
+                    lastIndexedFile = file;
+                    lastTimestamp = timestamp;
+                }
+            } catch (NumberFormatException e) {
+                AppCenterLog.warn(Crashes.LOG_TAG, "Ignoring invalid error log index line: " + line);
+            }
+        }
+        if (compact) {
+            try {
+                if (remaining.length() == 0) {
+                    FileManager.delete(indexFile);
+                } else {
+                    FileManager.write(indexFile, remaining.toString());
+                }
+            } catch (IOException e) {
+                AppCenterLog.warn(Crashes.LOG_TAG, "Failed to remove deleted error logs from index.", e);
+            }
+        }
+        if (lastIndexedFile == null || (lastModifiedFile != null && !lastModifiedFileIndexed && lastModifiedFile.lastModified() > lastTimestamp)) {
+            return lastModifiedFile;
+        }
+        return lastIndexedFile;
     }
 
     @Nullable
@@ -426,7 +583,7 @@ public class ErrorLogHelper {
     }
 
     @Nullable
-    static File getStoredErrorLogFile(@NonNull UUID id) {
+    public static File getStoredErrorLogFile(@NonNull UUID id) {
         return getStoredFile(id, ERROR_LOG_FILE_EXTENSION);
     }
 
@@ -469,21 +626,18 @@ public class ErrorLogHelper {
 
     @NonNull
     public static Exception getModelExceptionFromThrowable(@NonNull Throwable t) {
+        return getModelExceptionFromThrowable(t, new HashMap<StackTraceElement, StackFrame>());
+    }
+
+    @NonNull
+    private static Exception getModelExceptionFromThrowable(@NonNull Throwable t, @NonNull Map<StackTraceElement, StackFrame> frameCache) {
         Exception topException = null;
         Exception parentException = null;
-        List<Throwable> causeChain = new LinkedList<>();
-        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
-            causeChain.add(cause);
-        }
-        if (causeChain.size() > CAUSE_LIMIT) {
-            AppCenterLog.warn(Crashes.LOG_TAG, "Crash causes truncated from " + causeChain.size() + " to " + CAUSE_LIMIT + " causes.");
-            causeChain.subList(CAUSE_LIMIT_HALF, causeChain.size() - CAUSE_LIMIT_HALF).clear();
-        }
-        for (Throwable cause : causeChain) {
+        for (Throwable cause : getTruncatedCauseChain(t)) {
             Exception exception = new Exception();
             exception.setType(cause.getClass().getName());
             exception.setMessage(cause.getMessage());
-            exception.setFrames(getModelFramesFromStackTrace(cause));
+            exception.setFrames(getModelFramesFromStackTrace(getTruncatedStackTrace(cause), frameCache));
             if (topException == null) {
                 topException = exception;
             } else {
@@ -496,8 +650,34 @@ public class ErrorLogHelper {
         return topException;
     }
 
+    /**
+     * Get the cause chain of a throwable, keeping only beginning and end of huge chains.
+     *
+     * @param throwable throwable.
+     * @return throwable followed by its causes.
+     */
     @NonNull
-    private static List<StackFrame> getModelFramesFromStackTrace(@NonNull Throwable throwable) {
+    static List<Throwable> getTruncatedCauseChain(@NonNull Throwable throwable) {
+        List<Throwable> causeChain = new LinkedList<>();
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            causeChain.add(cause);
+        }
+        if (causeChain.size() > CAUSE_LIMIT) {
+            AppCenterLog.warn(Crashes.LOG_TAG, "Crash causes truncated from " + causeChain.size() + " to " + CAUSE_LIMIT + " causes.");
+            causeChain.subList(CAUSE_LIMIT_HALF, causeChain.size() - CAUSE_LIMIT_HALF).clear();
+        }
+        return causeChain;
+    }
+
+    /**
+     * Get the stack trace of a throwable, huge stack traces are truncated on the throwable itself
+     * so that the stack trace saved as is for client side inspection is truncated the same way.
+     *
+     * @param throwable throwable.
+     * @return stack trace.
+     */
+    @NonNull
+    static StackTraceElement[] getTruncatedStackTrace(@NonNull Throwable throwable) {
         StackTraceElement[] stackTrace = throwable.getStackTrace();
         if (stackTrace.length > FRAME_LIMIT) {
             StackTraceElement[] stackTraceTruncated = new StackTraceElement[FRAME_LIMIT];
@@ -507,14 +687,53 @@ public class ErrorLogHelper {
             AppCenterLog.warn(Crashes.LOG_TAG, "Crash frames truncated from " + stackTrace.length + " to " + stackTraceTruncated.length + " frames.");
             stackTrace = stackTraceTruncated;
         }
-        return getModelFramesFromStackTrace(stackTrace);
+        return stackTrace;
+    }
+
+    /**
+     * Select the thread states attached to a crash: the thread in error first with at most
+     * {@link #FRAME_LIMIT} frames, then other threads with at most {@link #THREAD_FRAME_LIMIT}
+     * frames each, up to {@link #THREAD_LIMIT} threads in total.
+     *
+     * @param errorThread    thread in error.
+     * @param allStackTraces all thread states.
+     * @return selected thread states in attachment order.
+     */
+    @NonNull
+    static Map<java.lang.Thread, StackTraceElement[]> getLimitedStackTraces(@NonNull java.lang.Thread errorThread, @NonNull Map<java.lang.Thread, StackTraceElement[]> allStackTraces) {
+        Map<java.lang.Thread, StackTraceElement[]> stackTraces = new LinkedHashMap<>();
+        StackTraceElement[] errorThreadStackTrace = allStackTraces.get(errorThread);
+        if (errorThreadStackTrace != null) {
+            stackTraces.put(errorThread, getTopFrames(errorThreadStackTrace, FRAME_LIMIT));
+        }
+        for (Map.Entry<java.lang.Thread, StackTraceElement[]> entry : allStackTraces.entrySet()) {
+            if (entry.getKey() == errorThread) {
+                continue;
+            }
+            if (stackTraces.size() >= THREAD_LIMIT) {
+                AppCenterLog.warn(Crashes.LOG_TAG, "Crash threads truncated from " + allStackTraces.size() + " to " + THREAD_LIMIT + " threads.");
+                break;
+            }
+            stackTraces.put(entry.getKey(), getTopFrames(entry.getValue(), THREAD_FRAME_LIMIT));
+        }
+        return stackTraces;
     }
 
     @NonNull
-    private static List<StackFrame> getModelFramesFromStackTrace(@NonNull StackTraceElement[] stackTrace) {
-        List<StackFrame> stackFrames = new ArrayList<>();
+    private static StackTraceElement[] getTopFrames(@NonNull StackTraceElement[] stackTrace, int limit) {
+        return stackTrace.length > limit ? Arrays.copyOf(stackTrace, limit) : stackTrace;
+    }
+
+    @NonNull
+    private static List<StackFrame> getModelFramesFromStackTrace(@NonNull StackTraceElement[] stackTrace, @NonNull Map<StackTraceElement, StackFrame> frameCache) {
+        List<StackFrame> stackFrames = new ArrayList<>(stackTrace.length);
         for (StackTraceElement stackTraceElement : stackTrace) {
-            stackFrames.add(getModelStackFrame(stackTraceElement));
+            StackFrame stackFrame = frameCache.get(stackTraceElement);
+            if (stackFrame == null) {
+                stackFrame = getModelStackFrame(stackTraceElement);
+                frameCache.put(stackTraceElement, stackFrame);
+            }
+            stackFrames.add(stackFrame);
         }
         return stackFrames;
     }
@@ -582,6 +801,49 @@ public class ErrorLogHelper {
         FileManager.cleanDirectory(ErrorLogHelper.getPendingMinidumpDirectory());
     }
 
+    /**
+     * Get the file a pending minidump is compressed to in background.
+     *
+     * @param minidumpFile minidump file in the pending directory.
+     * @return compressed minidump file.
+     */
+    @NonNull
+    public static File getCompressedMinidumpFile(@NonNull File minidumpFile) {
+        return new File(minidumpFile.getPath() + COMPRESSED_MINIDUMP_FILE_EXTENSION);
+    }
+
+    /**
+     * Read a pending minidump, whether it was compressed yet or not.
+     *
+     * @param minidumpFile minidump file in the pending directory.
+     * @return minidump contents or null if it could not be read.
+     */
+    @Nullable
+    public static byte[] readPendingMinidump(@NonNull File minidumpFile) {
+        File compressedFile = getCompressedMinidumpFile(minidumpFile);
+        if (compressedFile.exists()) {
+            return FileManager.readCompressedBytes(compressedFile);
+        }
+        byte[] contents = FileManager.readCompressedBytes(minidumpFile);
+
+        /* Compression may have completed in the meantime. */
+        if (contents == null && compressedFile.exists()) {
+            contents = FileManager.readCompressedBytes(compressedFile);
+        }
+        return contents;
+    }
+
+    /**
+     * Delete a pending minidump and its compressed copy.
+     *
+     * @param minidumpFile minidump file in the pending directory.
+     */
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    public static void deletePendingMinidump(@NonNull File minidumpFile) {
+        minidumpFile.delete();
+        getCompressedMinidumpFile(minidumpFile).delete();
+    }
+
     /**
      * Parse log folder name UUID. Fallback to random UUID.
      *
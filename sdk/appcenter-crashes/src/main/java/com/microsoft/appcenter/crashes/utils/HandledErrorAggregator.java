@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.crashes.utils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.crashes.Crashes;
+import com.microsoft.appcenter.crashes.ingestion.models.Exception;
+import com.microsoft.appcenter.crashes.ingestion.models.HandledErrorLog;
+import com.microsoft.appcenter.crashes.ingestion.models.StackFrame;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limits handled errors that repeat.
+ * <p>
+ * Errors are grouped by fingerprint: exception types and top frames. Each fingerprint has a token bucket,
+ * errors are sent as long as tokens are available. Other occurrences are aggregated: the last one is kept
+ * and sent by {@link #flush(long)} with the number of occurrences it stands for in
+ * the {@link #OCCURRENCE_COUNT_PROPERTY} property.
+ */
+public class HandledErrorAggregator {
+
+    /**
+     * Property set on aggregated errors with the number of occurrences.
+     */
+    @VisibleForTesting
+    public static final String OCCURRENCE_COUNT_PROPERTY = "occurrenceCount";
+
+    /**
+     * Interval at which aggregated errors are sent.
+     */
+    public static final long FLUSH_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * Number of errors with the same fingerprint that can be sent at once.
+     */
+    @VisibleForTesting
+    public static final int BUCKET_CAPACITY = 10;
+
+    /**
+     * Time to get a new token in a bucket.
+     */
+    @VisibleForTesting
+    static final long TOKEN_INTERVAL = FLUSH_INTERVAL / BUCKET_CAPACITY;
+
+    /**
+     * Number of top frames used in fingerprints.
+     */
+    @VisibleForTesting
+    static final int FINGERPRINT_FRAME_COUNT = 5;
+
+    /**
+     * Maximum number of fingerprints tracked, least recently seen ones are evicted first.
+     */
+    @VisibleForTesting
+    static final int MAX_FINGERPRINTS = 128;
+
+    /**
+     * Buckets by fingerprint, in access order.
+     */
+    private final Map<String, Bucket> mBuckets = new LinkedHashMap<String, Bucket>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Bucket> eldest) {
+            boolean evict = size() > MAX_FINGERPRINTS;
+            if (evict && eldest.getValue().mPendingLog != null) {
+                AppCenterLog.warn(Crashes.LOG_TAG, "Dropping " + eldest.getValue().mOccurrenceCount + " aggregated occurrences of handled error " + eldest.getKey());
+            }
+            return evict;
+        }
+    };
+
+    /**
+     * Compute the fingerprint of an exception.
+     *
+     * @param exception exception model.
+     * @return fingerprint.
+     */
+    @NonNull
+    @VisibleForTesting
+    static String getFingerprint(@NonNull Exception exception) {
+        StringBuilder fingerprint = new StringBuilder().append(exception.getType());
+        List<StackFrame> frames = exception.getFrames();
+        if (frames != null) {
+            for (int i = 0; i < Math.min(frames.size(), FINGERPRINT_FRAME_COUNT); i++) {
+                StackFrame frame = frames.get(i);
+                fingerprint.append('|').append(frame.getClassName()).append('.').append(frame.getMethodName()).append(':').append(frame.getLineNumber());
+            }
+        } else if (exception.getStackTrace() != null) {
+            fingerprint.append('|').append(exception.getStackTrace().hashCode());
+        }
+        List<Exception> innerExceptions = exception.getInnerExceptions();
+        if (innerExceptions != null) {
+            for (Exception innerException : innerExceptions) {
+                fingerprint.append('|').append(innerException.getType());
+            }
+        }
+        return fingerprint.toString();
+    }
+
+    /**
+     * Count an occurrence of a handled error.
+     *
+     * @param errorLog handled error.
+     * @param now      current time in milliseconds.
+     * @return true if the error can be sent now, false if it was aggregated and will be sent by {@link #flush(long)}.
+     */
+    public synchronized boolean add(@NonNull HandledErrorLog errorLog, long now) {
+        String fingerprint = getFingerprint(errorLog.getException());
+        Bucket bucket = mBuckets.get(fingerprint);
+        if (bucket == null) {
+            bucket = new Bucket(now);
+            mBuckets.put(fingerprint, bucket);
+        }
+        bucket.refill(now);
+
+        /* Keep order: once aggregating, wait for the flush. */
+        if (bucket.mPendingLog == null && bucket.mTokens > 0) {
+            bucket.mTokens--;
+            return true;
+        }
+        bucket.mPendingLog = errorLog;
+        bucket.mOccurrenceCount++;
+        return false;
+    }
+
+    /**
+     * Get one error per aggregated fingerprint with its occurrence count.
+     *
+     * @param now current time in milliseconds.
+     * @return errors to send.
+     */
+    @NonNull
+    public synchronized List<HandledErrorLog> flush(long now) {
+        List<HandledErrorLog> logs = new ArrayList<>();
+        for (Bucket bucket : mBuckets.values()) {
+            HandledErrorLog errorLog = bucket.mPendingLog;
+            if (errorLog == null) {
+                continue;
+            }
+            bucket.refill(now);
+            bucket.mTokens = Math.max(0, bucket.mTokens - 1);
+            Map<String, String> properties = errorLog.getProperties() != null ? new HashMap<>(errorLog.getProperties()) : new HashMap<String, String>();
+            if (properties.size() < ErrorLogHelper.MAX_PROPERTY_COUNT) {
+                properties.put(OCCURRENCE_COUNT_PROPERTY, String.valueOf(bucket.mOccurrenceCount));
+            } else {
+                AppCenterLog.warn(Crashes.LOG_TAG, "No room to add occurrence count to aggregated handled error, it stands for " + bucket.mOccurrenceCount + " occurrences.");
+            }
+            errorLog.setProperties(properties);
+            logs.add(errorLog);
+            bucket.mPendingLog = null;
+            bucket.mOccurrenceCount = 0;
+        }
+        return logs;
+    }
+
+    /**
+     * Forget all fingerprints and aggregated errors.
+     */
+    public synchronized void clear() {
+        mBuckets.clear();
+    }
+
+    /**
+     * Token bucket with the aggregated occurrences of a fingerprint.
+     */
+    private static class Bucket {
+
+        /**
+         * Available tokens.
+         */
+        int mTokens = BUCKET_CAPACITY;
+
+        /**
+         * Time of the last refill.
+         */
+        long mRefillTime;
+
+        /**
+         * Last aggregated occurrence.
+         */
+        HandledErrorLog mPendingLog;
+
+        /**
+         * Number of aggregated occurrences.
+         */
+        int mOccurrenceCount;
+
+        Bucket(long now) {
+            mRefillTime = now;
+        }
+
+        void refill(long now) {
+            long newTokens = (now - mRefillTime) / TOKEN_INTERVAL;
+            if (newTokens > 0) {
+                mTokens = (int) Math.min(BUCKET_CAPACITY, mTokens + newTokens);
+                mRefillTime += newTokens * TOKEN_INTERVAL;
+            } else if (newTokens < 0) {
+
+                /* Clock went back. */
+                mRefillTime = now;
+            }
+        }
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.crashes.utils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.crashes.Crashes;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Stores wrapper SDK exception data by error identifier in a single memory mapped, append only file.
+ * <p>
+ * Each record is a type byte, the error identifier, the data length and the data in UTF-8.
+ * Deleting data appends a record without data. Records are indexed by identifier when the file is opened,
+ * the file is compacted when deleted records take more space than live ones.
+ * <p>
+ * The type byte is written last so that a record interrupted by a crash is ignored when reading.
+ * Memory mapped writes are flushed by the system even if the process crashes right after.
+ */
+public class WrapperExceptionDataStore {
+
+    /**
+     * Store file name in the error storage directory.
+     */
+    @VisibleForTesting
+    static final String FILE_NAME = "wrapper_exception_data";
+
+    /**
+     * Initial and minimum mapped size of the file.
+     */
+    @VisibleForTesting
+    static final int MIN_CAPACITY = 16 * 1024;
+
+    /**
+     * Record type of data.
+     */
+    private static final byte RECORD_DATA = 1;
+
+    /**
+     * Record type of a deletion.
+     */
+    private static final byte RECORD_DELETE = 2;
+
+    /**
+     * Size of the record type, identifier and data length.
+     */
+    private static final int HEADER_SIZE = 1 + 16 + 4;
+
+    /**
+     * Charset of data.
+     */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * Store file.
+     */
+    private final File mFile;
+
+    /**
+     * Position of live data records by error identifier.
+     */
+    private final Map<UUID, Record> mIndex = new HashMap<>();
+
+    /**
+     * Opened file.
+     */
+    private RandomAccessFile mRandomAccessFile;
+
+    /**
+     * Mapped file contents.
+     */
+    private MappedByteBuffer mBuffer;
+
+    /**
+     * Position where the next record is appended.
+     */
+    private int mEnd;
+
+    /**
+     * Number of bytes used by deleted or overwritten records.
+     */
+    private int mDeadSize;
+
+    private WrapperExceptionDataStore(File file) throws IOException {
+        mFile = file;
+        open();
+    }
+
+    /**
+     * Open the store of a directory.
+     *
+     * @param directory directory of the store file.
+     * @param create    true to create the file if missing.
+     * @return store or null if the file does not exist and should not be created.
+     * @throws IOException if the file cannot be opened.
+     */
+    @Nullable
+    public static WrapperExceptionDataStore open(File directory, boolean create) throws IOException {
+        File file = new File(directory, FILE_NAME);
+        if (!create && !file.exists()) {
+            return null;
+        }
+        return new WrapperExceptionDataStore(file);
+    }
+
+    /**
+     * Save data for an error, replacing any previous data.
+     *
+     * @param errorId error identifier.
+     * @param data    data to save.
+     * @throws IOException if the file cannot be extended.
+     */
+    public synchronized void put(@NonNull UUID errorId, @NonNull String data) throws IOException {
+        byte[] bytes = data.getBytes(CHARSET);
+        int offset = append(RECORD_DATA, errorId, bytes);
+        Record previous = mIndex.put(errorId, new Record(offset, bytes.length));
+        if (previous != null) {
+            mDeadSize += HEADER_SIZE + previous.mLength;
+        }
+    }
+
+    /**
+     * Get data of an error.
+     *
+     * @param errorId error identifier.
+     * @return data or null if not found.
+     */
+    @Nullable
+    public synchronized String get(@NonNull UUID errorId) {
+        Record record = mIndex.get(errorId);
+        return record != null ? read(record) : null;
+    }
+
+    /**
+     * Delete data of an error.
+     *
+     * @param errorId error identifier.
+     * @return deleted data or null if not found.
+     */
+    @Nullable
+    public synchronized String remove(@NonNull UUID errorId) {
+        Record record = mIndex.remove(errorId);
+        if (record == null) {
+            return null;
+        }
+        String data = read(record);
+        mDeadSize += HEADER_SIZE + record.mLength;
+        try {
+            append(RECORD_DELETE, errorId, new byte[0]);
+            mDeadSize += HEADER_SIZE;
+            if (mDeadSize > mEnd / 2 && mEnd > MIN_CAPACITY / 2) {
+                compact();
+            }
+        } catch (IOException e) {
+
+            /* Data would be read again after restart. */
+            AppCenterLog.error(Crashes.LOG_TAG, "Failed to delete wrapper exception data.", e);
+        }
+        return data;
+    }
+
+    /**
+     * Close the file.
+     */
+    public synchronized void close() {
+        try {
+            mRandomAccessFile.close();
+        } catch (IOException e) {
+            AppCenterLog.warn(Crashes.LOG_TAG, "Failed to close wrapper exception data file.", e);
+        }
+        mIndex.clear();
+    }
+
+    @VisibleForTesting
+    synchronized int getFileSize() {
+        return mBuffer.capacity();
+    }
+
+    private void open() throws IOException {
+        mRandomAccessFile = new RandomAccessFile(mFile, "rw");
+        map((int) Math.max(mRandomAccessFile.length(), MIN_CAPACITY));
+        mIndex.clear();
+        mEnd = 0;
+        mDeadSize = 0;
+        while (mEnd + HEADER_SIZE <= mBuffer.capacity()) {
+            byte type = mBuffer.get(mEnd);
+            UUID errorId = new UUID(mBuffer.getLong(mEnd + 1), mBuffer.getLong(mEnd + 9));
+            int length = mBuffer.getInt(mEnd + 17);
+            if ((type != RECORD_DATA && type != RECORD_DELETE) || length < 0 || length > mBuffer.capacity() - mEnd - HEADER_SIZE) {
+                break;
+            }
+            Record previous = type == RECORD_DATA ? mIndex.put(errorId, new Record(mEnd, length)) : mIndex.remove(errorId);
+            if (previous != null) {
+                mDeadSize += HEADER_SIZE + previous.mLength;
+            }
+            if (type == RECORD_DELETE) {
+                mDeadSize += HEADER_SIZE;
+            }
+            mEnd += HEADER_SIZE + length;
+        }
+
+        /* Clear any record interrupted by a crash so that it cannot be mixed with the next ones. */
+        for (int i = mEnd; i < mBuffer.capacity(); i++) {
+            if (mBuffer.get(i) != 0) {
+                mBuffer.put(i, (byte) 0);
+            }
+        }
+    }
+
+    private void map(int capacity) throws IOException {
+        mBuffer = mRandomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private int append(byte type, UUID errorId, byte[] bytes) throws IOException {
+        int size = HEADER_SIZE + bytes.length;
+        if (mEnd + size > mBuffer.capacity()) {
+            if (mDeadSize > 0) {
+                compact();
+            }
+            int capacity = mBuffer.capacity();
+            while (mEnd + size > capacity) {
+                capacity *= 2;
+            }
+            if (capacity > mBuffer.capacity()) {
+                map(capacity);
+            }
+        }
+        int offset = mEnd;
+        mBuffer.putLong(offset + 1, errorId.getMostSignificantBits());
+        mBuffer.putLong(offset + 9, errorId.getLeastSignificantBits());
+        mBuffer.putInt(offset + 17, bytes.length);
+        ByteBuffer buffer = mBuffer.duplicate();
+        buffer.position(offset + HEADER_SIZE);
+        buffer.put(bytes);
+        mBuffer.put(offset, type);
+        mEnd += size;
+        return offset;
+    }
+
+    private String read(Record record) {
+        byte[] bytes = new byte[record.mLength];
+        ByteBuffer buffer = mBuffer.duplicate();
+        buffer.position(record.mOffset + HEADER_SIZE);
+        buffer.get(bytes);
+        return new String(bytes, CHARSET);
+    }
+
+    /**
+     * Rewrite live records in a new file that replaces the current one.
+     */
+    private void compact() throws IOException {
+        int liveSize = mEnd - mDeadSize;
+        int capacity = MIN_CAPACITY;
+        while (capacity < liveSize * 2) {
+            capacity *= 2;
+        }
+        File compactedFile = new File(mFile.getPath() + ".tmp");
+        RandomAccessFile compactedRandomAccessFile = new RandomAccessFile(compactedFile, "rw");
+        Map<UUID, Record> compactedIndex = new HashMap<>();
+        int end = 0;
+        try {
+            compactedRandomAccessFile.setLength(0);
+            MappedByteBuffer compactedBuffer = compactedRandomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            for (Map.Entry<UUID, Record> entry : mIndex.entrySet()) {
+                Record record = entry.getValue();
+                ByteBuffer source = mBuffer.duplicate();
+                source.position(record.mOffset).limit(record.mOffset + HEADER_SIZE + record.mLength);
+                compactedBuffer.position(end);
+                compactedBuffer.put(source);
+                compactedIndex.put(entry.getKey(), new Record(end, record.mLength));
+                end += HEADER_SIZE + record.mLength;
+            }
+            compactedBuffer.force();
+        } catch (IOException e) {
+            compactedRandomAccessFile.close();
+
+            //noinspection ResultOfMethodCallIgnored
+            compactedFile.delete();
+            throw e;
+        }
+        if (!compactedFile.renameTo(mFile)) {
+            compactedRandomAccessFile.close();
+
+            //noinspection ResultOfMethodCallIgnored
+            compactedFile.delete();
+            throw new IOException("Failed to replace wrapper exception data file.");
+        }
+        mRandomAccessFile.close();
+        mRandomAccessFile = compactedRandomAccessFile;
+        map(capacity);
+        mIndex.clear();
+        mIndex.putAll(compactedIndex);
+        AppCenterLog.debug(Crashes.LOG_TAG, "Compacted wrapper exception data from " + mEnd + " to " + end + " bytes.");
+        mEnd = end;
+        mDeadSize = 0;
+    }
+
+    /**
+     * Position of a data record.
+     */
+    private static class Record {
+
+        /**
+         * Offset of the record in the file.
+         */
+        final int mOffset;
+
+        /**
+         * Data length.
+         */
+        final int mLength;
+
+        Record(int offset, int length) {
+            mOffset = offset;
+            mLength = length;
+        }
+    }
+}
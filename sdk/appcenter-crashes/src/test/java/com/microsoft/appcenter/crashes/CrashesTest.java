@@ -14,6 +14,7 @@ import android.os.Looper;
 import com.microsoft.appcenter.AppCenter;
 import com.microsoft.appcenter.Constants;
 import com.microsoft.appcenter.channel.Channel;
+import com.microsoft.appcenter.channel.NetworkPolicy;
 import com.microsoft.appcenter.crashes.ingestion.models.ErrorAttachmentLog;
 import com.microsoft.appcenter.crashes.ingestion.models.HandledErrorLog;
 import com.microsoft.appcenter.crashes.ingestion.models.ManagedErrorLog;
@@ -22,6 +23,7 @@ import com.microsoft.appcenter.crashes.ingestion.models.json.HandledErrorLogFact
 import com.microsoft.appcenter.crashes.ingestion.models.json.ManagedErrorLogFactory;
 import com.microsoft.appcenter.crashes.model.ErrorReport;
 import com.microsoft.appcenter.crashes.model.TestCrashException;
+import com.microsoft.appcenter.crashes.utils.CrashRecorder;
 import com.microsoft.appcenter.crashes.utils.ErrorLogHelper;
 import com.microsoft.appcenter.ingestion.Ingestion;
 import com.microsoft.appcenter.ingestion.models.Device;
@@ -155,6 +157,7 @@ public class CrashesTest extends AbstractCrashesTest {
         when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(dir);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(dir.listFiles()).thenReturn(new File[]{file1, file2});
         crashes.setUncaughtExceptionHandler(mockHandler);
         when(SharedPreferencesManager.getBoolean(CRASHES_ENABLED_KEY, true)).thenReturn(false);
@@ -203,6 +206,7 @@ public class CrashesTest extends AbstractCrashesTest {
         when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(dir);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(dir.listFiles()).thenReturn(new File[]{file1, file2});
 
         /* Before start it's disabled. */
@@ -214,6 +218,9 @@ public class CrashesTest extends AbstractCrashesTest {
         crashes.onStarted(mock(Context.class), mockChannel, "", null, true);
         verify(mockChannel).removeGroup(eq(crashes.getGroupName()));
         verify(mockChannel).addGroup(eq(crashes.getGroupName()), anyInt(), anyInt(), anyInt(), isNull(Ingestion.class), any(Channel.GroupListener.class));
+        verify(mockChannel).setNetworkPolicy(Crashes.ERROR_ATTACHMENT_GROUP, NetworkPolicy.WIFI);
+        verify(mockChannel).addGroup(eq(Crashes.ERROR_ATTACHMENT_GROUP), anyInt(), anyInt(), anyInt(), isNull(Ingestion.class), any(Channel.GroupListener.class));
+        verify(mockChannel).addListener(any(Channel.Listener.class));
 
         /* Test. */
         assertTrue(Crashes.isEnabled().get());
@@ -224,6 +231,9 @@ public class CrashesTest extends AbstractCrashesTest {
         assertFalse(Crashes.isEnabled().get());
         verify(mockChannel).clear(crashes.getGroupName());
         verify(mockChannel, times(2)).removeGroup(eq(crashes.getGroupName()));
+        verify(mockChannel).clear(Crashes.ERROR_ATTACHMENT_GROUP);
+        verify(mockChannel).removeGroup(Crashes.ERROR_ATTACHMENT_GROUP);
+        verify(mockChannel).removeListener(any(Channel.Listener.class));
         assertEquals(crashes.getInitializeTimestamp(), -1);
         assertFalse(Thread.getDefaultUncaughtExceptionHandler() instanceof UncaughtExceptionHandler);
         assertFalse(verify(file1).delete());
@@ -239,6 +249,7 @@ public class CrashesTest extends AbstractCrashesTest {
         Crashes.setEnabled(true);
         assertTrue(Crashes.isEnabled().get());
         verify(mockChannel, times(2)).addGroup(eq(crashes.getGroupName()), anyInt(), anyInt(), anyInt(), isNull(Ingestion.class), any(Channel.GroupListener.class));
+        verify(mockChannel, times(2)).addGroup(eq(Crashes.ERROR_ATTACHMENT_GROUP), anyInt(), anyInt(), anyInt(), isNull(Ingestion.class), any(Channel.GroupListener.class));
         Crashes.trackError(EXCEPTION);
         verify(mockChannel, times(1)).enqueue(isA(HandledErrorLog.class), eq(crashes.getGroupName()), eq(DEFAULTS));
     }
@@ -258,6 +269,7 @@ public class CrashesTest extends AbstractCrashesTest {
         when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(dir);
         when(dir.listFiles()).thenReturn(null);
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[]{mockErrorFile});
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{});
 
         /* Start. */
@@ -299,6 +311,7 @@ public class CrashesTest extends AbstractCrashesTest {
         mockStatic(ErrorLogHelper.class);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
         when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), anyString())).thenReturn(report);
         when(FileManager.read(any(File.class))).thenReturn("");
@@ -334,7 +347,64 @@ public class CrashesTest extends AbstractCrashesTest {
                 return log.equals(mErrorLog);
             }
         }), eq(crashes.getGroupName()), eq(CRITICAL));
-        verify(mockChannel, times(errorAttachmentLogList.size() - skipAttachmentLogsCount)).enqueue(mockAttachment, crashes.getGroupName(), DEFAULTS);
+        verify(mockChannel, times(errorAttachmentLogList.size() - skipAttachmentLogsCount)).enqueue(mockAttachment, Crashes.ERROR_ATTACHMENT_GROUP, DEFAULTS);
+    }
+
+    @Test
+    public void parsePendingCrashesInParallel() throws JSONException {
+
+        /* Setup mock with enough files to parse them in parallel, one being invalid. */
+        Context mockContext = mock(Context.class);
+        Channel mockChannel = mock(Channel.class);
+        File[] files = new File[Crashes.PARALLEL_PARSING_THRESHOLD + 1];
+        final List<ManagedErrorLog> errorLogs = new ArrayList<>();
+        for (int i = 0; i < files.length; i++) {
+            errorLogs.add(ErrorLogHelper.createErrorLog(mock(Context.class), Thread.currentThread(), new RuntimeException(), Thread.getAllStackTraces(), 0));
+        }
+        mockStatic(ErrorLogHelper.class);
+        for (int i = 0; i < files.length; i++) {
+            files[i] = mock(File.class);
+            when(FileManager.read(files[i])).thenReturn(String.valueOf(i));
+            when(ErrorLogHelper.getErrorReportFromErrorLog(eq(errorLogs.get(i)), anyString())).thenReturn(new ErrorReport());
+        }
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(files);
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
+        final JSONException jsonException = new JSONException("Fake JSON exception");
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.deserializeLog(anyString(), anyString())).thenAnswer(new Answer<Log>() {
+
+            @Override
+            public Log answer(InvocationOnMock invocation) throws Throwable {
+                int index = Integer.parseInt(invocation.getArguments()[0].toString());
+                if (index == 1) {
+                    throw jsonException;
+                }
+                return errorLogs.get(index);
+            }
+        });
+        CrashesListener mockListener = mock(CrashesListener.class);
+        when(mockListener.shouldProcess(any(ErrorReport.class))).thenReturn(true);
+        Crashes crashes = Crashes.getInstance();
+        crashes.setLogSerializer(logSerializer);
+        crashes.setInstanceListener(mockListener);
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mockContext, mockChannel, "", null, true);
+
+        /* Valid logs are processed in file order, invalid one is deleted. */
+        verify(mockListener, times(files.length - 1)).shouldProcess(any(ErrorReport.class));
+        InOrder inOrder = inOrder(mockChannel);
+        for (int i = 0; i < files.length; i++) {
+            if (i != 1) {
+                inOrder.verify(mockChannel).enqueue(errorLogs.get(i), crashes.getGroupName(), CRITICAL);
+            }
+        }
+
+        //noinspection ResultOfMethodCallIgnored
+        verify(files[1]).delete();
+        verifyStatic();
+        AppCenterLog.error(eq(Crashes.LOG_TAG), anyString(), eq(jsonException));
     }
 
     @Test
@@ -347,6 +417,7 @@ public class CrashesTest extends AbstractCrashesTest {
         mockStatic(ErrorLogHelper.class);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
         when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), anyString())).thenReturn(report);
         when(FileManager.read(any(File.class))).thenReturn("");
@@ -389,6 +460,7 @@ public class CrashesTest extends AbstractCrashesTest {
         mockStatic(ErrorLogHelper.class);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
         when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), anyString())).thenReturn(report);
         when(FileManager.read(any(File.class))).thenReturn("");
@@ -422,7 +494,7 @@ public class CrashesTest extends AbstractCrashesTest {
             }
         }), eq(crashes.getGroupName()), eq(CRITICAL));
 
-        verify(mockChannel, times(errorAttachmentLogList.size())).enqueue(mockAttachment, crashes.getGroupName(), DEFAULTS);
+        verify(mockChannel, times(errorAttachmentLogList.size())).enqueue(mockAttachment, Crashes.ERROR_ATTACHMENT_GROUP, DEFAULTS);
     }
 
     @Test
@@ -430,6 +502,7 @@ public class CrashesTest extends AbstractCrashesTest {
         mockStatic(ErrorLogHelper.class);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(FileManager.read(any(File.class))).thenReturn("");
 
         Crashes crashes = Crashes.getInstance();
@@ -468,6 +541,7 @@ public class CrashesTest extends AbstractCrashesTest {
         mockStatic(ErrorLogHelper.class);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
 
         Crashes crashes = Crashes.getInstance();
         LogSerializer logSerializer = mock(LogSerializer.class);
@@ -489,6 +563,7 @@ public class CrashesTest extends AbstractCrashesTest {
         mockStatic(ErrorLogHelper.class);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(FileManager.read(any(File.class))).thenReturn("");
         Crashes crashes = Crashes.getInstance();
         LogSerializer logSerializer = mock(LogSerializer.class);
@@ -527,6 +602,7 @@ public class CrashesTest extends AbstractCrashesTest {
         when(ErrorLogHelper.getLastErrorLogFile()).thenReturn(errorLogFile);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         File throwableFile = mock(File.class);
         when(throwableFile.length()).thenReturn(1L);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(throwableFile);
@@ -584,6 +660,7 @@ public class CrashesTest extends AbstractCrashesTest {
         mockStatic(ErrorLogHelper.class);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
         when(FileManager.read(any(File.class))).thenReturn(null);
 
@@ -613,6 +690,7 @@ public class CrashesTest extends AbstractCrashesTest {
         mockStatic(ErrorLogHelper.class);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
         when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), anyString())).thenReturn(new ErrorReport());
         File pendingFolder = mock(File.class);
@@ -653,6 +731,7 @@ public class CrashesTest extends AbstractCrashesTest {
         mockStatic(ErrorLogHelper.class);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
         when(FileManager.read(any(File.class))).thenReturn(null);
 
@@ -757,6 +836,7 @@ public class CrashesTest extends AbstractCrashesTest {
         when(ErrorLogHelper.getLastErrorLogFile()).thenReturn(null);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         assertNull(Crashes.getLastSessionCrashReport().get());
         Crashes.getInstance().onStarted(mock(Context.class), mock(Channel.class), "", null, true);
         assertFalse(Crashes.hasCrashedInLastSession().get());
@@ -793,6 +873,7 @@ public class CrashesTest extends AbstractCrashesTest {
         when(ErrorLogHelper.getErrorReportFromErrorLog(errorLog, STACK_TRACE)).thenReturn(errorReport);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{lastErrorLogFile});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(FileManager.read(any(File.class))).thenReturn("fake_data").thenReturn(STACK_TRACE);
 
         Crashes crashes = Crashes.getInstance();
@@ -868,6 +949,7 @@ public class CrashesTest extends AbstractCrashesTest {
         when(ErrorLogHelper.getLastErrorLogFile()).thenReturn(lastErrorLogFile);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{lastErrorLogFile});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(FileManager.read(any(File.class))).thenReturn("fake_data");
 
         Crashes crashes = Crashes.getInstance();
@@ -905,6 +987,7 @@ public class CrashesTest extends AbstractCrashesTest {
         new FileWriter(file).append("fake_data").close();
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{file});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getLastErrorLogFile()).thenReturn(file);
         Crashes.getInstance().onStarted(mock(Context.class), mock(Channel.class), "", null, true);
         assertFalse(Crashes.hasCrashedInLastSession().get());
@@ -917,6 +1000,7 @@ public class CrashesTest extends AbstractCrashesTest {
         when(ErrorLogHelper.getLastErrorLogFile()).thenReturn(null);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
 
         @SuppressWarnings("unchecked")
         AppCenterConsumer<ErrorReport> callback = (AppCenterConsumer<ErrorReport>) mock(AppCenterConsumer.class);
@@ -952,6 +1036,7 @@ public class CrashesTest extends AbstractCrashesTest {
         mockStatic(ErrorLogHelper.class);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
         when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), anyString())).thenReturn(new ErrorReport());
         when(FileManager.read(any(File.class))).thenReturn("");
@@ -965,10 +1050,72 @@ public class CrashesTest extends AbstractCrashesTest {
         crashes.onStarted(mock(Context.class), channel, "", null, true);
 
         /* Check we send only the text attachment as the binary is too big. */
-        verify(channel).enqueue(textAttachment, crashes.getGroupName(), NORMAL);
+        verify(channel).enqueue(textAttachment, Crashes.ERROR_ATTACHMENT_GROUP, NORMAL);
         verify(channel, never()).enqueue(eq(binaryAttachment), anyString(), anyInt());
     }
 
+    @Test
+    public void evictErrorReportsFromCache() throws Exception {
+
+        /* Setup 2 crashes on disk with stack traces that do not fit together in cache. */
+        Context mockContext = mock(Context.class);
+        Channel mockChannel = mock(Channel.class);
+        ManagedErrorLog log1 = new ManagedErrorLog();
+        log1.setId(UUID.randomUUID());
+        ManagedErrorLog log2 = new ManagedErrorLog();
+        log2.setId(UUID.randomUUID());
+        ErrorReport report1 = new ErrorReport();
+        report1.setId(log1.getId().toString());
+        ErrorReport report2 = new ErrorReport();
+        report2.setId(log2.getId().toString());
+        String stackTrace = new String(new char[(int) (Crashes.MAX_ERROR_REPORT_CACHE_SIZE / 3)]);
+        File logFile1 = mock(File.class);
+        File logFile2 = mock(File.class);
+        File throwableFile = mock(File.class);
+        when(throwableFile.length()).thenReturn((long) stackTrace.length());
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{logFile1, logFile2});
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredErrorLogFile(log1.getId())).thenReturn(logFile1);
+        when(ErrorLogHelper.getStoredErrorLogFile(log2.getId())).thenReturn(logFile2);
+        when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(throwableFile);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(eq(log1), anyString())).thenReturn(report1);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(eq(log2), anyString())).thenReturn(report2);
+        when(FileManager.read(logFile1)).thenReturn("1");
+        when(FileManager.read(logFile2)).thenReturn("2");
+        when(FileManager.read(throwableFile)).thenReturn(stackTrace);
+        report1.setStackTrace(stackTrace);
+        report2.setStackTrace(stackTrace);
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.deserializeLog(eq("1"), anyString())).thenReturn(log1);
+        when(logSerializer.deserializeLog(eq("2"), anyString())).thenReturn(log2);
+        Crashes crashes = Crashes.getInstance();
+        crashes.setLogSerializer(logSerializer);
+        WrapperSdkExceptionManager.setAutomaticProcessing(false);
+
+        /* Start crashes: first report is evicted when building the second one. */
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mockContext, mockChannel, "", null, true);
+        assertEquals(1, crashes.getErrorReportCacheCount());
+
+        /* Evicted report is read again from disk. */
+        Collection<ErrorReport> reports = WrapperSdkExceptionManager.getUnprocessedErrorReports().get();
+        assertEquals(Arrays.asList(report1, report2), new ArrayList<>(reports));
+        assertEquals(1, crashes.getErrorReportCacheCount());
+        verifyStatic(times(2));
+        FileManager.read(logFile1);
+
+        /* Send both. */
+        assertFalse(WrapperSdkExceptionManager.sendCrashReportsOrAwaitUserConfirmation(Arrays.asList(report1.getId(), report2.getId())).get());
+        Crashes.notifyUserConfirmation(Crashes.SEND);
+        verify(mockChannel).enqueue(log1, crashes.getGroupName(), CRITICAL);
+        verify(mockChannel).enqueue(log2, crashes.getGroupName(), CRITICAL);
+
+        /* Sent logs are no longer unprocessed. */
+        assertTrue(WrapperSdkExceptionManager.getUnprocessedErrorReports().get().isEmpty());
+    }
+
     @Test
     public void manualProcessing() throws Exception {
 
@@ -981,6 +1128,7 @@ public class CrashesTest extends AbstractCrashesTest {
         mockStatic(ErrorLogHelper.class);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class), mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
         when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), anyString())).thenReturn(report1).thenReturn(report2);
         when(FileManager.read(any(File.class))).thenReturn("");
@@ -1046,7 +1194,7 @@ public class CrashesTest extends AbstractCrashesTest {
         when(mockAttachment.getData()).thenReturn(new byte[0]);
         when(mockAttachment.isValid()).thenReturn(true);
         WrapperSdkExceptionManager.sendErrorAttachments(report1.getId(), Collections.singletonList(mockAttachment));
-        verify(mockChannel).enqueue(eq(mockAttachment), eq(crashes.getGroupName()), eq(DEFAULTS));
+        verify(mockChannel).enqueue(eq(mockAttachment), eq(Crashes.ERROR_ATTACHMENT_GROUP), eq(DEFAULTS));
 
         /* Send attachment with invalid UUID format for report identifier. */
         mockAttachment = mock(ErrorAttachmentLog.class);
@@ -1054,7 +1202,7 @@ public class CrashesTest extends AbstractCrashesTest {
         when(mockAttachment.getData()).thenReturn(new byte[0]);
         when(mockAttachment.isValid()).thenReturn(true);
         WrapperSdkExceptionManager.sendErrorAttachments("not-a-uuid", Collections.singletonList(mockAttachment));
-        verify(mockChannel, never()).enqueue(eq(mockAttachment), eq(crashes.getGroupName()), anyInt());
+        verify(mockChannel, never()).enqueue(eq(mockAttachment), eq(Crashes.ERROR_ATTACHMENT_GROUP), anyInt());
 
         /* We used manual process function, listener not called and our mock channel does not send events. */
         verifyZeroInteractions(listener);
@@ -1088,6 +1236,7 @@ public class CrashesTest extends AbstractCrashesTest {
         mockStatic(ErrorLogHelper.class);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class), mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
         when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), anyString())).thenReturn(report1).thenReturn(report2);
         when(FileManager.read(any(File.class))).thenReturn("");
@@ -1167,6 +1316,7 @@ public class CrashesTest extends AbstractCrashesTest {
         when(ErrorLogHelper.getLastErrorLogFile()).thenReturn(errorLogFile);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[]{minidumpSubfolder});
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         File pendingDir = mock(File.class);
         Whitebox.setInternalState(pendingDir, "path", "");
         when(ErrorLogHelper.getPendingMinidumpDirectory()).thenReturn(pendingDir);
@@ -1264,6 +1414,7 @@ public class CrashesTest extends AbstractCrashesTest {
         when(exception.getMinidumpFilePath()).thenReturn(null);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class), mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
         when(FileManager.read(any(File.class))).thenReturn("");
         String jsonCrash = "{}";
@@ -1318,6 +1469,7 @@ public class CrashesTest extends AbstractCrashesTest {
         /* This mocks we already processed minidump to convert to pending regular crash report as that would be the case if migrating data from older SDK. */
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
         when(FileManager.read(any(File.class))).thenReturn("");
         String jsonCrash = "{}";
@@ -1359,6 +1511,7 @@ public class CrashesTest extends AbstractCrashesTest {
         mockStatic(ErrorLogHelper.class);
         when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(mock(File.class));
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[]{});
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{});
         when(ErrorLogHelper.createErrorLog(any(Context.class), any(Thread.class), any(com.microsoft.appcenter.crashes.ingestion.models.Exception.class), anyMapOf(Thread.class, StackTraceElement[].class), anyLong(), anyBoolean())).thenReturn(mErrorLog);
         File throwableFile = mock(File.class);
@@ -1380,6 +1533,11 @@ public class CrashesTest extends AbstractCrashesTest {
         doThrow(new StackOverflowError()).when(FileManager.class);
         FileManager.write(throwableFile, STACK_TRACE);
 
+        /* Make crash records fail to test the stack trace on the fallback path. */
+        CrashRecorder crashRecorder = mock(CrashRecorder.class);
+        whenNew(CrashRecorder.class).withAnyArguments().thenReturn(crashRecorder);
+        when(crashRecorder.write(any(File.class), any(Thread.class), any(Throwable.class), anyMapOf(Thread.class, StackTraceElement[].class))).thenThrow(new IOException());
+
         /* Simulate start SDK. */
         Crashes crashes = Crashes.getInstance();
         crashes.setLogSerializer(logSerializer);
@@ -1406,6 +1564,123 @@ public class CrashesTest extends AbstractCrashesTest {
         FileManager.write(any(File.class), eq(jsonCrash));
     }
 
+    @Test
+    public void saveUncaughtExceptionAsCrashRecord() throws Exception {
+
+        /* Mock error log utils. */
+        mockStatic(ErrorLogHelper.class);
+        File errorStorageDirectory = mTemporaryFolder.newFolder();
+        when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(errorStorageDirectory);
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[]{});
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{});
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        mockStatic(android.util.Log.class);
+        when(getStackTraceString(any(Throwable.class))).thenReturn(STACK_TRACE);
+        CrashRecorder crashRecorder = mock(CrashRecorder.class);
+        whenNew(CrashRecorder.class).withAnyArguments().thenReturn(crashRecorder);
+        UUID errorLogId = UUID.randomUUID();
+        when(crashRecorder.write(any(File.class), any(Thread.class), any(Throwable.class), anyMapOf(Thread.class, StackTraceElement[].class))).thenReturn(errorLogId);
+
+        /* Simulate start SDK. */
+        Crashes crashes = Crashes.getInstance();
+        crashes.setLogSerializer(logSerializer);
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), mock(Channel.class), "", null, true);
+
+        /* Simulate crash, only the first one is saved. */
+        Throwable throwable = new Throwable();
+        crashes.saveUncaughtException(Thread.currentThread(), throwable);
+        crashes.saveUncaughtException(Thread.currentThread(), new Throwable());
+
+        /* Verify the record and the stack trace are saved without serializing an error log. */
+        verify(crashRecorder).write(eq(errorStorageDirectory), eq(Thread.currentThread()), eq(throwable), anyMapOf(Thread.class, StackTraceElement[].class));
+        verifyStatic();
+        FileManager.write(new File(errorStorageDirectory, errorLogId + ErrorLogHelper.THROWABLE_FILE_EXTENSION), STACK_TRACE);
+        verify(logSerializer, never()).serializeLog(any(Log.class));
+        verifyStatic(never());
+        ErrorLogHelper.createErrorLog(any(Context.class), any(Thread.class), any(com.microsoft.appcenter.crashes.ingestion.models.Exception.class), anyMapOf(Thread.class, StackTraceElement[].class), anyLong(), anyBoolean());
+    }
+
+    @Test
+    public void saveUncaughtExceptionWithoutWaitingForHandler() throws Exception {
+
+        /* Mock error log utils. */
+        mockStatic(ErrorLogHelper.class);
+        File errorStorageDirectory = mTemporaryFolder.newFolder();
+        when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(errorStorageDirectory);
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[]{});
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{});
+        mockStatic(android.util.Log.class);
+        when(getStackTraceString(any(Throwable.class))).thenReturn(STACK_TRACE);
+        CrashRecorder crashRecorder = mock(CrashRecorder.class);
+        whenNew(CrashRecorder.class).withAnyArguments().thenReturn(crashRecorder);
+        when(crashRecorder.write(any(File.class), any(Thread.class), any(Throwable.class), anyMapOf(Thread.class, StackTraceElement[].class))).thenReturn(UUID.randomUUID());
+
+        /* Simulate start SDK and state changes. */
+        Crashes crashes = Crashes.getInstance();
+        crashes.setLogSerializer(mock(LogSerializer.class));
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), mock(Channel.class), "", null, true);
+        Crashes.setEnabled(false);
+        Crashes.setEnabled(true);
+
+        /* Simulate the handler being blocked: nothing posted runs anymore. */
+        doNothing().when(mAppCenterHandler).post(any(Runnable.class), any(Runnable.class));
+
+        /* Crash is still saved. */
+        Throwable throwable = new Throwable();
+        crashes.saveUncaughtException(Thread.currentThread(), throwable);
+        verify(crashRecorder).write(eq(errorStorageDirectory), eq(Thread.currentThread()), eq(throwable), anyMapOf(Thread.class, StackTraceElement[].class));
+    }
+
+    @Test
+    @PrepareForTest(CrashRecorder.class)
+    public void processCrashRecords() throws Exception {
+
+        /* Mock error log utils. */
+        mockStatic(ErrorLogHelper.class);
+        mockStatic(CrashRecorder.class);
+        File errorStorageDirectory = mTemporaryFolder.newFolder();
+        when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(errorStorageDirectory);
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[]{});
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{});
+        UUID invalidId = UUID.randomUUID();
+        File validRecord = new File(errorStorageDirectory, mErrorLog.getId() + ErrorLogHelper.CRASH_RECORD_FILE_EXTENSION);
+        File invalidRecord = new File(errorStorageDirectory, invalidId + ErrorLogHelper.CRASH_RECORD_FILE_EXTENSION);
+        File unreadableRecord = new File(errorStorageDirectory, UUID.randomUUID() + ErrorLogHelper.CRASH_RECORD_FILE_EXTENSION);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[]{validRecord, invalidRecord, unreadableRecord});
+        when(FileManager.read(validRecord)).thenReturn("valid");
+        when(FileManager.read(invalidRecord)).thenReturn("invalid");
+        when(CrashRecorder.readErrorLog("valid")).thenReturn(mErrorLog);
+        when(CrashRecorder.readErrorLog("invalid")).thenThrow(new JSONException("mock"));
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.serializeLog(mErrorLog)).thenReturn("{}");
+
+        /* Simulate start SDK. */
+        Crashes crashes = Crashes.getInstance();
+        crashes.setLogSerializer(logSerializer);
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), mock(Channel.class), "", null, true);
+
+        /* Valid record is converted to an error log file. */
+        verifyStatic();
+        FileManager.write(new File(errorStorageDirectory, mErrorLog.getId() + ErrorLogHelper.ERROR_LOG_FILE_EXTENSION), "{}");
+
+        /* Invalid record is discarded with its stack trace. */
+        verifyStatic();
+        ErrorLogHelper.removeStoredThrowableFile(invalidId);
+
+        /* All records are deleted. */
+        verifyStatic();
+        FileManager.delete(validRecord);
+        verifyStatic();
+        FileManager.delete(invalidRecord);
+        verifyStatic();
+        FileManager.delete(unreadableRecord);
+    }
+
     @Test
     public void handlerMemoryWarning() {
 
@@ -1444,6 +1719,7 @@ public class CrashesTest extends AbstractCrashesTest {
         when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(errorStorageDirectory.getRoot());
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
 
         /* Instance crash module. */
         Crashes crashes = Crashes.getInstance();
@@ -1476,6 +1752,7 @@ public class CrashesTest extends AbstractCrashesTest {
         when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(errorStorageDirectory.getRoot());
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(FileManager.read(any(File.class))).thenReturn("");
 
         when(SharedPreferencesManager.getInt(eq(PREF_KEY_MEMORY_RUNNING_LEVEL), anyInt()))
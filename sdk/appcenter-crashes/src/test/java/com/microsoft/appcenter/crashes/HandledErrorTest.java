@@ -5,7 +5,9 @@
 
 package com.microsoft.appcenter.crashes;
 
+import android.app.Activity;
 import android.content.Context;
+import android.os.Handler;
 
 import com.microsoft.appcenter.AppCenter;
 import com.microsoft.appcenter.channel.Channel;
@@ -15,8 +17,10 @@ import com.microsoft.appcenter.crashes.ingestion.models.HandledErrorLog;
 import com.microsoft.appcenter.crashes.ingestion.models.StackFrame;
 import com.microsoft.appcenter.crashes.model.ErrorReport;
 import com.microsoft.appcenter.crashes.utils.ErrorLogHelper;
+import com.microsoft.appcenter.crashes.utils.HandledErrorAggregator;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.HandlerUtils;
 import com.microsoft.appcenter.utils.context.UserIdContext;
 
 import org.junit.Test;
@@ -39,6 +43,7 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.eq;
@@ -47,6 +52,7 @@ import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.verifyStatic;
 
 public class HandledErrorTest extends AbstractCrashesTest {
@@ -155,6 +161,117 @@ public class HandledErrorTest extends AbstractCrashesTest {
         verify(mockListener, never()).onSendingFailed(any(ErrorReport.class), eq(EXCEPTION));
     }
 
+    @Test
+    public void repeatedErrorsNotAggregatedByDefault() {
+        Handler handler = mock(Handler.class);
+        when(HandlerUtils.getMainHandler()).thenReturn(handler);
+        startCrashes();
+        for (int i = 0; i < HandledErrorAggregator.BUCKET_CAPACITY + 5; i++) {
+            Crashes.trackError(EXCEPTION);
+        }
+        verify(mChannel, times(HandledErrorAggregator.BUCKET_CAPACITY + 5)).enqueue(any(HandledErrorLog.class), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+        verify(handler, never()).postDelayed(any(Runnable.class), anyLong());
+    }
+
+    @Test
+    public void aggregateRepeatedErrors() {
+        Handler handler = mock(Handler.class);
+        when(HandlerUtils.getMainHandler()).thenReturn(handler);
+        startCrashes();
+        Crashes.setHandledErrorAggregationEnabled(true);
+
+        /* Errors over the limit are not sent. */
+        for (int i = 0; i < HandledErrorAggregator.BUCKET_CAPACITY + 5; i++) {
+            Crashes.trackError(EXCEPTION);
+        }
+        verify(mChannel, times(HandledErrorAggregator.BUCKET_CAPACITY)).enqueue(any(HandledErrorLog.class), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+
+        /* Only one flush is scheduled. */
+        ArgumentCaptor<Runnable> flushRunnable = ArgumentCaptor.forClass(Runnable.class);
+        verify(handler).postDelayed(flushRunnable.capture(), eq(HandledErrorAggregator.FLUSH_INTERVAL));
+
+        /* Then they are sent as one log with the occurrence count. */
+        reset(mChannel);
+        flushRunnable.getValue().run();
+        verify(mChannel).enqueue(argThat(new ArgumentMatcher<Log>() {
+
+            @Override
+            public boolean matches(Object item) {
+                return item instanceof HandledErrorLog
+                        && "5".equals(((HandledErrorLog) item).getProperties().get(HandledErrorAggregator.OCCURRENCE_COUNT_PROPERTY));
+            }
+        }), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+
+        /* Disabling cancels the flush. */
+        Crashes.setEnabled(false);
+        verify(handler, never()).removeCallbacks(any(Runnable.class));
+        Crashes.setEnabled(true);
+        for (int i = 0; i < HandledErrorAggregator.BUCKET_CAPACITY + 1; i++) {
+            Crashes.trackError(EXCEPTION);
+        }
+        Crashes.setEnabled(false);
+        verify(handler).removeCallbacks(flushRunnable.getValue());
+    }
+
+    @Test
+    public void flushAggregatedErrorsEarly() {
+        Handler handler = mock(Handler.class);
+        when(HandlerUtils.getMainHandler()).thenReturn(handler);
+        startCrashes();
+        Crashes.setHandledErrorAggregationEnabled(true);
+
+        /* Pausing the application sends aggregated errors without waiting for the scheduled flush. */
+        for (int i = 0; i < HandledErrorAggregator.BUCKET_CAPACITY + 1; i++) {
+            Crashes.trackError(EXCEPTION);
+        }
+        ArgumentCaptor<Runnable> flushRunnable = ArgumentCaptor.forClass(Runnable.class);
+        verify(handler).postDelayed(flushRunnable.capture(), eq(HandledErrorAggregator.FLUSH_INTERVAL));
+        reset(mChannel);
+        mCrashes.onActivityPaused(mock(Activity.class));
+        verify(handler).removeCallbacks(flushRunnable.getValue());
+        verify(mChannel).enqueue(any(HandledErrorLog.class), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+
+        /* Nothing to send on next pause. */
+        reset(mChannel);
+        mCrashes.onActivityPaused(mock(Activity.class));
+        verify(mChannel, never()).enqueue(any(Log.class), anyString(), anyInt());
+
+        /* Disabling aggregation sends aggregated errors too. */
+        for (int i = 0; i < HandledErrorAggregator.BUCKET_CAPACITY + 1; i++) {
+            Crashes.trackError(EXCEPTION);
+        }
+        verify(mChannel, never()).enqueue(any(Log.class), anyString(), anyInt());
+        Crashes.setHandledErrorAggregationEnabled(false);
+        verify(mChannel).enqueue(any(HandledErrorLog.class), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+
+        /* And errors are no longer aggregated. */
+        reset(mChannel);
+        Crashes.trackError(EXCEPTION);
+        verify(mChannel).enqueue(any(HandledErrorLog.class), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+    }
+
+    @Test
+    public void flushAggregatedErrorsOnCrashFlush() {
+        Handler handler = mock(Handler.class);
+        when(HandlerUtils.getMainHandler()).thenReturn(handler);
+        startCrashes();
+        ArgumentCaptor<Channel.Listener> channelListener = ArgumentCaptor.forClass(Channel.Listener.class);
+        verify(mChannel).addListener(channelListener.capture());
+
+        /* Nothing is sent on crash flush when aggregation is disabled. */
+        channelListener.getValue().onCrashFlush();
+        verify(mChannel, never()).enqueue(any(Log.class), anyString(), anyInt());
+
+        /* Aggregated errors are sent when the channel flushes on crash. */
+        Crashes.setHandledErrorAggregationEnabled(true);
+        for (int i = 0; i < HandledErrorAggregator.BUCKET_CAPACITY + 1; i++) {
+            Crashes.trackError(EXCEPTION);
+        }
+        reset(mChannel);
+        channelListener.getValue().onCrashFlush();
+        verify(mChannel).enqueue(any(HandledErrorLog.class), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+    }
+
     @Test
     public void trackExceptionForWrapperSdk() {
         StackFrame frame = new StackFrame();
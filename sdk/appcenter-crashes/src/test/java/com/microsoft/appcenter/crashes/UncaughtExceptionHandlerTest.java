@@ -129,6 +129,9 @@ public class UncaughtExceptionHandlerTest {
         AppCenterHandler handler = mock(AppCenterHandler.class);
         Crashes.getInstance().onStarting(handler);
         doAnswer(runNow).when(handler).post(any(Runnable.class), any(Runnable.class));
+
+        /* Crash path reads the enabled state mirrored at start. */
+        Whitebox.setInternalState(Crashes.getInstance(), "mEnabled", true);
     }
 
     @Test
@@ -30,6 +30,7 @@ import org.junit.rules.TemporaryFolder;
 import org.mockito.ArgumentMatcher;
 import org.mockito.Matchers;
 import org.mockito.Mockito;
+import org.mockito.internal.util.reflection.Whitebox;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.powermock.core.classloader.annotations.PrepareForTest;
@@ -79,6 +80,7 @@ public class WrapperSdkExceptionManagerTest {
     @Before
     public void setUp() {
         Crashes.unsetInstance();
+        WrapperSdkExceptionManager.closeDataStore();
         mockStatic(AppCenter.class);
         mockStatic(FileManager.class);
         mockStatic(SharedPreferencesManager.class);
@@ -111,6 +113,9 @@ public class WrapperSdkExceptionManagerTest {
         AppCenterHandler handler = mock(AppCenterHandler.class);
         Crashes.getInstance().onStarting(handler);
         doAnswer(runNow).when(handler).post(any(Runnable.class), any(Runnable.class));
+
+        /* Crash path reads the enabled state mirrored at start. */
+        Whitebox.setInternalState(Crashes.getInstance(), "mEnabled", true);
     }
 
     @Test
@@ -169,15 +174,24 @@ public class WrapperSdkExceptionManagerTest {
         when(logSerializer.serializeLog(any(ManagedErrorLog.class))).thenReturn("mock");
         Crashes.getInstance().setLogSerializer(logSerializer);
         String data = "d";
-        WrapperSdkExceptionManager.saveWrapperException(Thread.currentThread(), null, new Exception(), data);
-        verifyStatic();
-        FileManager.write(any(File.class), eq(data));
+        UUID errorId = WrapperSdkExceptionManager.saveWrapperException(Thread.currentThread(), null, new Exception(), data);
+        assertNotNull(errorId);
+        assertEquals(data, WrapperSdkExceptionManager.loadWrapperExceptionData(errorId));
+
+        /* Data is read from the store file. */
+        WrapperSdkExceptionManager.closeDataStore();
+        assertEquals(data, WrapperSdkExceptionManager.loadWrapperExceptionData(errorId));
+
+        /* Deleted data is kept in memory. */
+        WrapperSdkExceptionManager.deleteWrapperExceptionData(errorId);
+        WrapperSdkExceptionManager.closeDataStore();
+        assertEquals(data, WrapperSdkExceptionManager.loadWrapperExceptionData(errorId));
+        WrapperSdkExceptionManager.sWrapperExceptionDataContainer.clear();
+        assertNull(WrapperSdkExceptionManager.loadWrapperExceptionData(errorId));
 
         /* We can't do it twice in the same process. */
         data = "e";
-        WrapperSdkExceptionManager.saveWrapperException(Thread.currentThread(), null, new Exception(), data);
-        verifyStatic(never());
-        FileManager.write(any(File.class), eq(data));
+        assertNull(WrapperSdkExceptionManager.saveWrapperException(Thread.currentThread(), null, new Exception(), data));
     }
 
     @Test
@@ -190,17 +204,14 @@ public class WrapperSdkExceptionManagerTest {
         Throwable throwable = new Throwable();
         mockStatic(android.util.Log.class);
         Mockito.when(getStackTraceString(any(Throwable.class))).thenReturn(STACK_TRACE);
-        WrapperSdkExceptionManager.saveWrapperException(Thread.currentThread(), throwable, new Exception(), data);
-        verifyStatic();
-        FileManager.write(any(File.class), eq(data));
+        UUID errorId = WrapperSdkExceptionManager.saveWrapperException(Thread.currentThread(), throwable, new Exception(), data);
+        assertEquals(data, WrapperSdkExceptionManager.loadWrapperExceptionData(errorId));
         verifyStatic();
         FileManager.write(any(File.class), eq(STACK_TRACE));
 
         /* We can't do it twice in the same process. */
         data = "e";
-        WrapperSdkExceptionManager.saveWrapperException(Thread.currentThread(), throwable, new Exception(), data);
-        verifyStatic(never());
-        FileManager.write(any(File.class), eq(data));
+        assertNull(WrapperSdkExceptionManager.saveWrapperException(Thread.currentThread(), throwable, new Exception(), data));
         verifyStatic();
         FileManager.write(any(File.class), eq(STACK_TRACE));
     }
@@ -366,6 +377,7 @@ public class WrapperSdkExceptionManagerTest {
     @Test
     public void saveWrapperExceptionWhenSDKDisabled() throws JSONException {
         when(SharedPreferencesManager.getBoolean(CRASHES_ENABLED_KEY, true)).thenReturn(false);
+        Whitebox.setInternalState(Crashes.getInstance(), "mEnabled", false);
         LogSerializer logSerializer = Mockito.mock(LogSerializer.class);
         Crashes.getInstance().setLogSerializer(logSerializer);
         String data = "d";
@@ -45,6 +45,8 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -53,11 +55,14 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
@@ -400,6 +405,60 @@ public class ErrorLogHelperTest {
         assertEquals(ErrorLogHelper.CAUSE_LIMIT, depth);
     }
 
+    @Test
+    public void limitThreads() {
+        mockStatic(AppCenterLog.class);
+        java.lang.Thread errorThread = new java.lang.Thread("error");
+        StackTraceElement[] deepStackTrace = generateStackTrace(ErrorLogHelper.FRAME_LIMIT * 2);
+        Map<java.lang.Thread, StackTraceElement[]> allStackTraces = new HashMap<>();
+        for (int i = 0; i < ErrorLogHelper.THREAD_LIMIT * 2; i++) {
+            allStackTraces.put(new java.lang.Thread("thread" + i), deepStackTrace);
+        }
+        allStackTraces.put(errorThread, deepStackTrace);
+        ManagedErrorLog errorLog = ErrorLogHelper.createErrorLog(mock(Context.class), errorThread, new RuntimeException(), allStackTraces, 0);
+
+        /* Thread in error comes first and keeps more frames. */
+        List<Thread> threads = errorLog.getThreads();
+        assertEquals(ErrorLogHelper.THREAD_LIMIT, threads.size());
+        assertEquals(errorThread.getId(), threads.get(0).getId());
+        assertEquals(ErrorLogHelper.FRAME_LIMIT, threads.get(0).getFrames().size());
+        for (Thread thread : threads.subList(1, threads.size())) {
+            assertNotEquals(errorThread.getId(), thread.getId());
+            assertEquals(ErrorLogHelper.THREAD_FRAME_LIMIT, thread.getFrames().size());
+            assertEquals("method0", thread.getFrames().get(0).getMethodName());
+        }
+        verifyStatic();
+        AppCenterLog.warn(anyString(), contains("threads"));
+    }
+
+    @Test
+    public void shareIdenticalFrames() {
+        StackTraceElement[] stackTrace = generateStackTrace(10);
+        Map<java.lang.Thread, StackTraceElement[]> allStackTraces = new LinkedHashMap<>();
+        allStackTraces.put(new java.lang.Thread(), stackTrace);
+        allStackTraces.put(new java.lang.Thread(), stackTrace.clone());
+        allStackTraces.put(new java.lang.Thread(), Arrays.copyOf(stackTrace, 5));
+        ManagedErrorLog errorLog = ErrorLogHelper.createErrorLog(mock(Context.class), java.lang.Thread.currentThread(), new RuntimeException(), allStackTraces, 0);
+
+        /* Identical stacks share frames, identical frames are the same objects. */
+        List<Thread> threads = errorLog.getThreads();
+        assertEquals(3, threads.size());
+        assertSame(threads.get(0).getFrames(), threads.get(1).getFrames());
+        assertNotSame(threads.get(0).getFrames(), threads.get(2).getFrames());
+        assertEquals(5, threads.get(2).getFrames().size());
+        for (int i = 0; i < 5; i++) {
+            assertSame(threads.get(0).getFrames().get(i), threads.get(2).getFrames().get(i));
+        }
+    }
+
+    private static StackTraceElement[] generateStackTrace(int depth) {
+        StackTraceElement[] stackTrace = new StackTraceElement[depth];
+        for (int i = 0; i < depth; i++) {
+            stackTrace[i] = new StackTraceElement("Class", "method" + i, "Class.java", i);
+        }
+        return stackTrace;
+    }
+
     @Test
     public void getStoredDeviceInfo() throws IOException {
         String deviceInfoString = "{\"sdkName\":\"appcenter.android\",\"sdkVersion\":\"2.5.4.2\",\"model\":\"Android SDK built for x86\",\"oemName\":\"Google\",\"osName\":\"Android\",\"osVersion\":\"9\",\"osBuild\":\"PSR1.180720.075\",\"osApiLevel\":28,\"locale\":\"en_US\",\"timeZoneOffset\":240,\"screenSize\":\"1080x1794\",\"appVersion\":\"2.5.4.2\",\"carrierName\":\"Android\",\"carrierCountry\":\"us\",\"appBuild\":\"59\",\"appNamespace\":\"com.microsoft.appcenter.sasquatch.project\"}";
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.crashes.utils;
+
+import com.microsoft.appcenter.crashes.ingestion.models.Exception;
+import com.microsoft.appcenter.crashes.ingestion.models.HandledErrorLog;
+import com.microsoft.appcenter.crashes.ingestion.models.StackFrame;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@PrepareForTest(AppCenterLog.class)
+public class HandledErrorAggregatorTest {
+
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
+    private HandledErrorAggregator mAggregator;
+
+    @Before
+    public void setUp() {
+        mockStatic(AppCenterLog.class);
+        mAggregator = new HandledErrorAggregator();
+    }
+
+    private static Exception createException(String type, int line) {
+        List<StackFrame> frames = new ArrayList<>();
+        for (int i = 0; i < HandledErrorAggregator.FINGERPRINT_FRAME_COUNT + 1; i++) {
+            StackFrame frame = new StackFrame();
+            frame.setClassName("Class");
+            frame.setMethodName("method");
+            frame.setLineNumber(i == 0 ? line : i);
+            frames.add(frame);
+        }
+        Exception exception = new Exception();
+        exception.setType(type);
+        exception.setFrames(frames);
+        return exception;
+    }
+
+    private static HandledErrorLog createLog(Exception exception) {
+        HandledErrorLog errorLog = new HandledErrorLog();
+        errorLog.setException(exception);
+        return errorLog;
+    }
+
+    @Test
+    public void fingerprint() {
+        String fingerprint = HandledErrorAggregator.getFingerprint(createException("type", 0));
+        assertEquals(fingerprint, HandledErrorAggregator.getFingerprint(createException("type", 0)));
+        assertNotEquals(fingerprint, HandledErrorAggregator.getFingerprint(createException("other", 0)));
+        assertNotEquals(fingerprint, HandledErrorAggregator.getFingerprint(createException("type", 100)));
+
+        /* Frames after the top ones are ignored. */
+        Exception exception = createException("type", 0);
+        exception.getFrames().get(HandledErrorAggregator.FINGERPRINT_FRAME_COUNT).setLineNumber(100);
+        assertEquals(fingerprint, HandledErrorAggregator.getFingerprint(exception));
+
+        /* Inner exception types are used. */
+        exception.setInnerExceptions(Collections.singletonList(createException("inner", 0)));
+        assertNotEquals(fingerprint, HandledErrorAggregator.getFingerprint(exception));
+
+        /* Wrapper SDK exceptions without frames. */
+        Exception wrapperException = new Exception();
+        wrapperException.setStackTrace("stack");
+        assertNotEquals(HandledErrorAggregator.getFingerprint(wrapperException), HandledErrorAggregator.getFingerprint(new Exception()));
+    }
+
+    @Test
+    public void aggregateOverCapacity() {
+        long now = 1000;
+        for (int i = 0; i < HandledErrorAggregator.BUCKET_CAPACITY; i++) {
+            assertTrue(mAggregator.add(createLog(createException("type", 0)), now));
+        }
+        assertTrue(mAggregator.flush(now).isEmpty());
+
+        /* Other fingerprints are not limited. */
+        assertTrue(mAggregator.add(createLog(createException("other", 0)), now));
+
+        /* Aggregate and keep the last occurrence. */
+        assertFalse(mAggregator.add(createLog(createException("type", 0)), now));
+        HandledErrorLog last = createLog(createException("type", 0));
+        Map<String, String> properties = new HashMap<>();
+        properties.put("key", "value");
+        last.setProperties(properties);
+        assertFalse(mAggregator.add(last, now));
+
+        /* Still aggregating after a token is available, until flushed. */
+        now += HandledErrorAggregator.TOKEN_INTERVAL;
+        assertFalse(mAggregator.add(createLog(createException("type", 0)), now));
+        List<HandledErrorLog> logs = mAggregator.flush(now);
+        assertEquals(1, logs.size());
+        assertEquals("3", logs.get(0).getProperties().get(HandledErrorAggregator.OCCURRENCE_COUNT_PROPERTY));
+        assertTrue(mAggregator.flush(now).isEmpty());
+
+        /* Flush used the token. */
+        assertFalse(mAggregator.add(createLog(createException("type", 0)), now));
+        logs = mAggregator.flush(now);
+        assertEquals("1", logs.get(0).getProperties().get(HandledErrorAggregator.OCCURRENCE_COUNT_PROPERTY));
+
+        /* Bucket refills up to capacity. */
+        now += HandledErrorAggregator.TOKEN_INTERVAL * HandledErrorAggregator.BUCKET_CAPACITY * 2;
+        for (int i = 0; i < HandledErrorAggregator.BUCKET_CAPACITY; i++) {
+            assertTrue(mAggregator.add(createLog(createException("type", 0)), now));
+        }
+        assertFalse(mAggregator.add(createLog(createException("type", 0)), now));
+    }
+
+    @Test
+    public void keepUserProperties() {
+        for (int i = 0; i < HandledErrorAggregator.BUCKET_CAPACITY; i++) {
+            mAggregator.add(createLog(createException("type", 0)), 0);
+        }
+        HandledErrorLog errorLog = createLog(createException("type", 0));
+        Map<String, String> properties = new HashMap<>();
+        properties.put("key", "value");
+        errorLog.setProperties(properties);
+        mAggregator.add(errorLog, 0);
+        HandledErrorLog flushed = mAggregator.flush(0).get(0);
+        assertSame(errorLog, flushed);
+        assertEquals("value", flushed.getProperties().get("key"));
+        assertEquals("1", flushed.getProperties().get(HandledErrorAggregator.OCCURRENCE_COUNT_PROPERTY));
+
+        /* No room for the count. */
+        for (int i = 0; i < ErrorLogHelper.MAX_PROPERTY_COUNT; i++) {
+            properties.put("key" + i, "value");
+        }
+        errorLog = createLog(createException("type", 0));
+        errorLog.setProperties(properties);
+        mAggregator.add(errorLog, 0);
+        flushed = mAggregator.flush(0).get(0);
+        assertNull(flushed.getProperties().get(HandledErrorAggregator.OCCURRENCE_COUNT_PROPERTY));
+    }
+
+    @Test
+    public void evictLeastRecentFingerprints() {
+        for (int i = 0; i < HandledErrorAggregator.BUCKET_CAPACITY + 1; i++) {
+            mAggregator.add(createLog(createException("first", 0)), 0);
+        }
+        for (int i = 0; i < HandledErrorAggregator.MAX_FINGERPRINTS; i++) {
+            mAggregator.add(createLog(createException("type" + i, 0)), 0);
+        }
+        assertTrue(mAggregator.flush(0).isEmpty());
+
+        /* Evicted fingerprint starts with a full bucket. */
+        assertTrue(mAggregator.add(createLog(createException("first", 0)), 0));
+    }
+
+    @Test
+    public void clear() {
+        for (int i = 0; i < HandledErrorAggregator.BUCKET_CAPACITY + 1; i++) {
+            mAggregator.add(createLog(createException("type", 0)), 0);
+        }
+        mAggregator.clear();
+        assertTrue(mAggregator.flush(0).isEmpty());
+        assertTrue(mAggregator.add(createLog(createException("type", 0)), 0));
+    }
+}
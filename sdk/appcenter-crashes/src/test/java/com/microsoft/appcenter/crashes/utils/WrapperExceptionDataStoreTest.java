@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.crashes.utils;
+
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@PrepareForTest(AppCenterLog.class)
+public class WrapperExceptionDataStoreTest {
+
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() {
+        mockStatic(AppCenterLog.class);
+    }
+
+    @Test
+    public void putGetRemove() throws Exception {
+        File directory = mTemporaryFolder.getRoot();
+        assertNull(WrapperExceptionDataStore.open(directory, false));
+        WrapperExceptionDataStore dataStore = WrapperExceptionDataStore.open(directory, true);
+        assertNotNull(dataStore);
+        UUID id1 = UUID.randomUUID();
+        UUID id2 = UUID.randomUUID();
+        dataStore.put(id1, "dataé");
+        dataStore.put(id2, "");
+        assertEquals("dataé", dataStore.get(id1));
+        assertEquals("", dataStore.get(id2));
+        assertNull(dataStore.get(UUID.randomUUID()));
+
+        /* Replace data. */
+        dataStore.put(id1, "other");
+        assertEquals("other", dataStore.get(id1));
+
+        /* Remove returns data once. */
+        assertEquals("", dataStore.remove(id2));
+        assertNull(dataStore.remove(id2));
+        assertNull(dataStore.get(id2));
+
+        /* Index is restored from file. */
+        dataStore.close();
+        dataStore = WrapperExceptionDataStore.open(directory, false);
+        assertNotNull(dataStore);
+        assertEquals("other", dataStore.get(id1));
+        assertNull(dataStore.get(id2));
+        dataStore.close();
+    }
+
+    @Test
+    public void growAndCompact() throws Exception {
+        File directory = mTemporaryFolder.getRoot();
+        WrapperExceptionDataStore dataStore = WrapperExceptionDataStore.open(directory, true);
+        assertNotNull(dataStore);
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            UUID id = UUID.randomUUID();
+            ids.add(id);
+            dataStore.put(id, "data" + i);
+        }
+        assertTrue(dataStore.getFileSize() > WrapperExceptionDataStore.MIN_CAPACITY);
+
+        /* Remove most data: file is compacted. */
+        for (int i = 0; i < 990; i++) {
+            assertEquals("data" + i, dataStore.remove(ids.get(i)));
+        }
+        assertEquals(WrapperExceptionDataStore.MIN_CAPACITY, dataStore.getFileSize());
+        assertEquals(WrapperExceptionDataStore.MIN_CAPACITY, new File(directory, WrapperExceptionDataStore.FILE_NAME).length());
+        dataStore.close();
+
+        /* Check compacted file. */
+        dataStore = WrapperExceptionDataStore.open(directory, false);
+        assertNotNull(dataStore);
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(i < 990 ? null : "data" + i, dataStore.get(ids.get(i)));
+        }
+        dataStore.close();
+    }
+
+    @Test
+    public void ignoreInterruptedRecord() throws Exception {
+        File directory = mTemporaryFolder.getRoot();
+        WrapperExceptionDataStore dataStore = WrapperExceptionDataStore.open(directory, true);
+        assertNotNull(dataStore);
+        UUID id1 = UUID.randomUUID();
+        UUID id2 = UUID.randomUUID();
+        dataStore.put(id1, "a");
+        dataStore.put(id2, "some longer data");
+        dataStore.close();
+
+        /* Simulate a crash before the type of the second record was written. */
+        RandomAccessFile file = new RandomAccessFile(new File(directory, WrapperExceptionDataStore.FILE_NAME), "rw");
+        file.seek(1 + 16 + 4 + 1);
+        file.write(0);
+        file.close();
+        dataStore = WrapperExceptionDataStore.open(directory, false);
+        assertNotNull(dataStore);
+        assertEquals("a", dataStore.get(id1));
+        assertNull(dataStore.get(id2));
+
+        /* Next record does not mix with the interrupted one. */
+        UUID id3 = UUID.randomUUID();
+        dataStore.put(id3, "b");
+        dataStore.close();
+        dataStore = WrapperExceptionDataStore.open(directory, false);
+        assertNotNull(dataStore);
+        assertEquals("a", dataStore.get(id1));
+        assertNull(dataStore.get(id2));
+        assertEquals("b", dataStore.get(id3));
+        dataStore.close();
+    }
+}
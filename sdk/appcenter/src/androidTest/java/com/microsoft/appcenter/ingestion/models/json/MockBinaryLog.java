@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.ingestion.models.json;
+
+import android.util.Base64;
+
+import com.microsoft.appcenter.ingestion.models.AbstractLog;
+import com.microsoft.appcenter.ingestion.models.LogWithBinaryData;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONStringer;
+
+import java.util.Arrays;
+
+public class MockBinaryLog extends AbstractLog implements LogWithBinaryData {
+
+    public static final String MOCK_BINARY_LOG_TYPE = "mockBinaryLog";
+
+    private static final String DATA = "data";
+
+    private byte[] data;
+
+    @Override
+    public String getType() {
+        return MOCK_BINARY_LOG_TYPE;
+    }
+
+    @Override
+    public byte[] getData() {
+        return data;
+    }
+
+    @Override
+    public void setData(byte[] data) {
+        this.data = data;
+    }
+
+    @Override
+    public void read(JSONObject object) throws JSONException {
+        super.read(object);
+        String data = object.optString(DATA, null);
+        if (data != null) {
+            setData(Base64.decode(data, Base64.DEFAULT));
+        }
+    }
+
+    @Override
+    public void write(JSONStringer writer) throws JSONException {
+        super.write(writer);
+        if (getData() != null) {
+            JSONUtils.write(writer, DATA, Base64.encodeToString(getData(), Base64.NO_WRAP));
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        if (!super.equals(o)) {
+            return false;
+        }
+        MockBinaryLog that = (MockBinaryLog) o;
+        return Arrays.equals(data, that.data);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = super.hashCode();
+        result = 31 * result + Arrays.hashCode(data);
+        return result;
+    }
+}
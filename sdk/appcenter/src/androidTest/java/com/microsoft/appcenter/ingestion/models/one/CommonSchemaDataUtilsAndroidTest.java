@@ -15,6 +15,7 @@ import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
 
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
@@ -41,6 +42,11 @@ public class CommonSchemaDataUtilsAndroidTest {
         return stringTypedProperty;
     }
 
+    @Before
+    public void setUp() {
+        CommonSchemaDataUtils.clearPropertyShapes();
+    }
+
     @Test
     public void coverInit() {
         new CommonSchemaDataUtils();
@@ -569,4 +575,78 @@ public class CommonSchemaDataUtilsAndroidTest {
         assertEquals("Some.Type", log.getData().getProperties().optString("baseType"));
         assertNull(log.getExt().getMetadata());
     }
+
+    @Test
+    public void compiledShapeIsReusedWithNewValues() throws JSONException {
+        for (int i = 0; i < 3; i++) {
+            MockCommonSchemaLog log = new MockCommonSchemaLog();
+            List<TypedProperty> properties = new ArrayList<>();
+            properties.add(typedProperty("a.b", "b" + i));
+            LongTypedProperty longTypedProperty = new LongTypedProperty();
+            longTypedProperty.setName("a.c");
+            longTypedProperty.setValue(i);
+            properties.add(longTypedProperty);
+            CommonSchemaDataUtils.addCommonSchemaData(properties, log);
+            JSONObject a = log.getData().getProperties().getJSONObject("a");
+            assertEquals("b" + i, a.getString("b"));
+            assertEquals(i, a.getLong("c"));
+            assertEquals(DATA_TYPE_INT64, log.getExt().getMetadata().getMetadata()
+                    .getJSONObject(METADATA_FIELDS).getJSONObject("a").getJSONObject(METADATA_FIELDS).getInt("c"));
+        }
+    }
+
+    @Test
+    public void nullValueDoesNotChangeCompiledShape() throws JSONException {
+
+        /* Null value overriding another one is skipped. */
+        MockCommonSchemaLog log = new MockCommonSchemaLog();
+        List<TypedProperty> properties = new ArrayList<>();
+        properties.add(typedProperty("a", "1"));
+        properties.add(typedProperty("a", null));
+        CommonSchemaDataUtils.addCommonSchemaData(properties, log);
+        assertEquals("1", log.getData().getProperties().getString("a"));
+
+        /* Same names with valid values. */
+        log = new MockCommonSchemaLog();
+        properties = new ArrayList<>();
+        properties.add(typedProperty("a", "1"));
+        properties.add(typedProperty("a", "2"));
+        CommonSchemaDataUtils.addCommonSchemaData(properties, log);
+        assertEquals("2", log.getData().getProperties().getString("a"));
+
+        /* And null again once compiled. */
+        log = new MockCommonSchemaLog();
+        properties = new ArrayList<>();
+        properties.add(typedProperty("a", "1"));
+        properties.add(typedProperty("a", null));
+        CommonSchemaDataUtils.addCommonSchemaData(properties, log);
+        assertEquals("1", log.getData().getProperties().getString("a"));
+    }
+
+    @Test
+    public void cachedShapeGivesSameDataAsCompiling() throws JSONException {
+        List<TypedProperty> properties = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            properties.add(typedProperty("group" + i % 4 + ".sub" + i % 3 + ".key" + i, "value" + i));
+        }
+        LongTypedProperty longTypedProperty = new LongTypedProperty();
+        longTypedProperty.setName("group0.long");
+        longTypedProperty.setValue(1);
+        properties.add(longTypedProperty);
+
+        /* Compile the shape. */
+        MockCommonSchemaLog compiledLog = new MockCommonSchemaLog();
+        CommonSchemaDataUtils.addCommonSchemaData(properties, compiledLog);
+        Object shape = CommonSchemaDataUtils.getPropertyShape(properties);
+        assertNotNull(shape);
+
+        /* Reuse it. */
+        MockCommonSchemaLog cachedLog = new MockCommonSchemaLog();
+        CommonSchemaDataUtils.addCommonSchemaData(properties, cachedLog);
+        assertSame(shape, CommonSchemaDataUtils.getPropertyShape(properties));
+
+        /* Check data and metadata are the same. */
+        assertEquals(compiledLog.getData().getProperties().toString(), cachedLog.getData().getProperties().toString());
+        assertEquals(compiledLog.getExt().getMetadata().getMetadata().toString(), cachedLog.getExt().getMetadata().getMetadata().toString());
+    }
 }
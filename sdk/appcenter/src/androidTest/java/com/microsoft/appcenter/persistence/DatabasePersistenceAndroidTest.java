@@ -23,6 +23,8 @@ import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogWithProperties;
 import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.ingestion.models.json.MockBinaryLog;
+import com.microsoft.appcenter.ingestion.models.json.MockBinaryLogFactory;
 import com.microsoft.appcenter.ingestion.models.json.MockLog;
 import com.microsoft.appcenter.ingestion.models.json.MockLogFactory;
 import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
@@ -52,19 +54,25 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
 
 import static com.microsoft.appcenter.Flags.CRITICAL;
 import static com.microsoft.appcenter.Flags.NORMAL;
+import static com.microsoft.appcenter.ingestion.models.json.MockBinaryLog.MOCK_BINARY_LOG_TYPE;
 import static com.microsoft.appcenter.ingestion.models.json.MockLog.MOCK_LOG_TYPE;
 import static com.microsoft.appcenter.persistence.DatabasePersistence.SCHEMA;
+import static com.microsoft.appcenter.utils.storage.DatabaseManager.PRIMARY_KEY;
 import static com.microsoft.appcenter.test.TestUtils.generateString;
 import static org.hamcrest.CoreMatchers.hasItems;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.anyString;
@@ -211,7 +219,7 @@ public class DatabasePersistenceAndroidTest {
             /* Verify large file. */
             File file = persistence.getLargePayloadFile(persistence.getLargePayloadGroupDirectory("test-p1"), id);
             assertNotNull(file);
-            String fileLog = FileManager.read(file);
+            String fileLog = FileManager.readCompressed(file);
             assertNotNull(fileLog);
             assertTrue(fileLog.length() >= size);
 
@@ -301,7 +309,7 @@ public class DatabasePersistenceAndroidTest {
             /* Verify large file. */
             File file = persistence.getLargePayloadFile(persistence.getLargePayloadGroupDirectory("test-p1"), id);
             assertNotNull(file);
-            String fileLog = FileManager.read(file);
+            String fileLog = FileManager.readCompressed(file);
             assertNotNull(fileLog);
             assertTrue(fileLog.length() >= size);
 
@@ -318,6 +326,134 @@ public class DatabasePersistenceAndroidTest {
         }
     }
 
+    @NonNull
+    private static MockBinaryLog generateLargeBinaryLog() {
+        MockBinaryLog log = new MockBinaryLog();
+        log.setTimestamp(new Date());
+        byte[] data = new byte[2 * 1024 * 1024];
+        new Random().nextBytes(data);
+        log.setData(data);
+        return log;
+    }
+
+    @Test
+    public void putLargeBinaryLogAndDelete() throws PersistenceException {
+
+        /* Initialize database persistence. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+
+        /* Set a mock log serializer. */
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_BINARY_LOG_TYPE, new MockBinaryLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* Generate a log with large binary data and persist. */
+            MockBinaryLog log = generateLargeBinaryLog();
+            byte[] data = log.getData();
+            long id = persistence.putLog(log, "test-p1", NORMAL);
+            assertEquals(1, persistence.countLogs("test-p1"));
+
+            /* The log still has its data. */
+            assertSame(data, log.getData());
+
+            /* Verify binary data is stored raw and not in the payload file. */
+            File directory = persistence.getLargePayloadGroupDirectory("test-p1");
+            File binaryDataFile = persistence.getBinaryDataFile(directory, id);
+            assertArrayEquals(data, FileManager.readBytes(binaryDataFile));
+            File payloadFile = persistence.getLargePayloadFile(directory, id);
+            String fileLog = FileManager.readCompressed(payloadFile);
+            assertNotNull(fileLog);
+            assertTrue(fileLog.length() < data.length);
+
+            /* Get the log from persistence with its data. */
+            List<Log> outputLogs = new ArrayList<>();
+            String batchId = persistence.getLogs("test-p1", Collections.<String>emptyList(), 1, outputLogs);
+            assertEquals(1, outputLogs.size());
+            assertEquals(log, outputLogs.get(0));
+
+            /* Deleting the log deletes both files. */
+            assertNotNull(batchId);
+            persistence.deleteLogs("test-p1", batchId);
+            assertEquals(0, persistence.countLogs("test-p1"));
+            assertFalse(payloadFile.exists());
+            assertFalse(binaryDataFile.exists());
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void putLargeBinaryLogFailsToRead() throws PersistenceException {
+
+        /* Initialize database persistence. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+
+        /* Set a mock log serializer. */
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_BINARY_LOG_TYPE, new MockBinaryLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* Generate a log with large binary data and persist. */
+            long id = persistence.putLog(generateLargeBinaryLog(), "test-p1", NORMAL);
+            assertEquals(1, persistence.countLogs("test-p1"));
+
+            /* Delete the binary data file. */
+            File directory = persistence.getLargePayloadGroupDirectory("test-p1");
+            assertTrue(persistence.getBinaryDataFile(directory, id).delete());
+
+            /* We won't be able to read the log now but persistence should delete the log and its payload file. */
+            List<Log> outputLogs = new ArrayList<>();
+            persistence.getLogs("test-p1", Collections.<String>emptyList(), 1, outputLogs);
+            assertEquals(0, outputLogs.size());
+            assertEquals(0, persistence.countLogs("test-p1"));
+            assertFalse(persistence.getLargePayloadFile(directory, id).exists());
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void evictLargeBinaryLog() throws PersistenceException {
+
+        /* Initialize database persistence. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        assertTrue(persistence.setMaxStorageSize(MAX_STORAGE_SIZE_IN_BYTES));
+
+        /* Set a mock log serializer. */
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        logSerializer.addLogFactory(MOCK_BINARY_LOG_TYPE, new MockBinaryLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* Persist a log with large binary data first so that it's the oldest. */
+            String group = "test-p1";
+            long id = persistence.putLog(generateLargeBinaryLog(), group, NORMAL);
+            File directory = persistence.getLargePayloadGroupDirectory(group);
+            File payloadFile = persistence.getLargePayloadFile(directory, id);
+            File binaryDataFile = persistence.getBinaryDataFile(directory, id);
+            assertTrue(payloadFile.exists());
+            assertTrue(binaryDataFile.exists());
+
+            /* Generate logs until we notice eviction. */
+            for (int i = 1; i == persistence.countLogs(group); i++) {
+                persistence.putLog(AndroidTestUtils.generateMockLog(), group, NORMAL);
+
+                /* Fail if no eviction happens after a long time to avoid infinite loop on bug. */
+                assertTrue("No eviction is happening", i < 1000);
+            }
+
+            /* Files of the evicted log are deleted. */
+            assertFalse(payloadFile.exists());
+            assertFalse(binaryDataFile.exists());
+        } finally {
+            persistence.deleteLogs("test-p1");
+            persistence.close();
+        }
+    }
+
     @Test
     public void putLargeLogNotSupportedOnCommonSchema() throws JSONException {
 
@@ -1176,4 +1312,214 @@ public class DatabasePersistenceAndroidTest {
             persistence.close();
         }
     }
+
+    @Test
+    public void batchIsSentAgainWithSameIdentifier() throws PersistenceException {
+
+        /* Initialize database persistence. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext, 1, SCHEMA);
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* Put 3 logs and get a batch of 2. */
+            for (int i = 0; i < 3; i++) {
+                persistence.putLog(AndroidTestUtils.generateMockLog(), "test", NORMAL);
+            }
+            List<Log> outputLogs1 = new ArrayList<>();
+            String id1 = persistence.getLogs("test", Collections.<String>emptyList(), 2, outputLogs1);
+            assertNotNull(id1);
+            assertEquals(2, outputLogs1.size());
+
+            /* Simulate a failure, a new log does not change the batch sent again. */
+            persistence.clearPendingLogState();
+            persistence.putLog(AndroidTestUtils.generateMockLog(), "test", NORMAL);
+            List<Log> outputLogs2 = new ArrayList<>();
+            assertEquals(id1, persistence.getLogs("test", Collections.<String>emptyList(), 5, outputLogs2));
+            assertEquals(outputLogs1, outputLogs2);
+
+            /* Next batch has the other logs. */
+            List<Log> outputLogs3 = new ArrayList<>();
+            String id2 = persistence.getLogs("test", Collections.<String>emptyList(), 5, outputLogs3);
+            assertNotNull(id2);
+            assertNotEquals(id1, id2);
+            assertEquals(2, outputLogs3.size());
+        } finally {
+            persistence.close();
+        }
+
+        /* Batch identifiers survive a restart. */
+        persistence = new DatabasePersistence(sContext, 1, SCHEMA);
+        persistence.setLogSerializer(logSerializer);
+        try {
+            List<Log> outputLogs = new ArrayList<>();
+            String id = persistence.getLogs("test", Collections.<String>emptyList(), 5, outputLogs);
+            assertEquals(2, outputLogs.size());
+
+            /* A batch that cannot be sent with the same logs gets a new identifier. */
+            persistence.clearPendingLogState();
+            List<Log> partialOutputLogs = new ArrayList<>();
+            String partialId = persistence.getLogs("test", Collections.<String>emptyList(), 1, partialOutputLogs);
+            assertEquals(1, partialOutputLogs.size());
+            assertNotEquals(id, partialId);
+            List<Log> remainingOutputLogs = new ArrayList<>();
+            String remainingId = persistence.getLogs("test", Collections.<String>emptyList(), 5, remainingOutputLogs);
+            assertEquals(1, remainingOutputLogs.size());
+            assertNotEquals(id, remainingId);
+            assertNotEquals(partialId, remainingId);
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void upgradeFromVersion6to7() throws PersistenceException, JSONException {
+
+        /* Initialize database persistence with old version. */
+        ContentValues schema = new ContentValues(SCHEMA);
+        schema.remove(DatabasePersistence.COLUMN_BATCH_ID);
+        schema.remove(DatabasePersistence.COLUMN_CREATED_AT);
+        DatabaseManager databaseManager = new DatabaseManager(sContext, DatabasePersistence.DATABASE, DatabasePersistence.TABLE, DatabasePersistence.VERSION_BATCH_ID_COLUMN - 1, schema, mock(DatabaseManager.Listener.class));
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+
+        /* Insert old data before upgrade. */
+        Log oldLog = AndroidTestUtils.generateMockLog();
+        try {
+            ContentValues contentValues = new ContentValues();
+            contentValues.put(DatabasePersistence.COLUMN_GROUP, "test");
+            contentValues.put(DatabasePersistence.COLUMN_LOG, logSerializer.serializeLog(oldLog));
+            contentValues.put(DatabasePersistence.COLUMN_PRIORITY, NORMAL);
+            databaseManager.put(contentValues, DatabasePersistence.COLUMN_PRIORITY);
+        } finally {
+            databaseManager.close();
+        }
+
+        /* Upgrade keeps logs. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        persistence.setLogSerializer(logSerializer);
+        try {
+            assertEquals(1, persistence.countLogs("test"));
+            List<Log> outputLogs = new ArrayList<>();
+            assertNotNull(persistence.getLogs("test", Collections.<String>emptyList(), 1, outputLogs));
+            assertEquals(Collections.singletonList(oldLog), outputLogs);
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void upgradeFromVersion7to8() throws PersistenceException, JSONException {
+
+        /* Initialize database persistence with old version. */
+        ContentValues schema = new ContentValues(SCHEMA);
+        schema.remove(DatabasePersistence.COLUMN_CREATED_AT);
+        DatabaseManager databaseManager = new DatabaseManager(sContext, DatabasePersistence.DATABASE, DatabasePersistence.TABLE, DatabasePersistence.VERSION_CREATED_AT_COLUMN - 1, schema, mock(DatabaseManager.Listener.class));
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+
+        /* Insert old data before upgrade. */
+        Log oldLog = AndroidTestUtils.generateMockLog();
+        try {
+            ContentValues contentValues = new ContentValues();
+            contentValues.put(DatabasePersistence.COLUMN_GROUP, "test");
+            contentValues.put(DatabasePersistence.COLUMN_LOG, logSerializer.serializeLog(oldLog));
+            contentValues.put(DatabasePersistence.COLUMN_PRIORITY, NORMAL);
+            databaseManager.put(contentValues, DatabasePersistence.COLUMN_PRIORITY);
+        } finally {
+            databaseManager.close();
+        }
+
+        /* Upgrade keeps logs, their time to live starts at upgrade time. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        persistence.setLogSerializer(logSerializer);
+        try {
+            persistence.setLogTimeToLive("test", TimeUnit.HOURS.toMillis(1));
+            assertEquals(0, persistence.deleteExpiredLogs("test"));
+            assertEquals(1, persistence.countLogs("test"));
+            List<Log> outputLogs = new ArrayList<>();
+            assertNotNull(persistence.getLogs("test", Collections.<String>emptyList(), 1, outputLogs));
+            assertEquals(Collections.singletonList(oldLog), outputLogs);
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void upgradeFromVersion8to9() throws PersistenceException, JSONException {
+
+        /* Initialize database persistence with old version. */
+        DatabaseManager databaseManager = new DatabaseManager(sContext, DatabasePersistence.DATABASE, DatabasePersistence.TABLE, DatabasePersistence.VERSION_BATCH_ID_INDEX - 1, SCHEMA, mock(DatabaseManager.Listener.class));
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+
+        /* Insert old data before upgrade, recorded in a batch. */
+        Log oldLog = AndroidTestUtils.generateMockLog();
+        try {
+            ContentValues contentValues = new ContentValues();
+            contentValues.put(DatabasePersistence.COLUMN_GROUP, "test");
+            contentValues.put(DatabasePersistence.COLUMN_LOG, logSerializer.serializeLog(oldLog));
+            contentValues.put(DatabasePersistence.COLUMN_PRIORITY, NORMAL);
+            contentValues.put(DatabasePersistence.COLUMN_BATCH_ID, "oldBatch");
+            contentValues.put(DatabasePersistence.COLUMN_CREATED_AT, System.currentTimeMillis());
+            databaseManager.put(contentValues, DatabasePersistence.COLUMN_PRIORITY);
+        } finally {
+            databaseManager.close();
+        }
+
+        /* Upgrade keeps logs and their batch identifier. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        persistence.setLogSerializer(logSerializer);
+        try {
+            assertEquals(1, persistence.countLogs("test"));
+            List<Log> outputLogs = new ArrayList<>();
+            assertEquals("oldBatch", persistence.getLogs("test", Collections.<String>emptyList(), 1, outputLogs));
+            assertEquals(Collections.singletonList(oldLog), outputLogs);
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void expiredLogs() throws PersistenceException {
+
+        /* Initialize database persistence. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* Store logs, simulate the first ones were stored long ago. */
+            Log expiredLog = AndroidTestUtils.generateMockLog();
+            Log otherGroupLog = AndroidTestUtils.generateMockLog();
+            Log freshLog = AndroidTestUtils.generateMockLog();
+            long expiredId = persistence.putLog(expiredLog, "test", NORMAL);
+            long otherGroupId = persistence.putLog(otherGroupLog, "other", NORMAL);
+            persistence.putLog(freshLog, "test", NORMAL);
+            ContentValues values = new ContentValues();
+            values.put(DatabasePersistence.COLUMN_CREATED_AT, 0L);
+            persistence.mDatabaseManager.update(values, PRIMARY_KEY + " IN (?, ?)", new String[]{String.valueOf(expiredId), String.valueOf(otherGroupId)});
+
+            /* Expired logs are skipped. */
+            persistence.setLogTimeToLive("test", TimeUnit.DAYS.toMillis(7));
+            List<Log> outputLogs = new ArrayList<>();
+            String batchId = persistence.getLogs("test", Collections.<String>emptyList(), 10, outputLogs);
+            assertNotNull(batchId);
+            assertEquals(Collections.singletonList(freshLog), outputLogs);
+            persistence.clearPendingLogState("test", batchId);
+
+            /* And deleted, logs of other groups never expire. */
+            assertEquals(1, persistence.deleteExpiredLogs("test"));
+            assertEquals(0, persistence.deleteExpiredLogs("other"));
+            assertEquals(1, persistence.countLogs("test"));
+            assertEquals(1, persistence.countLogs("other"));
+            outputLogs.clear();
+            persistence.getLogs("other", Collections.<String>emptyList(), 10, outputLogs);
+            assertEquals(Collections.singletonList(otherGroupLog), outputLogs);
+        } finally {
+            persistence.close();
+        }
+    }
 }
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.utils.crypto;
+
+import android.content.Context;
+import android.os.Build;
+import android.support.test.InstrumentationRegistry;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+
+import static com.microsoft.appcenter.utils.crypto.CryptoConstants.ALGORITHM_DATA_SEPARATOR;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CryptoUtilsAndroidTest {
+
+    /**
+     * Number of values in a batch, like a batch of logs.
+     */
+    private static final int BATCH_SIZE = 50;
+
+    private static Context sContext;
+
+    @BeforeClass
+    public static void setUpClass() {
+        sContext = InstrumentationRegistry.getTargetContext();
+    }
+
+    private static List<String> generateData() {
+        List<String> data = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            data.add(UUID.randomUUID().toString() + "-" + UUID.randomUUID().toString());
+        }
+        return data;
+    }
+
+    @Test
+    public void batchMatchesSingle() {
+        CryptoUtils cryptoUtils = new CryptoUtils(sContext, CryptoUtils.DEFAULT_CRYPTO_FACTORY, Build.VERSION.SDK_INT);
+        List<String> data = generateData();
+        List<String> encrypted = cryptoUtils.encrypt(data);
+        List<CryptoUtils.DecryptedData> decrypted = cryptoUtils.decrypt(encrypted);
+        for (int i = 0; i < data.size(); i++) {
+            assertEquals(data.get(i), cryptoUtils.decrypt(encrypted.get(i)).getDecryptedData());
+            assertEquals(data.get(i), decrypted.get(i).getDecryptedData());
+        }
+    }
+
+    @Test
+    public void batchUsesNewIvForEachItem() {
+        CryptoUtils cryptoUtils = new CryptoUtils(sContext, CryptoUtils.DEFAULT_CRYPTO_FACTORY, Build.VERSION.SDK_INT);
+        List<String> data = Collections.nCopies(BATCH_SIZE, "same data");
+        List<String> encrypted = cryptoUtils.encrypt(data);
+
+        /* Data is not encrypted without the key store. */
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            assertEquals(BATCH_SIZE, new HashSet<>(encrypted).size());
+        }
+        for (CryptoUtils.DecryptedData decryptedData : cryptoUtils.decrypt(encrypted)) {
+            assertEquals("same data", decryptedData.getDecryptedData());
+        }
+    }
+
+    @Test
+    public void batchFallsBackOnFailure() {
+        CryptoUtils cryptoUtils = new CryptoUtils(sContext, CryptoUtils.DEFAULT_CRYPTO_FACTORY, Build.VERSION.SDK_INT);
+        String encrypted = cryptoUtils.encrypt("data");
+        String algorithm = encrypted.split(ALGORITHM_DATA_SEPARATOR)[0];
+        String corrupted = algorithm + ALGORITHM_DATA_SEPARATOR + "corrupted";
+
+        /* Null is kept null and data that cannot be decrypted is returned as is, like single calls. */
+        List<CryptoUtils.DecryptedData> decrypted = cryptoUtils.decrypt(Arrays.asList(encrypted, "not encrypted", corrupted, null, encrypted));
+        assertEquals(5, decrypted.size());
+        assertEquals("data", decrypted.get(0).getDecryptedData());
+        assertEquals("not encrypted", decrypted.get(1).getDecryptedData());
+        assertEquals(corrupted, decrypted.get(2).getDecryptedData());
+        assertNull(decrypted.get(3).getDecryptedData());
+        assertEquals("data", decrypted.get(4).getDecryptedData());
+        assertEquals(cryptoUtils.decrypt(corrupted).getDecryptedData(), decrypted.get(2).getDecryptedData());
+
+        /* Null is kept null when encrypting. */
+        List<String> encryptedList = cryptoUtils.encrypt(Arrays.asList("data", null));
+        assertNull(encryptedList.get(1));
+        assertEquals("data", cryptoUtils.decrypt(encryptedList.get(0)).getDecryptedData());
+    }
+}
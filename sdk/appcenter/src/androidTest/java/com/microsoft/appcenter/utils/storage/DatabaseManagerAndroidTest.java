@@ -262,6 +262,38 @@ public class DatabaseManagerAndroidTest {
         }
     }
 
+    @Test
+    public void transaction() {
+
+        /* Get instance to access database. */
+        DatabaseManager databaseManager = new DatabaseManager(sContext, DATABASE_NAME, "test.transaction", 1, mSchema, mock(DatabaseManager.Listener.class));
+
+        //noinspection TryFinallyCanBeTryWithResources (try with resources statement is API >= 19)
+        try {
+
+            /* Ending without a transaction does nothing. */
+            databaseManager.endTransaction();
+
+            /* Put values in a transaction. */
+            databaseManager.beginTransaction();
+            assertTrue(databaseManager.put(generateContentValues(), "COL_INTEGER") >= 0);
+            assertTrue(databaseManager.put(generateContentValues(), "COL_INTEGER") >= 0);
+            databaseManager.endTransaction();
+        } finally {
+
+            /* Close. */
+            databaseManager.close();
+        }
+
+        /* Check values are committed. */
+        databaseManager = new DatabaseManager(sContext, DATABASE_NAME, "test.transaction", 1, mSchema, mock(DatabaseManager.Listener.class));
+        try {
+            assertEquals(2, databaseManager.getRowCount());
+        } finally {
+            databaseManager.close();
+        }
+    }
+
     @SuppressWarnings("TryFinallyCanBeTryWithResources")
     private boolean checkTableExists(DatabaseManager databaseManager, String tableName) {
         SQLiteQueryBuilder builder = SQLiteUtils.newSQLiteQueryBuilder();
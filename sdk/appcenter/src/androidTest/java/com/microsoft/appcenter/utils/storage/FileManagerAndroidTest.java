@@ -169,4 +169,39 @@ public class FileManagerAndroidTest {
         /* Check file not found. */
         assertNull(FileManager.readBytes(file));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void fileManagerCompressed() throws IOException {
+        File file = new File(sAndroidFilesPath + UUID.randomUUID().toString() + FILE_STORAGE_TEST_FILE_EXTENSION);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            builder.append("{\"text\":\"Hello world \u00e9\"}\n");
+        }
+        String contents = builder.toString();
+
+        /* Write compressed text, it is smaller and read back as is. */
+        FileManager.writeCompressed(file, contents);
+        assertTrue(file.length() < contents.length());
+        assertEquals(contents, FileManager.readCompressed(file));
+
+        /* Uncompressed files are still supported. */
+        FileManager.write(file, "Hello world");
+        assertEquals("Hello world", FileManager.readCompressed(file));
+        assertArrayEquals("Hello world".getBytes(StandardCharsets.UTF_8), FileManager.readCompressedBytes(file));
+
+        /* Compress a binary file. */
+        File compressedFile = new File(file.getPath() + ".gz" + FILE_STORAGE_TEST_FILE_EXTENSION);
+        FileManager.write(file, contents);
+        FileManager.compress(file, compressedFile);
+        assertTrue(compressedFile.length() < file.length());
+        assertArrayEquals(FileManager.readBytes(file), FileManager.readCompressedBytes(compressedFile));
+
+        /* Delete the files to clean up. */
+        FileManager.delete(file);
+        FileManager.delete(compressedFile);
+
+        /* Check file not found. */
+        assertNull(FileManager.readCompressed(file));
+        assertNull(FileManager.readCompressedBytes(file));
+    }
+}
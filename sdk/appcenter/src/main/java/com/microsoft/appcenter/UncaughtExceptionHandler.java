@@ -21,9 +21,11 @@ import java.util.concurrent.TimeUnit;
 class UncaughtExceptionHandler implements Thread.UncaughtExceptionHandler {
 
     /**
-     * Shutdown timeout in millis.
+     * Maximum time to wait for the channel to persist logs on crash, in millis.
+     * Process termination must not be delayed long enough to be reported as an ANR.
      */
-    private static final int SHUTDOWN_TIMEOUT = 5000;
+    @VisibleForTesting
+    static final int CRASH_FLUSH_TIMEOUT = 50;
 
     /**
      * Handler on App Center background thread.
@@ -55,19 +57,30 @@ class UncaughtExceptionHandler implements Thread.UncaughtExceptionHandler {
     public void uncaughtException(Thread thread, Throwable exception) {
         if (AppCenter.getInstance().isInstanceEnabled()) {
 
-            /* Wait channel to finish saving other logs in background. */
+            /*
+             * Stop sending logs before running queued tasks,
+             * so that the logs they enqueue are persisted in short transactions until the deadline.
+             */
+            final long deadline = System.currentTimeMillis() + CRASH_FLUSH_TIMEOUT;
             final Semaphore semaphore = new Semaphore(0);
+            mHandler.postAtFrontOfQueue(new Runnable() {
+
+                @Override
+                public void run() {
+                    mChannel.startCrashFlush(deadline);
+                }
+            });
             mHandler.post(new Runnable() {
 
                 @Override
                 public void run() {
-                    mChannel.shutdown();
-                    AppCenterLog.debug(AppCenter.LOG_TAG, "Channel completed shutdown.");
+                    mChannel.endCrashFlush();
+                    AppCenterLog.debug(AppCenter.LOG_TAG, "Channel completed crash flush.");
                     semaphore.release();
                 }
             });
             try {
-                if (!semaphore.tryAcquire(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                if (!semaphore.tryAcquire(CRASH_FLUSH_TIMEOUT, TimeUnit.MILLISECONDS)) {
                     AppCenterLog.error(AppCenter.LOG_TAG, "Timeout waiting for looper tasks to complete.");
                 }
             } catch (InterruptedException e) {
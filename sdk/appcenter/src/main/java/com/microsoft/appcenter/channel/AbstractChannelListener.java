@@ -36,6 +36,10 @@ public class AbstractChannelListener implements Channel.Listener {
         return false;
     }
 
+    @Override
+    public void onCrashFlush() {
+    }
+
     @Override
     public void onGloballyEnabled(boolean isEnabled) {
     }
@@ -47,6 +47,26 @@ public interface Channel {
      */
     void addGroup(String groupName, int maxLogsPerBatch, long batchTimeInterval, int maxParallelBatches, Ingestion ingestion, GroupListener groupListener);
 
+    /**
+     * Set the network a group is allowed to upload on, logs stay in storage until it's available.
+     * The policy applies to the group added by this name, and also to its One Collector group.
+     * Default policy is {@link NetworkPolicy#ANY}.
+     *
+     * @param groupName     the name of a group.
+     * @param networkPolicy network policy.
+     */
+    void setNetworkPolicy(@NonNull String groupName, @NonNull NetworkPolicy networkPolicy);
+
+    /**
+     * Set how long logs of a group are kept in storage, expired logs are deleted instead of being sent.
+     * The time to live applies to the group added by this name, and also to its One Collector group.
+     * Logs never expire by default.
+     *
+     * @param groupName  the name of a group.
+     * @param timeToLive time to live in milliseconds since the log was stored.
+     */
+    void setLogTimeToLive(@NonNull String groupName, long timeToLive);
+
     /**
      * Remove a group for logs.
      *
@@ -134,6 +154,21 @@ public interface Channel {
      */
     void shutdown();
 
+    /**
+     * Prepare for the process to be terminated after a crash: stop sending logs, abandon calls in progress
+     * and persist logs enqueued until {@link #endCrashFlush()} in short transactions, each one
+     * committed when the task that opened it completes. Logs persisted after the deadline are
+     * committed one by one.
+     *
+     * @param deadline time in milliseconds after which the process can be terminated.
+     */
+    void startCrashFlush(long deadline);
+
+    /**
+     * Commit logs enqueued since {@link #startCrashFlush(long)}. Channel stays suspended.
+     */
+    void endCrashFlush();
+
     /**
      * Channel global listener specification.
      */
@@ -183,6 +218,12 @@ public interface Channel {
          */
         boolean shouldFilter(@NonNull Log log);
 
+        /**
+         * Called when the channel starts flushing before the process is terminated after a crash.
+         * Logs enqueued from this callback are persisted before the tasks that were queued at crash time.
+         */
+        void onCrashFlush();
+
         /**
          * Called after channel state has changed.
          *
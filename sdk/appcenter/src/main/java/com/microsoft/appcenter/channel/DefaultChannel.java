@@ -9,6 +9,7 @@ import android.content.Context;
 import android.os.Handler;
 import android.support.annotation.MainThread;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
 import android.support.annotation.WorkerThread;
 
@@ -29,6 +30,7 @@ import com.microsoft.appcenter.persistence.Persistence;
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
 import com.microsoft.appcenter.utils.IdHelper;
+import com.microsoft.appcenter.utils.NetworkStateHelper;
 import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
 
 import java.io.IOException;
@@ -44,8 +46,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import static com.microsoft.appcenter.AppCenter.LOG_TAG;
+import static com.microsoft.appcenter.channel.OneCollectorChannelListener.ONE_COLLECTOR_GROUP_NAME_SUFFIX;
 
 public class DefaultChannel implements Channel {
 
@@ -61,6 +65,37 @@ public class DefaultChannel implements Channel {
     @VisibleForTesting
     static final String START_TIMER_PREFIX = "startTimerPrefix.";
 
+    /**
+     * Start of waiting for a network allowed by the group network policy.
+     */
+    @VisibleForTesting
+    static final String NETWORK_POLICY_WAIT_PREFIX = "networkPolicyWait.";
+
+    /**
+     * Maximum time logs wait for a network allowed by the group network policy, after that they
+     * are sent on any network.
+     */
+    @VisibleForTesting
+    static final long MAX_NETWORK_POLICY_WAIT = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * Time an ingestion is suspended after a recoverable error, doubled on each consecutive error.
+     */
+    @VisibleForTesting
+    static final long MIN_INGESTION_SUSPEND_TIME = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * Maximum time an ingestion is suspended after consecutive recoverable errors.
+     */
+    @VisibleForTesting
+    static final long MAX_INGESTION_SUSPEND_TIME = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Maximum number of logs persisted in a single transaction during a crash flush.
+     */
+    @VisibleForTesting
+    static final int CRASH_FLUSH_SLICE_SIZE = 20;
+
     /**
      * Transmission interval minimum value, in ms.
      */
@@ -106,11 +141,53 @@ public class DefaultChannel implements Channel {
      */
     private final Set<Ingestion> mIngestions;
 
+    /**
+     * Recoverable error state by ingestion, an ingestion is suspended without affecting groups using other ingestions.
+     */
+    private final Map<Ingestion, IngestionState> mIngestionStates = new HashMap<>();
+
     /**
      * App Center core handler.
      */
     private final Handler mAppCenterHandler;
 
+    /**
+     * Network policies by group name.
+     */
+    private final Map<String, NetworkPolicy> mNetworkPolicies = new HashMap<>();
+
+    /**
+     * Log time to live by group name, in milliseconds.
+     */
+    private final Map<String, Long> mLogTimeToLives = new HashMap<>();
+
+    /**
+     * Network state helper, only used once a group has a network policy.
+     */
+    private NetworkStateHelper mNetworkStateHelper;
+
+    /**
+     * Active network properties, updated when network changes.
+     */
+    private NetworkStateHelper.ConnectionInfo mConnectionInfo;
+
+    /**
+     * Re-evaluate network policies when the active network changes.
+     */
+    private final NetworkStateHelper.Listener mNetworkStateListener = new NetworkStateHelper.Listener() {
+
+        @Override
+        public void onNetworkStateUpdated(boolean connected) {
+            mAppCenterHandler.post(new Runnable() {
+
+                @Override
+                public void run() {
+                    onNetworkChanged();
+                }
+            });
+        }
+    };
+
     /**
      * Is channel enabled?
      */
@@ -133,6 +210,32 @@ public class DefaultChannel implements Channel {
      */
     private int mCurrentState;
 
+    /**
+     * Are logs persisted in transactions before the process is terminated after a crash?
+     */
+    private boolean mCrashFlushing;
+
+    /**
+     * Time after which the process can be terminated during a crash flush, logs are then committed one by one.
+     */
+    private long mCrashFlushDeadline;
+
+    /**
+     * Number of logs persisted in the crash flush transaction in progress, 0 if there is no transaction.
+     */
+    private int mCrashFlushSliceCount;
+
+    /**
+     * Commits the crash flush transaction once the task that opened it completes.
+     */
+    private final Runnable mCommitCrashFlushSlice = new Runnable() {
+
+        @Override
+        public void run() {
+            commitCrashFlushSlice();
+        }
+    };
+
     /**
      * Creates and initializes a new instance.
      *
@@ -226,6 +329,14 @@ public class DefaultChannel implements Channel {
         final GroupState groupState = new GroupState(groupName, maxLogsPerBatch, batchTimeInterval, maxParallelBatches, ingestion, groupListener);
         mGroupStates.put(groupName, groupState);
 
+        /* Delete expired logs before counting pending logs. */
+        Long timeToLive = getLogTimeToLive(groupName);
+        if (timeToLive != null) {
+            mPersistence.setLogTimeToLive(groupName, timeToLive);
+            mPersistence.deleteExpiredLogs(groupName);
+            groupState.mExpiredLogsDeleteTime = System.currentTimeMillis();
+        }
+
         /* Count pending logs. */
         groupState.mPendingLogCount = mPersistence.countLogs(groupName);
 
@@ -246,6 +357,120 @@ public class DefaultChannel implements Channel {
         }
     }
 
+    @Override
+    public void setNetworkPolicy(@NonNull String groupName, @NonNull NetworkPolicy networkPolicy) {
+        AppCenterLog.debug(LOG_TAG, "setNetworkPolicy(" + groupName + ", " + networkPolicy + ")");
+        mNetworkPolicies.put(groupName, networkPolicy);
+        if (networkPolicy != NetworkPolicy.ANY && mNetworkStateHelper == null) {
+            mNetworkStateHelper = NetworkStateHelper.getSharedInstance(mContext);
+            mNetworkStateHelper.addListener(mNetworkStateListener);
+            mConnectionInfo = mNetworkStateHelper.getConnectionInfo();
+        }
+
+        /* Policy might be less restrictive than before. */
+        if (mEnabled) {
+            for (GroupState groupState : mGroupStates.values()) {
+                if (getNetworkPolicy(groupState.mName) == networkPolicy) {
+                    checkPendingLogs(groupState);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void setLogTimeToLive(@NonNull String groupName, long timeToLive) {
+        AppCenterLog.debug(LOG_TAG, "setLogTimeToLive(" + groupName + ", " + timeToLive + ")");
+        mLogTimeToLives.put(groupName, timeToLive);
+
+        /* Apply to groups already added. */
+        for (GroupState groupState : mGroupStates.values()) {
+            Long groupTimeToLive = getLogTimeToLive(groupState.mName);
+            if (groupTimeToLive != null && groupTimeToLive == timeToLive) {
+                mPersistence.setLogTimeToLive(groupState.mName, timeToLive);
+                mPersistence.deleteExpiredLogs(groupState.mName);
+                groupState.mExpiredLogsDeleteTime = System.currentTimeMillis();
+            }
+        }
+    }
+
+    /**
+     * Get log time to live of a group, One Collector groups use the time to live of their App Center group.
+     *
+     * @param groupName group name.
+     * @return time to live in milliseconds or null if logs never expire.
+     */
+    @Nullable
+    private Long getLogTimeToLive(@NonNull String groupName) {
+        Long timeToLive = mLogTimeToLives.get(groupName);
+        if (timeToLive == null && groupName.endsWith(ONE_COLLECTOR_GROUP_NAME_SUFFIX)) {
+            timeToLive = mLogTimeToLives.get(groupName.substring(0, groupName.length() - ONE_COLLECTOR_GROUP_NAME_SUFFIX.length()));
+        }
+        return timeToLive;
+    }
+
+    /**
+     * Get network policy of a group, One Collector groups use the policy of their App Center group.
+     *
+     * @param groupName group name.
+     * @return network policy.
+     */
+    @NonNull
+    private NetworkPolicy getNetworkPolicy(@NonNull String groupName) {
+        NetworkPolicy networkPolicy = mNetworkPolicies.get(groupName);
+        if (networkPolicy == null && groupName.endsWith(ONE_COLLECTOR_GROUP_NAME_SUFFIX)) {
+            networkPolicy = mNetworkPolicies.get(groupName.substring(0, groupName.length() - ONE_COLLECTOR_GROUP_NAME_SUFFIX.length()));
+        }
+        return networkPolicy != null ? networkPolicy : NetworkPolicy.ANY;
+    }
+
+    /**
+     * Check if a group can upload on the active network. Logs are sent anyway if they've been
+     * waiting for too long so that they don't stay forever on devices that rarely use Wi-Fi.
+     *
+     * @param groupState group state.
+     * @return true if the group can upload now.
+     */
+    private boolean isNetworkAllowed(@NonNull GroupState groupState) {
+        NetworkPolicy networkPolicy = getNetworkPolicy(groupState.mName);
+        if (networkPolicy == NetworkPolicy.ANY) {
+            return true;
+        }
+        String waitKey = NETWORK_POLICY_WAIT_PREFIX + groupState.mName;
+        long waitStart = SharedPreferencesManager.getLong(waitKey);
+        if (networkPolicy.allows(mConnectionInfo)) {
+            if (waitStart != 0) {
+                SharedPreferencesManager.remove(waitKey);
+            }
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        if (waitStart == 0 || waitStart > now) {
+            SharedPreferencesManager.putLong(waitKey, now);
+            waitStart = now;
+        }
+        if (now - waitStart >= MAX_NETWORK_POLICY_WAIT) {
+            AppCenterLog.debug(LOG_TAG, "Logs of " + groupState.mName + " waited too long for network policy " + networkPolicy + ", sending anyway.");
+            return true;
+        }
+        AppCenterLog.debug(LOG_TAG, "Logs of " + groupState.mName + " are waiting for a network allowed by policy " + networkPolicy + ".");
+        return false;
+    }
+
+    /**
+     * Check pending logs again when network changes.
+     */
+    @VisibleForTesting
+    void onNetworkChanged() {
+        mConnectionInfo = mNetworkStateHelper.getConnectionInfo();
+        if (mEnabled) {
+            for (GroupState groupState : mGroupStates.values()) {
+                if (getNetworkPolicy(groupState.mName) != NetworkPolicy.ANY) {
+                    checkPendingLogs(groupState);
+                }
+            }
+        }
+    }
+
     @Override
     public void removeGroup(String groupName) {
         AppCenterLog.debug(LOG_TAG, "removeGroup(" + groupName + ")");
@@ -321,8 +546,8 @@ public class DefaultChannel implements Channel {
 
     /**
      * Set the enabled flag. If false, the channel will continue to persist data but not forward any item to ingestion.
-     * The most common use-case would be to set it to false and enable sending again after the channel has disabled itself after receiving
-     * a recoverable error (most likely related to a server issue).
+     * Recoverable errors (most likely related to a server issue) do not disable the channel,
+     * only the failing ingestion is suspended and resumed automatically.
      *
      * @param enabled flag to enable or disable the channel.
      */
@@ -390,6 +615,10 @@ public class DefaultChannel implements Channel {
         mEnabled = false;
         mDiscardLogs = deleteLogs;
         mCurrentState++;
+        for (IngestionState ingestionState : mIngestionStates.values()) {
+            mAppCenterHandler.removeCallbacks(ingestionState.mResumeRunnable);
+        }
+        mIngestionStates.clear();
         for (GroupState groupState : mGroupStates.values()) {
             cancelTimer(groupState);
 
@@ -471,6 +700,11 @@ public class DefaultChannel implements Channel {
             return;
         }
 
+        /* Keep logs in storage until the network policy of the group allows sending them. */
+        if (!isNetworkAllowed(groupState)) {
+            return;
+        }
+
         /* Get a batch from Persistence. */
         final List<Log> batch = new ArrayList<>(maxFetch);
         final String batchId = mPersistence.getLogs(groupState.mName, groupState.mPausedTargetKeys, maxFetch, batch);
@@ -478,6 +712,25 @@ public class DefaultChannel implements Channel {
         /* Decrement counter. */
         groupState.mPendingLogCount -= maxFetch;
 
+        /*
+         * Fewer logs than counted may be expired logs left in storage: delete them and count again.
+         * Short fetches are common, so do it at most once per time to live interval.
+         */
+        Long timeToLive = getLogTimeToLive(groupState.mName);
+        if (batch.size() < maxFetch && timeToLive != null) {
+            long now = System.currentTimeMillis();
+            if (now - groupState.mExpiredLogsDeleteTime >= timeToLive) {
+                groupState.mExpiredLogsDeleteTime = now;
+                if (mPersistence.deleteExpiredLogs(groupState.mName) > 0) {
+                    int sendingLogCount = batch.size();
+                    for (List<Log> sendingBatch : groupState.mSendingBatches.values()) {
+                        sendingLogCount += sendingBatch.size();
+                    }
+                    groupState.mPendingLogCount = Math.max(0, mPersistence.countLogs(groupState.mName) - sendingLogCount);
+                }
+            }
+        }
+
         /* Nothing more to do if no logs. */
         if (batchId == null) {
             return;
@@ -510,6 +763,7 @@ public class DefaultChannel implements Channel {
         /* Send logs. */
         LogContainer logContainer = new LogContainer();
         logContainer.setLogs(batch);
+        logContainer.setBatchId(batchId);
         groupState.mIngestion.sendAsync(mAppSecret, mInstallId, logContainer, new ServiceCallback() {
 
             @Override
@@ -567,14 +821,20 @@ public class DefaultChannel implements Channel {
                     groupListener.onSuccess(log);
                 }
             }
+
+            /* Reset consecutive errors unless a newer call already suspended the ingestion. */
+            IngestionState ingestionState = mIngestionStates.get(groupState.mIngestion);
+            if (ingestionState != null && !ingestionState.mSuspended) {
+                mIngestionStates.remove(groupState.mIngestion);
+            }
             checkPendingLogs(groupState);
         }
     }
 
     /**
      * The actual implementation to react to not being able to send a batch to the server.
-     * Will disable the sender in case of a recoverable error.
-     * Will delete batch of data in case of a non-recoverable error.
+     * Will suspend the group ingestion in case of a recoverable error, groups using other ingestions keep sending.
+     * Will delete batch of data and disable the sender in case of a non-recoverable error.
      *
      * @param groupState the group state
      * @param batchId    the batch ID
@@ -588,6 +848,8 @@ public class DefaultChannel implements Channel {
             boolean recoverableError = HttpUtils.isRecoverableError(e);
             if (recoverableError) {
                 groupState.mPendingLogCount += removedLogsForBatchId.size();
+                mPersistence.clearPendingLogState(groupName, batchId);
+                suspendIngestion(groupState.mIngestion);
             } else {
                 GroupListener groupListener = groupState.mListener;
                 if (groupListener != null) {
@@ -595,11 +857,64 @@ public class DefaultChannel implements Channel {
                         groupListener.onFailure(log, e);
                     }
                 }
+                suspend(true, e);
+            }
+        }
+    }
+
+    /**
+     * Stop sending logs with an ingestion after a recoverable error and resume after a delay
+     * that grows with consecutive errors.
+     *
+     * @param ingestion the failing ingestion.
+     */
+    private void suspendIngestion(@NonNull Ingestion ingestion) {
+        IngestionState ingestionState = mIngestionStates.get(ingestion);
+        if (ingestionState == null) {
+            ingestionState = new IngestionState(ingestion);
+            mIngestionStates.put(ingestion, ingestionState);
+        }
+
+        /* Other batches already sent with this ingestion can fail as well, count them as the same error. */
+        if (ingestionState.mSuspended) {
+            return;
+        }
+        long suspendTime = MIN_INGESTION_SUSPEND_TIME;
+        for (int i = 0; i < ingestionState.mErrorCount && suspendTime < MAX_INGESTION_SUSPEND_TIME; i++) {
+            suspendTime *= 2;
+        }
+        suspendTime = Math.min(suspendTime, MAX_INGESTION_SUSPEND_TIME);
+        ingestionState.mErrorCount++;
+        ingestionState.mSuspended = true;
+        AppCenterLog.warn(LOG_TAG, "Suspending ingestion " + ingestion + " for " + suspendTime + " ms.");
+        for (GroupState groupState : mGroupStates.values()) {
+            if (groupState.mIngestion == ingestion) {
+                cancelTimer(groupState);
+            }
+        }
+        mAppCenterHandler.postDelayed(ingestionState.mResumeRunnable, suspendTime);
+    }
+
+    /**
+     * Resume sending logs with an ingestion suspended by {@link #suspendIngestion(Ingestion)}.
+     *
+     * @param ingestionState the ingestion state.
+     */
+    private void resumeIngestion(@NonNull IngestionState ingestionState) {
+        ingestionState.mSuspended = false;
+        AppCenterLog.debug(LOG_TAG, "Resuming ingestion " + ingestionState.mIngestion);
+        for (GroupState groupState : mGroupStates.values()) {
+            if (groupState.mIngestion == ingestionState.mIngestion) {
+                checkPendingLogs(groupState);
             }
-            suspend(!recoverableError, e);
         }
     }
 
+    private boolean isIngestionSuspended(@NonNull Ingestion ingestion) {
+        IngestionState ingestionState = mIngestionStates.get(ingestion);
+        return ingestionState != null && ingestionState.mSuspended;
+    }
+
     @Override
     public void enqueue(@NonNull Log log, @NonNull final String groupName, int flags) {
 
@@ -668,6 +983,9 @@ public class DefaultChannel implements Channel {
                 AppCenterLog.debug(LOG_TAG, "Log of type '" + log.getType() + "' was not filtered out by listener(s) but no app secret was provided. Not persisting/sending the log.");
                 return;
             }
+            if (mCrashFlushing) {
+                beginCrashFlushSlice();
+            }
             try {
 
                 /* Persist log. */
@@ -679,6 +997,10 @@ public class DefaultChannel implements Channel {
                     groupState.mListener.onFailure(log, e);
                 }
                 return;
+            } finally {
+                if (mCrashFlushing) {
+                    endCrashFlushSlice();
+                }
             }
 
             /* Nothing more to do if the log is from a paused transmission target. */
@@ -712,7 +1034,7 @@ public class DefaultChannel implements Channel {
         Long batchTimeInterval = resolveTriggerInterval(groupState);
 
         /* Check if there is no need to trigger ingestion. */
-        if (batchTimeInterval == null || groupState.mPaused) {
+        if (batchTimeInterval == null || groupState.mPaused || isIngestionSuspended(groupState.mIngestion)) {
             return;
         }
 
@@ -798,6 +1120,78 @@ public class DefaultChannel implements Channel {
         suspend(false, new CancellationException());
     }
 
+    @Override
+    public void startCrashFlush(long deadline) {
+        if (mCrashFlushing) {
+            return;
+        }
+        mCrashFlushing = true;
+        mCrashFlushDeadline = deadline;
+
+        /*
+         * Unlike suspend, only do what is needed to stop sending: logs of batches in progress stay in
+         * storage and are sent again on next launch, timers and resume callbacks find the channel disabled.
+         */
+        mEnabled = false;
+        mCurrentState++;
+        for (GroupState groupState : mGroupStates.values()) {
+            groupState.mSendingBatches.clear();
+        }
+        for (Ingestion ingestion : mIngestions) {
+            try {
+                ingestion.close();
+            } catch (IOException e) {
+                AppCenterLog.error(LOG_TAG, "Failed to close ingestion: " + ingestion, e);
+            }
+        }
+        for (Listener listener : mListeners) {
+            listener.onCrashFlush();
+        }
+    }
+
+    @Override
+    public void endCrashFlush() {
+        if (mCrashFlushing) {
+            mCrashFlushing = false;
+            commitCrashFlushSlice();
+        }
+    }
+
+    /**
+     * Open a transaction for the logs persisted by the current task, unless the crash flush deadline
+     * has passed: the process can then be terminated at any time and each log is committed on its own.
+     */
+    private void beginCrashFlushSlice() {
+        if (mCrashFlushSliceCount == 0 && System.currentTimeMillis() < mCrashFlushDeadline) {
+            mPersistence.beginTransaction();
+            mCrashFlushSliceCount = 1;
+
+            /* Commit as soon as the current task completes, before running the next one. */
+            mAppCenterHandler.postAtFrontOfQueue(mCommitCrashFlushSlice);
+        } else if (mCrashFlushSliceCount > 0) {
+            mCrashFlushSliceCount++;
+        }
+    }
+
+    /**
+     * Commit the transaction early if it reached the slice size or if the deadline passed while persisting.
+     */
+    private void endCrashFlushSlice() {
+        if (mCrashFlushSliceCount >= CRASH_FLUSH_SLICE_SIZE || System.currentTimeMillis() >= mCrashFlushDeadline) {
+            commitCrashFlushSlice();
+        }
+    }
+
+    /**
+     * Commit the crash flush transaction in progress, if any.
+     */
+    private void commitCrashFlushSlice() {
+        if (mCrashFlushSliceCount > 0) {
+            mCrashFlushSliceCount = 0;
+            mPersistence.endTransaction();
+        }
+    }
+
     /**
      * State for a specific log group.
      */
@@ -844,6 +1238,11 @@ public class DefaultChannel implements Channel {
          */
         int mPendingLogCount;
 
+        /**
+         * Time expired logs of this group were last deleted, in milliseconds.
+         */
+        long mExpiredLogsDeleteTime;
+
         /**
          * Is timer scheduled.
          */
@@ -891,4 +1290,45 @@ public class DefaultChannel implements Channel {
             mListener = listener;
         }
     }
+
+    /**
+     * Recoverable error state for a specific ingestion.
+     */
+    private class IngestionState {
+
+        /**
+         * Ingestion.
+         */
+        final Ingestion mIngestion;
+
+        /**
+         * Number of consecutive recoverable errors.
+         */
+        int mErrorCount;
+
+        /**
+         * Indicates if the ingestion is suspended.
+         */
+        boolean mSuspended;
+
+        /**
+         * Runnable that resumes sending logs with the ingestion.
+         */
+        final Runnable mResumeRunnable = new Runnable() {
+
+            @Override
+            public void run() {
+                resumeIngestion(IngestionState.this);
+            }
+        };
+
+        /**
+         * Init.
+         *
+         * @param ingestion ingestion.
+         */
+        IngestionState(Ingestion ingestion) {
+            mIngestion = ingestion;
+        }
+    }
 }
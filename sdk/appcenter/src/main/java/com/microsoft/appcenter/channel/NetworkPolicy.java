@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.channel;
+
+import com.microsoft.appcenter.utils.NetworkStateHelper.ConnectionInfo;
+
+/**
+ * Network a log group is allowed to upload on. Logs of a group waiting for an allowed network stay
+ * in persistence.
+ */
+public enum NetworkPolicy {
+
+    /**
+     * Upload on any connected network.
+     */
+    ANY,
+
+    /**
+     * Upload only on a network that is not metered.
+     */
+    UNMETERED,
+
+    /**
+     * Upload only on Wi-Fi or ethernet network that is not metered.
+     */
+    WIFI;
+
+    /**
+     * Check if the policy allows uploading on a network.
+     *
+     * @param connectionInfo active network properties, null if unknown.
+     * @return true if uploading is allowed. If network properties are unknown, uploading is allowed.
+     */
+    boolean allows(ConnectionInfo connectionInfo) {
+        if (this == ANY || connectionInfo == null) {
+            return true;
+        }
+        if (!connectionInfo.isConnected() || connectionInfo.isMetered()) {
+            return false;
+        }
+        if (this == WIFI) {
+            ConnectionInfo.Transport transport = connectionInfo.getTransport();
+            return transport == ConnectionInfo.Transport.WIFI || transport == ConnectionInfo.Transport.ETHERNET;
+        }
+        return true;
+    }
+}
@@ -16,10 +16,13 @@ import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
 import com.microsoft.appcenter.ingestion.models.one.SdkExtension;
 import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import static com.microsoft.appcenter.utils.AppCenterLog.LOG_TAG;
@@ -47,6 +50,24 @@ public class OneCollectorChannelListener extends AbstractChannelListener {
     @VisibleForTesting
     static final String ONE_COLLECTOR_GROUP_NAME_SUFFIX = "/one";
 
+    /**
+     * Storage key for epochs and sequence numbers.
+     */
+    @VisibleForTesting
+    static final String EPOCHS_AND_SEQS_STORAGE_KEY = "oneCollectorEpochsAndSeqs";
+
+    /**
+     * Separator between iKey, epoch and sequence number in storage.
+     */
+    private static final char EPOCHS_AND_SEQS_STORAGE_SEPARATOR = '/';
+
+    /**
+     * Number of sequence numbers reserved each time storage is updated.
+     * After a restart, numbering resumes after the reserved ones, so storage is not written for every log.
+     */
+    @VisibleForTesting
+    static final long SEQ_RESERVATION_SIZE = 100;
+
     /**
      * Channel.
      */
@@ -72,6 +93,11 @@ public class OneCollectorChannelListener extends AbstractChannelListener {
      */
     private final Map<String, EpochAndSeq> mEpochsAndSeqsByIKey = new HashMap<>();
 
+    /**
+     * Whether epochs and sequences were loaded from storage.
+     */
+    private boolean mEpochsAndSeqsLoaded;
+
     /**
      * Init with channel.
      *
@@ -137,6 +163,8 @@ public class OneCollectorChannelListener extends AbstractChannelListener {
         }
 
         /* Add additional part A fields that are not known by the modules during conversion. */
+        loadEpochsAndSeqs();
+        boolean reserved = false;
         for (CommonSchemaLog commonSchemaLog : commonSchemaLogs) {
 
             /* Add flags. */
@@ -152,6 +180,17 @@ public class OneCollectorChannelListener extends AbstractChannelListener {
             sdk.setEpoch(epochAndSeq.epoch);
             sdk.setSeq(++epochAndSeq.seq);
             sdk.setInstallId(mInstallId);
+
+            /* Reserve next sequence numbers if needed. */
+            if (epochAndSeq.seq > epochAndSeq.reservedSeq) {
+                epochAndSeq.reservedSeq = epochAndSeq.seq + SEQ_RESERVATION_SIZE - 1;
+                reserved = true;
+            }
+        }
+
+        /* Persist reservations before logs are persisted, once for all the converted logs. */
+        if (reserved) {
+            saveEpochsAndSeqs();
         }
 
         /* Enqueue logs to one collector group. */
@@ -226,9 +265,55 @@ public class OneCollectorChannelListener extends AbstractChannelListener {
     public void onGloballyEnabled(boolean isEnabled) {
         if (!isEnabled) {
             mEpochsAndSeqsByIKey.clear();
+            mEpochsAndSeqsLoaded = true;
+            SharedPreferencesManager.remove(EPOCHS_AND_SEQS_STORAGE_KEY);
         }
     }
 
+    /**
+     * Load epochs and sequence numbers from storage the first time they are needed.
+     * Sequence numbering resumes after the last reserved number as the ones before may have been used.
+     */
+    private void loadEpochsAndSeqs() {
+        if (mEpochsAndSeqsLoaded) {
+            return;
+        }
+        mEpochsAndSeqsLoaded = true;
+        Set<String> storedEpochsAndSeqs = SharedPreferencesManager.getStringSet(EPOCHS_AND_SEQS_STORAGE_KEY);
+        if (storedEpochsAndSeqs == null) {
+            return;
+        }
+        for (String storedEpochAndSeq : storedEpochsAndSeqs) {
+
+            /* The iKey may contain the separator, parse from the end. */
+            int seqSeparatorIndex = storedEpochAndSeq.lastIndexOf(EPOCHS_AND_SEQS_STORAGE_SEPARATOR);
+            int epochSeparatorIndex = storedEpochAndSeq.lastIndexOf(EPOCHS_AND_SEQS_STORAGE_SEPARATOR, seqSeparatorIndex - 1);
+            try {
+                String iKey = storedEpochAndSeq.substring(0, epochSeparatorIndex);
+                String epoch = storedEpochAndSeq.substring(epochSeparatorIndex + 1, seqSeparatorIndex);
+                long seq = Long.parseLong(storedEpochAndSeq.substring(seqSeparatorIndex + 1));
+                EpochAndSeq epochAndSeq = new EpochAndSeq(epoch);
+                epochAndSeq.seq = seq;
+                epochAndSeq.reservedSeq = seq;
+                mEpochsAndSeqsByIKey.put(iKey, epochAndSeq);
+            } catch (RuntimeException e) {
+                AppCenterLog.warn(LOG_TAG, "Ignore invalid epoch and sequence number in store: " + storedEpochAndSeq, e);
+            }
+        }
+    }
+
+    /**
+     * Save epochs and reserved sequence numbers to storage.
+     */
+    private void saveEpochsAndSeqs() {
+        Set<String> storedEpochsAndSeqs = new HashSet<>();
+        for (Map.Entry<String, EpochAndSeq> entry : mEpochsAndSeqsByIKey.entrySet()) {
+            EpochAndSeq epochAndSeq = entry.getValue();
+            storedEpochsAndSeqs.add(entry.getKey() + EPOCHS_AND_SEQS_STORAGE_SEPARATOR + epochAndSeq.epoch + EPOCHS_AND_SEQS_STORAGE_SEPARATOR + epochAndSeq.reservedSeq);
+        }
+        SharedPreferencesManager.putStringSet(EPOCHS_AND_SEQS_STORAGE_KEY, storedEpochsAndSeqs);
+    }
+
     /**
      * Epoch and sequence number for logs.
      */
@@ -244,6 +329,11 @@ public class OneCollectorChannelListener extends AbstractChannelListener {
          */
         long seq;
 
+        /**
+         * Highest sequence number saved in storage.
+         */
+        long reservedSeq;
+
         /**
          * Init.
          */
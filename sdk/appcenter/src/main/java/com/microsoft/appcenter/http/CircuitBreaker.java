@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.microsoft.appcenter.AppCenter.LOG_TAG;
+
+/**
+ * Endpoint level circuit breaker shared by all HTTP calls of the process.
+ * <p>
+ * After a failure, the endpoint is open: no call is made until the backoff delay (exponential with
+ * jitter, at least half the bound, or what the server asked for) is elapsed. Then the endpoint is half open: a single
+ * probe call is let through while the other calls wait, the endpoint is closed again and all
+ * waiting calls resume if the probe succeeds.
+ * <p>
+ * Failure count and end of backoff are persisted so that a process restart does not retry
+ * immediately.
+ */
+class CircuitBreaker {
+
+    /**
+     * Storage key prefix, followed by endpoint.
+     */
+    @VisibleForTesting
+    static final String PREFERENCE_PREFIX = "circuitBreaker.";
+
+    /**
+     * Backoff upper bound after the first failure, doubled on each failure.
+     * The actual delay is randomly picked between half the bound and the bound.
+     */
+    @VisibleForTesting
+    static final long BASE_BACKOFF = TimeUnit.SECONDS.toMillis(10);
+
+    /**
+     * Maximum upper bound of the exponential backoff.
+     */
+    @VisibleForTesting
+    static final long MAX_BACKOFF = TimeUnit.MINUTES.toMillis(20);
+
+    /**
+     * Maximum time the endpoint stays open, also applies to delays requested by servers and
+     * protects against wall clock changes between processes.
+     */
+    @VisibleForTesting
+    static final long MAX_OPEN_DURATION = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * A probe call without result after this time (cancelled calls don't report) lets another call
+     * probe the endpoint.
+     */
+    @VisibleForTesting
+    static final long PROBE_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * Value returned by {@link #acquire} when the call waits for the probe call to complete.
+     */
+    static final long WAIT_FOR_PROBE = -1;
+
+    /**
+     * Separator of values in storage.
+     */
+    private static final String SEPARATOR = ":";
+
+    /**
+     * Shared instance.
+     */
+    private static CircuitBreaker sSharedInstance;
+
+    /**
+     * State by endpoint.
+     */
+    private final Map<String, EndpointState> mEndpointStates = new HashMap<>();
+
+    /**
+     * Whether state is persisted.
+     */
+    private final boolean mPersistent;
+
+    /**
+     * Random for jitter.
+     */
+    private final Random mRandom = new Random();
+
+    /**
+     * Init.
+     *
+     * @param persistent whether state is stored in shared preferences.
+     */
+    @VisibleForTesting
+    CircuitBreaker(boolean persistent) {
+        mPersistent = persistent;
+    }
+
+    /**
+     * Get shared instance, backed by shared preferences.
+     *
+     * @param context any context.
+     * @return shared instance.
+     */
+    static synchronized CircuitBreaker getSharedInstance(@NonNull Context context) {
+        if (sSharedInstance == null) {
+            SharedPreferencesManager.initialize(context);
+            sSharedInstance = new CircuitBreaker(true);
+        }
+        return sSharedInstance;
+    }
+
+    @VisibleForTesting
+    static synchronized void unsetInstance() {
+        sSharedInstance = null;
+    }
+
+    /**
+     * Get endpoint of a URL: the scheme, host and port.
+     *
+     * @param url URL.
+     * @return endpoint.
+     */
+    @VisibleForTesting
+    static String getEndpoint(@Nullable String url) {
+        if (url == null) {
+            return "";
+        }
+        int start = url.indexOf("://");
+        start = start < 0 ? 0 : start + 3;
+        int end = start;
+        while (end < url.length() && url.charAt(end) != '/' && url.charAt(end) != '?') {
+            end++;
+        }
+        return url.substring(0, end);
+    }
+
+    private EndpointState getState(String endpoint) {
+        EndpointState state = mEndpointStates.get(endpoint);
+        if (state == null) {
+            state = new EndpointState();
+            if (mPersistent) {
+                String value = SharedPreferencesManager.getString(PREFERENCE_PREFIX + endpoint);
+                if (value != null) {
+                    try {
+                        String[] values = value.split(SEPARATOR);
+                        int failureCount = Integer.parseInt(values[0]);
+                        long openUntil = Long.parseLong(values[1]);
+                        state.mFailureCount = failureCount;
+                        state.mOpenUntil = Math.min(openUntil, System.currentTimeMillis() + MAX_OPEN_DURATION);
+                    } catch (RuntimeException e) {
+                        AppCenterLog.warn(LOG_TAG, "Ignoring invalid circuit breaker state: " + value);
+                    }
+                }
+            }
+            mEndpointStates.put(endpoint, state);
+        }
+        return state;
+    }
+
+    private void save(String endpoint, EndpointState state) {
+        if (mPersistent) {
+            if (state.mFailureCount == 0) {
+                SharedPreferencesManager.remove(PREFERENCE_PREFIX + endpoint);
+            } else {
+                SharedPreferencesManager.putString(PREFERENCE_PREFIX + endpoint, state.mFailureCount + SEPARATOR + state.mOpenUntil);
+            }
+        }
+    }
+
+    /**
+     * Ask permission to call the endpoint.
+     *
+     * @param url  URL to call.
+     * @param call call to run again once the probe completes, if it has to wait.
+     * @return 0 if the call can be made now, {@link #WAIT_FOR_PROBE} if the call has been queued
+     * until the probe completes or the delay in milliseconds before asking again.
+     */
+    synchronized long acquire(String url, @NonNull Runnable call) {
+        EndpointState state = getState(getEndpoint(url));
+
+        /* Closed. */
+        if (state.mFailureCount == 0) {
+            return 0;
+        }
+
+        /* Open. */
+        long now = System.currentTimeMillis();
+        if (now < state.mOpenUntil) {
+            return state.mOpenUntil - now;
+        }
+
+        /* Half open: let only one call probe the endpoint. */
+        if (state.mProbe == null || now - state.mProbeStartTime >= PROBE_TIMEOUT) {
+            state.mProbe = call;
+            state.mProbeStartTime = now;
+            AppCenterLog.debug(LOG_TAG, "Probing endpoint " + getEndpoint(url) + " after " + state.mFailureCount + " failure(s).");
+            return 0;
+        }
+        if (state.mProbe != call) {
+            state.mWaitingCalls.add(call);
+        }
+        return WAIT_FOR_PROBE;
+    }
+
+    /**
+     * Report that the endpoint handled a call, closing the circuit.
+     *
+     * @param url URL that was called.
+     * @return calls that were waiting for the probe and must run now.
+     */
+    @NonNull
+    synchronized List<Runnable> onSuccess(String url) {
+        String endpoint = getEndpoint(url);
+        EndpointState state = getState(endpoint);
+        if (state.mFailureCount == 0 && state.mWaitingCalls.isEmpty()) {
+            return Collections.emptyList();
+        }
+        state.mFailureCount = 0;
+        state.mOpenUntil = 0;
+        state.mProbe = null;
+        save(endpoint, state);
+        return state.takeWaitingCalls();
+    }
+
+    /**
+     * Report that the endpoint is unavailable, opening the circuit.
+     *
+     * @param url        URL that was called.
+     * @param retryAfter delay requested by the server in milliseconds or null.
+     * @return calls that were waiting for the probe and must be rescheduled.
+     */
+    @NonNull
+    synchronized List<Runnable> onFailure(String url, @Nullable Long retryAfter) {
+        String endpoint = getEndpoint(url);
+        EndpointState state = getState(endpoint);
+        long now = System.currentTimeMillis();
+
+        /* Concurrent calls failing for the same outage count only once. */
+        if (now >= state.mOpenUntil) {
+            state.mFailureCount++;
+            long upperBound = Math.min(MAX_BACKOFF, BASE_BACKOFF << Math.min(state.mFailureCount - 1, 30));
+            state.mOpenUntil = now + upperBound / 2 + (long) (mRandom.nextDouble() * upperBound / 2);
+        }
+
+        /* Honor server delay even if smaller than computed backoff. */
+        if (retryAfter != null) {
+            state.mOpenUntil = now + Math.min(Math.max(retryAfter, 0), MAX_OPEN_DURATION);
+        }
+        state.mProbe = null;
+        save(endpoint, state);
+        AppCenterLog.debug(LOG_TAG, "Endpoint " + endpoint + " unavailable, backing off for " + (state.mOpenUntil - now) + " ms.");
+        return state.takeWaitingCalls();
+    }
+
+    /**
+     * Forget a call that was cancelled or that completed without telling if the endpoint is up.
+     *
+     * @param url  URL of the call.
+     * @param call cancelled call.
+     * @return calls that were waiting for the call if it was the probe, they must run again so that one of them probes.
+     */
+    @NonNull
+    synchronized List<Runnable> cancel(String url, @NonNull Runnable call) {
+        EndpointState state = getState(getEndpoint(url));
+        state.mWaitingCalls.remove(call);
+        if (state.mProbe == call) {
+            state.mProbe = null;
+            return state.takeWaitingCalls();
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Get delay before the endpoint can be called.
+     *
+     * @param url URL.
+     * @return delay in milliseconds, 0 if not open.
+     */
+    synchronized long getRemainingOpenTime(String url) {
+        return Math.max(0, getState(getEndpoint(url)).mOpenUntil - System.currentTimeMillis());
+    }
+
+    /**
+     * State of an endpoint.
+     */
+    private static class EndpointState {
+
+        /**
+         * Consecutive failures, 0 when closed.
+         */
+        int mFailureCount;
+
+        /**
+         * Wall clock time until which no call is made.
+         */
+        long mOpenUntil;
+
+        /**
+         * Call probing the endpoint while half open.
+         */
+        Runnable mProbe;
+
+        /**
+         * When probe started.
+         */
+        long mProbeStartTime;
+
+        /**
+         * Calls waiting for probe result.
+         */
+        final List<Runnable> mWaitingCalls = new ArrayList<>();
+
+        List<Runnable> takeWaitingCalls() {
+            if (mWaitingCalls.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<Runnable> calls = new ArrayList<>(mWaitingCalls);
+            mWaitingCalls.clear();
+            return calls;
+        }
+    }
+}
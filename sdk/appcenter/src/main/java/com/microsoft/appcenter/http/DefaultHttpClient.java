@@ -78,12 +78,28 @@ public class DefaultHttpClient implements HttpClient, DefaultHttpClientCallTask.
      */
     private final boolean mCompressionEnabled;
 
+    /**
+     * Indicates whether payloads are compressed with the built-in dictionary instead of gzip.
+     */
+    private final boolean mDictionaryCompressionEnabled;
+
     public DefaultHttpClient() {
         this(true);
     }
 
     public DefaultHttpClient(boolean compressionEnabled) {
+        this(compressionEnabled, false);
+    }
+
+    /**
+     * Init.
+     *
+     * @param compressionEnabled           whether payloads can be compressed.
+     * @param dictionaryCompressionEnabled whether to use the built-in dictionary codec, the server must support it.
+     */
+    public DefaultHttpClient(boolean compressionEnabled, boolean dictionaryCompressionEnabled) {
         mCompressionEnabled = compressionEnabled;
+        mDictionaryCompressionEnabled = dictionaryCompressionEnabled;
     }
 
     @VisibleForTesting
@@ -93,7 +109,7 @@ public class DefaultHttpClient implements HttpClient, DefaultHttpClientCallTask.
 
     @Override
     public ServiceCall callAsync(String url, String method, Map<String, String> headers, CallTemplate callTemplate, final ServiceCallback serviceCallback) {
-        final DefaultHttpClientCallTask task = new DefaultHttpClientCallTask(url, method, headers, callTemplate, serviceCallback, this, mCompressionEnabled);
+        final DefaultHttpClientCallTask task = new DefaultHttpClientCallTask(url, method, headers, callTemplate, serviceCallback, this, mCompressionEnabled, mDictionaryCompressionEnabled);
         try {
             task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
         } catch (final RejectedExecutionException e) {
@@ -154,4 +170,9 @@ public class DefaultHttpClient implements HttpClient, DefaultHttpClientCallTask.
     boolean isCompressionEnabled() {
         return mCompressionEnabled;
     }
+
+    @VisibleForTesting
+    boolean isDictionaryCompressionEnabled() {
+        return mDictionaryCompressionEnabled;
+    }
 }
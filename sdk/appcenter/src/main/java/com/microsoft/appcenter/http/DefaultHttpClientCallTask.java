@@ -20,6 +20,7 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.net.URL;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -57,11 +58,23 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
      */
     private static final int MIN_GZIP_LENGTH = 1400;
 
+    /**
+     * Minimum payload length in bytes to use dictionary compression.
+     * Much lower than gzip as the dictionary already knows the strings repeated in logs.
+     */
+    private static final int MIN_DICTIONARY_COMPRESSION_LENGTH = 200;
+
     /**
      * Maximum payload length to use prettify for logging.
      */
     private static final int MAX_PRETTIFY_LOG_LENGTH = 4 * 1024;
 
+    /**
+     * Buffer shared by all calls to drain response bodies nobody reads.
+     * Concurrent writes are harmless as the content is never used.
+     */
+    private static final byte[] DISCARD_BUFFER = new byte[READ_BUFFER_SIZE];
+
     /**
      * Pattern used to replace token in url encoded parameters.
      */
@@ -91,7 +104,9 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
 
     private final boolean mCompressionEnabled;
 
-    DefaultHttpClientCallTask(String url, String method, Map<String, String> headers, HttpClient.CallTemplate callTemplate, ServiceCallback serviceCallback, Tracker tracker, boolean compressionEnabled) {
+    private final boolean mDictionaryCompressionEnabled;
+
+    DefaultHttpClientCallTask(String url, String method, Map<String, String> headers, HttpClient.CallTemplate callTemplate, ServiceCallback serviceCallback, Tracker tracker, boolean compressionEnabled, boolean dictionaryCompressionEnabled) {
         mUrl = url;
         mMethod = method;
         mHeaders = headers;
@@ -99,6 +114,7 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
         mServiceCallback = serviceCallback;
         mTracker = tracker;
         mCompressionEnabled = compressionEnabled;
+        mDictionaryCompressionEnabled = dictionaryCompressionEnabled;
     }
 
     private static InputStream getInputStream(HttpsURLConnection httpsURLConnection) throws IOException {
@@ -152,6 +168,27 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
         }
     }
 
+    /**
+     * Read and drop the response body, the stream must be consumed for the connection to be reused.
+     */
+    private void discardResponse(HttpsURLConnection httpsURLConnection) throws IOException {
+        InputStream stream = getInputStream(httpsURLConnection);
+        if (stream == null) {
+            return;
+        }
+
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+            while (stream.read(DISCARD_BUFFER) > 0) {
+                if (isCancelled()) {
+                    break;
+                }
+            }
+        } finally {
+            stream.close();
+        }
+    }
+
     /**
      * Do http call.
      */
@@ -171,7 +208,8 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
                 /* Get bytes, check if large enough to compress. */
                 payload = mCallTemplate.buildRequestBody();
                 binaryPayload = payload.getBytes(CHARSET_NAME);
-                shouldCompress = mCompressionEnabled && binaryPayload.length >= MIN_GZIP_LENGTH;
+                int minCompressionLength = mDictionaryCompressionEnabled ? MIN_DICTIONARY_COMPRESSION_LENGTH : MIN_GZIP_LENGTH;
+                shouldCompress = mCompressionEnabled && binaryPayload.length >= minCompressionLength;
 
                 /* If no content type specified, assume json. */
                 if (!mHeaders.containsKey(CONTENT_TYPE_KEY)) {
@@ -181,7 +219,7 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
 
             /* If about to compress, add corresponding header. */
             if (shouldCompress) {
-                mHeaders.put(CONTENT_ENCODING_KEY, CONTENT_ENCODING_VALUE);
+                mHeaders.put(CONTENT_ENCODING_KEY, mDictionaryCompressionEnabled ? DictionaryCompression.CONTENT_ENCODING_VALUE : CONTENT_ENCODING_VALUE);
             }
 
             /* Send headers. */
@@ -212,7 +250,9 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
                 }
 
                 /* Compress payload if large enough to be worth it. */
-                if (shouldCompress) {
+                if (shouldCompress && mDictionaryCompressionEnabled) {
+                    binaryPayload = DictionaryCompression.compress(binaryPayload);
+                } else if (shouldCompress) {
                     ByteArrayOutputStream gzipBuffer = new ByteArrayOutputStream(binaryPayload.length);
                     GZIPOutputStream gzipStream = new GZIPOutputStream(gzipBuffer);
                     gzipStream.write(binaryPayload);
@@ -236,28 +276,50 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
                 return null;
             }
 
-            /* Read response. */
+            /* Check what the caller needs from the response, failures are always read entirely. */
             int status = httpsURLConnection.getResponseCode();
-            String response = readResponse(httpsURLConnection);
-            if (AppCenterLog.getLogLevel() <= Log.VERBOSE) {
-                String contentType = httpsURLConnection.getHeaderField(CONTENT_TYPE_KEY);
-                String logPayload;
-                if (contentType == null || contentType.startsWith("text/") || contentType.startsWith("application/")) {
-                    logPayload = TOKEN_REGEX_JSON.matcher(response).replaceAll("token\":\"***\"");
-                    logPayload = REDIRECT_URI_REGEX_JSON.matcher(logPayload).replaceAll("redirect_uri\":\"***\"");
-                } else {
-                    logPayload = "<binary>";
+            boolean success = status >= 200 && status < 300;
+            HttpClient.PartialResponseCallTemplate.ResponseContent responseContent = null;
+            if (success && mCallTemplate instanceof HttpClient.PartialResponseCallTemplate) {
+                responseContent = ((HttpClient.PartialResponseCallTemplate) mCallTemplate).getResponseContent();
+            }
+            if (responseContent == null) {
+                responseContent = HttpClient.PartialResponseCallTemplate.ResponseContent.FULL;
+            }
+
+            /* Read response. */
+            String response;
+            if (responseContent == HttpClient.PartialResponseCallTemplate.ResponseContent.FULL) {
+                response = readResponse(httpsURLConnection);
+                if (AppCenterLog.getLogLevel() <= Log.VERBOSE) {
+                    String contentType = httpsURLConnection.getHeaderField(CONTENT_TYPE_KEY);
+                    String logPayload;
+                    if (contentType == null || contentType.startsWith("text/") || contentType.startsWith("application/")) {
+                        logPayload = TOKEN_REGEX_JSON.matcher(response).replaceAll("token\":\"***\"");
+                        logPayload = REDIRECT_URI_REGEX_JSON.matcher(logPayload).replaceAll("redirect_uri\":\"***\"");
+                    } else {
+                        logPayload = "<binary>";
+                    }
+                    AppCenterLog.verbose(LOG_TAG, "HTTP response status=" + status + " payload=" + logPayload);
                 }
-                AppCenterLog.verbose(LOG_TAG, "HTTP response status=" + status + " payload=" + logPayload);
+            } else {
+                discardResponse(httpsURLConnection);
+                response = "";
+                AppCenterLog.verbose(LOG_TAG, "HTTP response status=" + status);
             }
-            Map<String, String> responseHeaders = new HashMap<>();
-            for (Map.Entry<String, List<String>> header : httpsURLConnection.getHeaderFields().entrySet()) {
-                responseHeaders.put(header.getKey(), header.getValue().iterator().next());
+            Map<String, String> responseHeaders;
+            if (responseContent == HttpClient.PartialResponseCallTemplate.ResponseContent.NONE) {
+                responseHeaders = Collections.emptyMap();
+            } else {
+                responseHeaders = new HashMap<>();
+                for (Map.Entry<String, List<String>> header : httpsURLConnection.getHeaderFields().entrySet()) {
+                    responseHeaders.put(header.getKey(), header.getValue().iterator().next());
+                }
             }
             HttpResponse httpResponse = new HttpResponse(status, response, responseHeaders);
 
             /* Accept all 2xx codes. */
-            if (status >= 200 && status < 300) {
+            if (success) {
                 return httpResponse;
             }
 
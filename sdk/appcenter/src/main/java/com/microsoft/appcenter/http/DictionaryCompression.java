@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.zip.Deflater;
+
+import static com.microsoft.appcenter.http.HttpUtils.WRITE_BUFFER_SIZE;
+
+/**
+ * Deflate codec using a preset dictionary of the keys and values repeated in every log batch.
+ * <p>
+ * The dictionary is built into the SDK and its version is sent as a parameter of the
+ * Content-Encoding header. The zlib stream also carries the checksum of the dictionary so the
+ * receiving side can verify it uses the same one.
+ * <p>
+ * A dictionary must never be modified once shipped: any change requires a new version.
+ */
+class DictionaryCompression {
+
+    /**
+     * Dictionary version.
+     */
+    @VisibleForTesting
+    static final int DICTIONARY_VERSION = 1;
+
+    /**
+     * Content encoding header value.
+     */
+    static final String CONTENT_ENCODING_VALUE = "deflate; dictionary=" + DICTIONARY_VERSION;
+
+    /**
+     * Dictionary content, deflate favors the last bytes so the most common strings are at the end.
+     */
+    private static final String DICTIONARY_CONTENT =
+
+            /* Crash specific values. */
+            "\"innerExceptions\":[{\"minidumpFilePath\":\"\"contentType\":\"text/plain\",\"data\":\"" +
+            "\"wrapperRuntimeVersion\":\"\"liveUpdateReleaseLabel\":\"\"liveUpdateDeploymentKey\":\"" +
+            "\"liveUpdatePackageHash\":\"\"errorAttachment\",\"errorId\":\"\"architecture\":\"arm64-v8a\"," +
+            "{\"className\":\"com.android.internal.os.ZygoteInit\",\"methodName\":\"main\",\"lineNumber\":" +
+            "{\"className\":\"com.android.internal.os.RuntimeInit$MethodAndArgsCaller\",\"methodName\":\"run\"," +
+            "{\"className\":\"java.lang.reflect.Method\",\"methodName\":\"invoke\",\"lineNumber\":-2," +
+            "{\"className\":\"android.app.ActivityThread\",\"methodName\":\"main\",\"lineNumber\":" +
+            "{\"className\":\"android.os.Looper\",\"methodName\":\"loop\",\"lineNumber\":" +
+            "{\"className\":\"android.os.Handler\",\"methodName\":\"dispatchMessage\",\"lineNumber\":" +
+            "{\"className\":\"java.lang.Thread\",\"methodName\":\"run\",\"lineNumber\":" +
+            "\"fileName\":\"ZygoteInit.java\"}\"fileName\":\"Method.java\"}\"fileName\":\"ActivityThread.java\"}" +
+            "\"fileName\":\"Looper.java\"}\"fileName\":\"Handler.java\"}\"fileName\":\"Thread.java\"}" +
+            "\"exception\":{\"type\":\"java.lang.RuntimeException\",\"message\":\"java.lang.NullPointerException" +
+            "\"java.lang.IllegalStateException\"java.lang.IllegalArgumentException\"" +
+            "\"stackTrace\":\"\"threads\":[{\"id\":\"name\":\"main\",\"frames\":[{\"className\":\"" +
+            ",\"methodName\":\"\",\"lineNumber\":\",\"fileName\":\".java\"}]}" +
+            "\"processId\":\"processName\":\"\"parentProcessId\":\"parentProcessName\":\"" +
+            "\"errorThreadId\":\"errorThreadName\":\"main\",\"fatal\":true,\"fatal\":false," +
+            "\"appLaunchTimestamp\":\"{\"type\":\"managedError\",{\"type\":\"handledError\"," +
+
+            /* One Collector values. */
+            "\"data\":{\"baseType\":\"\"baseData\":{\"popSample\":\"cV\":\"flags\":" +
+            "\"ext\":{\"protocol\":{\"devMake\":\"\",\"devModel\":\"\"},\"user\":{\"localId\":\"a:\"," +
+            "\"locale\":\"\"},\"os\":{\"name\":\"Android\",\"ver\":\"\"},\"app\":{\"id\":\"\",\"ver\":\"" +
+            "\",\"locale\":\"\",\"userId\":\"c:\"},\"net\":{\"provider\":\"\"},\"sdk\":{\"libVer\":" +
+            "\"appcenter.android-\",\"epoch\":\"\",\"seq\":\",\"installId\":\"\"},\"loc\":{\"tz\":\"" +
+            "{\"ver\":\"3.0\",\"name\":\"\",\"time\":\"\",\"iKey\":\"o:\"" +
+
+            /* Analytics values. */
+            "\"customProperties\",\"properties\":{\"clear\":[\"" +
+            "{\"type\":\"page\",{\"type\":\"startService\",\"services\":[\"Analytics\",\"Crashes\"]" +
+            "{\"type\":\"startSession\",{\"type\":\"commonSchemaEvent\",\"typedProperties\":[" +
+            "{\"type\":\"dateTime\",\"name\":\"{\"type\":\"boolean\",\"name\":\"" +
+            "{\"type\":\"double\",\"name\":\"{\"type\":\"long\",\"name\":\"" +
+            "{\"type\":\"string\",\"name\":\"\",\"value\":\"" +
+
+            /* Device, repeated in every log. */
+            "\"wrapperSdkVersion\":\"\"wrapperSdkName\":\"appcenter.xamarin\"appcenter.react-native" +
+            "\"carrierCountry\":\"us\",\"carrierName\":\"\"appNamespace\":\"com." +
+            "\"screenSize\":\"1080x1920\",\"1440x2560\",\"1080x2340\",\"720x1280\"" +
+            "\"distributionGroupId\":\"\"userId\":\"" +
+            "\"device\":{\"sdkName\":\"appcenter.android\",\"sdkVersion\":\"\",\"model\":\"\"," +
+            "\"oemName\":\"samsung\",\"Google\",\"HUAWEI\",\"Xiaomi\",\"osName\":\"Android\",\"osVersion\":\"" +
+            "\",\"osBuild\":\"\",\"osApiLevel\":\",\"locale\":\"en_US\",\"timeZoneOffset\":\"," +
+            "\"appVersion\":\"\",\"appBuild\":\"\"}" +
+
+            /* Log envelope, repeated in every log. */
+            "{\"logs\":[{\"type\":\"event\",\"timestamp\":\"20\"sid\":\"\",\"id\":\"\",\"name\":\"";
+
+    /**
+     * Dictionary bytes.
+     */
+    private static final byte[] DICTIONARY = DICTIONARY_CONTENT.getBytes(Charset.forName(DefaultHttpClient.CHARSET_NAME));
+
+    @VisibleForTesting
+    DictionaryCompression() {
+
+        /* Hide constructor in utils pattern. */
+    }
+
+    /**
+     * Get dictionary bytes.
+     *
+     * @return a copy of the dictionary.
+     */
+    @VisibleForTesting
+    static byte[] getDictionary() {
+        return DICTIONARY.clone();
+    }
+
+    /**
+     * Compress a payload.
+     *
+     * @param payload uncompressed bytes.
+     * @return zlib stream using the preset dictionary.
+     */
+    @NonNull
+    static byte[] compress(@NonNull byte[] payload) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setDictionary(DICTIONARY);
+            deflater.setInput(payload);
+            deflater.finish();
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(payload.length / 2);
+            byte[] chunk = new byte[WRITE_BUFFER_SIZE];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(chunk);
+                buffer.write(chunk, 0, length);
+            }
+            return buffer.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+}
@@ -50,6 +50,42 @@ public interface HttpClient extends Closeable {
         void onBeforeCalling(URL url, Map<String, String> headers);
     }
 
+    /**
+     * Call template that does not need the whole response when the call succeeds.
+     * Other templates always get the full response.
+     */
+    interface PartialResponseCallTemplate extends CallTemplate {
+
+        /**
+         * Declare which parts of a successful response are used by the caller.
+         * Failed responses are always read entirely.
+         *
+         * @return parts of the response to read, null is the same as {@link ResponseContent#FULL}.
+         */
+        ResponseContent getResponseContent();
+
+        /**
+         * Parts of a successful response that the caller needs.
+         */
+        enum ResponseContent {
+
+            /**
+             * Only the status code is used, the body is discarded.
+             */
+            NONE,
+
+            /**
+             * Status code and headers are used, the body is discarded.
+             */
+            HEADERS,
+
+            /**
+             * Status code, headers and body are used.
+             */
+            FULL
+        }
+    }
+
     /**
      * Make this client active again after closing.
      */
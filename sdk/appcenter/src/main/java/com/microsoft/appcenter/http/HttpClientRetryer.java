@@ -13,56 +13,123 @@ import com.microsoft.appcenter.AppCenter;
 import com.microsoft.appcenter.utils.AppCenterLog;
 
 import java.net.UnknownHostException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import static com.microsoft.appcenter.http.DefaultHttpClient.X_MS_RETRY_AFTER_MS_HEADER;
 
 /**
- * Decorator managing retries.
+ * Decorator managing retries, calls are delayed while the endpoint circuit breaker is open.
  */
 public class HttpClientRetryer extends HttpClientDecorator {
 
     /**
-     * Retry intervals to use, array index is to use the value for each retry. When we used all the array values, we give up and forward the last error.
+     * Maximum number of retries of a call, when reached we give up and forward the last error.
      */
     @VisibleForTesting
-    static final long[] RETRY_INTERVALS = new long[]{
-            TimeUnit.SECONDS.toMillis(10),
-            TimeUnit.MINUTES.toMillis(5),
-            TimeUnit.MINUTES.toMillis(20)
-    };
+    static final int MAX_RETRIES = 3;
+
+    /**
+     * Retry delay when the request could not even be started because the thread pool is saturated.
+     */
+    @VisibleForTesting
+    static final long REJECTED_EXECUTION_RETRY_INTERVAL = TimeUnit.SECONDS.toMillis(10);
+
+    /**
+     * Standard retry after header, in seconds or as an HTTP date.
+     */
+    @VisibleForTesting
+    static final String RETRY_AFTER_HEADER = "Retry-After";
+
+    /**
+     * HTTP date format.
+     */
+    private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
 
     /**
      * Android "timer" using the main thread loop.
      */
     private final Handler mHandler;
 
+    /**
+     * Circuit breaker shared with other clients.
+     */
+    private final CircuitBreaker mCircuitBreaker;
+
     /**
      * Random object for interval randomness.
      */
     private final Random mRandom = new Random();
 
     /**
-     * Init with default retry policy.
+     * Init.
      *
-     * @param decoratedApi API to decorate.
+     * @param decoratedApi   API to decorate.
+     * @param circuitBreaker endpoint circuit breaker.
      */
-    HttpClientRetryer(HttpClient decoratedApi) {
-        this(decoratedApi, new Handler(Looper.getMainLooper()));
+    HttpClientRetryer(HttpClient decoratedApi, CircuitBreaker circuitBreaker) {
+        this(decoratedApi, new Handler(Looper.getMainLooper()), circuitBreaker);
     }
 
     /**
      * Init.
      *
-     * @param decoratedApi API to decorate.
-     * @param handler      handler for timed retries.
+     * @param decoratedApi   API to decorate.
+     * @param handler        handler for timed retries.
+     * @param circuitBreaker endpoint circuit breaker.
      */
     @VisibleForTesting
-    HttpClientRetryer(HttpClient decoratedApi, Handler handler) {
+    HttpClientRetryer(HttpClient decoratedApi, Handler handler, CircuitBreaker circuitBreaker) {
         super(decoratedApi);
         mHandler = handler;
+        mCircuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * Get delay requested by server from a failure.
+     *
+     * @param e failure.
+     * @return delay in milliseconds or null if not specified or not positive.
+     */
+    @VisibleForTesting
+    static Long getRetryAfter(Exception e) {
+        if (!(e instanceof HttpException)) {
+            return null;
+        }
+        Map<String, String> headers = ((HttpException) e).getHttpResponse().getHeaders();
+        String retryAfterMs = headers.get(X_MS_RETRY_AFTER_MS_HEADER);
+        String retryAfter = headers.get(RETRY_AFTER_HEADER);
+        Long delay = null;
+        try {
+            if (retryAfterMs != null) {
+                delay = Long.parseLong(retryAfterMs.trim());
+            } else if (retryAfter != null) {
+                retryAfter = retryAfter.trim();
+                if (!retryAfter.isEmpty() && Character.isDigit(retryAfter.charAt(0))) {
+                    delay = TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter));
+                } else {
+                    SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+                    format.setTimeZone(TimeZone.getTimeZone("GMT"));
+                    Date date = format.parse(retryAfter);
+                    delay = date.getTime() - System.currentTimeMillis();
+                }
+            }
+        } catch (NumberFormatException ignored) {
+            AppCenterLog.warn(AppCenter.LOG_TAG, "Ignoring invalid retry after header.");
+        } catch (ParseException ignored) {
+            AppCenterLog.warn(AppCenter.LOG_TAG, "Ignoring invalid retry after header.");
+        }
+
+        /* A delay that is not positive does not ask for anything: use backoff. */
+        return delay != null && delay > 0 ? delay : null;
     }
 
     @Override
@@ -74,11 +141,27 @@ public class HttpClientRetryer extends HttpClientDecorator {
         return retryableCall;
     }
 
+    /**
+     * Resume calls that were waiting for the endpoint probe.
+     *
+     * @param calls calls to run.
+     */
+    private void resume(List<Runnable> calls) {
+        for (Runnable call : calls) {
+            mHandler.post(call);
+        }
+    }
+
     /**
      * Retry wrapper logic.
      */
     private class RetryableCall extends HttpClientCallDecorator {
 
+        /**
+         * URL, used to identify endpoint.
+         */
+        private final String mCallUrl;
+
         /**
          * Current retry counter. 0 means its the first try.
          */
@@ -86,29 +169,65 @@ public class HttpClientRetryer extends HttpClientDecorator {
 
         RetryableCall(HttpClient decoratedApi, String url, String method, Map<String, String> headers, CallTemplate callTemplate, ServiceCallback serviceCallback) {
             super(decoratedApi, url, method, headers, callTemplate, serviceCallback);
+            mCallUrl = url;
+        }
+
+        @Override
+        public synchronized void run() {
+            long delay = mCircuitBreaker.acquire(mCallUrl, this);
+            if (delay == 0) {
+                super.run();
+            } else if (delay > 0) {
+                AppCenterLog.debug(AppCenter.LOG_TAG, "Endpoint unavailable, call delayed by " + delay + " ms.");
+                mHandler.postDelayed(this, delay);
+            }
+
+            /* Otherwise we are run again once the probe call completes. */
         }
 
         @Override
         public synchronized void cancel() {
             mHandler.removeCallbacks(this);
-            super.cancel();
+            resume(mCircuitBreaker.cancel(mCallUrl, this));
+            if (mServiceCall != null) {
+                super.cancel();
+            }
+        }
+
+        @Override
+        public void onCallSucceeded(HttpResponse httpResponse) {
+            resume(mCircuitBreaker.onSuccess(mCallUrl));
+            super.onCallSucceeded(httpResponse);
         }
 
         @Override
         public void onCallFailed(Exception e) {
-            if (mRetryCount < RETRY_INTERVALS.length && HttpUtils.isRecoverableError(e)) {
-                long delay = 0;
+            if (!HttpUtils.isRecoverableError(e)) {
+
+                /* An HTTP error that won't be retried still means the endpoint is up. */
                 if (e instanceof HttpException) {
-                    HttpException httpException = (HttpException) e;
-                    String retryAfterMs = httpException.getHttpResponse().getHeaders().get(X_MS_RETRY_AFTER_MS_HEADER);
-                    if (retryAfterMs != null) {
-                        delay = Long.parseLong(retryAfterMs);
-                    }
-                }
-                if (delay == 0) {
-                    delay = RETRY_INTERVALS[mRetryCount++] / 2;
-                    delay += mRandom.nextInt((int) delay);
+                    resume(mCircuitBreaker.onSuccess(mCallUrl));
+                } else {
+                    resume(mCircuitBreaker.cancel(mCallUrl, this));
                 }
+                mServiceCallback.onCallFailed(e);
+                return;
+            }
+
+            /* Thread pool saturation is not an endpoint failure. */
+            long delay;
+            if (e instanceof RejectedExecutionException) {
+                resume(mCircuitBreaker.cancel(mCallUrl, this));
+                delay = REJECTED_EXECUTION_RETRY_INTERVAL / 2;
+                delay += mRandom.nextInt((int) delay);
+            } else {
+
+                /* The circuit breaker caps the server delay, retry when it closes. */
+                resume(mCircuitBreaker.onFailure(mCallUrl, getRetryAfter(e)));
+                delay = mCircuitBreaker.getRemainingOpenTime(mCallUrl);
+            }
+            if (mRetryCount < MAX_RETRIES) {
+                mRetryCount++;
                 String message = "Try #" + mRetryCount + " failed and will be retried in " + delay + " ms";
                 if (e instanceof UnknownHostException) {
                     message += " (UnknownHostException)";
@@ -193,13 +193,21 @@ public class HttpUtils {
     }
 
     public static HttpClient createHttpClient(@NonNull Context context, boolean compressionEnabled) {
+        return createHttpClient(context, compressionEnabled, false);
+    }
+
+    public static HttpClient createHttpClient(@NonNull Context context, boolean compressionEnabled, boolean dictionaryCompressionEnabled) {
 
         /* Retryer should be applied last to avoid retries in offline. */
-        return new HttpClientRetryer(createHttpClientWithoutRetryer(context, compressionEnabled));
+        return new HttpClientRetryer(createHttpClientWithoutRetryer(context, compressionEnabled, dictionaryCompressionEnabled), CircuitBreaker.getSharedInstance(context));
     }
 
     public static HttpClient createHttpClientWithoutRetryer(@NonNull Context context, boolean compressionEnabled) {
-        HttpClient httpClient = new DefaultHttpClient(compressionEnabled);
+        return createHttpClientWithoutRetryer(context, compressionEnabled, false);
+    }
+
+    public static HttpClient createHttpClientWithoutRetryer(@NonNull Context context, boolean compressionEnabled, boolean dictionaryCompressionEnabled) {
+        HttpClient httpClient = new DefaultHttpClient(compressionEnabled, dictionaryCompressionEnabled);
         NetworkStateHelper networkStateHelper = NetworkStateHelper.getSharedInstance(context);
         httpClient = new HttpClientNetworkStateHandler(httpClient, networkStateHelper);
         return httpClient;
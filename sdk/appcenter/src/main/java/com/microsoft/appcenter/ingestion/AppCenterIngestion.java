@@ -45,6 +45,12 @@ public class AppCenterIngestion implements Ingestion {
     @VisibleForTesting
     static final String INSTALL_ID = "Install-ID";
 
+    /**
+     * Batch identifier HTTP Header, a batch sent again after a failure or a restart has the same identifier.
+     */
+    @VisibleForTesting
+    static final String BATCH_ID = "Batch-ID";
+
     /**
      * Log serializer.
      */
@@ -88,6 +94,9 @@ public class AppCenterIngestion implements Ingestion {
         Map<String, String> headers = new HashMap<>();
         headers.put(INSTALL_ID, installId.toString());
         headers.put(APP_SECRET, appSecret);
+        if (logContainer.getBatchId() != null) {
+            headers.put(BATCH_ID, logContainer.getBatchId());
+        }
         HttpClient.CallTemplate callTemplate = new IngestionCallTemplate(mLogSerializer, logContainer);
         return mHttpClient.callAsync(mLogUrl + API_PATH, METHOD_POST, headers, callTemplate, serviceCallback);
     }
@@ -105,7 +114,7 @@ public class AppCenterIngestion implements Ingestion {
     /**
      * Inner class is used to be able to mock System.currentTimeMillis, does not work if using anonymous inner class...
      */
-    private static class IngestionCallTemplate extends AbstractAppCallTemplate {
+    private static class IngestionCallTemplate extends AbstractAppCallTemplate implements HttpClient.PartialResponseCallTemplate {
 
         private final LogSerializer mLogSerializer;
 
@@ -122,5 +131,12 @@ public class AppCenterIngestion implements Ingestion {
             /* Serialize payload. */
             return mLogSerializer.serializeContainer(mLogContainer);
         }
+
+        @Override
+        public ResponseContent getResponseContent() {
+
+            /* Only the status code matters when sending logs. */
+            return ResponseContent.NONE;
+        }
     }
 }
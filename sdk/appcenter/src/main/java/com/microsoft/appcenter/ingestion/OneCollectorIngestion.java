@@ -25,11 +25,11 @@ import org.json.JSONObject;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.UUID;
 
 import static android.util.Log.VERBOSE;
@@ -78,6 +78,17 @@ public class OneCollectorIngestion implements Ingestion {
      */
     private static final String CLIENT_VERSION_FORMAT = "ACS-Android-Java-no-%s-no";
 
+    /**
+     * Client version header value (no import to avoid Javadoc issue).
+     */
+    private static final String CLIENT_VERSION = String.format(CLIENT_VERSION_FORMAT, com.microsoft.appcenter.BuildConfig.VERSION_NAME);
+
+    /**
+     * Maximum number of header values cached by target or ticket keys.
+     */
+    @VisibleForTesting
+    static final int MAX_CACHED_HEADERS = 16;
+
     /**
      * Upload time header key.
      */
@@ -99,6 +110,21 @@ public class OneCollectorIngestion implements Ingestion {
      */
     private String mLogUrl;
 
+    /**
+     * API key header by distinct target tokens.
+     */
+    private final Map<List<String>, String> mApiKeyHeaders = createHeaderCache();
+
+    /**
+     * Serialized tickets header by distinct ticket keys, null value if no ticket. Valid for {@link #mTicketsVersion}.
+     */
+    private final Map<List<String>, String> mTicketsHeaders = createHeaderCache();
+
+    /**
+     * Ticket cache version the cached tickets headers were built from.
+     */
+    private long mTicketsVersion = -1;
+
     /**
      * Init.
      *
@@ -114,45 +140,29 @@ public class OneCollectorIngestion implements Ingestion {
     @Override
     public ServiceCall sendAsync(String appSecret, UUID installId, LogContainer logContainer, ServiceCallback serviceCallback) throws IllegalArgumentException {
 
-        /* Gather API keys from logs. */
+        /* Gather API keys and ticket keys from logs in a single pass. */
         Map<String, String> headers = new HashMap<>();
-        Set<String> apiKeys = new LinkedHashSet<>();
+        List<String> apiKeys = new ArrayList<>(1);
+        List<String> ticketKeys = new ArrayList<>(1);
         for (Log log : logContainer.getLogs()) {
-            apiKeys.addAll(log.getTransmissionTargetTokens());
-        }
-
-        /* Build the header. String.join with iterable is only API level 26+. */
-        StringBuilder apiKey = new StringBuilder();
-        for (String targetToken : apiKeys) {
-            apiKey.append(targetToken).append(",");
-        }
-        if (!apiKeys.isEmpty()) {
-            apiKey.deleteCharAt(apiKey.length() - 1);
-        }
-        headers.put(API_KEY, apiKey.toString());
-
-        /* Gather tokens from logs. */
-        JSONObject tickets = new JSONObject();
-        for (Log log : logContainer.getLogs()) {
-            List<String> ticketKeys = ((CommonSchemaLog) log).getExt().getProtocol().getTicketKeys();
-            if (ticketKeys != null) {
-                for (String ticketKey : ticketKeys) {
-                    String token = TicketCache.getTicket(ticketKey);
-                    if (token != null) {
-                        try {
-                            tickets.put(ticketKey, token);
-                        } catch (JSONException e) {
-                            AppCenterLog.error(LOG_TAG, "Cannot serialize tickets, sending log anonymously", e);
-                            break;
-                        }
+            for (String apiKey : log.getTransmissionTargetTokens()) {
+                addDistinct(apiKeys, apiKey);
+            }
+            List<String> logTicketKeys = ((CommonSchemaLog) log).getExt().getProtocol().getTicketKeys();
+            if (logTicketKeys != null) {
+                for (String ticketKey : logTicketKeys) {
+                    if (ticketKey != null) {
+                        addDistinct(ticketKeys, ticketKey);
                     }
                 }
             }
         }
+        headers.put(API_KEY, getApiKeyHeader(apiKeys));
 
         /* Pass ticket header if we have at least 1 token. */
-        if (tickets.length() > 0) {
-            headers.put(TICKETS, tickets.toString());
+        String tickets = ticketKeys.isEmpty() ? null : getTicketsHeader(ticketKeys);
+        if (tickets != null) {
+            headers.put(TICKETS, tickets);
 
             /* Enable 400 errors on invalid tickets on debug builds. */
             if (Constants.APPLICATION_DEBUGGABLE) {
@@ -163,9 +173,8 @@ public class OneCollectorIngestion implements Ingestion {
         /* Content type. */
         headers.put(CONTENT_TYPE_KEY, CONTENT_TYPE_VALUE);
 
-        /* Client version (no import to avoid Javadoc issue). */
-        String sdkVersion = com.microsoft.appcenter.BuildConfig.VERSION_NAME;
-        headers.put(CLIENT_VERSION_KEY, String.format(CLIENT_VERSION_FORMAT, sdkVersion));
+        /* Client version. */
+        headers.put(CLIENT_VERSION_KEY, CLIENT_VERSION);
 
         /* Upload time */
         headers.put(UPLOAD_TIME_KEY, String.valueOf(System.currentTimeMillis()));
@@ -175,6 +184,98 @@ public class OneCollectorIngestion implements Ingestion {
         return mHttpClient.callAsync(mLogUrl, METHOD_POST, headers, callTemplate, serviceCallback);
     }
 
+    /**
+     * Add a key to a list of distinct keys in first seen order.
+     * Logs of a batch nearly always share the same keys, so the list has one or two items
+     * and checking it is cheaper than hashing into a set for every log.
+     *
+     * @param keys list of distinct keys.
+     * @param key  key to add if not already in the list.
+     */
+    private static void addDistinct(List<String> keys, String key) {
+        if (!keys.contains(key)) {
+            keys.add(key);
+        }
+    }
+
+    /**
+     * Create a small least recently used cache of header values.
+     */
+    private static Map<List<String>, String> createHeaderCache() {
+        return new LinkedHashMap<List<String>, String>(MAX_CACHED_HEADERS, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<String>, String> eldest) {
+                return size() > MAX_CACHED_HEADERS;
+            }
+        };
+    }
+
+    /**
+     * Get API key header value, cached by distinct target tokens.
+     *
+     * @param apiKeys distinct target tokens.
+     * @return comma separated target tokens.
+     */
+    private synchronized String getApiKeyHeader(List<String> apiKeys) {
+        String apiKeyHeader = mApiKeyHeaders.get(apiKeys);
+        if (apiKeyHeader == null) {
+
+            /* Build the header. String.join with iterable is only API level 26+. */
+            StringBuilder apiKey = new StringBuilder();
+            for (String targetToken : apiKeys) {
+                apiKey.append(targetToken).append(",");
+            }
+            if (!apiKeys.isEmpty()) {
+                apiKey.deleteCharAt(apiKey.length() - 1);
+            }
+            apiKeyHeader = apiKey.toString();
+            mApiKeyHeaders.put(apiKeys, apiKeyHeader);
+        }
+        return apiKeyHeader;
+    }
+
+    /**
+     * Get serialized tickets, cached until the ticket cache changes or a ticket expires.
+     *
+     * @param ticketKeys distinct ticket keys.
+     * @return tickets header value or null if there is no valid ticket for these keys.
+     */
+    private synchronized String getTicketsHeader(List<String> ticketKeys) {
+        if (System.currentTimeMillis() >= TicketCache.getNextExpiryTime()) {
+            TicketCache.removeExpiredTickets();
+        }
+        long version = TicketCache.getVersion();
+        if (version != mTicketsVersion) {
+            mTicketsHeaders.clear();
+            mTicketsVersion = version;
+        }
+        if (mTicketsHeaders.containsKey(ticketKeys)) {
+            return mTicketsHeaders.get(ticketKeys);
+        }
+        String ticketsHeader = null;
+        JSONObject tickets = new JSONObject();
+        try {
+            for (String ticketKey : ticketKeys) {
+                String token = TicketCache.getTicket(ticketKey);
+                if (token != null) {
+                    tickets.put(ticketKey, token);
+                }
+            }
+            if (tickets.length() > 0) {
+                ticketsHeader = tickets.toString();
+            }
+        } catch (JSONException e) {
+            AppCenterLog.error(LOG_TAG, "Cannot serialize tickets, sending log anonymously", e);
+        }
+
+        /* Cache result only if the ticket cache did not change meanwhile. */
+        if (version == TicketCache.getVersion()) {
+            mTicketsHeaders.put(ticketKeys, ticketsHeader);
+        }
+        return ticketsHeader;
+    }
+
     /**
      * Update log URL.
      *
@@ -199,7 +300,7 @@ public class OneCollectorIngestion implements Ingestion {
     /**
      * Call template implementation for One Collector.
      */
-    private static class IngestionCallTemplate implements HttpClient.CallTemplate {
+    private static class IngestionCallTemplate implements HttpClient.PartialResponseCallTemplate {
 
         /**
          * Log serializer.
@@ -253,5 +354,12 @@ public class OneCollectorIngestion implements Ingestion {
                 AppCenterLog.verbose(LOG_TAG, "Headers: " + logHeaders);
             }
         }
+
+        @Override
+        public ResponseContent getResponseContent() {
+
+            /* Only the status code matters when sending logs. */
+            return ResponseContent.NONE;
+        }
     }
 }
@@ -17,6 +17,11 @@ public class LogContainer {
      */
     private List<Log> logs;
 
+    /**
+     * Identifier of the batch, the same when the batch is sent again. Not serialized.
+     */
+    private String batchId;
+
     /**
      * Get the logs value.
      *
@@ -35,6 +40,24 @@ public class LogContainer {
         this.logs = logs;
     }
 
+    /**
+     * Get the batch identifier.
+     *
+     * @return the batch identifier or null if not set.
+     */
+    public String getBatchId() {
+        return this.batchId;
+    }
+
+    /**
+     * Set the batch identifier.
+     *
+     * @param batchId the batch identifier to set
+     */
+    public void setBatchId(String batchId) {
+        this.batchId = batchId;
+    }
+
     @SuppressWarnings("EqualsReplaceableByObjectsCall")
     @Override
     public boolean equals(Object o) {
@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.ingestion.models;
+
+/**
+ * Log carrying binary data that persistence can store raw instead of encoded in the JSON payload.
+ * The JSON serialization of such a log must omit the data when it is null.
+ */
+public interface LogWithBinaryData extends Log {
+
+    /**
+     * Get the data value.
+     *
+     * @return the data value
+     */
+    byte[] getData();
+
+    /**
+     * Set the data value.
+     *
+     * @param data the data value to set
+     */
+    void setData(byte[] data);
+}
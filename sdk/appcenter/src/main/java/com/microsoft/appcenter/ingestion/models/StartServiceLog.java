@@ -5,7 +5,8 @@
 
 package com.microsoft.appcenter.ingestion.models;
 
-import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
+import com.microsoft.appcenter.processor.JsonModel;
+import com.microsoft.appcenter.processor.JsonProperty;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -16,6 +17,7 @@ import java.util.List;
 /**
  * Describe a AppCenter.start call from the SDK.
  */
+@JsonModel
 @SuppressWarnings("RedundantSuppression")
 public class StartServiceLog extends AbstractLog {
 
@@ -24,11 +26,10 @@ public class StartServiceLog extends AbstractLog {
      */
     public static final String TYPE = "startService";
 
-    private static final String SERVICES = "services";
-
     /**
      * The list of services of the AppCenter start call.
      */
+    @JsonProperty("services")
     private List<String> services;
 
     @Override
@@ -57,17 +58,16 @@ public class StartServiceLog extends AbstractLog {
     @Override
     public void read(JSONObject object) throws JSONException {
         super.read(object);
-        setServices(JSONUtils.readStringArray(object, SERVICES));
+        StartServiceLogSerializer.read(object, this);
     }
 
     @Override
     public void write(JSONStringer writer) throws JSONException {
         super.write(writer);
-        JSONUtils.writeStringArray(writer, SERVICES, getServices());
+        StartServiceLogSerializer.write(writer, this);
     }
 
     @Override
-    @SuppressWarnings({"EqualsReplaceableByObjectsCall", "RedundantSuppression"})
     public boolean equals(Object o) {
         if (this == o) {
             return true;
@@ -75,17 +75,11 @@ public class StartServiceLog extends AbstractLog {
         if (o == null || getClass() != o.getClass()) {
             return false;
         }
-        if (!super.equals(o)) {
-            return false;
-        }
-        StartServiceLog that = (StartServiceLog) o;
-        return services != null ? services.equals(that.services) : that.services == null;
+        return super.equals(o) && StartServiceLogSerializer.equals(this, (StartServiceLog) o);
     }
 
     @Override
     public int hashCode() {
-        int result = super.hashCode();
-        result = 31 * result + (services != null ? services.hashCode() : 0);
-        return result;
+        return StartServiceLogSerializer.hashCode(super.hashCode(), this);
     }
 }
@@ -19,8 +19,11 @@ import com.microsoft.appcenter.utils.AppCenterLog;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static com.microsoft.appcenter.ingestion.models.one.Data.BASE_DATA;
 import static com.microsoft.appcenter.ingestion.models.one.Data.BASE_TYPE;
@@ -44,8 +47,34 @@ public class CommonSchemaDataUtils {
     @VisibleForTesting
     static final int DATA_TYPE_DATETIME = 9;
 
+    /**
+     * Marker for property values that are null, as null means that the property is skipped.
+     */
+    private static final Object NULL_VALUE = new Object();
+
+    /**
+     * Maximum number of property shapes to cache.
+     */
+    @VisibleForTesting
+    static final int PROPERTY_SHAPES_CACHE_SIZE = 32;
+
+    /**
+     * Compiled property shapes by property classes and names, least recently used are evicted first.
+     */
+    private static final Map<List<Object>, PropertyShape> sPropertyShapes = new LinkedHashMap<List<Object>, PropertyShape>(PROPERTY_SHAPES_CACHE_SIZE, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Object>, PropertyShape> eldest) {
+            return size() > PROPERTY_SHAPES_CACHE_SIZE;
+        }
+    };
+
     /**
      * Adds part B and part C properties to a log and Part A metadata.
+     * <p>
+     * Apps usually send events with the same property names and types, so the nested structure of
+     * the data and the metadata are compiled once per list of property names and types and reused
+     * for the next events. Warnings about property keys are thus logged only when the shape is compiled.
      *
      * @param properties custom properties as source of data.
      * @param dest       destination common schema log.
@@ -60,92 +89,169 @@ public class CommonSchemaDataUtils {
             Data data = new Data();
             dest.setData(data);
 
-            /* We also build Part A metadata extension at the same time to reflect the data. */
-            MetadataExtension metadata = new MetadataExtension();
-            for (TypedProperty property : properties) {
-
-                /* Validate property and get type. */
-                Object value;
-                try {
-                    value = validateProperty(property);
-                } catch (IllegalArgumentException e) {
-                    AppCenterLog.warn(LOG_TAG, e.getMessage());
-                    continue;
+            /* Use compiled shape if any and if all values are valid. */
+            List<Object> shapeKey = getPropertyShapeKey(properties);
+            PropertyShape shape;
+            synchronized (sPropertyShapes) {
+                shape = sPropertyShapes.get(shapeKey);
+            }
+            Object[] values = shape != null ? shape.getValues(properties) : null;
+            if (values == null) {
+
+                /* Validate properties and get values. */
+                boolean hasNullValue = false;
+                values = new Object[properties.size()];
+                for (int i = 0; i < values.length; i++) {
+                    try {
+                        values[i] = validateProperty(properties.get(i));
+                    } catch (IllegalArgumentException e) {
+                        AppCenterLog.warn(LOG_TAG, e.getMessage());
+                        hasNullValue |= e instanceof NullValueException;
+                    }
                 }
 
-                /* Get metadata type. */
-                Integer metadataType = getMetadataType(property);
-
-                /* Split property name by dot. */
-                String key = property.getName();
-                String[] keys = key.split("\\.", -1);
-                int lastIndex = keys.length - 1;
-
-                /* Handle all intermediate keys. */
-                JSONObject destProperties = data.getProperties();
-                JSONObject destMetadata = metadata.getMetadata();
-                for (int i = 0; i < lastIndex; i++) {
-
-                    /* Add data sub object. */
-                    String subKey = keys[i];
-                    JSONObject subDataObject = destProperties.optJSONObject(subKey);
-                    if (subDataObject == null) {
-                        if (destProperties.has(subKey)) {
-                            AppCenterLog.warn(LOG_TAG, "Property key '" + subKey + "' already has a value, the old value will be overridden.");
-                        }
-
-                        /* Add sub data intermediate object. */
-                        subDataObject = new JSONObject();
-                        destProperties.put(subKey, subDataObject);
+                /* Compile shape, it cannot be cached if skipping a null value changed it. */
+                shape = PropertyShape.compile(properties, values);
+                if (!hasNullValue) {
+                    synchronized (sPropertyShapes) {
+                        sPropertyShapes.put(shapeKey, shape);
                     }
-                    destProperties = subDataObject;
-
-                    /* Handle metadata. */
-                    destMetadata = addIntermediateMetadata(destMetadata, subKey);
                 }
+            }
 
-                /* Handle the last key for data, the leaf. */
-                String lastKey = keys[lastIndex];
-                if (destProperties.has(lastKey)) {
-                    AppCenterLog.warn(LOG_TAG, "Property key '" + lastKey + "' already has a value, the old value will be overridden.");
-                }
-                destProperties.put(lastKey, value);
+            /* Build data and metadata from shape. */
+            shape.apply(values, dest);
+        } catch (JSONException ignore) {
 
-                /* Handle the last key for meta-data, the leaf. */
-                addLeafMetadata(metadataType, destMetadata, lastKey);
-            }
+            /* Can only happen with NaN or Infinite but this is already checked before. */
+        }
+    }
 
-            /* Warn/cleanup if baseData and baseType are not paired. */
-            JSONObject dataObject = data.getProperties();
-            String baseType = dataObject.optString(BASE_TYPE, null);
-            JSONObject baseData = dataObject.optJSONObject(BASE_DATA);
-            if (baseType == null && baseData != null) {
+    @VisibleForTesting
+    static void clearPropertyShapes() {
+        synchronized (sPropertyShapes) {
+            sPropertyShapes.clear();
+        }
+    }
 
-                /* Discard unpaired data and metadata. */
-                AppCenterLog.warn(LOG_TAG, "baseData was set but baseType is missing.");
-                dataObject.remove(BASE_DATA);
-                JSONObject baseMetaData = metadata.getMetadata().optJSONObject(METADATA_FIELDS);
+    @VisibleForTesting
+    static Object getPropertyShape(List<TypedProperty> properties) {
+        synchronized (sPropertyShapes) {
+            return sPropertyShapes.get(getPropertyShapeKey(properties));
+        }
+    }
 
-                /* baseMetaData is always non null as baseData has at least 1 sub object and not cleaned up yet if empty. */
-                baseMetaData.remove(BASE_DATA);
-            }
-            if (baseType != null && baseData == null) {
+    /**
+     * Get the cache key of the shape of properties: classes and names of properties in order.
+     *
+     * @param properties properties.
+     * @return shape key.
+     */
+    private static List<Object> getPropertyShapeKey(List<TypedProperty> properties) {
+        List<Object> key = new ArrayList<>(properties.size() * 2);
+        for (TypedProperty property : properties) {
+            key.add(property.getClass());
+            key.add(property.getName());
+        }
+        return key;
+    }
 
-                /* Discard unpaired base type. */
-                AppCenterLog.warn(LOG_TAG, "baseType was set but baseData is missing.");
-                dataObject.remove(BASE_TYPE);
+    /**
+     * Adds part B and part C properties to data and Part A metadata, the generic way.
+     *
+     * @param properties custom properties as source of data.
+     * @param values     validated values of properties, null for the properties to skip.
+     * @param data       destination data.
+     * @param metadata   destination metadata.
+     * @throws JSONException if JSON put fails.
+     */
+    private static void addCommonSchemaData(List<TypedProperty> properties, Object[] values, Data data, MetadataExtension metadata) throws JSONException {
+        for (int i = 0; i < values.length; i++) {
+            Object value = values[i];
+            if (value == null) {
+                continue;
             }
+            TypedProperty property = properties.get(i);
+
+            /* Get metadata type. */
+            Integer metadataType = getMetadataType(property);
+
+            /* Split property name by dot. */
+            String key = property.getName();
+            String[] keys = key.split("\\.", -1);
+            int lastIndex = keys.length - 1;
+
+            /* Handle all intermediate keys. */
+            JSONObject destProperties = data.getProperties();
+            JSONObject destMetadata = metadata.getMetadata();
+            for (int j = 0; j < lastIndex; j++) {
+
+                /* Add data sub object. */
+                String subKey = keys[j];
+                JSONObject subDataObject = destProperties.optJSONObject(subKey);
+                if (subDataObject == null) {
+                    if (destProperties.has(subKey)) {
+                        AppCenterLog.warn(LOG_TAG, "Property key '" + subKey + "' already has a value, the old value will be overridden.");
+                    }
 
-            /* Add metadata extension only if not empty after cleanup. */
-            if (!cleanUpEmptyObjectsInMetadata(metadata.getMetadata())) {
-                if (dest.getExt() == null) {
-                    dest.setExt(new Extensions());
+                    /* Add sub data intermediate object. */
+                    subDataObject = new JSONObject();
+                    destProperties.put(subKey, subDataObject);
                 }
-                dest.getExt().setMetadata(metadata);
+                destProperties = subDataObject;
+
+                /* Handle metadata. */
+                destMetadata = addIntermediateMetadata(destMetadata, subKey);
             }
-        } catch (JSONException ignore) {
 
-            /* Can only happen with NaN or Infinite but this is already checked before. */
+            /* Handle the last key for data, the leaf. */
+            String lastKey = keys[lastIndex];
+            if (destProperties.has(lastKey)) {
+                AppCenterLog.warn(LOG_TAG, "Property key '" + lastKey + "' already has a value, the old value will be overridden.");
+            }
+            destProperties.put(lastKey, value);
+
+            /* Handle the last key for meta-data, the leaf. */
+            addLeafMetadata(metadataType, destMetadata, lastKey);
+        }
+
+        /* Warn/cleanup if baseData and baseType are not paired. */
+        JSONObject dataObject = data.getProperties();
+        String baseType = dataObject.optString(BASE_TYPE, null);
+        JSONObject baseData = dataObject.optJSONObject(BASE_DATA);
+        if (baseType == null && baseData != null) {
+
+            /* Discard unpaired data and metadata. */
+            AppCenterLog.warn(LOG_TAG, "baseData was set but baseType is missing.");
+            dataObject.remove(BASE_DATA);
+            JSONObject baseMetaData = metadata.getMetadata().optJSONObject(METADATA_FIELDS);
+
+            /* baseMetaData is always non null as baseData has at least 1 sub object and not cleaned up yet if empty. */
+            baseMetaData.remove(BASE_DATA);
+        }
+        if (baseType != null && baseData == null) {
+
+            /* Discard unpaired base type. */
+            AppCenterLog.warn(LOG_TAG, "baseType was set but baseData is missing.");
+            dataObject.remove(BASE_TYPE);
+        }
+    }
+
+    /**
+     * Share part B and part C properties and Part A metadata of a log already converted from the same properties.
+     * Data and metadata are not modified after conversion so they can be shared by the logs of all targets.
+     *
+     * @param src  common schema log already populated by {@link #addCommonSchemaData(List, CommonSchemaLog)}.
+     * @param dest destination common schema log.
+     */
+    public static void copyCommonSchemaData(CommonSchemaLog src, CommonSchemaLog dest) {
+        dest.setData(src.getData());
+        MetadataExtension metadata = src.getExt() != null ? src.getExt().getMetadata() : null;
+        if (metadata != null) {
+            if (dest.getExt() == null) {
+                dest.setExt(new Extensions());
+            }
+            dest.getExt().setMetadata(metadata);
         }
     }
 
@@ -179,6 +285,26 @@ public class CommonSchemaDataUtils {
         }
 
         /* Get value from property. */
+        Object value = getValue(property);
+        if (value == null) {
+            throw new IllegalArgumentException("Unsupported property type: " + property.getType());
+        }
+
+        /* Validate value not null. */
+        if (value == NULL_VALUE) {
+            throw new NullValueException("Value of property with key '" + key + "' cannot be null.");
+        }
+        return value;
+    }
+
+    /**
+     * Get value of a typed property.
+     *
+     * @param property typed property.
+     * @return property value, {@link #NULL_VALUE} if the value is null or null if the type is not supported.
+     * @throws JSONException if JSON date formatting fails (never happens).
+     */
+    private static Object getValue(TypedProperty property) throws JSONException {
         Object value;
         if (property instanceof StringTypedProperty) {
             StringTypedProperty stringTypedProperty = (StringTypedProperty) property;
@@ -195,14 +321,9 @@ public class CommonSchemaDataUtils {
             BooleanTypedProperty booleanTypedProperty = (BooleanTypedProperty) property;
             value = booleanTypedProperty.getValue();
         } else {
-            throw new IllegalArgumentException("Unsupported property type: " + property.getType());
+            return null;
         }
-
-        /* Validate value not null. */
-        if (value == null) {
-            throw new IllegalArgumentException("Value of property with key '" + key + "' cannot be null.");
-        }
-        return value;
+        return value != null ? value : NULL_VALUE;
     }
 
     /**
@@ -295,4 +416,161 @@ public class CommonSchemaDataUtils {
         }
         return object.length() == 0;
     }
+
+    /**
+     * Exception for properties that are only invalid because of their value.
+     */
+    private static class NullValueException extends IllegalArgumentException {
+
+        NullValueException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Compiled shape of a list of properties: where each value goes in the nested data and the metadata.
+     */
+    private static class PropertyShape {
+
+        /**
+         * Indexes of the properties that are not skipped.
+         */
+        private final int[] mValidIndexes;
+
+        /**
+         * Nested data structure.
+         */
+        private final DataNode mData;
+
+        /**
+         * Metadata or null if empty. It's never modified after compilation so logs share it.
+         */
+        private final JSONObject mMetadata;
+
+        private PropertyShape(int[] validIndexes, DataNode data, JSONObject metadata) {
+            mValidIndexes = validIndexes;
+            mData = data;
+            mMetadata = metadata;
+        }
+
+        /**
+         * Compile the shape of properties by building data with property indexes as values.
+         *
+         * @param properties properties.
+         * @param values     validated values of properties, null for the properties to skip.
+         * @return compiled shape.
+         * @throws JSONException if JSON put fails.
+         */
+        static PropertyShape compile(List<TypedProperty> properties, Object[] values) throws JSONException {
+            Object[] indexes = new Object[values.length];
+            int validCount = 0;
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    indexes[i] = i;
+                    validCount++;
+                }
+            }
+            int[] validIndexes = new int[validCount];
+            for (int i = 0, j = 0; i < indexes.length; i++) {
+                if (indexes[i] != null) {
+                    validIndexes[j++] = i;
+                }
+            }
+            Data data = new Data();
+            MetadataExtension metadata = new MetadataExtension();
+            addCommonSchemaData(properties, indexes, data, metadata);
+            JSONObject metadataObject = cleanUpEmptyObjectsInMetadata(metadata.getMetadata()) ? null : metadata.getMetadata();
+            return new PropertyShape(validIndexes, new DataNode(data.getProperties()), metadataObject);
+        }
+
+        /**
+         * Get values of properties matching this shape.
+         *
+         * @param properties properties with the same classes and names as the compiled ones.
+         * @return values or null if a value is null and thus the shape does not apply.
+         * @throws JSONException if JSON date formatting fails (never happens).
+         */
+        Object[] getValues(List<TypedProperty> properties) throws JSONException {
+            Object[] values = new Object[properties.size()];
+            for (int index : mValidIndexes) {
+                Object value = getValue(properties.get(index));
+                if (value == null || value == NULL_VALUE) {
+                    return null;
+                }
+                values[index] = value;
+            }
+            return values;
+        }
+
+        /**
+         * Populate data and metadata of a log.
+         *
+         * @param values values of properties.
+         * @param dest   destination log, its data is already set.
+         * @throws JSONException if JSON put fails.
+         */
+        void apply(Object[] values, CommonSchemaLog dest) throws JSONException {
+            mData.write(dest.getData().getProperties(), values);
+            if (mMetadata != null) {
+                MetadataExtension metadata = new MetadataExtension();
+                metadata.read(mMetadata);
+                if (dest.getExt() == null) {
+                    dest.setExt(new Extensions());
+                }
+                dest.getExt().setMetadata(metadata);
+            }
+        }
+    }
+
+    /**
+     * Nested data object of a property shape.
+     */
+    private static class DataNode {
+
+        /**
+         * Keys in insertion order.
+         */
+        private final String[] mKeys;
+
+        /**
+         * Either a nested {@link DataNode} or the index of the property value, for each key.
+         */
+        private final Object[] mChildren;
+
+        /**
+         * Init from data built with property indexes as values.
+         *
+         * @param object data object.
+         */
+        DataNode(JSONObject object) {
+            mKeys = new String[object.length()];
+            mChildren = new Object[mKeys.length];
+            Iterator<String> iterator = object.keys();
+            for (int i = 0; i < mKeys.length && iterator.hasNext(); i++) {
+                mKeys[i] = iterator.next();
+                JSONObject child = object.optJSONObject(mKeys[i]);
+                mChildren[i] = child != null ? new DataNode(child) : object.opt(mKeys[i]);
+            }
+        }
+
+        /**
+         * Write values to data object.
+         *
+         * @param object destination data object.
+         * @param values values of properties.
+         * @throws JSONException if JSON put fails.
+         */
+        void write(JSONObject object, Object[] values) throws JSONException {
+            for (int i = 0; i < mKeys.length; i++) {
+                Object child = mChildren[i];
+                if (child instanceof DataNode) {
+                    JSONObject childObject = new JSONObject();
+                    ((DataNode) child).write(childObject, values);
+                    object.put(mKeys[i], childObject);
+                } else {
+                    object.put(mKeys[i], values[(Integer) child]);
+                }
+            }
+        }
+    }
 }
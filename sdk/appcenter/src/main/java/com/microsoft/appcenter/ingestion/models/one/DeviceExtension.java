@@ -6,7 +6,8 @@
 package com.microsoft.appcenter.ingestion.models.one;
 
 import com.microsoft.appcenter.ingestion.models.Model;
-import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
+import com.microsoft.appcenter.processor.JsonModel;
+import com.microsoft.appcenter.processor.JsonProperty;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -15,16 +16,13 @@ import org.json.JSONStringer;
 /**
  * The "device" extension tracks common device elements that are not available in the core envelope.
  */
+@JsonModel
 public class DeviceExtension implements Model {
 
-    /**
-     * Local ID property.
-     */
-    private static final String LOCAL_ID = "localId";
-
     /**
      * Local ID.
      */
+    @JsonProperty("localId")
     private String localId;
 
     /**
@@ -47,26 +45,23 @@ public class DeviceExtension implements Model {
 
     @Override
     public void read(JSONObject object) {
-        setLocalId(object.optString(LOCAL_ID, null));
+        DeviceExtensionSerializer.read(object, this);
     }
 
     @Override
     public void write(JSONStringer writer) throws JSONException {
-        JSONUtils.write(writer, LOCAL_ID, getLocalId());
+        DeviceExtensionSerializer.write(writer, this);
     }
 
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
-
-        DeviceExtension that = (DeviceExtension) o;
-
-        return localId != null ? localId.equals(that.localId) : that.localId == null;
+        return DeviceExtensionSerializer.equals(this, (DeviceExtension) o);
     }
 
     @Override
     public int hashCode() {
-        return localId != null ? localId.hashCode() : 0;
+        return DeviceExtensionSerializer.hashCode(0, this);
     }
 }
@@ -6,7 +6,8 @@
 package com.microsoft.appcenter.ingestion.models.one;
 
 import com.microsoft.appcenter.ingestion.models.Model;
-import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
+import com.microsoft.appcenter.processor.JsonModel;
+import com.microsoft.appcenter.processor.JsonProperty;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -15,16 +16,13 @@ import org.json.JSONStringer;
 /**
  * Describes the location from which the event was logged.
  */
+@JsonModel
 public class LocExtension implements Model {
 
-    /**
-     * Time zone property.
-     */
-    private static final String TZ = "tz";
-
     /**
      * Time zone on the device.
      */
+    @JsonProperty("tz")
     private String tz;
 
     /**
@@ -47,26 +45,23 @@ public class LocExtension implements Model {
 
     @Override
     public void read(JSONObject object) {
-        setTz(object.optString(TZ, null));
+        LocExtensionSerializer.read(object, this);
     }
 
     @Override
     public void write(JSONStringer writer) throws JSONException {
-        JSONUtils.write(writer, TZ, getTz());
+        LocExtensionSerializer.write(writer, this);
     }
 
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
-
-        LocExtension that = (LocExtension) o;
-
-        return tz != null ? tz.equals(that.tz) : that.tz == null;
+        return LocExtensionSerializer.equals(this, (LocExtension) o);
     }
 
     @Override
     public int hashCode() {
-        return tz != null ? tz.hashCode() : 0;
+        return LocExtensionSerializer.hashCode(0, this);
     }
 }
@@ -6,7 +6,8 @@
 package com.microsoft.appcenter.ingestion.models.one;
 
 import com.microsoft.appcenter.ingestion.models.Model;
-import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
+import com.microsoft.appcenter.processor.JsonModel;
+import com.microsoft.appcenter.processor.JsonProperty;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -15,16 +16,13 @@ import org.json.JSONStringer;
 /**
  * Extension for network connectivity information.
  */
+@JsonModel
 public class NetExtension implements Model {
 
-    /**
-     * Network provider property.
-     */
-    private static final String PROVIDER = "provider";
-
     /**
      * Network provider on the device.
      */
+    @JsonProperty("provider")
     private String provider;
 
     /**
@@ -47,26 +45,23 @@ public class NetExtension implements Model {
 
     @Override
     public void read(JSONObject object) {
-        setProvider(object.optString(PROVIDER, null));
+        NetExtensionSerializer.read(object, this);
     }
 
     @Override
     public void write(JSONStringer writer) throws JSONException {
-        JSONUtils.write(writer, PROVIDER, getProvider());
+        NetExtensionSerializer.write(writer, this);
     }
 
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
-
-        NetExtension that = (NetExtension) o;
-
-        return provider != null ? provider.equals(that.provider) : that.provider == null;
+        return NetExtensionSerializer.equals(this, (NetExtension) o);
     }
 
     @Override
     public int hashCode() {
-        return provider != null ? provider.hashCode() : 0;
+        return NetExtensionSerializer.hashCode(0, this);
     }
 }
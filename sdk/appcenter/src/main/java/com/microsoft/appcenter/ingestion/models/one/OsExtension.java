@@ -6,7 +6,8 @@
 package com.microsoft.appcenter.ingestion.models.one;
 
 import com.microsoft.appcenter.ingestion.models.Model;
-import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
+import com.microsoft.appcenter.processor.JsonModel;
+import com.microsoft.appcenter.processor.JsonProperty;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -15,26 +16,19 @@ import org.json.JSONStringer;
 /**
  * The "os" extension tracks common os elements that are not available in the core envelope.
  */
+@JsonModel
 public class OsExtension implements Model {
 
-    /**
-     * Name property.
-     */
-    private static final String NAME = "name";
-
-    /**
-     * Ver property.
-     */
-    private static final String VER = "ver";
-
     /**
      * Os name.
      */
+    @JsonProperty("name")
     private String name;
 
     /**
      * Os version.
      */
+    @JsonProperty("ver")
     private String ver;
 
     /**
@@ -75,32 +69,23 @@ public class OsExtension implements Model {
 
     @Override
     public void read(JSONObject object) {
-        setName(object.optString(NAME, null));
-        setVer(object.optString(VER, null));
+        OsExtensionSerializer.read(object, this);
     }
 
     @Override
     public void write(JSONStringer writer) throws JSONException {
-        JSONUtils.write(writer, NAME, getName());
-        JSONUtils.write(writer, VER, getVer());
+        OsExtensionSerializer.write(writer, this);
     }
 
-    @SuppressWarnings("SimplifiableIfStatement")
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
-
-        OsExtension that = (OsExtension) o;
-
-        if (name != null ? !name.equals(that.name) : that.name != null) return false;
-        return ver != null ? ver.equals(that.ver) : that.ver == null;
+        return OsExtensionSerializer.equals(this, (OsExtension) o);
     }
 
     @Override
     public int hashCode() {
-        int result = name != null ? name.hashCode() : 0;
-        result = 31 * result + (ver != null ? ver.hashCode() : 0);
-        return result;
+        return OsExtensionSerializer.hashCode(0, this);
     }
 }
@@ -119,4 +119,60 @@ public class PartAUtils {
         /* Add device extension. */
         dest.getExt().setDevice(new DeviceExtension());
     }
+
+    /**
+     * Adds part A extension to common schema log from another common schema log converted from the same log
+     * for another transmission target. This is cheaper than {@link #addPartAFromLog(Log, CommonSchemaLog, String)}
+     * when a log is sent to several targets.
+     * <p>
+     * OS, net and loc extensions are never modified after conversion and are shared.
+     * Protocol, user, app, SDK and device extensions are updated per target or per log
+     * when the logs are prepared and enqueued, so they are copied.
+     *
+     * @param src                common schema log already populated from the same log.
+     * @param dest               destination common schema log.
+     * @param transmissionTarget transmission target to use.
+     */
+    public static void addPartAFromCommonSchemaLog(CommonSchemaLog src, CommonSchemaLog dest, String transmissionTarget) {
+
+        /* Add top level part A fields. */
+        dest.setVer(src.getVer());
+        dest.setTimestamp(src.getTimestamp());
+        dest.setIKey("o" + COMMON_SCHEMA_PREFIX_SEPARATOR + getTargetKey(transmissionTarget));
+        dest.addTransmissionTarget(transmissionTarget);
+
+        /* Add extension. */
+        Extensions srcExt = src.getExt();
+        if (dest.getExt() == null) {
+            dest.setExt(new Extensions());
+        }
+        Extensions destExt = dest.getExt();
+
+        /* Copy protocol extension, tickets are set per target. */
+        destExt.setProtocol(new ProtocolExtension());
+        destExt.getProtocol().setDevModel(srcExt.getProtocol().getDevModel());
+        destExt.getProtocol().setDevMake(srcExt.getProtocol().getDevMake());
+
+        /* Copy user extension. */
+        destExt.setUser(new UserExtension());
+        destExt.getUser().setLocalId(srcExt.getUser().getLocalId());
+        destExt.getUser().setLocale(srcExt.getUser().getLocale());
+
+        /* Copy app extension. */
+        destExt.setApp(new AppExtension());
+        destExt.getApp().setVer(srcExt.getApp().getVer());
+        destExt.getApp().setId(srcExt.getApp().getId());
+
+        /* Copy SDK extension, epoch and sequence are set per log. */
+        destExt.setSdk(new SdkExtension());
+        destExt.getSdk().setLibVer(srcExt.getSdk().getLibVer());
+
+        /* Add device extension. */
+        destExt.setDevice(new DeviceExtension());
+
+        /* Share immutable extensions. */
+        destExt.setOs(srcExt.getOs());
+        destExt.setNet(srcExt.getNet());
+        destExt.setLoc(srcExt.getLoc());
+    }
 }
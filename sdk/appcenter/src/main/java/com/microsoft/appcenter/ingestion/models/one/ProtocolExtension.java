@@ -6,7 +6,8 @@
 package com.microsoft.appcenter.ingestion.models.one;
 
 import com.microsoft.appcenter.ingestion.models.Model;
-import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
+import com.microsoft.appcenter.processor.JsonModel;
+import com.microsoft.appcenter.processor.JsonProperty;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -17,36 +18,25 @@ import java.util.List;
 /**
  * Extension for device specific information.
  */
+@JsonModel
 public class ProtocolExtension implements Model {
 
-    /**
-     * TicketKeys property.
-     */
-    private static final String TICKET_KEYS = "ticketKeys";
-
-    /**
-     * Device manufacturer property.
-     */
-    private static final String DEV_MAKE = "devMake";
-
-    /**
-     * Device model property.
-     */
-    private static final String DEV_MODEL = "devModel";
-
     /**
      * Ticket keys.
      */
+    @JsonProperty("ticketKeys")
     private List<String> ticketKeys;
 
     /**
      * Device manufacturer.
      */
+    @JsonProperty("devMake")
     private String devMake;
 
     /**
      * Device model.
      */
+    @JsonProperty("devModel")
     private String devModel;
 
     /**
@@ -105,37 +95,23 @@ public class ProtocolExtension implements Model {
 
     @Override
     public void read(JSONObject object) throws JSONException {
-        setTicketKeys(JSONUtils.readStringArray(object, TICKET_KEYS));
-        setDevMake(object.optString(DEV_MAKE, null));
-        setDevModel(object.optString(DEV_MODEL, null));
+        ProtocolExtensionSerializer.read(object, this);
     }
 
     @Override
     public void write(JSONStringer writer) throws JSONException {
-        JSONUtils.writeStringArray(writer, TICKET_KEYS, getTicketKeys());
-        JSONUtils.write(writer, DEV_MAKE, getDevMake());
-        JSONUtils.write(writer, DEV_MODEL, getDevModel());
+        ProtocolExtensionSerializer.write(writer, this);
     }
 
-    @SuppressWarnings("SimplifiableIfStatement")
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
-
-        ProtocolExtension that = (ProtocolExtension) o;
-
-        if (ticketKeys != null ? !ticketKeys.equals(that.ticketKeys) : that.ticketKeys != null)
-            return false;
-        if (devMake != null ? !devMake.equals(that.devMake) : that.devMake != null) return false;
-        return devModel != null ? devModel.equals(that.devModel) : that.devModel == null;
+        return ProtocolExtensionSerializer.equals(this, (ProtocolExtension) o);
     }
 
     @Override
     public int hashCode() {
-        int result = ticketKeys != null ? ticketKeys.hashCode() : 0;
-        result = 31 * result + (devMake != null ? devMake.hashCode() : 0);
-        result = 31 * result + (devModel != null ? devModel.hashCode() : 0);
-        return result;
+        return ProtocolExtensionSerializer.hashCode(0, this);
     }
 }
@@ -6,7 +6,8 @@
 package com.microsoft.appcenter.ingestion.models.one;
 
 import com.microsoft.appcenter.ingestion.models.Model;
-import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
+import com.microsoft.appcenter.processor.JsonModel;
+import com.microsoft.appcenter.processor.JsonProperty;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -15,26 +16,19 @@ import org.json.JSONStringer;
 /**
  * The "user" extension tracks common user elements that are not available in the core envelope.
  */
+@JsonModel
 public class UserExtension implements Model {
 
-    /**
-     * LocalId property.
-     */
-    private static final String LOCAL_ID = "localId";
-
-    /**
-     * Locale property.
-     */
-    private static final String LOCALE = "locale";
-
     /**
      * Local Id.
      */
+    @JsonProperty("localId")
     private String localId;
 
     /**
      * User locale.
      */
+    @JsonProperty("locale")
     private String locale;
 
     /**
@@ -77,31 +71,23 @@ public class UserExtension implements Model {
 
     @Override
     public void read(JSONObject object) {
-        setLocalId(object.optString(LOCAL_ID, null));
-        setLocale(object.optString(LOCALE, null));
+        UserExtensionSerializer.read(object, this);
     }
 
     @Override
     public void write(JSONStringer writer) throws JSONException {
-        JSONUtils.write(writer, LOCAL_ID, getLocalId());
-        JSONUtils.write(writer, LOCALE, getLocale());
+        UserExtensionSerializer.write(writer, this);
     }
 
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
-
-        UserExtension that = (UserExtension) o;
-
-        if (localId != null ? !localId.equals(that.localId) : that.localId != null) return false;
-        return locale != null ? locale.equals(that.locale) : that.locale == null;
+        return UserExtensionSerializer.equals(this, (UserExtension) o);
     }
 
     @Override
     public int hashCode() {
-        int result = localId != null ? localId.hashCode() : 0;
-        result = 31 * result + (locale != null ? locale.hashCode() : 0);
-        return result;
+        return UserExtensionSerializer.hashCode(0, this);
     }
 }
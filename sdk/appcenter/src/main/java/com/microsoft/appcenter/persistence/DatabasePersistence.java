@@ -18,6 +18,7 @@ import android.support.annotation.VisibleForTesting;
 import com.microsoft.appcenter.Constants;
 import com.microsoft.appcenter.Flags;
 import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogWithBinaryData;
 import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
 import com.microsoft.appcenter.ingestion.models.one.PartAUtils;
 import com.microsoft.appcenter.utils.AppCenterLog;
@@ -80,10 +81,28 @@ public class DatabasePersistence extends Persistence {
     @VisibleForTesting
     static final int VERSION_TIMESTAMP_COLUMN = 5;
 
+    /**
+     * Version where the batch identifier column was added.
+     */
+    @VisibleForTesting
+    static final int VERSION_BATCH_ID_COLUMN = 7;
+
+    /**
+     * Version where the creation time column was added.
+     */
+    @VisibleForTesting
+    static final int VERSION_CREATED_AT_COLUMN = 8;
+
+    /**
+     * Version where the group and batch identifier index was added.
+     */
+    @VisibleForTesting
+    static final int VERSION_BATCH_ID_INDEX = 9;
+
     /**
      * Current version of the schema.
      */
-    private static final int VERSION = 6;
+    private static final int VERSION = VERSION_BATCH_ID_INDEX;
 
     /**
      * Project identifier part of the target token in clear text (the target token key).
@@ -102,6 +121,18 @@ public class DatabasePersistence extends Persistence {
      */
     private static final String COLUMN_DATA_TYPE = "type";
 
+    /**
+     * Identifier of the batch the log was last sent in, so that a batch is sent again with the same logs and identifier.
+     */
+    @VisibleForTesting
+    static final String COLUMN_BATCH_ID = "batch_id";
+
+    /**
+     * Time the log was stored, in milliseconds, used to expire logs.
+     */
+    @VisibleForTesting
+    static final String COLUMN_CREATED_AT = "created_at";
+
     /**
      * Database name.
      */
@@ -112,13 +143,33 @@ public class DatabasePersistence extends Persistence {
      * Table schema for Persistence.
      */
     @VisibleForTesting
-    static final ContentValues SCHEMA = getContentValues("", "", "", "", "", 0);
+    static final ContentValues SCHEMA = getContentValues("", "", "", "", "", 0, "", 0L);
 
     /**
      * Priority index.
      */
     private static final String INDEX_PRIORITY = "ix_" + TABLE + "_" + COLUMN_PRIORITY;
 
+    /**
+     * Group and creation time index, to delete expired logs.
+     */
+    private static final String INDEX_CREATED_AT = "ix_" + TABLE + "_" + COLUMN_CREATED_AT;
+
+    /**
+     * Group and batch identifier index, to count and reset the logs of a batch.
+     */
+    private static final String INDEX_BATCH_ID = "ix_" + TABLE + "_" + COLUMN_BATCH_ID;
+
+    /**
+     * Condition to select the logs of a batch in a group.
+     */
+    private static final String BATCH_LOGS_WHERE_CLAUSE = COLUMN_GROUP + " = ? AND " + COLUMN_BATCH_ID + " = ?";
+
+    /**
+     * Condition to select expired logs of a group.
+     */
+    private static final String EXPIRED_LOGS_WHERE_CLAUSE = COLUMN_GROUP + " = ? AND " + COLUMN_CREATED_AT + " < ?";
+
     /**
      * Order by clause to select logs.
      */
@@ -126,7 +177,7 @@ public class DatabasePersistence extends Persistence {
 
     /**
      * Size limit (in bytes) for a database row log payload.
-     * A separate file is used if payload is larger.
+     * A separate file, compressed with gzip, is used if payload is larger.
      */
     private static final int PAYLOAD_MAX_SIZE = (int) (1.9 * 1024 * 1024);
 
@@ -140,6 +191,11 @@ public class DatabasePersistence extends Persistence {
      */
     private static final String PAYLOAD_FILE_EXTENSION = ".json";
 
+    /**
+     * Large payload binary data file extension.
+     */
+    private static final String BINARY_DATA_FILE_EXTENSION = ".bin";
+
     /**
      * Database manager instance to access Persistence database.
      */
@@ -158,6 +214,11 @@ public class DatabasePersistence extends Persistence {
     @VisibleForTesting
     final Set<Long> mPendingDbIdentifiers;
 
+    /**
+     * Time to live of logs by group, in milliseconds. Logs of other groups never expire.
+     */
+    private final Map<String, Long> mLogTimeToLives = new HashMap<>();
+
     /**
      * Application context.
      */
@@ -194,9 +255,19 @@ public class DatabasePersistence extends Persistence {
                 db.execSQL("CREATE INDEX `" + INDEX_PRIORITY + "` ON " + TABLE + " (`" + COLUMN_PRIORITY + "`)");
             }
 
+            private void createCreatedAtIndex(SQLiteDatabase db) {
+                db.execSQL("CREATE INDEX `" + INDEX_CREATED_AT + "` ON " + TABLE + " (`" + COLUMN_GROUP + "`, `" + COLUMN_CREATED_AT + "`)");
+            }
+
+            private void createBatchIdIndex(SQLiteDatabase db) {
+                db.execSQL("CREATE INDEX `" + INDEX_BATCH_ID + "` ON " + TABLE + " (`" + COLUMN_GROUP + "`, `" + COLUMN_BATCH_ID + "`)");
+            }
+
             @Override
             public void onCreate(SQLiteDatabase db) {
                 createPriorityIndex(db);
+                createCreatedAtIndex(db);
+                createBatchIdIndex(db);
             }
 
             @Override
@@ -205,12 +276,44 @@ public class DatabasePersistence extends Persistence {
                 /*
                  * With version 3.0 of the SDK we decided to remove timestamp column and as
                  * it's a major SDK version and SQLite does not support removing column we just start over.
-                 * When adding a new column in a future version, update this code by something like
-                 * if (oldVersion <= VERSION_TIMESTAMP_COLUMN) {drop/create} else {add missing columns}
                  */
-                SQLiteUtils.dropTable(db, TABLE);
-                SQLiteUtils.createTable(db, TABLE, schema);
-                createPriorityIndex(db);
+                if (oldVersion <= VERSION_TIMESTAMP_COLUMN) {
+                    SQLiteUtils.dropTable(db, TABLE);
+                    SQLiteUtils.createTable(db, TABLE, schema);
+                    createPriorityIndex(db);
+                    createCreatedAtIndex(db);
+                    createBatchIdIndex(db);
+                    return;
+                }
+
+                /* Add missing columns. */
+                if (oldVersion < VERSION_BATCH_ID_COLUMN) {
+                    SQLiteUtils.addColumn(db, TABLE, COLUMN_BATCH_ID, schema.get(COLUMN_BATCH_ID));
+                }
+                if (oldVersion < VERSION_CREATED_AT_COLUMN) {
+                    SQLiteUtils.addColumn(db, TABLE, COLUMN_CREATED_AT, schema.get(COLUMN_CREATED_AT));
+
+                    /* Logs stored before the upgrade start their time to live now. */
+                    ContentValues createdAtValues = new ContentValues();
+                    createdAtValues.put(COLUMN_CREATED_AT, System.currentTimeMillis());
+                    db.update(TABLE, createdAtValues, null, null);
+                    createCreatedAtIndex(db);
+                }
+                if (oldVersion < VERSION_BATCH_ID_INDEX) {
+                    createBatchIdIndex(db);
+                }
+            }
+
+            @Override
+            public void onEvicted(long id) {
+
+                /* The group of the evicted log is unknown here, look for its files in every group. */
+                File[] directories = mLargePayloadDirectory.listFiles();
+                if (directories != null) {
+                    for (File directory : directories) {
+                        deleteLargePayloadFiles(directory, id);
+                    }
+                }
             }
         });
         mLargePayloadDirectory = new File(Constants.FILES_PATH + PAYLOAD_LARGE_DIRECTORY);
@@ -227,9 +330,11 @@ public class DatabasePersistence extends Persistence {
      * @param targetToken The target token if the log is common schema.
      * @param targetKey   The project identifier part of the target token in clear text.
      * @param priority    The persistence priority.
+     * @param batchId     The identifier of the batch the log was sent in.
+     * @param createdAt   The time the log was stored.
      * @return A {@link ContentValues} instance.
      */
-    private static ContentValues getContentValues(@Nullable String group, @Nullable String logJ, String targetToken, String type, String targetKey, int priority) {
+    private static ContentValues getContentValues(@Nullable String group, @Nullable String logJ, String targetToken, String type, String targetKey, int priority, @Nullable String batchId, long createdAt) {
         ContentValues values = new ContentValues();
         values.put(COLUMN_GROUP, group);
         values.put(COLUMN_LOG, logJ);
@@ -237,6 +342,8 @@ public class DatabasePersistence extends Persistence {
         values.put(COLUMN_DATA_TYPE, type);
         values.put(COLUMN_TARGET_KEY, targetKey);
         values.put(COLUMN_PRIORITY, priority);
+        values.put(COLUMN_BATCH_ID, batchId);
+        values.put(COLUMN_CREATED_AT, createdAt);
         return values;
     }
 
@@ -251,12 +358,26 @@ public class DatabasePersistence extends Persistence {
         /* Convert log to JSON string and put in the database. */
         try {
             AppCenterLog.debug(LOG_TAG, "Storing a log to the Persistence database for log type " + log.getType() + " with flags=" + flags);
-            String payload = getLogSerializer().serializeLog(log);
+            byte[] binaryData = log instanceof LogWithBinaryData ? ((LogWithBinaryData) log).getData() : null;
+            boolean isLargeBinaryData = binaryData != null && getBase64Size(binaryData.length) >= PAYLOAD_MAX_SIZE;
+            String payload;
+            if (isLargeBinaryData) {
+
+                /* Keep binary data out of the JSON payload, it's stored raw in a separate file. */
+                ((LogWithBinaryData) log).setData(null);
+                try {
+                    payload = getLogSerializer().serializeLog(log);
+                } finally {
+                    ((LogWithBinaryData) log).setData(binaryData);
+                }
+            } else {
+                payload = getLogSerializer().serializeLog(log);
+            }
             ContentValues contentValues;
 
             //noinspection CharsetObjectCanBeUsed min API level 19 required to fix this warning.
             int payloadSize = payload.getBytes("UTF-8").length;
-            boolean isLargePayload = payloadSize >= PAYLOAD_MAX_SIZE;
+            boolean isLargePayload = isLargeBinaryData || payloadSize >= PAYLOAD_MAX_SIZE;
             String targetKey;
             String targetToken;
             if (log instanceof CommonSchemaLog) {
@@ -265,7 +386,7 @@ public class DatabasePersistence extends Persistence {
                 }
                 targetToken = log.getTransmissionTargetTokens().iterator().next();
                 targetKey = PartAUtils.getTargetKey(targetToken);
-                targetToken = CryptoUtils.getInstance(mContext).encrypt(targetToken);
+                targetToken = CryptoUtils.getInstance(mContext).encryptCached(targetToken);
             } else {
                 targetKey = null;
                 targetToken = null;
@@ -278,7 +399,7 @@ public class DatabasePersistence extends Persistence {
                 throw new PersistenceException("Log is too large (" + payloadSize + " bytes) to store in database. " +
                         "Current maximum database size is " + maxSize + " bytes.");
             }
-            contentValues = getContentValues(group, isLargePayload ? null : payload, targetToken, log.getType(), targetKey, Flags.getPersistenceFlag(flags, false));
+            contentValues = getContentValues(group, isLargePayload ? null : payload, targetToken, log.getType(), targetKey, Flags.getPersistenceFlag(flags, false), null, System.currentTimeMillis());
             long databaseId = mDatabaseManager.put(contentValues, COLUMN_PRIORITY);
             if (databaseId == -1) {
                 throw new PersistenceException("Failed to store a log to the Persistence database for log type " + log.getType() + ".");
@@ -292,11 +413,14 @@ public class DatabasePersistence extends Persistence {
                 directory.mkdir();
                 File payloadFile = getLargePayloadFile(directory, databaseId);
                 try {
-                    FileManager.write(payloadFile, payload);
+                    FileManager.writeCompressed(payloadFile, payload);
+                    if (isLargeBinaryData) {
+                        FileManager.write(getBinaryDataFile(directory, databaseId), binaryData);
+                    }
                 } catch (IOException e) {
 
                     /* Remove database entry if we cannot save payload as a file. */
-                    mDatabaseManager.delete(databaseId);
+                    deleteLog(directory, databaseId);
                     throw e;
                 }
                 AppCenterLog.debug(LOG_TAG, "Payload written to " + payloadFile);
@@ -321,10 +445,33 @@ public class DatabasePersistence extends Persistence {
         return new File(directory, databaseId + PAYLOAD_FILE_EXTENSION);
     }
 
-    private void deleteLog(File groupLargePayloadDirectory, long id) {
+    @NonNull
+    @VisibleForTesting
+    File getBinaryDataFile(File directory, long databaseId) {
+        return new File(directory, databaseId + BINARY_DATA_FILE_EXTENSION);
+    }
+
+    /**
+     * Get the size of binary data once encoded to base64 in a JSON payload.
+     *
+     * @param size binary data size in bytes.
+     * @return base64 size in bytes.
+     */
+    private static long getBase64Size(int size) {
+        return (size + 2L) / 3 * 4;
+    }
+
+    private void deleteLargePayloadFiles(File groupLargePayloadDirectory, long id) {
 
         //noinspection ResultOfMethodCallIgnored SQLite delete does not have return type either.
         getLargePayloadFile(groupLargePayloadDirectory, id).delete();
+
+        //noinspection ResultOfMethodCallIgnored the file exists only if the log had large binary data.
+        getBinaryDataFile(groupLargePayloadDirectory, id).delete();
+    }
+
+    private void deleteLog(File groupLargePayloadDirectory, long id) {
+        deleteLargePayloadFiles(groupLargePayloadDirectory, id);
         mDatabaseManager.delete(id);
     }
 
@@ -380,6 +527,47 @@ public class DatabasePersistence extends Persistence {
         }
     }
 
+    @Override
+    public void setLogTimeToLive(@NonNull String group, long timeToLive) {
+        mLogTimeToLives.put(group, timeToLive);
+    }
+
+    @Override
+    public int deleteExpiredLogs(@NonNull String group) {
+        Long expiryTime = getExpiryTime(group);
+        if (expiryTime == null) {
+            return 0;
+        }
+        String[] whereArgs = new String[]{group, String.valueOf(expiryTime)};
+
+        /* Delete large payload files, only rows without payload have one. */
+        SQLiteQueryBuilder builder = SQLiteUtils.newSQLiteQueryBuilder();
+        builder.appendWhere(EXPIRED_LOGS_WHERE_CLAUSE + " AND " + COLUMN_LOG + " IS NULL");
+        File directory = getLargePayloadGroupDirectory(group);
+        for (Long id : getLogsIds(builder, whereArgs)) {
+            deleteLargePayloadFiles(directory, id);
+        }
+
+        /* Delete rows with a single statement using the group and creation time index. */
+        int deletedCount = mDatabaseManager.delete(EXPIRED_LOGS_WHERE_CLAUSE, whereArgs);
+        if (deletedCount > 0) {
+            AppCenterLog.debug(LOG_TAG, "Deleted " + deletedCount + " expired logs from " + group + ".");
+        }
+        return deletedCount;
+    }
+
+    /**
+     * Get the creation time before which logs of a group are expired.
+     *
+     * @param group The group of the storage for logs.
+     * @return The expiry time or null if logs of the group never expire.
+     */
+    @Nullable
+    private Long getExpiryTime(@NonNull String group) {
+        Long timeToLive = mLogTimeToLives.get(group);
+        return timeToLive != null ? System.currentTimeMillis() - timeToLive : null;
+    }
+
     @Override
     public int countLogs(@NonNull String group) {
 
@@ -424,10 +612,22 @@ public class DatabasePersistence extends Persistence {
             selectionArgs.addAll(pausedTargetKeys);
         }
 
+        /* Skip expired logs until they are deleted. */
+        Long expiryTime = getExpiryTime(group);
+        if (expiryTime != null) {
+            builder.appendWhere(" AND ");
+            builder.appendWhere(COLUMN_CREATED_AT + " >= ?");
+            selectionArgs.add(String.valueOf(expiryTime));
+        }
+
         /* Add logs to output parameter after deserialization if logs are not already sent. */
         int count = 0;
+        boolean batchSelected = false;
+        String storedBatchId = null;
         Map<Long, Log> candidates = new LinkedHashMap<>();
         List<Long> failedDbIdentifiers = new ArrayList<>();
+        List<Log> logsWithTargetToken = new ArrayList<>();
+        List<String> encryptedTargetTokens = new ArrayList<>();
         File largePayloadGroupDirectory = getLargePayloadGroupDirectory(group);
         String[] selectionArgsArray = selectionArgs.toArray(new String[0]);
         Cursor cursor = null;
@@ -465,6 +665,19 @@ public class DatabasePersistence extends Persistence {
 
             /* If the log is already in pending state, then skip. Otherwise put the log to candidate container. */
             if (!mPendingDbIdentifiers.contains(dbIdentifier)) {
+
+                /*
+                 * The first log decides whether to send again a previous batch or a new one, don't mix them.
+                 * Logs of a batch were selected in the same order, so stop reading at the first log of another batch
+                 * instead of walking the rest of the group: an interrupted batch gets a new identifier below.
+                 */
+                String batchId = values.getAsString(COLUMN_BATCH_ID);
+                if (!batchSelected) {
+                    batchSelected = true;
+                    storedBatchId = batchId;
+                } else if (storedBatchId == null ? batchId != null : !storedBatchId.equals(batchId)) {
+                    break;
+                }
                 try {
 
                     /* Deserialize JSON to Log. */
@@ -473,7 +686,7 @@ public class DatabasePersistence extends Persistence {
                     if (databasePayload == null) {
                         File file = getLargePayloadFile(largePayloadGroupDirectory, dbIdentifier);
                         AppCenterLog.debug(LOG_TAG, "Read payload file " + file);
-                        logPayload = FileManager.read(file);
+                        logPayload = FileManager.readCompressed(file);
                         if (logPayload == null) {
                             throw new JSONException("Log payload is null and not stored as a file.");
                         }
@@ -483,11 +696,22 @@ public class DatabasePersistence extends Persistence {
                     String databasePayloadType = values.getAsString(COLUMN_DATA_TYPE);
                     Log log = getLogSerializer().deserializeLog(logPayload, databasePayloadType);
 
-                    /* Restore target token. */
+                    /* Restore binary data that was stored raw. */
+                    if (databasePayload == null && log instanceof LogWithBinaryData && ((LogWithBinaryData) log).getData() == null) {
+                        File file = getBinaryDataFile(largePayloadGroupDirectory, dbIdentifier);
+                        AppCenterLog.debug(LOG_TAG, "Read binary data file " + file);
+                        byte[] binaryData = FileManager.readBytes(file);
+                        if (binaryData == null) {
+                            throw new JSONException("Log binary data is not stored in the payload nor as a file.");
+                        }
+                        ((LogWithBinaryData) log).setData(binaryData);
+                    }
+
+                    /* Target tokens are restored once all logs are read. */
                     String targetToken = values.getAsString(COLUMN_TARGET_TOKEN);
                     if (targetToken != null) {
-                        CryptoUtils.DecryptedData data = CryptoUtils.getInstance(mContext).decrypt(targetToken);
-                        log.addTransmissionTarget(data.getDecryptedData());
+                        logsWithTargetToken.add(log);
+                        encryptedTargetTokens.add(targetToken);
                     }
 
                     /* Add log to list and count. */
@@ -510,6 +734,14 @@ public class DatabasePersistence extends Persistence {
             }
         }
 
+        /* Restore target tokens, decrypting them together. */
+        if (!encryptedTargetTokens.isEmpty()) {
+            List<CryptoUtils.DecryptedData> targetTokens = CryptoUtils.getInstance(mContext).decryptCached(encryptedTargetTokens);
+            for (int i = 0; i < logsWithTargetToken.size(); i++) {
+                logsWithTargetToken.get(i).addTransmissionTarget(targetTokens.get(i).getDecryptedData());
+            }
+        }
+
         /* Delete any logs that cannot be de-serialized. */
         if (failedDbIdentifiers.size() > 0) {
             for (long id : failedDbIdentifiers) {
@@ -524,8 +756,25 @@ public class DatabasePersistence extends Persistence {
             return null;
         }
 
-        /* Generate an ID. */
-        String id = UUID.randomUUID().toString();
+        /*
+         * Send again a previous batch with the same identifier only if it has exactly the same logs,
+         * otherwise the logs are recorded under a new batch identifier.
+         */
+        String id;
+        if (storedBatchId != null && countBatchLogs(group, storedBatchId) == candidates.size()) {
+            id = storedBatchId;
+            AppCenterLog.debug(LOG_TAG, "Sending again batch " + id);
+        } else {
+
+            /* Logs of an incomplete previous batch must not be sent again with its identifier. */
+            if (storedBatchId != null) {
+                ContentValues batchIdValues = new ContentValues();
+                batchIdValues.putNull(COLUMN_BATCH_ID);
+                mDatabaseManager.update(batchIdValues, BATCH_LOGS_WHERE_CLAUSE, new String[]{group, storedBatchId});
+            }
+            id = UUID.randomUUID().toString();
+            updateBatchId(candidates.keySet(), id);
+        }
 
         /* Log. */
         AppCenterLog.debug(LOG_TAG, "Returning " + candidates.size() + " log(s) with an ID, " + id);
@@ -559,11 +808,75 @@ public class DatabasePersistence extends Persistence {
         AppCenterLog.debug(LOG_TAG, "Cleared pending log states");
     }
 
+    @Override
+    public void clearPendingLogState(@NonNull String group, @NonNull String batchId) {
+        List<Long> dbIdentifiers = mPendingDbIdentifiersGroups.remove(group + batchId);
+        if (dbIdentifiers != null) {
+            mPendingDbIdentifiers.removeAll(dbIdentifiers);
+        }
+        AppCenterLog.debug(LOG_TAG, "Cleared pending log state for " + group + " with " + batchId);
+    }
+
+    @Override
+    public void beginTransaction() {
+        mDatabaseManager.beginTransaction();
+    }
+
+    @Override
+    public void endTransaction() {
+        mDatabaseManager.endTransaction();
+    }
+
     @Override
     public void close() {
         mDatabaseManager.close();
     }
 
+    /**
+     * Count logs of a group recorded with a batch identifier.
+     *
+     * @param group   group of the logs.
+     * @param batchId batch identifier.
+     * @return number of logs, -1 on error.
+     */
+    private int countBatchLogs(String group, String batchId) {
+        SQLiteQueryBuilder builder = SQLiteUtils.newSQLiteQueryBuilder();
+        builder.appendWhere(BATCH_LOGS_WHERE_CLAUSE);
+        int count = -1;
+        try {
+            Cursor cursor = mDatabaseManager.getCursor(builder, new String[]{"COUNT(*)"}, new String[]{group, batchId}, null);
+            try {
+                cursor.moveToNext();
+                count = cursor.getInt(0);
+            } finally {
+                cursor.close();
+            }
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to get batch logs count: ", e);
+        }
+        return count;
+    }
+
+    /**
+     * Record a batch identifier for logs.
+     *
+     * @param dbIdentifiers database identifiers of the logs.
+     * @param batchId       batch identifier.
+     */
+    private void updateBatchId(Collection<Long> dbIdentifiers, String batchId) {
+        StringBuilder filter = new StringBuilder();
+        String[] whereArgs = new String[dbIdentifiers.size()];
+        int i = 0;
+        for (Long dbIdentifier : dbIdentifiers) {
+            filter.append("?,");
+            whereArgs[i++] = String.valueOf(dbIdentifier);
+        }
+        filter.deleteCharAt(filter.length() - 1);
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_BATCH_ID, batchId);
+        mDatabaseManager.update(values, PRIMARY_KEY + " IN (" + filter.toString() + ")", whereArgs);
+    }
+
     private List<Long> getLogsIds(SQLiteQueryBuilder builder, String[] selectionArgs) {
         List<Long> result = new ArrayList<>();
         try {
@@ -578,7 +891,7 @@ public class DatabasePersistence extends Persistence {
                 cursor.close();
             }
         } catch (RuntimeException e) {
-            AppCenterLog.error(LOG_TAG, "Failed to get corrupted ids: ", e);
+            AppCenterLog.error(LOG_TAG, "Failed to get log ids: ", e);
         }
         return result;
     }
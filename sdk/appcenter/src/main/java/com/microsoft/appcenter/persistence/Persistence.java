@@ -55,6 +55,24 @@ public abstract class Persistence implements Closeable {
      */
     public abstract void deleteLogs(String group);
 
+    /**
+     * Sets how long logs of the given {@code group} are kept. Older logs are not returned by
+     * {@link #getLogs(String, Collection, int, List)} and are removed by {@link #deleteExpiredLogs(String)}.
+     * Logs never expire by default.
+     *
+     * @param group      The group of the storage for logs.
+     * @param timeToLive Time to live in milliseconds since the log was stored.
+     */
+    public abstract void setLogTimeToLive(@NonNull String group, long timeToLive);
+
+    /**
+     * Deletes logs of the given {@code group} that are older than its time to live.
+     *
+     * @param group The group of the storage for logs.
+     * @return The number of deleted logs.
+     */
+    public abstract int deleteExpiredLogs(@NonNull String group);
+
     /**
      * Gets the number of logs for the given {@code group}.
      *
@@ -80,6 +98,25 @@ public abstract class Persistence implements Closeable {
      */
     public abstract void clearPendingLogState();
 
+    /**
+     * Clears the association between logs of the {@code group} and the id returned by {@link #getLogs(String, Collection, int, List)}}
+     * so that these logs can be returned again.
+     *
+     * @param group   The group of the storage for logs.
+     * @param batchId The ID for a set of logs.
+     */
+    public abstract void clearPendingLogState(@NonNull String group, @NonNull String batchId);
+
+    /**
+     * Group writes in a single transaction until {@link #endTransaction()} is called from the same thread.
+     */
+    public abstract void beginTransaction();
+
+    /**
+     * Commit the writes grouped since {@link #beginTransaction()}.
+     */
+    public abstract void endTransaction();
+
     /**
      * Gets a {@link LogSerializer}.
      *
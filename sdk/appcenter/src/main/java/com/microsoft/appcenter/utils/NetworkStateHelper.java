@@ -70,6 +70,11 @@ public class NetworkStateHelper implements Closeable {
      */
     private final AtomicBoolean mConnected = new AtomicBoolean();
 
+    /**
+     * Last known properties of the active network, used to detect changes while staying connected.
+     */
+    private ConnectionInfo mLastConnectionInfo;
+
     /**
      * Init.
      *
@@ -126,6 +131,11 @@ public class NetworkStateHelper implements Closeable {
                     public void onLost(Network network) {
                         onNetworkLost(network);
                     }
+
+                    @Override
+                    public void onCapabilitiesChanged(Network network, NetworkCapabilities networkCapabilities) {
+                        checkConnectionInfoChanged();
+                    }
                 };
                 mConnectivityManager.registerNetworkCallback(request.build(), mNetworkCallback);
             } else {
@@ -161,6 +171,70 @@ public class NetworkStateHelper implements Closeable {
         return mConnected.get() || isAnyNetworkConnected();
     }
 
+    /**
+     * Get properties of the active network.
+     *
+     * @return active network properties, or null if they cannot be accessed.
+     */
+    public ConnectionInfo getConnectionInfo() {
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                Network network = mConnectivityManager.getActiveNetwork();
+                NetworkCapabilities capabilities = network != null ? mConnectivityManager.getNetworkCapabilities(network) : null;
+                if (capabilities != null) {
+                    return new ConnectionInfo(
+                            true,
+                            !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED),
+                            getTransport(capabilities),
+                            capabilities.getLinkDownstreamBandwidthKbps(),
+                            capabilities.getLinkUpstreamBandwidthKbps());
+                }
+            }
+
+            @SuppressWarnings({"deprecation", "RedundantSuppression"})
+            NetworkInfo info = mConnectivityManager.getActiveNetworkInfo();
+            if (info == null || !info.isConnected()) {
+                return new ConnectionInfo(false, false, ConnectionInfo.Transport.NONE, ConnectionInfo.UNKNOWN_BANDWIDTH, ConnectionInfo.UNKNOWN_BANDWIDTH);
+            }
+            return new ConnectionInfo(true, mConnectivityManager.isActiveNetworkMetered(), getTransport(info),
+                    ConnectionInfo.UNKNOWN_BANDWIDTH, ConnectionInfo.UNKNOWN_BANDWIDTH);
+        } catch (RuntimeException e) {
+            AppCenterLog.warn(LOG_TAG, "Cannot access active network information.", e);
+            return null;
+        }
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    private static ConnectionInfo.Transport getTransport(NetworkCapabilities capabilities) {
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) {
+            return ConnectionInfo.Transport.WIFI;
+        }
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET)) {
+            return ConnectionInfo.Transport.ETHERNET;
+        }
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) {
+            return ConnectionInfo.Transport.CELLULAR;
+        }
+        return ConnectionInfo.Transport.OTHER;
+    }
+
+    @SuppressWarnings({"deprecation", "RedundantSuppression"})
+    private static ConnectionInfo.Transport getTransport(NetworkInfo info) {
+        switch (info.getType()) {
+            case ConnectivityManager.TYPE_WIFI:
+                return ConnectionInfo.Transport.WIFI;
+
+            case ConnectivityManager.TYPE_ETHERNET:
+                return ConnectionInfo.Transport.ETHERNET;
+
+            case ConnectivityManager.TYPE_MOBILE:
+                return ConnectionInfo.Transport.CELLULAR;
+
+            default:
+                return ConnectionInfo.Transport.OTHER;
+        }
+    }
+
     /**
      * Check if any network is connected.
      *
@@ -202,6 +276,8 @@ public class NetworkStateHelper implements Closeable {
         AppCenterLog.debug(LOG_TAG, "Network " + network + " is available.");
         if (mConnected.compareAndSet(false, true)) {
             notifyNetworkStateUpdated(true);
+        } else {
+            checkConnectionInfoChanged();
         }
     }
 
@@ -216,6 +292,8 @@ public class NetworkStateHelper implements Closeable {
                 Arrays.equals(networks, new Network[]{network});
         if (noNetwork && mConnected.compareAndSet(true, false)) {
             notifyNetworkStateUpdated(false);
+        } else {
+            checkConnectionInfoChanged();
         }
     }
 
@@ -226,6 +304,29 @@ public class NetworkStateHelper implements Closeable {
         boolean connected = isAnyNetworkConnected();
         if (mConnected.compareAndSet(!connected, connected)) {
             notifyNetworkStateUpdated(connected);
+        } else {
+            checkConnectionInfoChanged();
+        }
+    }
+
+    /**
+     * Notify listeners if the active network changed type or metered status while staying connected.
+     * Bandwidth estimates change too often to be notified.
+     */
+    private void checkConnectionInfoChanged() {
+        ConnectionInfo connectionInfo = getConnectionInfo();
+        boolean changed;
+        synchronized (this) {
+            ConnectionInfo lastConnectionInfo = mLastConnectionInfo;
+            mLastConnectionInfo = connectionInfo;
+            changed = lastConnectionInfo != null && connectionInfo != null && connectionInfo.isConnected() && mConnected.get() &&
+                    (lastConnectionInfo.getTransport() != connectionInfo.getTransport() || lastConnectionInfo.isMetered() != connectionInfo.isMetered());
+        }
+        if (changed) {
+            AppCenterLog.debug(LOG_TAG, "Active network changed to " + connectionInfo + ".");
+            for (Listener listener : mListeners) {
+                listener.onNetworkStateUpdated(true);
+            }
         }
     }
 
@@ -236,6 +337,9 @@ public class NetworkStateHelper implements Closeable {
      */
     private void notifyNetworkStateUpdated(boolean connected) {
         AppCenterLog.debug(LOG_TAG, "Network has been " + (connected ? "connected." : "disconnected."));
+        synchronized (this) {
+            mLastConnectionInfo = connected ? getConnectionInfo() : null;
+        }
         for (Listener listener : mListeners) {
             listener.onNetworkStateUpdated(connected);
         }
@@ -275,13 +379,138 @@ public class NetworkStateHelper implements Closeable {
     public interface Listener {
 
         /**
-         * Called whenever the network state is updated.
+         * Called whenever the network state is updated. This is also called with true when the
+         * active network changes type or metered status while staying connected.
          *
          * @param connected true if connected, false otherwise.
          */
         void onNetworkStateUpdated(boolean connected);
     }
 
+    /**
+     * Properties of the active network.
+     */
+    public static class ConnectionInfo {
+
+        /**
+         * Bandwidth value when no estimate is available.
+         */
+        public static final int UNKNOWN_BANDWIDTH = -1;
+
+        /**
+         * Whether a network is connected.
+         */
+        private final boolean mConnected;
+
+        /**
+         * Whether the network is metered.
+         */
+        private final boolean mMetered;
+
+        /**
+         * Transport type.
+         */
+        private final Transport mTransport;
+
+        /**
+         * Downstream bandwidth estimate in Kbps.
+         */
+        private final int mDownstreamBandwidthKbps;
+
+        /**
+         * Upstream bandwidth estimate in Kbps.
+         */
+        private final int mUpstreamBandwidthKbps;
+
+        @VisibleForTesting
+        public ConnectionInfo(boolean connected, boolean metered, @NonNull Transport transport, int downstreamBandwidthKbps, int upstreamBandwidthKbps) {
+            mConnected = connected;
+            mMetered = metered;
+            mTransport = transport;
+            mDownstreamBandwidthKbps = downstreamBandwidthKbps;
+            mUpstreamBandwidthKbps = upstreamBandwidthKbps;
+        }
+
+        /**
+         * @return true if a network is connected.
+         */
+        public boolean isConnected() {
+            return mConnected;
+        }
+
+        /**
+         * @return true if the user might be charged for the traffic.
+         */
+        public boolean isMetered() {
+            return mMetered;
+        }
+
+        /**
+         * @return transport type.
+         */
+        @NonNull
+        public Transport getTransport() {
+            return mTransport;
+        }
+
+        /**
+         * @return downstream bandwidth estimate in Kbps, or {@link #UNKNOWN_BANDWIDTH} (before API level 23).
+         */
+        public int getDownstreamBandwidthKbps() {
+            return mDownstreamBandwidthKbps;
+        }
+
+        /**
+         * @return upstream bandwidth estimate in Kbps, or {@link #UNKNOWN_BANDWIDTH} (before API level 23).
+         */
+        public int getUpstreamBandwidthKbps() {
+            return mUpstreamBandwidthKbps;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "ConnectionInfo{" +
+                    "connected=" + mConnected +
+                    ", metered=" + mMetered +
+                    ", transport=" + mTransport +
+                    ", downstreamBandwidthKbps=" + mDownstreamBandwidthKbps +
+                    ", upstreamBandwidthKbps=" + mUpstreamBandwidthKbps +
+                    '}';
+        }
+
+        /**
+         * Network transport type.
+         */
+        public enum Transport {
+
+            /**
+             * No network.
+             */
+            NONE,
+
+            /**
+             * Wi-Fi.
+             */
+            WIFI,
+
+            /**
+             * Ethernet.
+             */
+            ETHERNET,
+
+            /**
+             * Mobile data.
+             */
+            CELLULAR,
+
+            /**
+             * Any other transport such as bluetooth.
+             */
+            OTHER
+        }
+    }
+
     /**
      * Class receiving connectivity changes.
      */
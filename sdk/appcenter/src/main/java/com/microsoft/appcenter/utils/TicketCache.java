@@ -7,41 +7,198 @@ package com.microsoft.appcenter.utils;
 
 import android.support.annotation.VisibleForTesting;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.microsoft.appcenter.AppCenter.LOG_TAG;
 
 /**
  * Ticket cache for One Collector protocol.
+ * <p>
+ * Tickets are written by authentication providers and read by network threads without locking.
+ * Expired tickets are evicted instead of being sent.
  */
 public class TicketCache {
 
     /**
-     * Cache backed by a simple map.
+     * Expiry time of tickets that never expire.
+     */
+    public static final long NO_EXPIRY = Long.MAX_VALUE;
+
+    /**
+     * Maximum number of tickets, least expiring ones are evicted first when reached.
+     */
+    @VisibleForTesting
+    static final int MAX_TICKETS = 64;
+
+    /**
+     * Tickets by key.
+     */
+    private static final ConcurrentMap<String, Ticket> sTickets = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented on each change, lets callers know when values derived from tickets are stale.
+     */
+    private static final AtomicLong sVersion = new AtomicLong();
+
+    /**
+     * Earliest expiry time of cached tickets.
      */
-    private static final Map<String, String> sTickets = new HashMap<>();
+    private static volatile long sNextExpiryTime = NO_EXPIRY;
 
     /**
      * Get cached ticket.
      *
      * @param key ticket key.
-     * @return token value or null if not in cache.
+     * @return token value or null if not in cache or expired.
      */
     public static String getTicket(String key) {
-        return sTickets.get(key);
+        if (key == null) {
+            return null;
+        }
+        Ticket ticket = sTickets.get(key);
+        if (ticket == null) {
+            return null;
+        }
+        if (ticket.mExpiryTime <= System.currentTimeMillis()) {
+            AppCenterLog.debug(LOG_TAG, "Evicting expired ticket for key=" + key);
+            remove(key, ticket);
+            return null;
+        }
+        return ticket.mValue;
     }
 
     /**
-     * Insert or update ticket.
+     * Insert or update ticket that never expires.
      *
      * @param key   ticket key.
      * @param value ticket value.
      */
     public static void putTicket(String key, String value) {
-        sTickets.put(key, value);
+        putTicket(key, value, NO_EXPIRY);
+    }
+
+    /**
+     * Insert or update ticket.
+     *
+     * @param key        ticket key.
+     * @param value      ticket value.
+     * @param expiryTime time in milliseconds after which the ticket is not returned anymore.
+     */
+    public static void putTicket(String key, String value, long expiryTime) {
+        if (key == null || value == null) {
+            return;
+        }
+        sTickets.put(key, new Ticket(value, expiryTime));
+        if (sTickets.size() > MAX_TICKETS) {
+            evict();
+        }
+        onChanged();
+    }
+
+    /**
+     * Get the version of the cache, it changes each time a ticket is added, updated or removed.
+     *
+     * @return version.
+     */
+    public static long getVersion() {
+        return sVersion.get();
+    }
+
+    /**
+     * Get earliest expiry time of cached tickets, values derived from tickets must be computed again
+     * after that time.
+     *
+     * @return expiry time in milliseconds, {@link #NO_EXPIRY} if no ticket expires.
+     */
+    public static long getNextExpiryTime() {
+        return sNextExpiryTime;
+    }
+
+    /**
+     * Remove expired tickets.
+     */
+    public static void removeExpiredTickets() {
+        long now = System.currentTimeMillis();
+        boolean changed = false;
+        for (Map.Entry<String, Ticket> entry : sTickets.entrySet()) {
+            if (entry.getValue().mExpiryTime <= now) {
+                changed |= sTickets.remove(entry.getKey(), entry.getValue());
+            }
+        }
+        if (changed) {
+            onChanged();
+        }
     }
 
     @VisibleForTesting
     public static void clear() {
         sTickets.clear();
+        onChanged();
+    }
+
+    private static void remove(String key, Ticket ticket) {
+
+        /* Keep the ticket if it was just replaced by another thread. */
+        if (sTickets.remove(key, ticket)) {
+            onChanged();
+        }
+    }
+
+    /**
+     * Remove expired tickets, then tickets expiring first until the cache is within its bound.
+     */
+    private static void evict() {
+        removeExpiredTickets();
+        while (sTickets.size() > MAX_TICKETS) {
+            String evictedKey = null;
+            long evictedExpiryTime = NO_EXPIRY;
+            for (Map.Entry<String, Ticket> entry : sTickets.entrySet()) {
+                if (evictedKey == null || entry.getValue().mExpiryTime < evictedExpiryTime) {
+                    evictedKey = entry.getKey();
+                    evictedExpiryTime = entry.getValue().mExpiryTime;
+                }
+            }
+            if (evictedKey == null) {
+                break;
+            }
+            sTickets.remove(evictedKey);
+        }
+    }
+
+    /**
+     * Update version and next expiry time after a change.
+     * Synchronized so that the last update sees all the changes made before it.
+     */
+    private static synchronized void onChanged() {
+        long nextExpiryTime = NO_EXPIRY;
+        for (Ticket ticket : sTickets.values()) {
+            nextExpiryTime = Math.min(nextExpiryTime, ticket.mExpiryTime);
+        }
+        sNextExpiryTime = nextExpiryTime;
+        sVersion.incrementAndGet();
+    }
+
+    /**
+     * Ticket value with its expiry time.
+     */
+    private static class Ticket {
+
+        /**
+         * Ticket value.
+         */
+        final String mValue;
+
+        /**
+         * Expiry time in milliseconds.
+         */
+        final long mExpiryTime;
+
+        Ticket(String value, long expiryTime) {
+            mValue = value;
+            mExpiryTime = expiryTime;
+        }
     }
 }
@@ -26,6 +26,12 @@ import static javax.crypto.Cipher.ENCRYPT_MODE;
 @RequiresApi(Build.VERSION_CODES.M)
 class CryptoAesHandler implements CryptoHandler {
 
+    /**
+     * Cipher of each thread, getting a new instance from the provider is costly so it's reused.
+     * A new IV is generated each time the cipher is initialized for encryption.
+     */
+    private final ThreadLocal<CachedCipher> mCiphers = new ThreadLocal<>();
+
     @Override
     public String getAlgorithm() {
         return CryptoConstants.CIPHER_AES + "/" + AES_KEY_SIZE;
@@ -46,9 +52,21 @@ class CryptoAesHandler implements CryptoHandler {
         keyGenerator.generateKey();
     }
 
+    /**
+     * Get cipher of the current thread.
+     */
+    private CryptoUtils.ICipher getCipher(CryptoUtils.ICryptoFactory cryptoFactory) throws Exception {
+        CachedCipher cachedCipher = mCiphers.get();
+        if (cachedCipher == null || cachedCipher.mCryptoFactory != cryptoFactory) {
+            cachedCipher = new CachedCipher(cryptoFactory, cryptoFactory.getCipher(CryptoConstants.CIPHER_AES, PROVIDER_ANDROID_M));
+            mCiphers.set(cachedCipher);
+        }
+        return cachedCipher.mCipher;
+    }
+
     @Override
     public byte[] encrypt(CryptoUtils.ICryptoFactory cryptoFactory, int apiLevel, KeyStore.Entry keyStoreEntry, byte[] input) throws Exception {
-        CryptoUtils.ICipher cipher = cryptoFactory.getCipher(CryptoConstants.CIPHER_AES, PROVIDER_ANDROID_M);
+        CryptoUtils.ICipher cipher = getCipher(cryptoFactory);
         cipher.init(ENCRYPT_MODE, ((KeyStore.SecretKeyEntry) keyStoreEntry).getSecretKey());
         byte[] cipherIV = cipher.getIV();
         byte[] output = cipher.doFinal(input);
@@ -60,10 +78,31 @@ class CryptoAesHandler implements CryptoHandler {
 
     @Override
     public byte[] decrypt(CryptoUtils.ICryptoFactory cryptoFactory, int apiLevel, KeyStore.Entry keyStoreEntry, byte[] data) throws Exception {
-        CryptoUtils.ICipher cipher = cryptoFactory.getCipher(CryptoConstants.CIPHER_AES, PROVIDER_ANDROID_M);
+        CryptoUtils.ICipher cipher = getCipher(cryptoFactory);
         int blockSize = cipher.getBlockSize();
         IvParameterSpec ivParameterSpec = new IvParameterSpec(data, 0, blockSize);
         cipher.init(DECRYPT_MODE, ((KeyStore.SecretKeyEntry) keyStoreEntry).getSecretKey(), ivParameterSpec);
         return cipher.doFinal(data, blockSize, data.length - blockSize);
     }
+
+    /**
+     * Cipher with the factory that created it.
+     */
+    private static class CachedCipher {
+
+        /**
+         * Factory that created the cipher.
+         */
+        final CryptoUtils.ICryptoFactory mCryptoFactory;
+
+        /**
+         * Cipher.
+         */
+        final CryptoUtils.ICipher mCipher;
+
+        CachedCipher(CryptoUtils.ICryptoFactory cryptoFactory, CryptoUtils.ICipher cipher) {
+            mCryptoFactory = cryptoFactory;
+            mCipher = cipher;
+        }
+    }
 }
@@ -22,9 +22,15 @@ import java.security.KeyStore;
 import java.security.Provider;
 import java.security.cert.CertificateExpiredException;
 import java.security.spec.AlgorithmParameterSpec;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
@@ -46,6 +52,12 @@ public class CryptoUtils {
      */
     private static final String M_KEY_EXPIRED_EXCEPTION = "android.security.keystore.KeyExpiredException";
 
+    /**
+     * Maximum number of values kept in each of the cached encrypt/decrypt results.
+     */
+    @VisibleForTesting
+    static final int CACHE_SIZE = 16;
+
     @VisibleForTesting
     static final ICryptoFactory DEFAULT_CRYPTO_FACTORY = new ICryptoFactory() {
 
@@ -145,6 +157,16 @@ public class CryptoUtils {
      */
     private final KeyStore mKeyStore;
 
+    /**
+     * Least recently used cache of data to encrypted data, see {@link #encryptCached(String)}.
+     */
+    private final Map<String, String> mEncryptCache = createCache();
+
+    /**
+     * Least recently used cache of encrypted data to decrypted data, see {@link #decryptCached(String)}.
+     */
+    private final Map<String, DecryptedData> mDecryptCache = createCache();
+
     /**
      * Init.
      *
@@ -220,6 +242,27 @@ public class CryptoUtils {
         return mCryptoFactory;
     }
 
+    @NonNull
+    private static <V> Map<String, V> createCache() {
+        return new LinkedHashMap<String, V>(CACHE_SIZE, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        };
+    }
+
+    /**
+     * Forget cached results, called when keys rotate.
+     */
+    private void clearCaches() {
+        synchronized (mEncryptCache) {
+            mEncryptCache.clear();
+            mDecryptCache.clear();
+        }
+    }
+
     /**
      * Register handler and create alias the first time.
      */
@@ -289,15 +332,7 @@ public class CryptoUtils {
             try {
 
                 /* Attempt encryption. */
-                KeyStore.Entry keyStoreEntry = getKeyStoreEntry(handlerEntry);
-                byte[] encryptedBytes = handler.encrypt(mCryptoFactory, mApiLevel, keyStoreEntry, data.getBytes(CHARSET));
-                String encryptedString = Base64.encodeToString(encryptedBytes, Base64.DEFAULT);
-
-                /*
-                 * Store algorithm for crypto agility alongside the data.
-                 * We also use that information in decrypt in case of firmware/sdk upgrade.
-                 */
-                return handler.getAlgorithm() + ALGORITHM_DATA_SEPARATOR + encryptedString;
+                return encrypt(handler, getKeyStoreEntry(handlerEntry), data);
             } catch (InvalidKeyException e) {
 
                 /*
@@ -306,6 +341,7 @@ public class CryptoUtils {
                  */
                 if (e.getCause() instanceof CertificateExpiredException || M_KEY_EXPIRED_EXCEPTION.equals(e.getClass().getName())) {
                     AppCenterLog.debug(LOG_TAG, "Alias expired: " + handlerEntry.mAliasIndex);
+                    clearCaches();
                     handlerEntry.mAliasIndex ^= 1;
                     String newAlias = getAlias(handler, handlerEntry.mAliasIndex);
 
@@ -333,6 +369,51 @@ public class CryptoUtils {
         }
     }
 
+    @NonNull
+    private String encrypt(CryptoHandler handler, KeyStore.Entry keyStoreEntry, String data) throws Exception {
+        byte[] encryptedBytes = handler.encrypt(mCryptoFactory, mApiLevel, keyStoreEntry, data.getBytes(CHARSET));
+        String encryptedString = Base64.encodeToString(encryptedBytes, Base64.DEFAULT);
+
+        /*
+         * Store algorithm for crypto agility alongside the data.
+         * We also use that information in decrypt in case of firmware/sdk upgrade.
+         */
+        return handler.getAlgorithm() + ALGORITHM_DATA_SEPARATOR + encryptedString;
+    }
+
+    /**
+     * Encrypt a list of data. The key store entry is read only once for the whole list.
+     *
+     * @param data data to encrypt.
+     * @return encrypted data in the same order, each item is the original data on internal failure or if null.
+     */
+    @NonNull
+    public List<String> encrypt(@NonNull List<String> data) {
+        List<String> encryptedData = new ArrayList<>(data.size());
+        CryptoHandlerEntry handlerEntry = mCryptoHandlers.values().iterator().next();
+        KeyStore.Entry keyStoreEntry = null;
+        boolean keyStoreEntryLoaded = false;
+        for (String item : data) {
+            if (item == null) {
+                encryptedData.add(null);
+                continue;
+            }
+            try {
+                if (!keyStoreEntryLoaded) {
+                    keyStoreEntry = getKeyStoreEntry(handlerEntry);
+                    keyStoreEntryLoaded = true;
+                }
+                encryptedData.add(encrypt(handlerEntry.mCryptoHandler, keyStoreEntry, item));
+            } catch (Exception e) {
+
+                /* Let the single item path handle key expiration or failure, then read key again. */
+                encryptedData.add(encrypt(item));
+                keyStoreEntryLoaded = false;
+            }
+        }
+        return encryptedData;
+    }
+
     /**
      * Decrypt data.
      *
@@ -362,22 +443,151 @@ public class CryptoUtils {
         try {
             return getDecryptedData(cryptoHandler, handlerEntry.mAliasIndex, dataSplit[1]);
         } catch (Exception e) {
+            return decryptWithExpiredAlias(handlerEntry, data, dataSplit[1]);
+        }
+    }
 
-            /* Try the expired alias. */
+    @NonNull
+    private DecryptedData decryptWithExpiredAlias(CryptoHandlerEntry handlerEntry, String data, String encryptedData) {
+        try {
+            return getDecryptedData(handlerEntry.mCryptoHandler, handlerEntry.mAliasIndex ^ 1, encryptedData);
+        } catch (Exception e) {
+
+            /* Return data as is on failure. We cannot log details for security. */
+            AppCenterLog.error(LOG_TAG, "Failed to decrypt data.");
+            return new DecryptedData(data, null);
+        }
+    }
+
+    /**
+     * Decrypt a list of data. The key store entry of each algorithm is read only once for the whole list.
+     *
+     * @param data data to decrypt.
+     * @return decrypted data in the same order.
+     */
+    @NonNull
+    public List<DecryptedData> decrypt(@NonNull List<String> data) {
+        List<DecryptedData> decryptedData = new ArrayList<>(data.size());
+        Map<CryptoHandler, KeyStore.Entry> keyStoreEntries = new HashMap<>();
+        for (String item : data) {
+            String[] dataSplit = item == null ? null : item.split(ALGORITHM_DATA_SEPARATOR);
+            CryptoHandlerEntry handlerEntry = dataSplit != null && dataSplit.length == 2 ? mCryptoHandlers.get(dataSplit[0]) : null;
+            if (handlerEntry == null) {
+                decryptedData.add(decrypt(item));
+                continue;
+            }
+            CryptoHandler cryptoHandler = handlerEntry.mCryptoHandler;
             try {
-                return getDecryptedData(cryptoHandler, handlerEntry.mAliasIndex ^ 1, dataSplit[1]);
-            } catch (Exception e2) {
+                KeyStore.Entry keyStoreEntry;
+                if (keyStoreEntries.containsKey(cryptoHandler)) {
+                    keyStoreEntry = keyStoreEntries.get(cryptoHandler);
+                } else {
+                    keyStoreEntry = getKeyStoreEntry(handlerEntry);
+                    keyStoreEntries.put(cryptoHandler, keyStoreEntry);
+                }
+                decryptedData.add(getDecryptedData(cryptoHandler, keyStoreEntry, dataSplit[1]));
+            } catch (Exception e) {
+                decryptedData.add(decryptWithExpiredAlias(handlerEntry, item, dataSplit[1]));
+            }
+        }
+        return decryptedData;
+    }
+
+    /**
+     * Encrypt data that is likely to be encrypted again, like target tokens. Results are kept in
+     * memory until keys rotate so that repeated values don't go through the key store each time.
+     *
+     * @param data data to encrypt.
+     * @return encrypted data, or original data on internal failure or if null.
+     */
+    @Nullable
+    public String encryptCached(@Nullable String data) {
+        if (data == null) {
+            return null;
+        }
+        synchronized (mEncryptCache) {
+            String encryptedData = mEncryptCache.get(data);
+            if (encryptedData != null) {
+                return encryptedData;
+            }
+        }
+        String encryptedData = encrypt(data);
+
+        /* Don't cache failures, and remember the reverse operation as well. */
+        if (!data.equals(encryptedData)) {
+            synchronized (mEncryptCache) {
+                mEncryptCache.put(data, encryptedData);
+                mDecryptCache.put(encryptedData, new DecryptedData(data, null));
+            }
+        }
+        return encryptedData;
+    }
 
-                /* Return data as is on failure. We cannot log details for security. */
-                AppCenterLog.error(LOG_TAG, "Failed to decrypt data.");
-                return new DecryptedData(data, null);
+    /**
+     * Decrypt data that is likely to be decrypted again, like target tokens. Results are kept in
+     * memory until keys rotate so that repeated values don't go through the key store each time.
+     *
+     * @param data data to decrypt.
+     * @return decrypted data.
+     */
+    @NonNull
+    public DecryptedData decryptCached(@Nullable String data) {
+        return decryptCached(Collections.singletonList(data)).get(0);
+    }
+
+    /**
+     * Decrypt a list of data that is likely to be decrypted again, see {@link #decryptCached(String)}.
+     * Values that are not cached are decrypted together with {@link #decrypt(List)}.
+     *
+     * @param data data to decrypt.
+     * @return decrypted data in the same order.
+     */
+    @NonNull
+    public List<DecryptedData> decryptCached(@NonNull List<String> data) {
+        Map<String, DecryptedData> results = new HashMap<>();
+        Set<String> missingData = new LinkedHashSet<>();
+        synchronized (mEncryptCache) {
+            for (String item : data) {
+                if (item != null && !results.containsKey(item)) {
+                    DecryptedData decryptedData = mDecryptCache.get(item);
+                    if (decryptedData != null) {
+                        results.put(item, decryptedData);
+                    } else {
+                        missingData.add(item);
+                    }
+                }
             }
         }
+        if (!missingData.isEmpty()) {
+            List<String> missingList = new ArrayList<>(missingData);
+            List<DecryptedData> decryptedList = decrypt(missingList);
+            synchronized (mEncryptCache) {
+                for (int i = 0; i < missingList.size(); i++) {
+                    String item = missingList.get(i);
+                    DecryptedData decryptedData = decryptedList.get(i);
+                    results.put(item, decryptedData);
+
+                    /* Data is returned as is on failure, don't cache that. */
+                    if (!item.equals(decryptedData.getDecryptedData())) {
+                        mDecryptCache.put(item, decryptedData);
+                    }
+                }
+            }
+        }
+        List<DecryptedData> decryptedData = new ArrayList<>(data.size());
+        for (String item : data) {
+            decryptedData.add(item == null ? new DecryptedData(null, null) : results.get(item));
+        }
+        return decryptedData;
     }
 
     @NonNull
     private DecryptedData getDecryptedData(CryptoHandler cryptoHandler, int aliasIndex, String data) throws Exception {
-        KeyStore.Entry keyStoreEntry = getKeyStoreEntry(cryptoHandler, aliasIndex);
+        return getDecryptedData(cryptoHandler, getKeyStoreEntry(cryptoHandler, aliasIndex), data);
+    }
+
+    @NonNull
+    private DecryptedData getDecryptedData(CryptoHandler cryptoHandler, KeyStore.Entry keyStoreEntry, String data) throws Exception {
         byte[] decryptedBytes = cryptoHandler.decrypt(mCryptoFactory, mApiLevel, keyStoreEntry, Base64.decode(data, Base64.DEFAULT));
         String decryptedString = new String(decryptedBytes, CHARSET);
         String newEncryptedData = null;
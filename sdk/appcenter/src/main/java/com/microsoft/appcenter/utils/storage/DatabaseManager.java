@@ -201,6 +201,7 @@ public class DatabaseManager implements Closeable {
                     if (cursor.moveToNext()) {
                         long deletedId = cursor.getLong(0);
                         delete(deletedId);
+                        mListener.onEvicted(deletedId);
                         AppCenterLog.debug(LOG_TAG, "Deleted log id=" + deletedId);
                     } else {
                         throw e;
@@ -258,6 +259,39 @@ public class DatabaseManager implements Closeable {
         }
     }
 
+    /**
+     * Deletes the entries that match the condition.
+     *
+     * @param whereClause The condition with ? placeholders.
+     * @param whereArgs   The values for placeholders.
+     * @return the number of rows affected.
+     */
+    public int delete(@NonNull String whereClause, @Nullable String[] whereArgs) {
+        try {
+            return getDatabase().delete(mDefaultTable, whereClause, whereArgs);
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, String.format("Failed to delete values that match condition=\"%s\" and values=\"%s\" from database %s.", whereClause, Arrays.toString(whereArgs), mDatabase), e);
+            return 0;
+        }
+    }
+
+    /**
+     * Updates the entries that match the condition.
+     *
+     * @param values      The values to update.
+     * @param whereClause The condition with ? placeholders.
+     * @param whereArgs   The values for placeholders.
+     * @return the number of rows affected.
+     */
+    public int update(@NonNull ContentValues values, @NonNull String whereClause, @Nullable String[] whereArgs) {
+        try {
+            return getDatabase().update(mDefaultTable, values, whereClause, whereArgs);
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, String.format("Failed to update values that match condition=\"%s\" and values=\"%s\" from database %s.", whereClause, Arrays.toString(whereArgs), mDatabase), e);
+            return 0;
+        }
+    }
+
     /**
      * Clears the table in the database.
      */
@@ -283,6 +317,32 @@ public class DatabaseManager implements Closeable {
         }
     }
 
+    /**
+     * Start a transaction on the calling thread, writes are committed together by {@link #endTransaction()}.
+     */
+    public void beginTransaction() {
+        try {
+            getDatabase().beginTransaction();
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to begin a transaction.", e);
+        }
+    }
+
+    /**
+     * Commit the transaction started by {@link #beginTransaction()} on the calling thread, if any.
+     */
+    public void endTransaction() {
+        try {
+            SQLiteDatabase database = getDatabase();
+            if (database.inTransaction()) {
+                database.setTransactionSuccessful();
+                database.endTransaction();
+            }
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to commit a transaction.", e);
+        }
+    }
+
     /**
      * Gets the count of records in the table.
      *
@@ -441,5 +501,12 @@ public class DatabaseManager implements Closeable {
          * @param newVersion new version of the schema.
          */
         void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion);
+
+        /**
+         * Called when an entry has been deleted to make room for a new one as storage is full.
+         *
+         * @param id The database identifier of the deleted entry.
+         */
+        void onEvicted(long id);
     }
 }
@@ -16,19 +16,39 @@ import com.microsoft.appcenter.utils.AppCenterLog;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * File manager for internal/external storage access
  */
 public class FileManager {
 
+    /**
+     * Buffer size for streaming file contents.
+     */
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * Charset used for compressed text files.
+     */
+    private static final String CHARSET_NAME = "UTF-8";
+
     /**
      * Application context instance.
      */
@@ -146,6 +166,152 @@ public class FileManager {
         }
     }
 
+    /**
+     * Write binary contents to a file.
+     *
+     * @param file     The file instance.
+     * @param contents The content to be written to the file.
+     * @throws IOException If an I/O error occurs
+     */
+    public static void write(@NonNull File file, @NonNull byte[] contents) throws IOException {
+        OutputStream outputStream = new FileOutputStream(file);
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+            outputStream.write(contents);
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    /**
+     * Write contents to a file compressed with gzip.
+     *
+     * @param file     The file instance.
+     * @param contents The content to be written to the file. Must not be empty or whitespace only.
+     * @throws IOException If an I/O error occurs
+     */
+    public static void writeCompressed(@NonNull File file, @NonNull String contents) throws IOException {
+        if (TextUtils.isEmpty(contents) || TextUtils.getTrimmedLength(contents) <= 0) {
+            return;
+        }
+        Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file), BUFFER_SIZE), CHARSET_NAME);
+
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+            writer.write(contents);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Read contents from a file written by {@link #writeCompressed(File, String)}.
+     * Files that are not compressed are read with {@link #read(File)}.
+     *
+     * @param file The file to read from.
+     * @return The contents of the file.
+     */
+    public static String readCompressed(@NonNull File file) {
+        try {
+            if (!isCompressed(file)) {
+                return read(file);
+            }
+            Reader reader = new InputStreamReader(new GZIPInputStream(new FileInputStream(file), BUFFER_SIZE), CHARSET_NAME);
+
+            //noinspection TryFinallyCanBeTryWithResources
+            try {
+                StringBuilder contents = new StringBuilder();
+                char[] buffer = new char[BUFFER_SIZE];
+                int count;
+                while ((count = reader.read(buffer)) >= 0) {
+                    contents.append(buffer, 0, count);
+                }
+                return contents.toString();
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            AppCenterLog.error(AppCenter.LOG_TAG, "Could not read file " + file.getAbsolutePath(), e);
+        }
+        return null;
+    }
+
+    /**
+     * Compress a file with gzip, streaming its contents.
+     *
+     * @param source      The file to compress.
+     * @param destination The compressed file to create.
+     * @throws IOException If an I/O error occurs
+     */
+    public static void compress(@NonNull File source, @NonNull File destination) throws IOException {
+        InputStream in = new FileInputStream(source);
+
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+            OutputStream out = new GZIPOutputStream(new FileOutputStream(destination), BUFFER_SIZE);
+            try {
+                copy(in, out);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Read contents from a file compressed by {@link #compress(File, File)}.
+     * Files that are not compressed are read with {@link #readBytes(File)}.
+     *
+     * @param file The file to read from.
+     * @return The uncompressed contents of the file.
+     */
+    public static byte[] readCompressedBytes(@NonNull File file) {
+        try {
+            if (!isCompressed(file)) {
+                return readBytes(file);
+            }
+            InputStream in = new GZIPInputStream(new FileInputStream(file), BUFFER_SIZE);
+
+            //noinspection TryFinallyCanBeTryWithResources
+            try {
+
+                /* Start from the compressed size rather than guessing a compression ratio. */
+                ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE, file.length()));
+                copy(in, out);
+                return out.toByteArray();
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            AppCenterLog.error(AppCenter.LOG_TAG, "Could not read file " + file.getAbsolutePath(), e);
+        }
+        return null;
+    }
+
+    /**
+     * Check if a file starts with the gzip magic number.
+     */
+    private static boolean isCompressed(@NonNull File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+            int magic = in.read() | (in.read() << 8);
+            return magic == GZIPInputStream.GZIP_MAGIC;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int count;
+        while ((count = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, count);
+        }
+    }
+
     /**
      * Get an array of filenames in the path.
      *
@@ -26,22 +26,28 @@ public class SQLiteUtils {
         sql.append(table);
         sql.append("` (oid INTEGER PRIMARY KEY AUTOINCREMENT");
         for (Map.Entry<String, Object> col : schema.valueSet()) {
-            sql.append(", `").append(col.getKey()).append("` ");
-            Object val = col.getValue();
-            if (val instanceof Double || val instanceof Float) {
-                sql.append("REAL");
-            } else if (val instanceof Number || val instanceof Boolean) {
-                sql.append("INTEGER");
-            } else if (val instanceof byte[]) {
-                sql.append("BLOB");
-            } else {
-                sql.append("TEXT");
-            }
+            sql.append(", `").append(col.getKey()).append("` ").append(getColumnType(col.getValue()));
         }
         sql.append(");");
         db.execSQL(sql.toString());
     }
 
+    public static void addColumn(@NonNull SQLiteDatabase db, @NonNull String table, @NonNull String column, Object specimen) {
+        db.execSQL("ALTER TABLE `" + table + "` ADD COLUMN `" + column + "` " + getColumnType(specimen));
+    }
+
+    private static String getColumnType(Object specimen) {
+        if (specimen instanceof Double || specimen instanceof Float) {
+            return "REAL";
+        } else if (specimen instanceof Number || specimen instanceof Boolean) {
+            return "INTEGER";
+        } else if (specimen instanceof byte[]) {
+            return "BLOB";
+        } else {
+            return "TEXT";
+        }
+    }
+
     public static void dropTable(@NonNull SQLiteDatabase db, @NonNull String table) {
         db.execSQL(String.format("DROP TABLE `%s`", table));
     }
@@ -140,14 +140,16 @@ public class AbstractAppCenterTest {
         /* Mock handlers. */
         Handler handler = mock(Handler.class);
         whenNew(Handler.class).withAnyArguments().thenReturn(handler);
-        doAnswer(new Answer<Void>() {
+        Answer<Void> runNow = new Answer<Void>() {
 
             @Override
             public Void answer(InvocationOnMock invocation) {
                 ((Runnable) invocation.getArguments()[0]).run();
                 return null;
             }
-        }).when(handler).post(any(Runnable.class));
+        };
+        doAnswer(runNow).when(handler).post(any(Runnable.class));
+        doAnswer(runNow).when(handler).postAtFrontOfQueue(any(Runnable.class));
         HandlerThread handlerThread = mock(HandlerThread.class);
         whenNew(HandlerThread.class).withAnyArguments().thenReturn(handlerThread);
         when(handlerThread.getLooper()).thenReturn(mock(Looper.class));
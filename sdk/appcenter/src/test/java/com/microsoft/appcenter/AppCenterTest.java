@@ -22,6 +22,7 @@ import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatcher;
+import org.mockito.InOrder;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
@@ -55,6 +56,7 @@ import static org.mockito.Matchers.isA;
 import static org.mockito.Matchers.isNull;
 import static org.mockito.Matchers.notNull;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -976,7 +978,10 @@ public class AppCenterTest extends AbstractAppCenterTest {
         Thread thread = mock(Thread.class);
         Throwable exception = mock(Throwable.class);
         handler.uncaughtException(thread, exception);
-        verify(mChannel).shutdown();
+        InOrder inOrder = inOrder(mChannel);
+        inOrder.verify(mChannel).startCrashFlush(anyLong());
+        inOrder.verify(mChannel).endCrashFlush();
+        verify(mChannel, never()).shutdown();
         verify(defaultUncaughtExceptionHandler).uncaughtException(eq(thread), eq(exception));
 
         /* But we don't do it if App Center is disabled. */
@@ -984,7 +989,8 @@ public class AppCenterTest extends AbstractAppCenterTest {
         verifyStatic();
         Thread.setDefaultUncaughtExceptionHandler(eq(defaultUncaughtExceptionHandler));
         handler.uncaughtException(thread, exception);
-        verify(mChannel, times(1)).shutdown();
+        verify(mChannel, times(1)).startCrashFlush(anyLong());
+        verify(mChannel, times(1)).endCrashFlush();
 
         /* Try enabled without default thread handler: should shut down process. */
         when(Thread.getDefaultUncaughtExceptionHandler()).thenReturn(null);
@@ -1027,8 +1033,9 @@ public class AppCenterTest extends AbstractAppCenterTest {
         Throwable exception = mock(Throwable.class);
         handler.uncaughtException(thread, exception);
 
-        /* We let channel shutdown even if we gave up with timeout it can happen later while process still running. */
-        verify(mChannel).shutdown();
+        /* We let channel flush even if we gave up with timeout it can happen later while process still running. */
+        verify(mChannel).startCrashFlush(anyLong());
+        verify(mChannel).endCrashFlush();
 
         /* Verify we still chain exception handlers correctly. */
         verify(defaultUncaughtExceptionHandler).uncaughtException(eq(thread), eq(exception));
@@ -1061,8 +1068,9 @@ public class AppCenterTest extends AbstractAppCenterTest {
         Throwable exception = mock(Throwable.class);
         handler.uncaughtException(thread, exception);
 
-        /* Channel still shut down in the thread, the interruption is in the waiting one. */
-        verify(mChannel).shutdown();
+        /* Channel still flushed in the thread, the interruption is in the waiting one. */
+        verify(mChannel).startCrashFlush(anyLong());
+        verify(mChannel).endCrashFlush();
 
         /* Verify we still chain exception handlers correctly. */
         verify(defaultUncaughtExceptionHandler).uncaughtException(eq(thread), eq(exception));
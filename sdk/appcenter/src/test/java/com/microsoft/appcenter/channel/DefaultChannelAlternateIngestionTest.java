@@ -15,16 +15,22 @@ import com.microsoft.appcenter.ingestion.models.LogContainer;
 import com.microsoft.appcenter.persistence.Persistence;
 
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 import java.io.IOException;
+import java.net.SocketException;
 import java.util.UUID;
 
+import static com.microsoft.appcenter.channel.DefaultChannel.MAX_INGESTION_SUSPEND_TIME;
+import static com.microsoft.appcenter.channel.DefaultChannel.MIN_INGESTION_SUSPEND_TIME;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -209,4 +215,87 @@ public class DefaultChannelAlternateIngestionTest extends AbstractDefaultChannel
         verify(defaultIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
         verify(alternateIngestion, never()).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
     }
+
+    @Test
+    public void recoverableErrorSuspendsOnlyFailingIngestion() throws IOException {
+
+        /* Set up channel with One Collector endpoint down. */
+        String appCenterGroup = "test_group1";
+        String oneCollectorGroup = "test_group2";
+        Persistence mockPersistence = mock(Persistence.class);
+        Ingestion defaultIngestion = mock(Ingestion.class);
+        Ingestion alternateIngestion = mock(Ingestion.class);
+        when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer(1));
+        when(defaultIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer());
+        when(alternateIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer(new SocketException()));
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, defaultIngestion, mAppCenterHandler);
+        channel.addGroup(appCenterGroup, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.addGroup(oneCollectorGroup, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, alternateIngestion, null);
+
+        /* Fail sending a One Collector log. */
+        channel.enqueue(mock(Log.class), oneCollectorGroup, Flags.DEFAULTS);
+        verify(alternateIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verify(mockPersistence).clearPendingLogState(eq(oneCollectorGroup), anyString());
+        ArgumentCaptor<Runnable> resumeRunnable = ArgumentCaptor.forClass(Runnable.class);
+        verify(mAppCenterHandler).postDelayed(resumeRunnable.capture(), eq(MIN_INGESTION_SUSPEND_TIME));
+
+        /* Channel is still enabled and no ingestion is closed. */
+        assertTrue(channel.isEnabled());
+        verify(defaultIngestion, never()).close();
+        verify(alternateIngestion, never()).close();
+
+        /* App Center logs are still sent while One Collector logs are kept. */
+        for (int i = 0; i < 10; i++) {
+            channel.enqueue(mock(Log.class), appCenterGroup, Flags.DEFAULTS);
+            channel.enqueue(mock(Log.class), oneCollectorGroup, Flags.DEFAULTS);
+        }
+        verify(defaultIngestion, times(10)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verify(mockPersistence, times(10)).deleteLogs(eq(appCenterGroup), anyString());
+        verify(alternateIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verify(mockPersistence, never()).deleteLogs(eq(oneCollectorGroup), anyString());
+        assertEquals(11, channel.getGroupState(oneCollectorGroup).mPendingLogCount);
+
+        /* When endpoint is back, One Collector logs are sent after the delay. */
+        when(alternateIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer());
+        resumeRunnable.getValue().run();
+        verify(alternateIngestion, times(12)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verify(mockPersistence, times(11)).deleteLogs(eq(oneCollectorGroup), anyString());
+        assertEquals(0, channel.getGroupState(oneCollectorGroup).mPendingLogCount);
+    }
+
+    @Test
+    public void ingestionSuspendTimeGrowsWithConsecutiveErrors() {
+
+        /* Set up channel with One Collector endpoint down. */
+        String oneCollectorGroup = "test_group2";
+        Persistence mockPersistence = mock(Persistence.class);
+        Ingestion alternateIngestion = mock(Ingestion.class);
+        when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer(1));
+        when(alternateIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer(new SocketException()));
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mock(Ingestion.class), mAppCenterHandler);
+        channel.addGroup(oneCollectorGroup, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, alternateIngestion, null);
+        channel.enqueue(mock(Log.class), oneCollectorGroup, Flags.DEFAULTS);
+
+        /* Each retry fails again and doubles the delay up to the maximum. */
+        long suspendTime = MIN_INGESTION_SUSPEND_TIME;
+        ArgumentCaptor<Runnable> resumeRunnable = ArgumentCaptor.forClass(Runnable.class);
+        for (int i = 0; i < 6; i++) {
+            verify(mAppCenterHandler, atLeastOnce()).postDelayed(resumeRunnable.capture(), eq(suspendTime));
+            resumeRunnable.getValue().run();
+            suspendTime = Math.min(suspendTime * 2, MAX_INGESTION_SUSPEND_TIME);
+        }
+        assertEquals(MAX_INGESTION_SUSPEND_TIME, suspendTime);
+        verify(alternateIngestion, times(7)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+
+        /* A success resets the delay. */
+        when(alternateIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer());
+        resumeRunnable.getValue().run();
+        when(alternateIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer(new SocketException()));
+        channel.enqueue(mock(Log.class), oneCollectorGroup, Flags.DEFAULTS);
+        verify(mAppCenterHandler, times(2)).postDelayed(resumeRunnable.capture(), eq(MIN_INGESTION_SUSPEND_TIME));
+
+        /* Disabling the channel cancels resuming. */
+        channel.setEnabled(false);
+        verify(mAppCenterHandler).removeCallbacks(resumeRunnable.getValue());
+    }
 }
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.channel;
+
+import android.content.Context;
+
+import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.http.ServiceCallback;
+import com.microsoft.appcenter.ingestion.AppCenterIngestion;
+import com.microsoft.appcenter.ingestion.Ingestion;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.persistence.Persistence;
+import com.microsoft.appcenter.utils.NetworkStateHelper;
+import com.microsoft.appcenter.utils.NetworkStateHelper.ConnectionInfo;
+import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.UUID;
+
+import static com.microsoft.appcenter.channel.DefaultChannel.MAX_NETWORK_POLICY_WAIT;
+import static com.microsoft.appcenter.channel.DefaultChannel.NETWORK_POLICY_WAIT_PREFIX;
+import static com.microsoft.appcenter.channel.OneCollectorChannelListener.ONE_COLLECTOR_GROUP_NAME_SUFFIX;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+
+public class DefaultChannelNetworkPolicyTest extends AbstractDefaultChannelTest {
+
+    private static final long NOW = 1000000;
+
+    private static final ConnectionInfo CELLULAR = new ConnectionInfo(true, true, ConnectionInfo.Transport.CELLULAR, 10000, 5000);
+
+    private static final ConnectionInfo UNMETERED_CELLULAR = new ConnectionInfo(true, false, ConnectionInfo.Transport.CELLULAR, 10000, 5000);
+
+    private static final ConnectionInfo WIFI = new ConnectionInfo(true, false, ConnectionInfo.Transport.WIFI, 50000, 20000);
+
+    private NetworkStateHelper mNetworkStateHelper;
+
+    private Persistence mPersistence;
+
+    private AppCenterIngestion mIngestion;
+
+    @Before
+    public void setUpNetworkPolicy() throws Exception {
+        mNetworkStateHelper = mock(NetworkStateHelper.class);
+        mockStatic(NetworkStateHelper.class);
+        when(NetworkStateHelper.getSharedInstance(any(Context.class))).thenReturn(mNetworkStateHelper);
+        when(System.currentTimeMillis()).thenReturn(NOW);
+        mPersistence = mock(Persistence.class);
+        when(mPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer());
+        mIngestion = mock(AppCenterIngestion.class);
+        when(mIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer());
+    }
+
+    private DefaultChannel createChannel() {
+        return new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mPersistence, mIngestion, mAppCenterHandler);
+    }
+
+    private NetworkStateHelper.Listener captureNetworkStateListener() {
+        ArgumentCaptor<NetworkStateHelper.Listener> listener = ArgumentCaptor.forClass(NetworkStateHelper.Listener.class);
+        verify(mNetworkStateHelper).addListener(listener.capture());
+        return listener.getValue();
+    }
+
+    @Test
+    public void waitForUnmeteredNetwork() {
+        when(mNetworkStateHelper.getConnectionInfo()).thenReturn(CELLULAR);
+        DefaultChannel channel = createChannel();
+        channel.setNetworkPolicy(TEST_GROUP, NetworkPolicy.UNMETERED);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+
+        /* Logs stay in storage on metered network. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        verify(mIngestion, never()).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verify(mPersistence, never()).getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class));
+        verifyStatic(atLeastOnce());
+        SharedPreferencesManager.putLong(NETWORK_POLICY_WAIT_PREFIX + TEST_GROUP, NOW);
+
+        /* Switching to an unmetered network sends them. */
+        when(mNetworkStateHelper.getConnectionInfo()).thenReturn(UNMETERED_CELLULAR);
+        when(SharedPreferencesManager.getLong(NETWORK_POLICY_WAIT_PREFIX + TEST_GROUP)).thenReturn(NOW);
+        captureNetworkStateListener().onNetworkStateUpdated(true);
+        verify(mIngestion, times(2)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verifyStatic(atLeastOnce());
+        SharedPreferencesManager.remove(NETWORK_POLICY_WAIT_PREFIX + TEST_GROUP);
+    }
+
+    @Test
+    public void waitForWifi() {
+        when(mNetworkStateHelper.getConnectionInfo()).thenReturn(UNMETERED_CELLULAR);
+        DefaultChannel channel = createChannel();
+        channel.setNetworkPolicy(TEST_GROUP, NetworkPolicy.WIFI);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        verify(mIngestion, never()).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+
+        /* Wi-Fi sends logs. */
+        when(mNetworkStateHelper.getConnectionInfo()).thenReturn(WIFI);
+        captureNetworkStateListener().onNetworkStateUpdated(true);
+        verify(mIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+    }
+
+    @Test
+    public void sendAnywayAfterMaximumWait() {
+        when(mNetworkStateHelper.getConnectionInfo()).thenReturn(CELLULAR);
+        when(SharedPreferencesManager.getLong(NETWORK_POLICY_WAIT_PREFIX + TEST_GROUP)).thenReturn(NOW - MAX_NETWORK_POLICY_WAIT);
+        DefaultChannel channel = createChannel();
+        channel.setNetworkPolicy(TEST_GROUP, NetworkPolicy.WIFI);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        verify(mIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+    }
+
+    @Test
+    public void waitStartInTheFutureIsReset() {
+        when(mNetworkStateHelper.getConnectionInfo()).thenReturn(CELLULAR);
+        when(SharedPreferencesManager.getLong(NETWORK_POLICY_WAIT_PREFIX + TEST_GROUP)).thenReturn(NOW + MAX_NETWORK_POLICY_WAIT);
+        DefaultChannel channel = createChannel();
+        channel.setNetworkPolicy(TEST_GROUP, NetworkPolicy.UNMETERED);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        verify(mIngestion, never()).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verifyStatic();
+        SharedPreferencesManager.putLong(NETWORK_POLICY_WAIT_PREFIX + TEST_GROUP, NOW);
+    }
+
+    @Test
+    public void unknownNetworkAllowsSending() {
+        when(mNetworkStateHelper.getConnectionInfo()).thenReturn(null);
+        DefaultChannel channel = createChannel();
+        channel.setNetworkPolicy(TEST_GROUP, NetworkPolicy.WIFI);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        verify(mIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+    }
+
+    @Test
+    public void oneCollectorGroupInheritsPolicy() {
+        when(mNetworkStateHelper.getConnectionInfo()).thenReturn(CELLULAR);
+        Ingestion oneCollectorIngestion = mock(Ingestion.class);
+        DefaultChannel channel = createChannel();
+        channel.setNetworkPolicy(TEST_GROUP, NetworkPolicy.UNMETERED);
+        String oneCollectorGroup = TEST_GROUP + ONE_COLLECTOR_GROUP_NAME_SUFFIX;
+        channel.addGroup(oneCollectorGroup, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, oneCollectorIngestion, null);
+        channel.enqueue(mock(Log.class), oneCollectorGroup, Flags.DEFAULTS);
+        verify(oneCollectorIngestion, never()).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+
+        /* Other groups are not affected. */
+        channel.addGroup("other", 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.enqueue(mock(Log.class), "other", Flags.DEFAULTS);
+        verify(mIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+    }
+
+    @Test
+    public void relaxingPolicySendsLogs() {
+        when(mNetworkStateHelper.getConnectionInfo()).thenReturn(CELLULAR);
+        DefaultChannel channel = createChannel();
+        channel.setNetworkPolicy(TEST_GROUP, NetworkPolicy.UNMETERED);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        verify(mIngestion, never()).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        channel.setNetworkPolicy(TEST_GROUP, NetworkPolicy.ANY);
+        verify(mIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+
+        /* Helper is registered only once. */
+        channel.setNetworkPolicy(TEST_GROUP, NetworkPolicy.WIFI);
+        verifyStatic();
+        NetworkStateHelper.getSharedInstance(any(Context.class));
+    }
+
+    @Test
+    public void anyPolicyDoesNotUseNetworkState() {
+        DefaultChannel channel = createChannel();
+        channel.setNetworkPolicy(TEST_GROUP, NetworkPolicy.ANY);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        verify(mIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verifyStatic(never());
+        NetworkStateHelper.getSharedInstance(any(Context.class));
+    }
+
+    @Test
+    public void networkChangeWhileDisabled() {
+        when(mNetworkStateHelper.getConnectionInfo()).thenReturn(CELLULAR);
+        DefaultChannel channel = createChannel();
+        channel.setNetworkPolicy(TEST_GROUP, NetworkPolicy.UNMETERED);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        channel.setEnabled(false);
+        when(mNetworkStateHelper.getConnectionInfo()).thenReturn(WIFI);
+        captureNetworkStateListener().onNetworkStateUpdated(true);
+        verify(mIngestion, never()).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+    }
+}
@@ -8,17 +8,28 @@ package com.microsoft.appcenter.channel;
 import android.content.Context;
 
 import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.http.ServiceCallback;
 import com.microsoft.appcenter.ingestion.AppCenterIngestion;
 import com.microsoft.appcenter.ingestion.Ingestion;
 import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogContainer;
 import com.microsoft.appcenter.persistence.Persistence;
 
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Matchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 
+import static com.microsoft.appcenter.channel.DefaultChannel.CRASH_FLUSH_SLICE_SIZE;
+import static com.microsoft.appcenter.channel.OneCollectorChannelListener.ONE_COLLECTOR_GROUP_NAME_SUFFIX;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
@@ -28,9 +39,12 @@ import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.notNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -109,6 +123,151 @@ public class DefaultChannelOtherOperationsTest extends AbstractDefaultChannelTes
         verify(mockPersistence).clearPendingLogState();
     }
 
+    @Test
+    public void crashFlush() throws Exception {
+        Persistence mockPersistence = mock(Persistence.class);
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
+        when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), Matchers.<List<Log>>any()))
+                .then(getGetLogsAnswer(1));
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, mockListener);
+
+        /* Enqueuing 1 event sends it. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        verify(mockIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+
+        /* Start crash flush: call in progress is abandoned and listeners are notified. */
+        Channel.Listener listener = mock(Channel.Listener.class);
+        channel.addListener(listener);
+        when(System.currentTimeMillis()).thenReturn(1000L);
+        channel.startCrashFlush(2000L);
+        assertFalse(channel.isEnabled());
+        verify(mockIngestion).close();
+        verify(listener).onCrashFlush();
+        verify(mockPersistence, never()).beginTransaction();
+
+        /* Logs enqueued while flushing are persisted in a transaction but not sent. */
+        Log log = mock(Log.class);
+        channel.enqueue(log, TEST_GROUP, Flags.DEFAULTS);
+        verify(mockPersistence).putLog(log, TEST_GROUP, Flags.DEFAULTS);
+        verify(mockIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verify(mAppCenterHandler).postAtFrontOfQueue(notNull(Runnable.class));
+
+        /* Starting again does nothing. */
+        channel.startCrashFlush(2000L);
+        verify(mockIngestion).close();
+        verify(listener).onCrashFlush();
+
+        /* End commits the transaction once. */
+        channel.endCrashFlush();
+        channel.endCrashFlush();
+        InOrder inOrder = inOrder(mockPersistence);
+        inOrder.verify(mockPersistence).beginTransaction();
+        inOrder.verify(mockPersistence).putLog(log, TEST_GROUP, Flags.DEFAULTS);
+        inOrder.verify(mockPersistence).endTransaction();
+        verify(mockPersistence).beginTransaction();
+        verify(mockPersistence).endTransaction();
+
+        /* Logs of the abandoned call are not reported as failed nor released: they will be sent on next launch. */
+        verify(mockListener, never()).onFailure(any(Log.class), any(Exception.class));
+        verify(mockPersistence, never()).clearPendingLogState();
+        verify(mockPersistence, never()).deleteLogs(anyString());
+    }
+
+    @Test
+    public void crashFlushCommitsEachTaskAndSlice() throws Exception {
+        Persistence mockPersistence = mock(Persistence.class);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        when(System.currentTimeMillis()).thenReturn(1000L);
+        channel.startCrashFlush(2000L);
+
+        /* A task enqueuing more logs than a slice commits every slice. */
+        for (int i = 0; i < CRASH_FLUSH_SLICE_SIZE * 2 + 1; i++) {
+            channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        }
+        verify(mockPersistence, times(3)).beginTransaction();
+        verify(mockPersistence, times(2)).endTransaction();
+
+        /* The end of the task commits the remaining logs. */
+        ArgumentCaptor<Runnable> commit = ArgumentCaptor.forClass(Runnable.class);
+        verify(mAppCenterHandler, times(3)).postAtFrontOfQueue(commit.capture());
+        commit.getValue().run();
+        verify(mockPersistence, times(3)).endTransaction();
+
+        /* Commit runnables of previous slices have nothing left to commit. */
+        commit.getAllValues().get(0).run();
+        verify(mockPersistence, times(3)).endTransaction();
+    }
+
+    @Test
+    public void crashFlushKeepsLogsWhenDeadlinePassesWhileBusy() throws Exception {
+
+        /* Track the logs that would survive the process being terminated. */
+        final List<Log> stored = new ArrayList<>();
+        final List<Log> uncommitted = new ArrayList<>();
+        final boolean[] inTransaction = {false};
+        Persistence persistence = mock(Persistence.class);
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                inTransaction[0] = true;
+                return null;
+            }
+        }).when(persistence).beginTransaction();
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                inTransaction[0] = false;
+                stored.addAll(uncommitted);
+                uncommitted.clear();
+                return null;
+            }
+        }).when(persistence).endTransaction();
+        doAnswer(new Answer<Long>() {
+
+            @Override
+            public Long answer(InvocationOnMock invocation) {
+                Log log = (Log) invocation.getArguments()[0];
+                (inTransaction[0] ? uncommitted : stored).add(log);
+                return 0L;
+            }
+        }).when(persistence).putLog(any(Log.class), anyString(), anyInt());
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        when(System.currentTimeMillis()).thenReturn(1000L);
+        channel.startCrashFlush(1050L);
+
+        /* A first task enqueues 2 logs before the deadline, they are committed when it completes. */
+        Log log1 = mock(Log.class);
+        Log log2 = mock(Log.class);
+        channel.enqueue(log1, TEST_GROUP, Flags.DEFAULTS);
+        channel.enqueue(log2, TEST_GROUP, Flags.DEFAULTS);
+        ArgumentCaptor<Runnable> commit = ArgumentCaptor.forClass(Runnable.class);
+        verify(mAppCenterHandler).postAtFrontOfQueue(commit.capture());
+        commit.getValue().run();
+
+        /* A second task enqueues a log, then is still busy when the deadline passes. */
+        Log log3 = mock(Log.class);
+        channel.enqueue(log3, TEST_GROUP, Flags.DEFAULTS);
+        when(System.currentTimeMillis()).thenReturn(1100L);
+
+        /* Logs enqueued after the deadline are committed one by one. */
+        Log log4 = mock(Log.class);
+        channel.enqueue(log4, TEST_GROUP, Flags.DEFAULTS);
+        Log log5 = mock(Log.class);
+        channel.enqueue(log5, TEST_GROUP, Flags.DEFAULTS);
+
+        /* Process is terminated without end of crash flush: nothing is left uncommitted. */
+        assertFalse(inTransaction[0]);
+        assertTrue(uncommitted.isEmpty());
+        assertEquals(Arrays.asList(log1, log2, log3, log4, log5), stored);
+        verify(mAppCenterHandler, times(2)).postAtFrontOfQueue(any(Runnable.class));
+    }
+
     @Test
     public void filter() throws Persistence.PersistenceException {
 
@@ -213,4 +372,73 @@ public class DefaultChannelOtherOperationsTest extends AbstractDefaultChannelTes
         assertTrue(channel.setMaxStorageSize(20480));
         assertFalse(channel.setMaxStorageSize(2));
     }
+
+    @Test
+    public void logTimeToLiveForwarding() {
+        Persistence persistence = mock(Persistence.class);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, mock(Ingestion.class), mAppCenterHandler);
+
+        /* Groups without time to live never expire logs. */
+        channel.addGroup("other", 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        verify(persistence, never()).setLogTimeToLive(anyString(), anyLong());
+        verify(persistence, never()).deleteExpiredLogs(anyString());
+
+        /* Expired logs are deleted before counting pending logs. */
+        channel.setLogTimeToLive(TEST_GROUP, 1000);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        InOrder inOrder = inOrder(persistence);
+        inOrder.verify(persistence).setLogTimeToLive(TEST_GROUP, 1000);
+        inOrder.verify(persistence).deleteExpiredLogs(TEST_GROUP);
+        inOrder.verify(persistence).countLogs(TEST_GROUP);
+
+        /* One Collector group uses the time to live of its App Center group. */
+        String oneCollectorGroup = TEST_GROUP + ONE_COLLECTOR_GROUP_NAME_SUFFIX;
+        channel.addGroup(oneCollectorGroup, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, mock(Ingestion.class), null);
+        verify(persistence).setLogTimeToLive(oneCollectorGroup, 1000);
+        verify(persistence).deleteExpiredLogs(oneCollectorGroup);
+
+        /* Changing time to live applies to groups already added. */
+        channel.setLogTimeToLive(TEST_GROUP, 2000);
+        verify(persistence).setLogTimeToLive(TEST_GROUP, 2000);
+        verify(persistence).setLogTimeToLive(oneCollectorGroup, 2000);
+        verify(persistence, times(2)).deleteExpiredLogs(TEST_GROUP);
+        verify(persistence, times(2)).deleteExpiredLogs(oneCollectorGroup);
+        verify(persistence, never()).setLogTimeToLive(eq("other"), anyLong());
+    }
+
+    @Test
+    public void expiredLogsDeletedWhenFetchingFewerLogsThanCounted() {
+        Persistence persistence = mock(Persistence.class);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, mock(Ingestion.class), mAppCenterHandler);
+        when(System.currentTimeMillis()).thenReturn(1000L);
+        channel.setLogTimeToLive(TEST_GROUP, 1000);
+
+        /* Counted logs have expired after the group was added. */
+        when(persistence.countLogs(TEST_GROUP)).thenReturn(50).thenReturn(0);
+        when(persistence.deleteExpiredLogs(TEST_GROUP)).thenReturn(0).thenReturn(50);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+
+        /* Fetching nothing right after deleting expired logs on add does not delete again. */
+        verify(persistence).getLogs(eq(TEST_GROUP), anyListOf(String.class), eq(50), Matchers.<List<Log>>any());
+        verify(persistence).deleteExpiredLogs(TEST_GROUP);
+        verify(persistence).countLogs(TEST_GROUP);
+
+        /* Once the time to live elapsed, fetching nothing deletes expired logs and counts again. */
+        when(System.currentTimeMillis()).thenReturn(2000L);
+        DefaultChannel.GroupState groupState = channel.getGroupState(TEST_GROUP);
+        groupState.mPendingLogCount = 50;
+        channel.checkPendingLogs(groupState);
+        verify(persistence, times(2)).getLogs(eq(TEST_GROUP), anyListOf(String.class), eq(50), Matchers.<List<Log>>any());
+        verify(persistence, times(2)).deleteExpiredLogs(TEST_GROUP);
+        verify(persistence, times(2)).countLogs(TEST_GROUP);
+        assertEquals(0, groupState.mPendingLogCount);
+
+        /* Not again within the same interval. */
+        when(System.currentTimeMillis()).thenReturn(2999L);
+        groupState.mPendingLogCount = 50;
+        channel.checkPendingLogs(groupState);
+        verify(persistence, times(3)).getLogs(eq(TEST_GROUP), anyListOf(String.class), eq(50), Matchers.<List<Log>>any());
+        verify(persistence, times(2)).deleteExpiredLogs(TEST_GROUP);
+        verify(persistence, times(2)).countLogs(TEST_GROUP);
+    }
 }
@@ -36,9 +36,11 @@ import java.util.List;
 import java.util.UUID;
 
 import static com.microsoft.appcenter.Flags.NORMAL;
+import static com.microsoft.appcenter.channel.DefaultChannel.MIN_INGESTION_SUSPEND_TIME;
 import static com.microsoft.appcenter.channel.DefaultChannel.START_TIMER_PREFIX;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyListOf;
@@ -343,10 +345,13 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         /* Verify that we have not called deleteLogs on the Persistence. */
         verify(mockPersistence, never()).deleteLogs(any(String.class), any(String.class));
 
-        /* Verify that the Channel is disabled. */
-        assertFalse(channel.isEnabled());
-        verify(mockPersistence).clearPendingLogState();
+        /* Verify that only the ingestion is suspended. */
+        assertTrue(channel.isEnabled());
+        verify(mockPersistence).clearPendingLogState(eq(TEST_GROUP), anyString());
+        verify(mockPersistence, never()).clearPendingLogState();
         verify(mockPersistence, never()).deleteLogs(TEST_GROUP);
+        ArgumentCaptor<Runnable> resumeRunnable = ArgumentCaptor.forClass(Runnable.class);
+        verify(mAppCenterHandler).postDelayed(resumeRunnable.capture(), eq(MIN_INGESTION_SUSPEND_TIME));
 
         /* Enqueuing 20 more events. */
         for (int i = 0; i < 20; i++) {
@@ -360,10 +365,10 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         ArgumentCaptor<Runnable> delayedRunnable = ArgumentCaptor.forClass(Runnable.class);
         when(mAppCenterHandler.postDelayed(delayedRunnable.capture(), anyLong())).thenReturn(true);
 
-        /* Enable channel. */
-        channel.setEnabled(true);
+        /* Resume ingestion. */
+        resumeRunnable.getValue().run();
 
-        /* Upon enabling, 1st batch of 50 is sent immediately, 20 logs are remaining. */
+        /* Upon resuming, 1st batch of 50 is sent immediately, 20 logs are remaining. */
         assertEquals(20, channel.getGroupState(TEST_GROUP).mPendingLogCount);
 
         /* Wait for timer. */
@@ -536,21 +541,23 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         /* Verify that we have called onBeforeSending in the listener. */
         verify(mockListener).onBeforeSending(any(Log.class));
 
-        /* Verify that we have not called the failure listener. It's a transient exception that will be retried later when the channel is re-enabled. */
+        /* Verify that we have not called the failure listener. It's a transient exception that will be retried later when the ingestion is resumed. */
         verify(mockListener, never()).onFailure(any(Log.class), any(Exception.class));
 
-        /* Verify that the Channel is disabled. */
-        assertFalse(channel.isEnabled());
-        verify(mockPersistence).clearPendingLogState();
+        /* Verify that only the ingestion is suspended. */
+        assertTrue(channel.isEnabled());
+        verify(mockPersistence).clearPendingLogState(eq(TEST_GROUP), anyString());
         verify(mockPersistence, never()).deleteLogs(TEST_GROUP);
+        ArgumentCaptor<Runnable> resumeRunnable = ArgumentCaptor.forClass(Runnable.class);
+        verify(mAppCenterHandler).postDelayed(resumeRunnable.capture(), eq(MIN_INGESTION_SUSPEND_TIME));
 
         /* Verify timer. */
         verify(mAppCenterHandler, never()).postDelayed(any(Runnable.class), eq(BATCH_TIME_INTERVAL));
         verify(mAppCenterHandler, never()).removeCallbacks(any(Runnable.class));
 
-        channel.setEnabled(true);
+        resumeRunnable.getValue().run();
 
-        /* Verify that we have called sendAsync on the ingestion n+1 times total: 1 failure before re-enabling, n success after. */
+        /* Verify that we have called sendAsync on the ingestion n+1 times total: 1 failure before resuming, n success after. */
         verify(mockIngestion, times(logNumber + 1)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
 
         /* Verify that we have called deleteLogs on the Persistence n times. */
@@ -632,7 +639,10 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
         channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
 
-        assertFalse(channel.isEnabled());
+        /* Only the ingestion is suspended after a recoverable error. */
+        assertTrue(channel.isEnabled());
+        verify(mockPersistence).clearPendingLogState(eq(TEST_GROUP), anyString());
+        verify(mAppCenterHandler).postDelayed(any(Runnable.class), eq(MIN_INGESTION_SUSPEND_TIME));
     }
 
     @Test
@@ -909,7 +919,8 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         verify(mockPersistence, never()).deleteLogs(TEST_GROUP);
 
         /* But that we cleared batch state. */
-        verify(mockPersistence).clearPendingLogState();
+        verify(mockPersistence).clearPendingLogState(eq(TEST_GROUP), anyString());
+        verify(mockPersistence, never()).clearPendingLogState();
     }
 
     @Test
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.channel;
+
+import com.microsoft.appcenter.utils.NetworkStateHelper.ConnectionInfo;
+
+import org.junit.Test;
+
+import static com.microsoft.appcenter.utils.NetworkStateHelper.ConnectionInfo.UNKNOWN_BANDWIDTH;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NetworkPolicyTest {
+
+    private static ConnectionInfo connectionInfo(boolean connected, boolean metered, ConnectionInfo.Transport transport) {
+        return new ConnectionInfo(connected, metered, transport, UNKNOWN_BANDWIDTH, UNKNOWN_BANDWIDTH);
+    }
+
+    @Test
+    public void unknownNetworkIsAllowed() {
+        for (NetworkPolicy networkPolicy : NetworkPolicy.values()) {
+            assertTrue(networkPolicy.allows(null));
+        }
+    }
+
+    @Test
+    public void any() {
+        assertTrue(NetworkPolicy.ANY.allows(connectionInfo(false, false, ConnectionInfo.Transport.NONE)));
+        assertTrue(NetworkPolicy.ANY.allows(connectionInfo(true, true, ConnectionInfo.Transport.CELLULAR)));
+        assertTrue(NetworkPolicy.ANY.allows(connectionInfo(true, false, ConnectionInfo.Transport.WIFI)));
+    }
+
+    @Test
+    public void unmetered() {
+        assertFalse(NetworkPolicy.UNMETERED.allows(connectionInfo(false, false, ConnectionInfo.Transport.NONE)));
+        assertFalse(NetworkPolicy.UNMETERED.allows(connectionInfo(true, true, ConnectionInfo.Transport.CELLULAR)));
+        assertFalse(NetworkPolicy.UNMETERED.allows(connectionInfo(true, true, ConnectionInfo.Transport.WIFI)));
+        assertTrue(NetworkPolicy.UNMETERED.allows(connectionInfo(true, false, ConnectionInfo.Transport.CELLULAR)));
+        assertTrue(NetworkPolicy.UNMETERED.allows(connectionInfo(true, false, ConnectionInfo.Transport.WIFI)));
+        assertTrue(NetworkPolicy.UNMETERED.allows(connectionInfo(true, false, ConnectionInfo.Transport.OTHER)));
+    }
+
+    @Test
+    public void wifi() {
+        assertFalse(NetworkPolicy.WIFI.allows(connectionInfo(false, false, ConnectionInfo.Transport.NONE)));
+        assertFalse(NetworkPolicy.WIFI.allows(connectionInfo(true, true, ConnectionInfo.Transport.WIFI)));
+        assertFalse(NetworkPolicy.WIFI.allows(connectionInfo(true, false, ConnectionInfo.Transport.CELLULAR)));
+        assertFalse(NetworkPolicy.WIFI.allows(connectionInfo(true, false, ConnectionInfo.Transport.OTHER)));
+        assertTrue(NetworkPolicy.WIFI.allows(connectionInfo(true, false, ConnectionInfo.Transport.WIFI)));
+        assertTrue(NetworkPolicy.WIFI.allows(connectionInfo(true, false, ConnectionInfo.Transport.ETHERNET)));
+    }
+}
@@ -15,22 +15,31 @@ import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
 import com.microsoft.appcenter.ingestion.models.one.Extensions;
 import com.microsoft.appcenter.ingestion.models.one.MockCommonSchemaLog;
 import com.microsoft.appcenter.ingestion.models.one.SdkExtension;
+import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
 
+import org.junit.Before;
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatcher;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Set;
 import java.util.UUID;
 
 import static com.microsoft.appcenter.Flags.CRITICAL;
 import static com.microsoft.appcenter.Flags.DEFAULTS;
 import static com.microsoft.appcenter.Flags.NORMAL;
 import static com.microsoft.appcenter.channel.AbstractDefaultChannelTest.TEST_GROUP;
+import static com.microsoft.appcenter.channel.OneCollectorChannelListener.EPOCHS_AND_SEQS_STORAGE_KEY;
 import static com.microsoft.appcenter.channel.OneCollectorChannelListener.ONE_COLLECTOR_GROUP_NAME_SUFFIX;
 import static com.microsoft.appcenter.channel.OneCollectorChannelListener.ONE_COLLECTOR_TRIGGER_COUNT;
 import static com.microsoft.appcenter.channel.OneCollectorChannelListener.ONE_COLLECTOR_TRIGGER_MAX_PARALLEL_REQUESTS;
+import static com.microsoft.appcenter.channel.OneCollectorChannelListener.SEQ_RESERVATION_SIZE;
 import static com.microsoft.appcenter.http.HttpUtils.createHttpClient;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -49,9 +58,33 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
 
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(SharedPreferencesManager.class)
 public class OneCollectorChannelListenerTest {
 
+    @Before
+    public void setUp() {
+        mockStatic(SharedPreferencesManager.class);
+    }
+
+    private static CommonSchemaLog commonSchemaLog(String iKey) {
+        CommonSchemaLog log = new MockCommonSchemaLog();
+        log.setIKey(iKey);
+        Extensions ext = new Extensions();
+        ext.setSdk(new SdkExtension());
+        log.setExt(ext);
+        return log;
+    }
+
+    private static Log originalLog() {
+        Log originalLog = mock(Log.class);
+        when(originalLog.getTransmissionTargetTokens()).thenReturn(new HashSet<>(Collections.singletonList("t1")));
+        return originalLog;
+    }
+
     @Test
     public void addCorrespondingGroup() {
         Channel channel = mock(Channel.class);
@@ -315,4 +348,75 @@ public class OneCollectorChannelListenerTest {
         listener.setLogUrl(logUrl);
         verify(ingestion).setLogUrl(logUrl);
     }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void epochAndSeqAreSavedByReservations() {
+        Channel channel = mock(Channel.class);
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        OneCollectorChannelListener listener = new OneCollectorChannelListener(channel, logSerializer, createHttpClient(mock(Context.class)), UUID.randomUUID());
+        Log originalLog = originalLog();
+
+        /* First log reserves sequence numbers. */
+        CommonSchemaLog log = commonSchemaLog("t1");
+        when(logSerializer.toCommonSchemaLog(any(Log.class))).thenReturn(Collections.singletonList(log));
+        listener.onPreparedLog(originalLog, TEST_GROUP, DEFAULTS);
+        String epoch = log.getExt().getSdk().getEpoch();
+        ArgumentCaptor<Set> storedValues = ArgumentCaptor.forClass(Set.class);
+        verifyStatic();
+        SharedPreferencesManager.putStringSet(eq(EPOCHS_AND_SEQS_STORAGE_KEY), storedValues.capture());
+        assertEquals(Collections.singleton("t1/" + epoch + "/" + SEQ_RESERVATION_SIZE), storedValues.getValue());
+
+        /* Storage is not written again until reserved numbers are used. */
+        for (long seq = 2; seq <= SEQ_RESERVATION_SIZE; seq++) {
+            log = commonSchemaLog("t1");
+            when(logSerializer.toCommonSchemaLog(any(Log.class))).thenReturn(Collections.singletonList(log));
+            listener.onPreparedLog(originalLog, TEST_GROUP, DEFAULTS);
+            assertEquals(Long.valueOf(seq), log.getExt().getSdk().getSeq());
+        }
+        verifyStatic();
+        SharedPreferencesManager.putStringSet(eq(EPOCHS_AND_SEQS_STORAGE_KEY), any(Set.class));
+
+        /* Next log reserves again. */
+        log = commonSchemaLog("t1");
+        when(logSerializer.toCommonSchemaLog(any(Log.class))).thenReturn(Collections.singletonList(log));
+        listener.onPreparedLog(originalLog, TEST_GROUP, DEFAULTS);
+        verifyStatic(times(2));
+        SharedPreferencesManager.putStringSet(eq(EPOCHS_AND_SEQS_STORAGE_KEY), storedValues.capture());
+        assertEquals(Collections.singleton("t1/" + epoch + "/" + (2 * SEQ_RESERVATION_SIZE)), storedValues.getValue());
+
+        /* Disabling removes storage. */
+        listener.onGloballyEnabled(false);
+        verifyStatic();
+        SharedPreferencesManager.remove(EPOCHS_AND_SEQS_STORAGE_KEY);
+    }
+
+    @Test
+    public void resumeEpochAndSeqFromStorage() {
+        Set<String> storedValues = new HashSet<>();
+        storedValues.add("o:t1/epoch1/42");
+        storedValues.add("invalid");
+        storedValues.add("o:t2/epoch2/notANumber");
+        when(SharedPreferencesManager.getStringSet(EPOCHS_AND_SEQS_STORAGE_KEY)).thenReturn(storedValues);
+        Channel channel = mock(Channel.class);
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        OneCollectorChannelListener listener = new OneCollectorChannelListener(channel, logSerializer, createHttpClient(mock(Context.class)), UUID.randomUUID());
+
+        /* Numbering resumes after the reserved sequence numbers. */
+        CommonSchemaLog log1 = commonSchemaLog("o:t1");
+        CommonSchemaLog log2 = commonSchemaLog("o:t2");
+        when(logSerializer.toCommonSchemaLog(any(Log.class))).thenReturn(Arrays.asList(log1, log2));
+        listener.onPreparedLog(originalLog(), TEST_GROUP, DEFAULTS);
+        assertEquals("epoch1", log1.getExt().getSdk().getEpoch());
+        assertEquals(Long.valueOf(43), log1.getExt().getSdk().getSeq());
+
+        /* Invalid values are ignored. */
+        assertNotEquals("epoch2", log2.getExt().getSdk().getEpoch());
+        assertEquals(Long.valueOf(1), log2.getExt().getSdk().getSeq());
+
+        /* Storage is read only once. */
+        listener.onPreparedLog(originalLog(), TEST_GROUP, DEFAULTS);
+        verifyStatic();
+        SharedPreferencesManager.getStringSet(EPOCHS_AND_SEQS_STORAGE_KEY);
+    }
 }
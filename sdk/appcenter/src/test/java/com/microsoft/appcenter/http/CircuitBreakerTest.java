@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import android.content.Context;
+
+import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.microsoft.appcenter.http.CircuitBreaker.BASE_BACKOFF;
+import static com.microsoft.appcenter.http.CircuitBreaker.MAX_BACKOFF;
+import static com.microsoft.appcenter.http.CircuitBreaker.MAX_OPEN_DURATION;
+import static com.microsoft.appcenter.http.CircuitBreaker.PREFERENCE_PREFIX;
+import static com.microsoft.appcenter.http.CircuitBreaker.PROBE_TIMEOUT;
+import static com.microsoft.appcenter.http.CircuitBreaker.WAIT_FOR_PROBE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@SuppressWarnings("unused")
+@PrepareForTest({CircuitBreaker.class, SharedPreferencesManager.class})
+public class CircuitBreakerTest {
+
+    private static final String URL = "https://in.appcenter.ms/logs?api-version=1.0.0";
+
+    private static final String OTHER_URL = "https://mobile.events.data.microsoft.com/OneCollector/1.0";
+
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
+    private long mNow = 1000000;
+
+    private void setTime(long now) {
+        mNow = now;
+        when(System.currentTimeMillis()).thenReturn(now);
+    }
+
+    @Before
+    public void setUp() {
+        mockStatic(SharedPreferencesManager.class);
+        mockStatic(System.class);
+        setTime(mNow);
+    }
+
+    @After
+    public void tearDown() {
+        CircuitBreaker.unsetInstance();
+    }
+
+    @Test
+    public void sharedInstance() {
+        Context context = mock(Context.class);
+        CircuitBreaker circuitBreaker = CircuitBreaker.getSharedInstance(context);
+        assertSame(circuitBreaker, CircuitBreaker.getSharedInstance(context));
+        verifyStatic();
+        SharedPreferencesManager.initialize(context);
+        CircuitBreaker.unsetInstance();
+        assertNotSame(circuitBreaker, CircuitBreaker.getSharedInstance(context));
+    }
+
+    @Test
+    public void endpoint() {
+        assertEquals("https://in.appcenter.ms", CircuitBreaker.getEndpoint(URL));
+        assertEquals("https://in.appcenter.ms", CircuitBreaker.getEndpoint("https://in.appcenter.ms"));
+        assertEquals("http://localhost:8080", CircuitBreaker.getEndpoint("http://localhost:8080/path"));
+        assertEquals("https://host", CircuitBreaker.getEndpoint("https://host?query=1"));
+        assertEquals("host", CircuitBreaker.getEndpoint("host/path"));
+        assertEquals("", CircuitBreaker.getEndpoint(null));
+    }
+
+    @Test
+    public void closedByDefault() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(false);
+        assertEquals(0, circuitBreaker.acquire(URL, mock(Runnable.class)));
+        assertEquals(0, circuitBreaker.acquire(URL, mock(Runnable.class)));
+        assertEquals(0, circuitBreaker.getRemainingOpenTime(URL));
+        assertEquals(Collections.emptyList(), circuitBreaker.onSuccess(URL));
+    }
+
+    @Test
+    public void exponentialBackoffWithJitter() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(false);
+        long upperBound = BASE_BACKOFF;
+        for (int i = 0; i < 20; i++) {
+            circuitBreaker.onFailure(URL, null);
+            long delay = circuitBreaker.getRemainingOpenTime(URL);
+            assertTrue(delay >= upperBound / 2 && delay <= upperBound);
+
+            /* Calls are delayed, including calls to other paths of the same endpoint. */
+            assertEquals(delay, circuitBreaker.acquire(URL, mock(Runnable.class)));
+            assertEquals(delay, circuitBreaker.acquire("https://in.appcenter.ms/other", mock(Runnable.class)));
+            assertEquals(0, circuitBreaker.acquire(OTHER_URL, mock(Runnable.class)));
+
+            /* Wait for the end of backoff. */
+            setTime(mNow + delay);
+            upperBound = Math.min(upperBound * 2, MAX_BACKOFF);
+        }
+    }
+
+    @Test
+    public void concurrentFailuresCountOnce() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(false);
+        circuitBreaker.onFailure(URL, 5000L);
+        circuitBreaker.onFailure(URL, null);
+        circuitBreaker.onFailure(URL, null);
+
+        /* Only the first failure was counted, so the bound is still the base backoff. */
+        long delay = circuitBreaker.getRemainingOpenTime(URL);
+        assertTrue(delay >= BASE_BACKOFF / 2 && delay <= BASE_BACKOFF);
+    }
+
+    @Test
+    public void serverDelayIsHonoredAndClamped() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(false);
+        circuitBreaker.onFailure(URL, 1234L);
+        assertEquals(1234, circuitBreaker.getRemainingOpenTime(URL));
+        circuitBreaker.onFailure(URL, MAX_OPEN_DURATION * 10);
+        assertEquals(MAX_OPEN_DURATION, circuitBreaker.getRemainingOpenTime(URL));
+        circuitBreaker.onFailure(URL, -1L);
+        assertEquals(0, circuitBreaker.getRemainingOpenTime(URL));
+    }
+
+    @Test
+    public void singleProbeThenSuccess() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(false);
+        circuitBreaker.onFailure(URL, 1000L);
+        setTime(mNow + 1000);
+
+        /* Half open: first call probes, others wait. */
+        Runnable probe = mock(Runnable.class);
+        Runnable waiting1 = mock(Runnable.class);
+        Runnable waiting2 = mock(Runnable.class);
+        assertEquals(0, circuitBreaker.acquire(URL, probe));
+        assertEquals(WAIT_FOR_PROBE, circuitBreaker.acquire(URL, waiting1));
+        assertEquals(WAIT_FOR_PROBE, circuitBreaker.acquire(URL, waiting2));
+
+        /* Success closes and releases waiting calls. */
+        List<Runnable> released = circuitBreaker.onSuccess(URL);
+        assertEquals(2, released.size());
+        assertTrue(released.contains(waiting1));
+        assertTrue(released.contains(waiting2));
+        assertEquals(0, circuitBreaker.acquire(URL, waiting1));
+        assertEquals(0, circuitBreaker.acquire(URL, waiting2));
+        assertEquals(Collections.emptyList(), circuitBreaker.onSuccess(URL));
+    }
+
+    @Test
+    public void probeFailureReopens() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(false);
+        circuitBreaker.onFailure(URL, 1000L);
+        setTime(mNow + 1000);
+        Runnable probe = mock(Runnable.class);
+        Runnable waiting = mock(Runnable.class);
+        assertEquals(0, circuitBreaker.acquire(URL, probe));
+        assertEquals(WAIT_FOR_PROBE, circuitBreaker.acquire(URL, waiting));
+
+        /* Waiting calls are released to ask again and get the new delay. */
+        assertEquals(Collections.singletonList(waiting), circuitBreaker.onFailure(URL, 2000L));
+        assertEquals(2000, circuitBreaker.acquire(URL, waiting));
+    }
+
+    @Test
+    public void probeTimeout() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(false);
+        circuitBreaker.onFailure(URL, 0L);
+        Runnable probe = mock(Runnable.class);
+        Runnable other = mock(Runnable.class);
+        assertEquals(0, circuitBreaker.acquire(URL, probe));
+        assertEquals(WAIT_FOR_PROBE, circuitBreaker.acquire(URL, other));
+
+        /* Probe asking again is not queued. */
+        assertEquals(WAIT_FOR_PROBE, circuitBreaker.acquire(URL, probe));
+        assertEquals(Collections.singletonList(other), circuitBreaker.onFailure(URL, 0L));
+
+        /* Probe never reports. */
+        assertEquals(0, circuitBreaker.acquire(URL, probe));
+        setTime(mNow + PROBE_TIMEOUT);
+        assertEquals(0, circuitBreaker.acquire(URL, other));
+    }
+
+    @Test
+    public void cancel() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(false);
+        circuitBreaker.onFailure(URL, 0L);
+        Runnable probe = mock(Runnable.class);
+        Runnable waiting = mock(Runnable.class);
+        assertEquals(0, circuitBreaker.acquire(URL, probe));
+        assertEquals(WAIT_FOR_PROBE, circuitBreaker.acquire(URL, waiting));
+        assertEquals(Collections.emptyList(), circuitBreaker.cancel(URL, waiting));
+        assertEquals(Collections.emptyList(), circuitBreaker.cancel(URL, mock(Runnable.class)));
+
+        /* Cancelling the probe hands back the waiting calls so that one of them probes. */
+        Runnable waiting1 = mock(Runnable.class);
+        Runnable waiting2 = mock(Runnable.class);
+        assertEquals(WAIT_FOR_PROBE, circuitBreaker.acquire(URL, waiting1));
+        assertEquals(WAIT_FOR_PROBE, circuitBreaker.acquire(URL, waiting2));
+        assertEquals(Arrays.asList(waiting1, waiting2), circuitBreaker.cancel(URL, probe));
+        assertEquals(0, circuitBreaker.acquire(URL, waiting1));
+        assertEquals(WAIT_FOR_PROBE, circuitBreaker.acquire(URL, waiting2));
+        assertEquals(Collections.singletonList(waiting2), circuitBreaker.onSuccess(URL));
+    }
+
+    @Test
+    public void persistence() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(true);
+        circuitBreaker.onFailure(URL, 5000L);
+        verifyStatic();
+        SharedPreferencesManager.putString(PREFERENCE_PREFIX + "https://in.appcenter.ms", "1:" + (mNow + 5000));
+        circuitBreaker.onSuccess(URL);
+        verifyStatic();
+        SharedPreferencesManager.remove(PREFERENCE_PREFIX + "https://in.appcenter.ms");
+
+        /* Restart with a stored state. */
+        when(SharedPreferencesManager.getString(PREFERENCE_PREFIX + "https://in.appcenter.ms")).thenReturn("3:" + (mNow + 7000));
+        circuitBreaker = new CircuitBreaker(true);
+        assertEquals(7000, circuitBreaker.acquire(URL, mock(Runnable.class)));
+
+        /* Failure count was restored, so next backoff bound is 4 times the base. */
+        setTime(mNow + 7000);
+        circuitBreaker.onFailure(URL, null);
+        verifyStatic();
+        SharedPreferencesManager.putString(anyString(), startsWith("4:"));
+        assertTrue(circuitBreaker.getRemainingOpenTime(URL) < BASE_BACKOFF * 8);
+    }
+
+    @Test
+    public void persistedStateIsClamped() {
+
+        /* Wall clock moved back since state was stored. */
+        when(SharedPreferencesManager.getString(PREFERENCE_PREFIX + "https://in.appcenter.ms")).thenReturn("2:" + (mNow + MAX_OPEN_DURATION * 24));
+        CircuitBreaker circuitBreaker = new CircuitBreaker(true);
+        assertEquals(MAX_OPEN_DURATION, circuitBreaker.getRemainingOpenTime(URL));
+    }
+
+    @Test
+    public void invalidPersistedStateIgnored() {
+        when(SharedPreferencesManager.getString(PREFERENCE_PREFIX + "https://in.appcenter.ms")).thenReturn("invalid");
+        when(SharedPreferencesManager.getString(PREFERENCE_PREFIX + "https://mobile.events.data.microsoft.com")).thenReturn("1");
+        CircuitBreaker circuitBreaker = new CircuitBreaker(true);
+        assertEquals(0, circuitBreaker.acquire(URL, mock(Runnable.class)));
+        assertEquals(0, circuitBreaker.acquire(OTHER_URL, mock(Runnable.class)));
+    }
+}
@@ -57,6 +57,7 @@ import static com.microsoft.appcenter.http.DefaultHttpClient.METHOD_POST;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyMapOf;
@@ -117,7 +118,8 @@ public class DefaultHttpClientTest {
                         (HttpClient.CallTemplate) invocation.getArguments()[3],
                         (ServiceCallback) invocation.getArguments()[4],
                         (DefaultHttpClientCallTask.Tracker) invocation.getArguments()[5],
-                        (boolean) invocation.getArguments()[6]));
+                        (boolean) invocation.getArguments()[6],
+                        (boolean) invocation.getArguments()[7]));
                 when(call.executeOnExecutor(any(Executor.class))).then(new Answer<DefaultHttpClientCallTask>() {
 
                     @Override
@@ -654,6 +656,95 @@ public class DefaultHttpClientTest {
         TrafficStats.clearThreadStatsTag();
     }
 
+    @Test
+    public void post200WithoutResponseContent() throws Exception {
+
+        /* Configure mock HTTPS. */
+        String urlString = "https://mock/logs?api-version=1.0.0";
+        HttpsURLConnection urlConnection = mockConnection(urlString);
+        when(urlConnection.getResponseCode()).thenReturn(200);
+        when(urlConnection.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+        ByteArrayInputStream inputStream = new ByteArrayInputStream(new byte[HttpUtils.READ_BUFFER_SIZE * 3 + 1]);
+        when(urlConnection.getInputStream()).thenReturn(inputStream);
+
+        /* Configure API client. */
+        HttpClient.PartialResponseCallTemplate callTemplate = mock(HttpClient.PartialResponseCallTemplate.class);
+        when(callTemplate.buildRequestBody()).thenReturn("mockPayload");
+        when(callTemplate.getResponseContent()).thenReturn(HttpClient.PartialResponseCallTemplate.ResponseContent.NONE);
+        DefaultHttpClient httpClient = new DefaultHttpClient();
+
+        /* Test calling code. */
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mockCall();
+        httpClient.callAsync(urlString, METHOD_POST, new HashMap<String, String>(), callTemplate, serviceCallback);
+        verify(serviceCallback).onCallSucceeded(new HttpResponse(200, "", Collections.<String, String>emptyMap()));
+        verifyNoMoreInteractions(serviceCallback);
+
+        /* Body drained for connection reuse but not kept, headers not copied. */
+        assertEquals(0, inputStream.available());
+        verify(urlConnection, never()).getHeaderFields();
+        verify(urlConnection).disconnect();
+        httpClient.close();
+    }
+
+    @Test
+    public void post200WithHeadersOnly() throws Exception {
+
+        /* Configure mock HTTPS. */
+        String urlString = "https://mock/logs?api-version=1.0.0";
+        HttpsURLConnection urlConnection = mockConnection(urlString);
+        when(urlConnection.getResponseCode()).thenReturn(200);
+        when(urlConnection.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+        ByteArrayInputStream inputStream = new ByteArrayInputStream("OK".getBytes());
+        when(urlConnection.getInputStream()).thenReturn(inputStream);
+        Map<String, List<String>> headerFields = new HashMap<>();
+        headerFields.put("x-mock", Collections.singletonList("value"));
+        when(urlConnection.getHeaderFields()).thenReturn(headerFields);
+
+        /* Configure API client. */
+        HttpClient.PartialResponseCallTemplate callTemplate = mock(HttpClient.PartialResponseCallTemplate.class);
+        when(callTemplate.buildRequestBody()).thenReturn("mockPayload");
+        when(callTemplate.getResponseContent()).thenReturn(HttpClient.PartialResponseCallTemplate.ResponseContent.HEADERS);
+        DefaultHttpClient httpClient = new DefaultHttpClient();
+
+        /* Test calling code. */
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mockCall();
+        httpClient.callAsync(urlString, METHOD_POST, new HashMap<String, String>(), callTemplate, serviceCallback);
+        verify(serviceCallback).onCallSucceeded(new HttpResponse(200, "", Collections.singletonMap("x-mock", "value")));
+        verifyNoMoreInteractions(serviceCallback);
+        assertEquals(0, inputStream.available());
+        httpClient.close();
+    }
+
+    @Test
+    public void error503WithoutResponseContentStillReadsBody() throws Exception {
+
+        /* Configure mock HTTPS. */
+        String urlString = "https://mock/logs?api-version=1.0.0";
+        HttpsURLConnection urlConnection = mockConnection(urlString);
+        when(urlConnection.getResponseCode()).thenReturn(503);
+        when(urlConnection.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+        when(urlConnection.getErrorStream()).thenReturn(new ByteArrayInputStream("Busy".getBytes()));
+        Map<String, List<String>> headerFields = new HashMap<>();
+        headerFields.put("x-ms-retry-after-ms", Collections.singletonList("1000"));
+        when(urlConnection.getHeaderFields()).thenReturn(headerFields);
+
+        /* Configure API client. */
+        HttpClient.PartialResponseCallTemplate callTemplate = mock(HttpClient.PartialResponseCallTemplate.class);
+        when(callTemplate.buildRequestBody()).thenReturn("mockPayload");
+        when(callTemplate.getResponseContent()).thenReturn(HttpClient.PartialResponseCallTemplate.ResponseContent.NONE);
+        DefaultHttpClient httpClient = new DefaultHttpClient();
+
+        /* Test calling code. */
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mockCall();
+        httpClient.callAsync(urlString, METHOD_POST, new HashMap<String, String>(), callTemplate, serviceCallback);
+        verify(serviceCallback).onCallFailed(new HttpException(new HttpResponse(503, "Busy", Collections.singletonMap("x-ms-retry-after-ms", "1000"))));
+        verifyNoMoreInteractions(serviceCallback);
+        httpClient.close();
+    }
+
     @Test
     public void cancel() throws Exception {
 
@@ -687,7 +778,8 @@ public class DefaultHttpClientTest {
                         (HttpClient.CallTemplate) invocation.getArguments()[3],
                         (ServiceCallback) invocation.getArguments()[4],
                         (DefaultHttpClientCallTask.Tracker) invocation.getArguments()[5],
-                        (boolean) invocation.getArguments()[6]));
+                        (boolean) invocation.getArguments()[6],
+                        (boolean) invocation.getArguments()[7]));
                 callTask.set(call);
                 when(call.executeOnExecutor(any(Executor.class))).then(new Answer<DefaultHttpClientCallTask>() {
 
@@ -1138,6 +1230,74 @@ public class DefaultHttpClientTest {
         }));
     }
 
+    @Test
+    public void sendDictionaryCompressedSmallPayload() throws Exception {
+
+        /* Mock no verbose logging. */
+        mockStatic(AppCenterLog.class);
+        when(AppCenterLog.getLogLevel()).thenReturn(Log.DEBUG);
+
+        /* Configure mock HTTPS. */
+        String urlString = "https://mock";
+        HttpsURLConnection urlConnection = mockConnection(urlString);
+        when(urlConnection.getResponseCode()).thenReturn(200);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        when(urlConnection.getOutputStream()).thenReturn(buffer);
+        when(urlConnection.getInputStream()).thenReturn(new ByteArrayInputStream("OK".getBytes()));
+
+        /* Payload too small for gzip but large enough for dictionary compression. */
+        String payload = "{\"logs\":[{\"type\":\"event\",\"timestamp\":\"2019-05-13T10:21:33.123Z\",\"sid\":\"" + UUID.randomUUID() + "\"," +
+                "\"device\":{\"sdkName\":\"appcenter.android\",\"sdkVersion\":\"2.0.1\",\"osName\":\"Android\"}," +
+                "\"id\":\"" + UUID.randomUUID() + "\",\"name\":\"AddToCart\"}]}";
+
+        /* Configure API client. */
+        HttpClient.CallTemplate callTemplate = mock(HttpClient.CallTemplate.class);
+        when(callTemplate.buildRequestBody()).thenReturn(payload);
+        DefaultHttpClient httpClient = new DefaultHttpClient(true, true);
+
+        /* Test calling code. */
+        Map<String, String> headers = new HashMap<>();
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mockCall();
+        httpClient.callAsync(urlString, METHOD_POST, headers, callTemplate, serviceCallback);
+        verify(serviceCallback).onCallSucceeded(new HttpResponse(200, "OK", Collections.<String, String>emptyMap()));
+        verify(urlConnection).setRequestProperty("Content-Encoding", DictionaryCompression.CONTENT_ENCODING_VALUE);
+        verify(urlConnection, never()).setRequestProperty("Content-Encoding", "gzip");
+        httpClient.close();
+
+        /* Verify the server side can decode the payload using only the header. */
+        byte[] body = buffer.toByteArray();
+        assertTrue(body.length < payload.length());
+        assertEquals(payload, new DictionaryDecodingStandIn().decode(headers.get("Content-Encoding"), body));
+    }
+
+    @Test
+    public void sendNoDictionaryCompressionOnTinyPayload() throws Exception {
+
+        /* Configure mock HTTPS. */
+        String urlString = "https://mock";
+        HttpsURLConnection urlConnection = mockConnection(urlString);
+        when(urlConnection.getResponseCode()).thenReturn(200);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        when(urlConnection.getOutputStream()).thenReturn(buffer);
+        when(urlConnection.getInputStream()).thenReturn(new ByteArrayInputStream("OK".getBytes()));
+
+        /* Configure API client. */
+        String payload = "{\"logs\":[]}";
+        HttpClient.CallTemplate callTemplate = mock(HttpClient.CallTemplate.class);
+        when(callTemplate.buildRequestBody()).thenReturn(payload);
+        DefaultHttpClient httpClient = new DefaultHttpClient(true, true);
+
+        /* Test calling code. */
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mockCall();
+        httpClient.callAsync(urlString, METHOD_POST, new HashMap<String, String>(), callTemplate, serviceCallback);
+        verify(serviceCallback).onCallSucceeded(new HttpResponse(200, "OK", Collections.<String, String>emptyMap()));
+        verify(urlConnection, never()).setRequestProperty(eq("Content-Encoding"), anyString());
+        httpClient.close();
+        assertEquals(payload, buffer.toString());
+    }
+
     @Test
     public void sendNoGzipWithPlainTextVerboseLogging() throws Exception {
 
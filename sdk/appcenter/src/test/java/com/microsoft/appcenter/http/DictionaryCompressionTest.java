@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.zip.Adler32;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DictionaryCompressionTest {
+
+    /**
+     * Checksum of the shipped dictionary version 1, servers rely on it to not change.
+     */
+    private static final long DICTIONARY_V1_CHECKSUM = 3738663030L;
+
+    private static final String DEVICE = "{\"sdkName\":\"appcenter.android\",\"sdkVersion\":\"2.0.1\",\"model\":\"SM-G960F\"," +
+            "\"oemName\":\"samsung\",\"osName\":\"Android\",\"osVersion\":\"9\",\"osBuild\":\"PPR1.180610.011\"," +
+            "\"osApiLevel\":28,\"locale\":\"en_US\",\"timeZoneOffset\":-420,\"screenSize\":\"1080x2220\"," +
+            "\"appVersion\":\"1.4.2\",\"carrierName\":\"T-Mobile\",\"carrierCountry\":\"us\",\"appBuild\":\"42\"," +
+            "\"appNamespace\":\"com.contoso.shop\"}";
+
+    private static final String[] EVENT_NAMES = {"AddToCart", "Checkout", "Search", "ProductViewed", "SignIn"};
+
+    private static String timestamp(int index) {
+        return String.format(Locale.US, "\"2019-05-13T10:%02d:%02d.%03dZ\"", index / 60 % 60, index % 60, index * 37 % 1000);
+    }
+
+    private static String analyticsLog(int index, String sessionId) {
+        String common = "\"timestamp\":" + timestamp(index) + ",\"sid\":\"" + sessionId + "\",\"device\":" + DEVICE;
+        switch (index % 4) {
+            case 0:
+                return "{\"type\":\"startSession\"," + common + "}";
+
+            case 1:
+                return "{\"type\":\"page\"," + common + ",\"id\":\"" + UUID.randomUUID() + "\",\"name\":\"ProductPage\"," +
+                        "\"properties\":{\"category\":\"shoes\"}}";
+
+            default:
+                return "{\"type\":\"event\"," + common + ",\"id\":\"" + UUID.randomUUID() + "\",\"name\":\"" + EVENT_NAMES[index % EVENT_NAMES.length] + "\"," +
+                        "\"typedProperties\":[{\"type\":\"string\",\"name\":\"screen\",\"value\":\"Home\"}," +
+                        "{\"type\":\"long\",\"name\":\"quantity\",\"value\":" + index + "}," +
+                        "{\"type\":\"boolean\",\"name\":\"signedIn\",\"value\":true}]}";
+        }
+    }
+
+    private static String frame(String className, String methodName, int line, String fileName) {
+        return "{\"className\":\"" + className + "\",\"methodName\":\"" + methodName + "\",\"lineNumber\":" + line + ",\"fileName\":\"" + fileName + "\"}";
+    }
+
+    private static String crashLog(int index, String sessionId) {
+        String frames = "[" + frame("com.contoso.shop.cart.CartAdapter", "onBindViewHolder", 87 + index, "CartAdapter.java") + "," +
+                frame("android.support.v7.widget.RecyclerView$Adapter", "bindViewHolder", 6781, "RecyclerView.java") + "," +
+                frame("android.os.Handler", "dispatchMessage", 106, "Handler.java") + "," +
+                frame("android.os.Looper", "loop", 193, "Looper.java") + "," +
+                frame("android.app.ActivityThread", "main", 6718, "ActivityThread.java") + "," +
+                frame("java.lang.reflect.Method", "invoke", -2, "Method.java") + "," +
+                frame("com.android.internal.os.RuntimeInit$MethodAndArgsCaller", "run", 493, "RuntimeInit.java") + "," +
+                frame("com.android.internal.os.ZygoteInit", "main", 858, "ZygoteInit.java") + "]";
+        return "{\"type\":\"" + (index % 3 == 0 ? "managedError" : "handledError") + "\",\"timestamp\":" + timestamp(index) +
+                ",\"sid\":\"" + sessionId + "\",\"device\":" + DEVICE + ",\"id\":\"" + UUID.randomUUID() + "\"," +
+                "\"processId\":" + (4000 + index) + ",\"processName\":\"com.contoso.shop\",\"fatal\":" + (index % 3 == 0) + "," +
+                "\"errorThreadId\":2,\"errorThreadName\":\"main\",\"appLaunchTimestamp\":" + timestamp(0) + ",\"architecture\":\"arm64-v8a\"," +
+                "\"exception\":{\"type\":\"java.lang.NullPointerException\",\"message\":\"Attempt to invoke virtual method on a null object reference\"," +
+                "\"frames\":" + frames + "}}";
+    }
+
+    private static byte[] batch(boolean crashes, int logCount) {
+        String sessionId = UUID.randomUUID().toString();
+        StringBuilder builder = new StringBuilder("{\"logs\":[");
+        for (int i = 0; i < logCount; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(crashes ? crashLog(i, sessionId) : analyticsLog(i, sessionId));
+        }
+        return builder.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(byte[] payload) throws IOException {
+        ByteArrayOutputStream gzipBuffer = new ByteArrayOutputStream(payload.length);
+        GZIPOutputStream gzipStream = new GZIPOutputStream(gzipBuffer);
+        gzipStream.write(payload);
+        gzipStream.close();
+        return gzipBuffer.toByteArray();
+    }
+
+    @Test
+    public void init() {
+        new DictionaryCompression();
+    }
+
+    @Test
+    public void contentEncodingIsVersioned() {
+        assertEquals("deflate; dictionary=" + DictionaryCompression.DICTIONARY_VERSION, DictionaryCompression.CONTENT_ENCODING_VALUE);
+    }
+
+    @Test
+    public void dictionaryIsFrozen() {
+        byte[] dictionary = DictionaryCompression.getDictionary();
+        assertTrue(dictionary.length <= 32 * 1024);
+
+        /* If this fails, the dictionary was modified: revert and ship a new version instead. */
+        Adler32 checksum = new Adler32();
+        checksum.update(dictionary);
+        assertEquals(1, DictionaryCompression.DICTIONARY_VERSION);
+        assertEquals(DICTIONARY_V1_CHECKSUM, checksum.getValue());
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        DictionaryDecodingStandIn server = new DictionaryDecodingStandIn();
+        for (boolean crashes : new boolean[]{false, true}) {
+            for (int logCount : new int[]{0, 1, 20, 200}) {
+                byte[] payload = batch(crashes, logCount);
+                byte[] compressed = DictionaryCompression.compress(payload);
+                assertEquals(new String(payload, StandardCharsets.UTF_8), server.decode(DictionaryCompression.CONTENT_ENCODING_VALUE, compressed));
+            }
+        }
+    }
+
+    @Test
+    public void roundTripEmptyAndNonAscii() throws IOException {
+        DictionaryDecodingStandIn server = new DictionaryDecodingStandIn();
+        assertEquals("", server.decode(DictionaryCompression.CONTENT_ENCODING_VALUE, DictionaryCompression.compress(new byte[0])));
+        String payload = "{\"name\":\"caf\u00e9 \u2603 \ud83d\ude00\"}";
+        assertEquals(payload, server.decode(DictionaryCompression.CONTENT_ENCODING_VALUE, DictionaryCompression.compress(payload.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void serverRejectsUnknownVersion() {
+        DictionaryDecodingStandIn server = new DictionaryDecodingStandIn();
+        byte[] compressed = DictionaryCompression.compress(batch(false, 1));
+        try {
+            server.decode("deflate; dictionary=" + (DictionaryCompression.DICTIONARY_VERSION + 1), compressed);
+            fail("Expected unknown version.");
+        } catch (IOException ignored) {
+        }
+        try {
+            server.decode("gzip", compressed);
+            fail("Expected unsupported encoding.");
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Test
+    public void serverRejectsWrongDictionary() {
+        DictionaryDecodingStandIn server = new DictionaryDecodingStandIn(Collections.singletonMap(DictionaryCompression.DICTIONARY_VERSION, "{\"logs\":[".getBytes(StandardCharsets.UTF_8)));
+        try {
+            server.decode(DictionaryCompression.CONTENT_ENCODING_VALUE, DictionaryCompression.compress(batch(false, 1)));
+            fail("Expected checksum mismatch.");
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Dictionary must beat gzip on batches smaller than 20 logs, which is the reason it exists.
+     */
+    @Test
+    public void compressionRatio() throws IOException {
+        for (boolean crashes : new boolean[]{false, true}) {
+            for (int logCount : new int[]{1, 2, 5, 10, 19, 50}) {
+                byte[] payload = batch(crashes, logCount);
+                int gzipLength = gzip(payload).length;
+                int dictionaryLength = DictionaryCompression.compress(payload).length;
+                String batchName = (crashes ? "crashes" : "analytics") + " batch of " + logCount + " logs";
+                assertTrue(batchName + " is not compressed", dictionaryLength < payload.length);
+                if (logCount < 20) {
+                    assertTrue(batchName + ": dictionary " + dictionaryLength + " bytes, gzip " + gzipLength + " bytes", dictionaryLength < gzipLength);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Stand-in for the ingestion side of the dictionary codec: decodes a request body the way a server
+ * would, using only the Content-Encoding header and its own copy of the dictionaries.
+ */
+class DictionaryDecodingStandIn {
+
+    private static final Pattern CONTENT_ENCODING_PATTERN = Pattern.compile("deflate;\\s*dictionary=(\\d+)");
+
+    /**
+     * Dictionaries known by the server by version.
+     */
+    private final Map<Integer, byte[]> mDictionaries;
+
+    DictionaryDecodingStandIn() {
+        this(Collections.singletonMap(DictionaryCompression.DICTIONARY_VERSION, DictionaryCompression.getDictionary()));
+    }
+
+    DictionaryDecodingStandIn(Map<Integer, byte[]> dictionaries) {
+        mDictionaries = dictionaries;
+    }
+
+    /**
+     * Decode a request body.
+     *
+     * @param contentEncoding Content-Encoding header value.
+     * @param body            request body.
+     * @return decoded body.
+     * @throws IOException if the encoding or dictionary is not supported or if the body is corrupted.
+     */
+    String decode(String contentEncoding, byte[] body) throws IOException {
+        Matcher matcher = CONTENT_ENCODING_PATTERN.matcher(contentEncoding);
+        if (!matcher.matches()) {
+            throw new IOException("Unsupported content encoding: " + contentEncoding);
+        }
+        byte[] dictionary = mDictionaries.get(Integer.parseInt(matcher.group(1)));
+        if (dictionary == null) {
+            throw new IOException("Unknown dictionary version: " + matcher.group(1));
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(body);
+            ByteArrayOutputStream output = new ByteArrayOutputStream(body.length * 4);
+            byte[] buffer = new byte[1024];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                output.write(buffer, 0, length);
+                if (inflater.needsDictionary()) {
+                    Adler32 checksum = new Adler32();
+                    checksum.update(dictionary);
+                    if (inflater.getAdler() != (int) checksum.getValue()) {
+                        throw new IOException("Dictionary checksum mismatch.");
+                    }
+                    inflater.setDictionary(dictionary);
+                } else if (length == 0 && inflater.needsInput() && !inflater.finished()) {
+                    throw new IOException("Truncated body.");
+                }
+            }
+            return new String(output.toByteArray(), StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
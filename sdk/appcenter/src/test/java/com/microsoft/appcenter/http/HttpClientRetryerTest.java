@@ -14,12 +14,24 @@ import org.mockito.stubbing.Answer;
 
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static com.microsoft.appcenter.http.DefaultHttpClient.CONTENT_TYPE_KEY;
 import static com.microsoft.appcenter.http.DefaultHttpClient.CONTENT_TYPE_VALUE;
 import static com.microsoft.appcenter.http.DefaultHttpClient.X_MS_RETRY_AFTER_MS_HEADER;
+import static com.microsoft.appcenter.http.HttpClientRetryer.REJECTED_EXECUTION_RETRY_INTERVAL;
+import static com.microsoft.appcenter.http.HttpClientRetryer.RETRY_AFTER_HEADER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyMapOf;
 import static org.mockito.Matchers.anyString;
@@ -28,8 +40,12 @@ import static org.mockito.Matchers.longThat;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
 
 @SuppressWarnings("unused")
 public class HttpClientRetryerTest {
@@ -46,27 +62,21 @@ public class HttpClientRetryerTest {
         }).when(handler).postDelayed(any(Runnable.class), anyLong());
     }
 
-    private static void verifyDelay(Handler handler, final int retryIndex) {
-        verify(handler).postDelayed(any(Runnable.class), longThat(new ArgumentMatcher<Long>() {
-
-            @Override
-            public boolean matches(Object argument) {
-                long interval = (Long) argument;
-                long retryInterval = HttpClientRetryer.RETRY_INTERVALS[retryIndex];
-                return interval >= retryInterval / 2 && interval <= retryInterval;
-            }
-        }));
+    private static void verifyDelay(Handler handler, final long delay) {
+        verify(handler).postDelayed(any(Runnable.class), eq(delay));
     }
 
-    private static void verifyDelayFromHeader(Handler handler, final long retryAfter) {
-        verify(handler).postDelayed(any(Runnable.class), longThat(new ArgumentMatcher<Long>() {
+    private static HttpException httpException(int status, String header, String value) {
+        Map<String, String> responseHeader = new HashMap<>();
+        responseHeader.put(CONTENT_TYPE_KEY, CONTENT_TYPE_VALUE);
+        responseHeader.put(header, value);
+        return new HttpException(new HttpResponse(status, "", responseHeader));
+    }
 
-            @Override
-            public boolean matches(Object argument) {
-                long interval = (Long) argument;
-                return interval == retryAfter;
-            }
-        }));
+    private static CircuitBreaker mockCircuitBreaker(long openTime) {
+        CircuitBreaker circuitBreaker = mock(CircuitBreaker.class);
+        when(circuitBreaker.getRemainingOpenTime(anyString())).thenReturn(openTime);
+        return circuitBreaker;
     }
 
     @Test
@@ -82,11 +92,13 @@ public class HttpClientRetryerTest {
                 return call;
             }
         }).when(httpClient).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
-        HttpClientRetryer retryer = new HttpClientRetryer(httpClient);
+        Handler handler = mock(Handler.class);
+        HttpClientRetryer retryer = new HttpClientRetryer(httpClient, handler, new CircuitBreaker(false));
         retryer.callAsync(null, null, null, null, callback);
         verify(callback).onCallSucceeded(eq(new HttpResponse(200, "mockSuccessPayload")));
         verifyNoMoreInteractions(callback);
         verifyNoMoreInteractions(call);
+        verifyZeroInteractions(handler);
     }
 
     @Test
@@ -109,11 +121,14 @@ public class HttpClientRetryerTest {
             }
         }).when(httpClient).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
         Handler handler = mock(Handler.class);
-        HttpClient retryer = new HttpClientRetryer(httpClient, handler);
+        CircuitBreaker circuitBreaker = mockCircuitBreaker(5000);
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler, circuitBreaker);
         simulateRetryAfterDelay(handler);
         retryer.callAsync(null, null, null, null, callback);
-        verifyDelay(handler, 0);
+        verifyDelay(handler, 5000);
         verifyNoMoreInteractions(handler);
+        verify(circuitBreaker).onFailure(null, null);
+        verify(circuitBreaker).onSuccess(null);
         verify(callback).onCallSucceeded(eq(new HttpResponse(200, "mockSuccessPayload")));
         verifyNoMoreInteractions(callback);
     }
@@ -139,11 +154,16 @@ public class HttpClientRetryerTest {
             }
         }).when(httpClient).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
         Handler handler = mock(Handler.class);
-        HttpClient retryer = new HttpClientRetryer(httpClient, handler);
+        CircuitBreaker circuitBreaker = mockCircuitBreaker(1000);
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler, circuitBreaker);
         simulateRetryAfterDelay(handler);
         retryer.callAsync(null, null, null, null, callback);
-        verifyDelay(handler, 0);
+        verifyDelay(handler, 1000);
         verifyNoMoreInteractions(handler);
+
+        /* The endpoint answered even if the request is rejected. */
+        verify(circuitBreaker).onFailure(null, null);
+        verify(circuitBreaker).onSuccess(null);
         verify(callback).onCallFailed(any(Exception.class));
         verify(callback).onCallFailed(expectedException);
         verifyNoMoreInteractions(callback);
@@ -163,13 +183,14 @@ public class HttpClientRetryerTest {
             }
         }).when(httpClient).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
         Handler handler = mock(Handler.class);
-        HttpClient retryer = new HttpClientRetryer(httpClient, handler);
+        CircuitBreaker circuitBreaker = mockCircuitBreaker(2000);
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler, circuitBreaker);
         simulateRetryAfterDelay(handler);
         retryer.callAsync(null, null, null, null, callback);
-        verifyDelay(handler, 0);
-        verifyDelay(handler, 1);
-        verifyDelay(handler, 2);
+        verify(handler, times(HttpClientRetryer.MAX_RETRIES)).postDelayed(any(Runnable.class), eq(2000L));
         verifyNoMoreInteractions(handler);
+        verify(circuitBreaker, times(HttpClientRetryer.MAX_RETRIES + 1)).onFailure(null, null);
+        verify(circuitBreaker, never()).onSuccess(anyString());
         verify(callback).onCallFailed(new HttpException(new HttpResponse(408)));
         verifyNoMoreInteractions(callback);
         verifyNoMoreInteractions(call);
@@ -180,11 +201,7 @@ public class HttpClientRetryerTest {
 
         /* Mock httpException onCallFailed with the HTTP Code 429 (Too many Requests) and the x-ms-retry-after-ms header set. */
         long retryAfterMS = 1234;
-        Map<String, String> responseHeader = new HashMap<>();
-        responseHeader.put(CONTENT_TYPE_KEY, CONTENT_TYPE_VALUE);
-        responseHeader.put(X_MS_RETRY_AFTER_MS_HEADER, Long.toString(retryAfterMS));
-        final HttpException expectedException = new HttpException(new HttpResponse(429, "call hit the retry limit", responseHeader));
-
+        final HttpException expectedException = httpException(429, X_MS_RETRY_AFTER_MS_HEADER, Long.toString(retryAfterMS));
         final ServiceCallback callback = mock(ServiceCallback.class);
         HttpClient httpClient = mock(HttpClient.class);
         doAnswer(new Answer<ServiceCall>() {
@@ -203,19 +220,185 @@ public class HttpClientRetryerTest {
             }
         }).when(httpClient).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
         Handler handler = mock(Handler.class);
-        HttpClient retryer = new HttpClientRetryer(httpClient, handler);
+        CircuitBreaker circuitBreaker = mockCircuitBreaker(retryAfterMS);
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler, circuitBreaker);
         simulateRetryAfterDelay(handler);
 
         /* Make the call. */
         retryer.callAsync(null, null, null, null, callback);
 
-        /* Verify that onCallFailed we actually check for the response header and use that value to set the delay on the retry call. */
-        verifyDelayFromHeader(handler, retryAfterMS);
+        /* Verify that onCallFailed we pass the response header to the circuit breaker and retry when it closes. */
+        verifyDelay(handler, retryAfterMS);
         verifyNoMoreInteractions(handler);
+        verify(circuitBreaker).onFailure(null, retryAfterMS);
         verify(callback).onCallSucceeded(eq(new HttpResponse(200, "mockSuccessPayload")));
         verifyNoMoreInteractions(callback);
     }
 
+    @Test
+    public void retryAfterHeaders() throws Exception {
+        assertNull(HttpClientRetryer.getRetryAfter(new SocketException()));
+        assertNull(HttpClientRetryer.getRetryAfter(new HttpException(new HttpResponse(503))));
+        assertEquals(Long.valueOf(1234), HttpClientRetryer.getRetryAfter(httpException(429, X_MS_RETRY_AFTER_MS_HEADER, "1234")));
+        assertEquals(Long.valueOf(120000), HttpClientRetryer.getRetryAfter(httpException(503, RETRY_AFTER_HEADER, "120")));
+        assertNull(HttpClientRetryer.getRetryAfter(httpException(503, RETRY_AFTER_HEADER, "soon")));
+        assertNull(HttpClientRetryer.getRetryAfter(httpException(429, X_MS_RETRY_AFTER_MS_HEADER, "1s")));
+
+        /* HTTP date. */
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        String date = format.format(new Date(System.currentTimeMillis() + 600000));
+        Long retryAfter = HttpClientRetryer.getRetryAfter(httpException(503, RETRY_AFTER_HEADER, date));
+        assertTrue(retryAfter > 590000 && retryAfter <= 600000);
+
+        /* Delays that are not positive are ignored. */
+        assertNull(HttpClientRetryer.getRetryAfter(httpException(503, RETRY_AFTER_HEADER, "Wed, 21 Oct 2015 07:28:00 GMT")));
+        assertNull(HttpClientRetryer.getRetryAfter(httpException(429, X_MS_RETRY_AFTER_MS_HEADER, "0")));
+        assertNull(HttpClientRetryer.getRetryAfter(httpException(429, X_MS_RETRY_AFTER_MS_HEADER, "-1")));
+        assertNull(HttpClientRetryer.getRetryAfter(httpException(503, RETRY_AFTER_HEADER, "0")));
+    }
+
+    @Test
+    public void delayFromCircuitBreakerWithHugeRetryHeader() {
+        final HttpException expectedException = httpException(503, RETRY_AFTER_HEADER, Long.toString(TimeUnit.DAYS.toSeconds(10)));
+        ServiceCallback callback = mock(ServiceCallback.class);
+        HttpClient httpClient = mock(HttpClient.class);
+        doAnswer(new Answer<ServiceCall>() {
+
+            @Override
+            public ServiceCall answer(InvocationOnMock invocationOnMock) {
+                ((ServiceCallback) invocationOnMock.getArguments()[4]).onCallFailed(expectedException);
+                return mock(ServiceCall.class);
+            }
+        }).when(httpClient).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
+        Handler handler = mock(Handler.class);
+        CircuitBreaker circuitBreaker = mockCircuitBreaker(CircuitBreaker.MAX_OPEN_DURATION);
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler, circuitBreaker);
+
+        /* The retry waits for the capped breaker window, not the raw server delay. */
+        retryer.callAsync(null, null, null, null, callback);
+        verify(circuitBreaker).onFailure(null, TimeUnit.DAYS.toMillis(10));
+        verifyDelay(handler, CircuitBreaker.MAX_OPEN_DURATION);
+        verifyNoMoreInteractions(callback);
+    }
+
+    @Test
+    public void delayedWhileEndpointOpen() {
+        ServiceCallback callback = mock(ServiceCallback.class);
+        HttpClient httpClient = mock(HttpClient.class);
+        Handler handler = mock(Handler.class);
+        CircuitBreaker circuitBreaker = mock(CircuitBreaker.class);
+        when(circuitBreaker.acquire(anyString(), any(Runnable.class))).thenReturn(3000L);
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler, circuitBreaker);
+        retryer.callAsync(null, null, null, null, callback);
+        verifyDelay(handler, 3000);
+        verifyZeroInteractions(httpClient);
+        verifyZeroInteractions(callback);
+    }
+
+    @Test
+    public void waitForProbe() {
+        ServiceCallback callback = mock(ServiceCallback.class);
+        HttpClient httpClient = mock(HttpClient.class);
+        Handler handler = mock(Handler.class);
+        CircuitBreaker circuitBreaker = mock(CircuitBreaker.class);
+        when(circuitBreaker.acquire(anyString(), any(Runnable.class))).thenReturn(CircuitBreaker.WAIT_FOR_PROBE);
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler, circuitBreaker);
+        retryer.callAsync(null, null, null, null, callback);
+        verifyZeroInteractions(handler);
+        verifyZeroInteractions(httpClient);
+        verifyZeroInteractions(callback);
+    }
+
+    @Test
+    public void probeResultResumesWaitingCalls() {
+        final ServiceCallback callback = mock(ServiceCallback.class);
+        HttpClient httpClient = mock(HttpClient.class);
+        doAnswer(new Answer<ServiceCall>() {
+
+            @Override
+            public ServiceCall answer(InvocationOnMock invocationOnMock) {
+                ((ServiceCallback) invocationOnMock.getArguments()[4]).onCallFailed(new HttpException(new HttpResponse(503)));
+                return mock(ServiceCall.class);
+            }
+        }).doAnswer(new Answer<ServiceCall>() {
+
+            @Override
+            public ServiceCall answer(InvocationOnMock invocationOnMock) {
+                ((ServiceCallback) invocationOnMock.getArguments()[4]).onCallSucceeded(new HttpResponse(200, ""));
+                return mock(ServiceCall.class);
+            }
+        }).when(httpClient).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
+        Handler handler = mock(Handler.class);
+        Runnable waitingAfterFailure = mock(Runnable.class);
+        Runnable waitingAfterSuccess = mock(Runnable.class);
+        CircuitBreaker circuitBreaker = mockCircuitBreaker(1000);
+        when(circuitBreaker.onFailure(anyString(), any(Long.class))).thenReturn(Collections.singletonList(waitingAfterFailure));
+        when(circuitBreaker.onSuccess(anyString())).thenReturn(Collections.singletonList(waitingAfterSuccess));
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler, circuitBreaker);
+        simulateRetryAfterDelay(handler);
+        retryer.callAsync(null, null, null, null, callback);
+        verify(handler).post(waitingAfterFailure);
+        verify(handler).post(waitingAfterSuccess);
+        verify(callback).onCallSucceeded(new HttpResponse(200, ""));
+    }
+
+    @Test
+    public void rejectedExecutionDoesNotOpenCircuit() {
+        final ServiceCallback callback = mock(ServiceCallback.class);
+        HttpClient httpClient = mock(HttpClient.class);
+        doAnswer(new Answer<ServiceCall>() {
+
+            @Override
+            public ServiceCall answer(InvocationOnMock invocationOnMock) {
+                ((ServiceCallback) invocationOnMock.getArguments()[4]).onCallFailed(new RejectedExecutionException());
+                return mock(ServiceCall.class);
+            }
+        }).when(httpClient).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
+        Handler handler = mock(Handler.class);
+        CircuitBreaker circuitBreaker = mock(CircuitBreaker.class);
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler, circuitBreaker);
+        retryer.callAsync(null, null, null, null, callback);
+        verify(handler).postDelayed(any(Runnable.class), longThat(new ArgumentMatcher<Long>() {
+
+            @Override
+            public boolean matches(Object argument) {
+                long interval = (Long) argument;
+                return interval >= REJECTED_EXECUTION_RETRY_INTERVAL / 2 && interval <= REJECTED_EXECUTION_RETRY_INTERVAL;
+            }
+        }));
+        verify(circuitBreaker, never()).onFailure(anyString(), any(Long.class));
+        verify(circuitBreaker).cancel(anyString(), any(Runnable.class));
+        verifyZeroInteractions(callback);
+    }
+
+    @Test
+    public void nonHttpErrorDoesNotCloseCircuit() {
+        final Exception exception = new Exception("mock");
+        final ServiceCallback callback = mock(ServiceCallback.class);
+        HttpClient httpClient = mock(HttpClient.class);
+        doAnswer(new Answer<ServiceCall>() {
+
+            @Override
+            public ServiceCall answer(InvocationOnMock invocationOnMock) {
+                ((ServiceCallback) invocationOnMock.getArguments()[4]).onCallFailed(exception);
+                return mock(ServiceCall.class);
+            }
+        }).when(httpClient).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
+        CircuitBreaker circuitBreaker = mock(CircuitBreaker.class);
+        Runnable waitingCall = mock(Runnable.class);
+        when(circuitBreaker.cancel(anyString(), any(Runnable.class))).thenReturn(Collections.singletonList(waitingCall));
+        Handler handler = mock(Handler.class);
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler, circuitBreaker);
+        retryer.callAsync(null, null, null, null, callback);
+        verify(circuitBreaker, never()).onSuccess(anyString());
+        verify(circuitBreaker).cancel(anyString(), any(Runnable.class));
+        verify(callback).onCallFailed(exception);
+
+        /* Calls waiting for this call to probe the endpoint run again. */
+        verify(handler).post(waitingCall);
+    }
+
     @Test
     public void cancel() throws InterruptedException {
         final ServiceCall call = mock(ServiceCall.class);
@@ -230,10 +413,27 @@ public class HttpClientRetryerTest {
             }
         }).when(httpClient).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
         Handler handler = mock(Handler.class);
-        HttpClient retryer = new HttpClientRetryer(httpClient, handler);
-        retryer.callAsync(null, null, null, null, callback).cancel();
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler, new CircuitBreaker(false));
+        ServiceCall retryableCall = retryer.callAsync(null, null, null, null, callback);
+        retryableCall.cancel();
         Thread.sleep(500);
         verifyNoMoreInteractions(callback);
+        verify(handler).removeCallbacks(retryableCall);
         verify(call).cancel();
     }
+
+    @Test
+    public void cancelBeforeFirstAttempt() {
+        ServiceCallback callback = mock(ServiceCallback.class);
+        HttpClient httpClient = mock(HttpClient.class);
+        Handler handler = mock(Handler.class);
+        CircuitBreaker circuitBreaker = mock(CircuitBreaker.class);
+        when(circuitBreaker.acquire(anyString(), any(Runnable.class))).thenReturn(CircuitBreaker.WAIT_FOR_PROBE);
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler, circuitBreaker);
+        ServiceCall retryableCall = retryer.callAsync(null, null, null, null, callback);
+        retryableCall.cancel();
+        verify(circuitBreaker).cancel(null, (Runnable) retryableCall);
+        verifyZeroInteractions(httpClient);
+        verifyZeroInteractions(callback);
+    }
 }
@@ -98,6 +98,21 @@ public class HttpUtilsTest {
         assertFalse(defaultHttpClient.isCompressionEnabled());
     }
 
+    @Test
+    public void dictionaryCompressionDisabledByDefault() {
+        HttpClient httpClient = HttpUtils.createHttpClient(mock(Context.class), true);
+        DefaultHttpClient defaultHttpClient = getDefaultHttpClient((HttpClientDecorator) httpClient);
+        assertFalse(defaultHttpClient.isDictionaryCompressionEnabled());
+    }
+
+    @Test
+    public void enabledDictionaryCompressionSettings() {
+        HttpClient httpClient = HttpUtils.createHttpClient(mock(Context.class), true, true);
+        DefaultHttpClient defaultHttpClient = getDefaultHttpClient((HttpClientDecorator) httpClient);
+        assertTrue(defaultHttpClient.isCompressionEnabled());
+        assertTrue(defaultHttpClient.isDictionaryCompressionEnabled());
+    }
+
     private DefaultHttpClient getDefaultHttpClient(HttpClientDecorator httpClientDecorator) {
         httpClientDecorator = (HttpClientDecorator) httpClientDecorator.getDecoratedApi();
         return (DefaultHttpClient) httpClientDecorator.getDecoratedApi();
@@ -27,6 +27,7 @@ import org.powermock.modules.junit4.rule.PowerMockRule;
 
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -110,6 +111,30 @@ public class AppCenterIngestionTest {
         verify(mHttpClient).reopen();
     }
 
+    @Test
+    public void sendAsyncWithBatchId() {
+
+        /* Build some payload with a batch identifier. */
+        LogContainer container = new LogContainer();
+        container.setLogs(Collections.singletonList(mock(Log.class)));
+        container.setBatchId("batch1");
+
+        /* Send. */
+        AppCenterIngestion ingestion = new AppCenterIngestion(mHttpClient, mock(LogSerializer.class));
+        ingestion.setLogUrl("http://mock");
+        String appSecret = UUID.randomUUID().toString();
+        UUID installId = UUID.randomUUID();
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        ingestion.sendAsync(appSecret, installId, container, serviceCallback);
+
+        /* Verify batch identifier header. */
+        HashMap<String, String> expectedHeaders = new HashMap<>();
+        expectedHeaders.put(Constants.APP_SECRET, appSecret);
+        expectedHeaders.put(AppCenterIngestion.INSTALL_ID, installId.toString());
+        expectedHeaders.put(AppCenterIngestion.BATCH_ID, "batch1");
+        verify(mHttpClient).callAsync(eq("http://mock" + AppCenterIngestion.API_PATH), eq(METHOD_POST), eq(expectedHeaders), notNull(HttpClient.CallTemplate.class), eq(serviceCallback));
+    }
+
     @Test
     public void failedSerialization() throws Exception {
 
@@ -217,6 +242,11 @@ public class AppCenterIngestionTest {
         AppCenterLog.verbose(anyString(), anyString());
     }
 
+    @Test
+    public void responseBodyNotNeeded() {
+        assertEquals(HttpClient.PartialResponseCallTemplate.ResponseContent.NONE, ((HttpClient.PartialResponseCallTemplate) getCallTemplate(UUID.randomUUID().toString())).getResponseContent());
+    }
+
     private HttpClient.CallTemplate getCallTemplate(String appSecret) {
 
         /* Configure mock HTTP to get an instance of IngestionCallTemplate. */
@@ -51,7 +51,9 @@ import static com.microsoft.appcenter.ingestion.OneCollectorIngestion.TICKETS;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyMapOf;
 import static org.mockito.Matchers.anyString;
@@ -60,10 +62,12 @@ import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.notNull;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mock;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyNew;
 import static org.powermock.api.mockito.PowerMockito.verifyStatic;
 import static org.powermock.api.mockito.PowerMockito.whenNew;
 
@@ -236,6 +240,98 @@ public class OneCollectorIngestionTest {
         return headers;
     }
 
+    private LogContainer containerWithTicketKeys(final String... ticketKeys) {
+        final CommonSchemaLog log = mock(CommonSchemaLog.class);
+        when(log.getExt()).thenReturn(new Extensions() {{
+            setProtocol(new ProtocolExtension() {{
+                setTicketKeys(Arrays.asList(ticketKeys));
+            }});
+        }});
+        return new LogContainer() {{
+            setLogs(new ArrayList<Log>() {{
+                add(log);
+            }});
+        }};
+    }
+
+    @Test
+    public void ticketsHeaderIsCached() throws Exception {
+        TicketCache.putTicket("key1", "value1");
+        when(mHttpClient.callAsync(anyString(), anyString(), mHeadersCaptor.capture(), any(HttpClient.CallTemplate.class), any(ServiceCallback.class))).thenReturn(mock(ServiceCall.class));
+        OneCollectorIngestion ingestion = new OneCollectorIngestion(mHttpClient, mock(LogSerializer.class));
+
+        /* Unknown keys are cached as no header. */
+        ingestion.sendAsync(null, null, containerWithTicketKeys("key2"), mock(ServiceCallback.class));
+        assertFalse(mHeadersCaptor.getValue().containsKey(TICKETS));
+        ingestion.sendAsync(null, null, containerWithTicketKeys("key2"), mock(ServiceCallback.class));
+        assertFalse(mHeadersCaptor.getValue().containsKey(TICKETS));
+        verifyNew(JSONObject.class).withNoArguments();
+
+        /* Same ticket keys reuse the header. */
+        ingestion.sendAsync(null, null, containerWithTicketKeys("key1"), mock(ServiceCallback.class));
+        assertEquals("{\"key1\":\"value1\"}", mHeadersCaptor.getValue().get(TICKETS));
+        ingestion.sendAsync(null, null, containerWithTicketKeys("key1"), mock(ServiceCallback.class));
+        assertEquals("{\"key1\":\"value1\"}", mHeadersCaptor.getValue().get(TICKETS));
+        verifyNew(JSONObject.class, times(2)).withNoArguments();
+
+        /* Updating a ticket invalidates headers. */
+        TicketCache.putTicket("key2", "value2");
+        ingestion.sendAsync(null, null, containerWithTicketKeys("key2"), mock(ServiceCallback.class));
+        assertTrue(mHeadersCaptor.getValue().containsKey(TICKETS));
+        verifyNew(JSONObject.class, times(3)).withNoArguments();
+    }
+
+    @Test
+    public void expiredTicketsAreNotSent() {
+        TicketCache.putTicket("key1", "value1", System.currentTimeMillis() - 1);
+        when(mHttpClient.callAsync(anyString(), anyString(), mHeadersCaptor.capture(), any(HttpClient.CallTemplate.class), any(ServiceCallback.class))).thenReturn(mock(ServiceCall.class));
+        OneCollectorIngestion ingestion = new OneCollectorIngestion(mHttpClient, mock(LogSerializer.class));
+        ingestion.sendAsync(null, null, containerWithTicketKeys("key1"), mock(ServiceCallback.class));
+        assertFalse(mHeadersCaptor.getValue().containsKey(TICKETS));
+        assertFalse(mHeadersCaptor.getValue().containsKey(OneCollectorIngestion.STRICT));
+        assertNull(TicketCache.getTicket("key1"));
+    }
+
+    private LogContainer containerWithTargets(String... targetTokens) {
+        List<Log> logs = new ArrayList<>();
+        for (String targetToken : targetTokens) {
+            CommonSchemaLog log = mock(CommonSchemaLog.class);
+            when(log.getExt()).thenReturn(new Extensions() {{
+                setProtocol(new ProtocolExtension());
+            }});
+            when(log.getTransmissionTargetTokens()).thenReturn(new HashSet<>(Collections.singletonList(targetToken)));
+            logs.add(log);
+        }
+        LogContainer container = new LogContainer();
+        container.setLogs(logs);
+        return container;
+    }
+
+    @Test
+    public void headersAreCached() {
+        when(mHttpClient.callAsync(anyString(), anyString(), mHeadersCaptor.capture(), any(HttpClient.CallTemplate.class), any(ServiceCallback.class))).thenReturn(mock(ServiceCall.class));
+        OneCollectorIngestion ingestion = new OneCollectorIngestion(mHttpClient, mock(LogSerializer.class));
+        ingestion.sendAsync(null, null, containerWithTargets("token1", "token2", "token1"), mock(ServiceCallback.class));
+        Map<String, String> headers = mHeadersCaptor.getValue();
+        assertEquals("token1,token2", headers.get(OneCollectorIngestion.API_KEY));
+
+        /* Same target set, even in a different order, reuses the same values. */
+        ingestion.sendAsync(null, null, containerWithTargets("token2", "token1"), mock(ServiceCallback.class));
+        assertSame(headers.get(OneCollectorIngestion.API_KEY), mHeadersCaptor.getValue().get(OneCollectorIngestion.API_KEY));
+        assertSame(headers.get(OneCollectorIngestion.CLIENT_VERSION_KEY), mHeadersCaptor.getValue().get(OneCollectorIngestion.CLIENT_VERSION_KEY));
+
+        /* Other target sets get their own value. */
+        for (int i = 0; i < OneCollectorIngestion.MAX_CACHED_HEADERS; i++) {
+            ingestion.sendAsync(null, null, containerWithTargets("token1", "other" + i), mock(ServiceCallback.class));
+            assertEquals("token1,other" + i, mHeadersCaptor.getValue().get(OneCollectorIngestion.API_KEY));
+        }
+
+        /* First value was evicted and is built again. */
+        ingestion.sendAsync(null, null, containerWithTargets("token1", "token2"), mock(ServiceCallback.class));
+        assertEquals("token1,token2", mHeadersCaptor.getValue().get(OneCollectorIngestion.API_KEY));
+        assertNotSame(headers.get(OneCollectorIngestion.API_KEY), mHeadersCaptor.getValue().get(OneCollectorIngestion.API_KEY));
+    }
+
     @Test
     public void ticketsFailToSerialize() throws Exception {
 
@@ -380,6 +476,11 @@ public class OneCollectorIngestionTest {
         AppCenterLog.verbose(anyString(), anyString());
     }
 
+    @Test
+    public void responseBodyNotNeeded() {
+        assertEquals(HttpClient.PartialResponseCallTemplate.ResponseContent.NONE, ((HttpClient.PartialResponseCallTemplate) getCallTemplate()).getResponseContent());
+    }
+
     private HttpClient.CallTemplate getCallTemplate() {
 
         /* Configure mock HTTP to get an instance of IngestionCallTemplate. */
@@ -19,6 +19,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.powermock.api.mockito.PowerMockito.mock;
@@ -45,4 +47,25 @@ public class CommonSchemaDataUtilsTest {
         CommonSchemaDataUtils.addCommonSchemaData(properties, commonSchemaLog);
         assertEquals(0, commonSchemaLog.getData().getProperties().length());
     }
+
+    @Test
+    public void copyCommonSchemaData() {
+
+        /* Without metadata. */
+        CommonSchemaLog src = new MockCommonSchemaLog();
+        src.setData(new Data());
+        CommonSchemaLog dest = new MockCommonSchemaLog();
+        CommonSchemaDataUtils.copyCommonSchemaData(src, dest);
+        assertSame(src.getData(), dest.getData());
+        assertNull(dest.getExt());
+
+        /* With metadata. */
+        src.setExt(new Extensions());
+        src.getExt().setMetadata(new MetadataExtension());
+        dest = new MockCommonSchemaLog();
+        dest.setExt(new Extensions());
+        CommonSchemaDataUtils.copyCommonSchemaData(src, dest);
+        assertSame(src.getData(), dest.getData());
+        assertSame(src.getExt().getMetadata(), dest.getExt().getMetadata());
+    }
 }
@@ -17,7 +17,9 @@ import java.util.Date;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -86,6 +88,50 @@ public class PartAUtilsTest {
         assertEquals(extensions, commonSchemaLog.getExt());
     }
 
+    @Test
+    public void copyPartAFromCommonSchemaLog() {
+        Date timestamp = new Date();
+        Log log = mock(Log.class);
+        when(log.getDevice()).thenReturn(getDevice(0));
+        when(log.getTimestamp()).thenReturn(timestamp);
+        when(log.getUserId()).thenReturn("alice");
+        MockCommonSchemaLog src = new MockCommonSchemaLog();
+        PartAUtils.addPartAFromLog(log, src, "T1UUID1-T2UUID2");
+
+        /* Copy for another target. */
+        MockCommonSchemaLog dest = new MockCommonSchemaLog();
+        PartAUtils.addPartAFromCommonSchemaLog(src, dest, "T3UUID3-T4UUID4");
+
+        /* Verify target specific fields. */
+        assertEquals("3.0", dest.getVer());
+        assertEquals(timestamp, dest.getTimestamp());
+        assertEquals("o:T3UUID3", dest.getIKey());
+        assertEquals(Collections.singleton("T3UUID3-T4UUID4"), dest.getTransmissionTargetTokens());
+
+        /* Immutable extensions are shared. */
+        assertSame(src.getExt().getOs(), dest.getExt().getOs());
+        assertSame(src.getExt().getNet(), dest.getExt().getNet());
+        assertSame(src.getExt().getLoc(), dest.getExt().getLoc());
+
+        /* Other extensions are equal copies. */
+        assertNotSame(src.getExt().getProtocol(), dest.getExt().getProtocol());
+        assertEquals(src.getExt().getProtocol(), dest.getExt().getProtocol());
+        assertNotSame(src.getExt().getUser(), dest.getExt().getUser());
+        assertEquals(src.getExt().getUser(), dest.getExt().getUser());
+        assertNotSame(src.getExt().getApp(), dest.getExt().getApp());
+        assertEquals(src.getExt().getApp(), dest.getExt().getApp());
+        assertNotSame(src.getExt().getSdk(), dest.getExt().getSdk());
+        assertEquals(src.getExt().getSdk(), dest.getExt().getSdk());
+        assertNotSame(src.getExt().getDevice(), dest.getExt().getDevice());
+        assertEquals(src.getExt().getDevice(), dest.getExt().getDevice());
+
+        /* Updating a copy does not change the source. */
+        dest.getExt().getApp().setName("name");
+        dest.getExt().getSdk().setSeq(1L);
+        assertNull(src.getExt().getApp().getName());
+        assertNull(src.getExt().getSdk().getSeq());
+    }
+
     /**
      * Convert to Part A and check.
      */
@@ -124,14 +124,24 @@ public class DatabasePersistenceTest {
         persistence.setLogSerializer(mockLogSerializer);
 
         /* Get logs. */
+        List<String> batchIds = new ArrayList<>();
         for (int i = 0; i < groupCount; i++) {
-            persistence.getLogs(String.valueOf(i), Collections.<String>emptyList(), logCount, new ArrayList<Log>());
+            batchIds.add(persistence.getLogs(String.valueOf(i), Collections.<String>emptyList(), logCount, new ArrayList<Log>()));
         }
 
         /* Verify there are 4 pending groups. */
         assertEquals(groupCount, persistence.mPendingDbIdentifiersGroups.size());
         assertEquals(groupCount * logCount, persistence.mPendingDbIdentifiers.size());
 
+        /* Clear one pending batch and verify. */
+        persistence.clearPendingLogState("0", batchIds.get(0));
+        assertEquals(groupCount - 1, persistence.mPendingDbIdentifiersGroups.size());
+        assertEquals((groupCount - 1) * logCount, persistence.mPendingDbIdentifiers.size());
+
+        /* Clearing it again does nothing. */
+        persistence.clearPendingLogState("0", batchIds.get(0));
+        assertEquals(groupCount - 1, persistence.mPendingDbIdentifiersGroups.size());
+
         /* Clear all pending groups and verify. */
         persistence.clearPendingLogState();
         assertEquals(0, persistence.mPendingDbIdentifiersGroups.size());
@@ -10,6 +10,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNull;
 
 public class TicketCacheTest {
@@ -40,4 +41,75 @@ public class TicketCacheTest {
         assertEquals("2", TicketCache.getTicket("key1"));
         assertEquals("1", TicketCache.getTicket("key2"));
     }
+
+    @Test
+    public void nullValuesIgnored() {
+        long version = TicketCache.getVersion();
+        TicketCache.putTicket(null, "1");
+        TicketCache.putTicket("key1", null);
+        assertNull(TicketCache.getTicket(null));
+        assertNull(TicketCache.getTicket("key1"));
+        assertEquals(version, TicketCache.getVersion());
+    }
+
+    @Test
+    public void expiredTicketsAreEvicted() {
+        long now = System.currentTimeMillis();
+        TicketCache.putTicket("key1", "1", now - 1);
+        TicketCache.putTicket("key2", "2", now + 60000);
+        assertEquals(now - 1, TicketCache.getNextExpiryTime());
+        long version = TicketCache.getVersion();
+        assertNull(TicketCache.getTicket("key1"));
+        assertNotEquals(version, TicketCache.getVersion());
+        assertEquals(now + 60000, TicketCache.getNextExpiryTime());
+        assertEquals("2", TicketCache.getTicket("key2"));
+
+        /* Explicit removal. */
+        TicketCache.putTicket("key1", "1", now - 1);
+        TicketCache.removeExpiredTickets();
+        assertEquals(now + 60000, TicketCache.getNextExpiryTime());
+        version = TicketCache.getVersion();
+        TicketCache.removeExpiredTickets();
+        assertEquals(version, TicketCache.getVersion());
+
+        /* Tickets without expiry. */
+        TicketCache.clear();
+        TicketCache.putTicket("key1", "1");
+        assertEquals(TicketCache.NO_EXPIRY, TicketCache.getNextExpiryTime());
+        assertEquals("1", TicketCache.getTicket("key1"));
+    }
+
+    @Test
+    public void versionChangesOnUpdate() {
+        long version = TicketCache.getVersion();
+        TicketCache.putTicket("key1", "1");
+        assertNotEquals(version, version = TicketCache.getVersion());
+        TicketCache.putTicket("key1", "2");
+        assertNotEquals(version, version = TicketCache.getVersion());
+        assertEquals(version, TicketCache.getVersion());
+        TicketCache.clear();
+        assertNotEquals(version, TicketCache.getVersion());
+    }
+
+    @Test
+    public void cacheIsBounded() {
+        long now = System.currentTimeMillis();
+        TicketCache.putTicket("expired", "0", now - 1);
+        TicketCache.putTicket("first", "0", now + 1000);
+        for (int i = 0; i < TicketCache.MAX_TICKETS - 1; i++) {
+            TicketCache.putTicket("key" + i, String.valueOf(i), now + 60000);
+        }
+
+        /* Expired ticket evicted first. */
+        assertNull(TicketCache.getTicket("expired"));
+        assertEquals("0", TicketCache.getTicket("first"));
+
+        /* Then the one expiring first. */
+        TicketCache.putTicket("last", "0");
+        assertNull(TicketCache.getTicket("first"));
+        assertEquals("0", TicketCache.getTicket("last"));
+        for (int i = 0; i < TicketCache.MAX_TICKETS - 1; i++) {
+            assertEquals(String.valueOf(i), TicketCache.getTicket("key" + i));
+        }
+    }
 }
@@ -32,6 +32,7 @@ import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateExpiredException;
 import java.security.cert.X509Certificate;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
@@ -538,5 +539,170 @@ public class CryptoTest {
         verify(mKeyStore).containsAlias(alias.capture());
         assertTrue(alias.getValue().contains(CIPHER_AES));
     }
-}
 
+    @Test
+    public void cachedEncryptAndDecrypt() throws Exception {
+        CryptoUtils cryptoUtils = new CryptoUtils(mContext, mCryptoFactory, Build.VERSION_CODES.M);
+        assertNull(cryptoUtils.encryptCached(null));
+        assertNull(cryptoUtils.decryptCached(null).getDecryptedData());
+
+        /* Key store is used only once for the same value. */
+        String encrypted = cryptoUtils.encryptCached("token");
+        assertEquals(CIPHER_AES + "/" + AES_KEY_SIZE + ALGORITHM_DATA_SEPARATOR + "IV" + "token", encrypted);
+        assertEquals(encrypted, cryptoUtils.encryptCached("token"));
+        verify(mCipher).doFinal(any(byte[].class));
+
+        /* Decrypting what we just encrypted does not need the key store. */
+        assertEquals("token", cryptoUtils.decryptCached(encrypted).getDecryptedData());
+        assertNull(cryptoUtils.decryptCached(encrypted).getNewEncryptedData());
+        verify(mCipher, never()).doFinal(any(byte[].class), anyInt(), anyInt());
+
+        /* Other values are decrypted once. */
+        String otherEncrypted = CIPHER_AES + "/" + AES_KEY_SIZE + ALGORITHM_DATA_SEPARATOR + "IV" + "other";
+        assertEquals("other", cryptoUtils.decryptCached(otherEncrypted).getDecryptedData());
+        assertEquals("other", cryptoUtils.decryptCached(otherEncrypted).getDecryptedData());
+        verify(mCipher).doFinal(any(byte[].class), anyInt(), anyInt());
+        verify(mKeyStore, times(2)).getEntry(anyString(), isNull(KeyStore.ProtectionParameter.class));
+    }
+
+    @Test
+    public void cacheIsBounded() throws Exception {
+        CryptoUtils cryptoUtils = new CryptoUtils(mContext, mCryptoFactory, Build.VERSION_CODES.M);
+        for (int i = 0; i <= CryptoUtils.CACHE_SIZE; i++) {
+            cryptoUtils.encryptCached("token" + i);
+        }
+        verify(mCipher, times(CryptoUtils.CACHE_SIZE + 1)).doFinal(any(byte[].class));
+
+        /* Most recent values are still cached, the least recently used was evicted. */
+        cryptoUtils.encryptCached("token" + CryptoUtils.CACHE_SIZE);
+        verify(mCipher, times(CryptoUtils.CACHE_SIZE + 1)).doFinal(any(byte[].class));
+        cryptoUtils.encryptCached("token0");
+        verify(mCipher, times(CryptoUtils.CACHE_SIZE + 2)).doFinal(any(byte[].class));
+    }
+
+    @Test
+    public void failuresAreNotCached() throws Exception {
+        CryptoUtils cryptoUtils = new CryptoUtils(mContext, mCryptoFactory, Build.VERSION_CODES.M);
+        when(mCipher.doFinal(any(byte[].class))).thenThrow(new BadPaddingException());
+        assertEquals("token", cryptoUtils.encryptCached("token"));
+        assertEquals("token", cryptoUtils.encryptCached("token"));
+        verify(mCipher, times(2)).doFinal(any(byte[].class));
+        when(mCipher.doFinal(any(byte[].class), anyInt(), anyInt())).thenThrow(new BadPaddingException());
+        String encrypted = CIPHER_AES + "/" + AES_KEY_SIZE + ALGORITHM_DATA_SEPARATOR + "IV" + "token";
+        assertEquals(encrypted, cryptoUtils.decryptCached(encrypted).getDecryptedData());
+        assertEquals(encrypted, cryptoUtils.decryptCached(encrypted).getDecryptedData());
+
+        /* Each decrypt attempt tries both aliases. */
+        verify(mCipher, times(4)).doFinal(any(byte[].class), anyInt(), anyInt());
+    }
+
+    @Test
+    public void keyRotationClearsCache() throws Exception {
+        CryptoUtils cryptoUtils = new CryptoUtils(mContext, mCryptoFactory, Build.VERSION_CODES.M);
+        cryptoUtils.encryptCached("token");
+
+        /* Make key rotate on next encryption. */
+        when(mCipher.doFinal(any(byte[].class))).thenThrow(new KeyExpiredException()).thenAnswer(new Answer<byte[]>() {
+
+            @Override
+            public byte[] answer(InvocationOnMock invocation) {
+                return (byte[]) invocation.getArguments()[0];
+            }
+        });
+        cryptoUtils.encrypt("otherData");
+
+        /* Token is encrypted again with the new key. */
+        cryptoUtils.encryptCached("token");
+        ArgumentCaptor<String> aliasCaptor = ArgumentCaptor.forClass(String.class);
+        verify(mKeyStore, times(4)).getEntry(aliasCaptor.capture(), isNull(KeyStore.ProtectionParameter.class));
+        assertTrue(aliasCaptor.getValue().startsWith("appcenter.1."));
+    }
+
+    @Test
+    public void batchEncryptAndDecrypt() throws Exception {
+        CryptoUtils cryptoUtils = new CryptoUtils(mContext, mCryptoFactory, Build.VERSION_CODES.M);
+        String prefix = CIPHER_AES + "/" + AES_KEY_SIZE + ALGORITHM_DATA_SEPARATOR + "IV";
+        List<String> encrypted = cryptoUtils.encrypt(Arrays.asList("a", null, "b"));
+        assertEquals(Arrays.asList(prefix + "a", null, prefix + "b"), encrypted);
+
+        /* Key store entry and cipher were fetched once. */
+        verify(mKeyStore).getEntry(anyString(), isNull(KeyStore.ProtectionParameter.class));
+        verify(mCryptoFactory).getCipher(anyString(), anyString());
+
+        /* Decrypt, including unknown algorithm and data to upgrade. */
+        List<CryptoUtils.DecryptedData> decrypted = cryptoUtils.decrypt(Arrays.asList(encrypted.get(0), null, "rot13:caesar", "None:old", encrypted.get(2)));
+        assertEquals("a", decrypted.get(0).getDecryptedData());
+        assertNull(decrypted.get(0).getNewEncryptedData());
+        assertNull(decrypted.get(1).getDecryptedData());
+        assertEquals("rot13:caesar", decrypted.get(2).getDecryptedData());
+        assertEquals("old", decrypted.get(3).getDecryptedData());
+        assertEquals(prefix + "old", decrypted.get(3).getNewEncryptedData());
+        assertEquals("b", decrypted.get(4).getDecryptedData());
+
+        /* One more key store entry read per algorithm and one for upgrading data, still a single cipher. */
+        verify(mKeyStore, times(4)).getEntry(anyString(), isNull(KeyStore.ProtectionParameter.class));
+        verify(mCryptoFactory).getCipher(anyString(), anyString());
+    }
+
+    @Test
+    public void batchEncryptRotatesKey() throws Exception {
+        CryptoUtils cryptoUtils = new CryptoUtils(mContext, mCryptoFactory, Build.VERSION_CODES.M);
+        when(mCipher.doFinal(any(byte[].class))).thenThrow(new KeyExpiredException()).thenThrow(new KeyExpiredException()).thenAnswer(new Answer<byte[]>() {
+
+            @Override
+            public byte[] answer(InvocationOnMock invocation) {
+                return (byte[]) invocation.getArguments()[0];
+            }
+        });
+        String prefix = CIPHER_AES + "/" + AES_KEY_SIZE + ALGORITHM_DATA_SEPARATOR + "IV";
+        assertEquals(Arrays.asList(prefix + "a", prefix + "b"), cryptoUtils.encrypt(Arrays.asList("a", "b")));
+
+        /* Second item used the new alias read again after rotation. */
+        ArgumentCaptor<String> aliasCaptor = ArgumentCaptor.forClass(String.class);
+        verify(mKeyStore, times(4)).getEntry(aliasCaptor.capture(), isNull(KeyStore.ProtectionParameter.class));
+        assertTrue(aliasCaptor.getAllValues().get(0).startsWith("appcenter.0."));
+        assertTrue(aliasCaptor.getAllValues().get(1).startsWith("appcenter.0."));
+        assertTrue(aliasCaptor.getAllValues().get(2).startsWith("appcenter.1."));
+        assertTrue(aliasCaptor.getAllValues().get(3).startsWith("appcenter.1."));
+    }
+
+    @Test
+    public void batchDecryptWithExpiredAlias() throws Exception {
+        CryptoUtils cryptoUtils = new CryptoUtils(mContext, mCryptoFactory, Build.VERSION_CODES.M);
+        when(mCipher.doFinal(any(byte[].class), anyInt(), anyInt())).thenThrow(new BadPaddingException()).thenAnswer(new Answer<byte[]>() {
+
+            @Override
+            public byte[] answer(InvocationOnMock invocation) {
+                byte[] input = (byte[]) invocation.getArguments()[0];
+                int offset = (int) invocation.getArguments()[1];
+                int length = (int) invocation.getArguments()[2];
+                byte[] data = new byte[length];
+                System.arraycopy(input, offset, data, 0, length);
+                return data;
+            }
+        });
+        String prefix = CIPHER_AES + "/" + AES_KEY_SIZE + ALGORITHM_DATA_SEPARATOR + "IV";
+        List<CryptoUtils.DecryptedData> decrypted = cryptoUtils.decrypt(Arrays.asList(prefix + "a", prefix + "b"));
+        assertEquals("a", decrypted.get(0).getDecryptedData());
+        assertEquals("b", decrypted.get(1).getDecryptedData());
+        verify(mCipher, times(3)).doFinal(any(byte[].class), anyInt(), anyInt());
+    }
+
+    @Test
+    public void batchDecryptCached() throws Exception {
+        CryptoUtils cryptoUtils = new CryptoUtils(mContext, mCryptoFactory, Build.VERSION_CODES.M);
+        String encrypted = cryptoUtils.encryptCached("a");
+        String prefix = CIPHER_AES + "/" + AES_KEY_SIZE + ALGORITHM_DATA_SEPARATOR + "IV";
+        List<CryptoUtils.DecryptedData> decrypted = cryptoUtils.decryptCached(Arrays.asList(encrypted, prefix + "b", null, prefix + "b", encrypted));
+        assertEquals("a", decrypted.get(0).getDecryptedData());
+        assertEquals("b", decrypted.get(1).getDecryptedData());
+        assertNull(decrypted.get(2).getDecryptedData());
+        assertEquals("b", decrypted.get(3).getDecryptedData());
+        assertEquals("a", decrypted.get(4).getDecryptedData());
+
+        /* Only the distinct missing value was decrypted. */
+        verify(mCipher).doFinal(any(byte[].class), anyInt(), anyInt());
+        cryptoUtils.decryptCached(Arrays.asList(prefix + "b", encrypted));
+        verify(mCipher).doFinal(any(byte[].class), anyInt(), anyInt());
+    }
+}
@@ -224,11 +224,15 @@ public class DatabaseManagerTest {
         when(sqLiteDatabase.insertOrThrow(anyString(), anyString(), any(ContentValues.class))).thenThrow(new SQLiteFullException()).thenReturn(1L);
 
         /* Instantiate real instance for DatabaseManager. */
-        DatabaseManager databaseManager = new DatabaseManager(contextMock, "database", "table", 1, null, null);
+        DatabaseManager.Listener listener = mock(DatabaseManager.Listener.class);
+        DatabaseManager databaseManager = new DatabaseManager(contextMock, "database", "table", 1, null, listener);
         databaseManager.setSQLiteOpenHelper(helperMock);
 
         /* When we put a log, it succeeds even if a problem occurred while closing purge cursor. */
         long id = databaseManager.put(mock(ContentValues.class), "priority");
         assertEquals(1, id);
+
+        /* The listener is notified of the purged log. */
+        verify(listener).onEvicted(0L);
     }
 }
\ No newline at end of file